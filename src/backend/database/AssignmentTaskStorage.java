@@ -12,8 +12,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.h2.jdbcx.JdbcConnectionPool;
-
 import data.Assignment;
 import data.IAssignment;
 import data.ITask;
@@ -61,19 +59,19 @@ public class AssignmentTaskStorage {
 	 * Template must already be in the database
 	 * 
 	 * @param assignment Assignment to be added to the database
-	 * @param pool JdbcConnectionPool for retrieving connection to the database
+	 * @param assignments Cache of assignments, updated once the Assignment is committed
+	 * @param pool StatementPool for retrieving connection to the database
 	 * @return Assignment that was added, for chaining calls
 	 * @throws StorageServiceException Thrown when the Assigment's associated Template is not in the db
 	 */
-	protected static IAssignment addAssignment(final IAssignment assignment, final JdbcConnectionPool pool)
-			throws StorageServiceException {
+	protected static IAssignment addAssignment(final IAssignment assignment, final Cache<Assignment> assignments,
+			final StatementPool pool) throws StorageServiceException {
 		PreparedStatement assignmentStatement = null;
 		PreparedStatement taskStatement = null;
 		PreparedStatement templateStatement = null;
 		Connection con = null;
 		
 		try {
-			Class.forName("org.h2.Driver");
 			con = pool.getConnection();
 			
 			con.setAutoCommit(false);
@@ -83,14 +81,14 @@ public class AssignmentTaskStorage {
 			
 			// insert assignment
 			Utilities.setValues(assignmentStatement, assignmentId, assignment.getName(), assignment.getExpectedHours(),
-					assignment.getDueDate().getTime(), assignment.getTemplate().getID());
+					assignment.getDueDate().getTime(), assignment.getTemplate().getID(), 0);
 			assignmentStatement.execute();
 			
 			// insert associated tasks
 			for (final ITask task : assignment.getTasks()) {
 				Utilities.setValues(taskStatement, assignmentId, task.getTaskID(), task.getName(), 
 						task.getTaskNumber(), task.getPercentOfTotal(), task.getPercentComplete(), 
-						task.getPreferredTimeOfDay().name(), task.getSuggestedBlockLength());
+						task.getPreferredTimeOfDay().name(), task.getSuggestedBlockLength(), 0);
 				taskStatement.addBatch();
 			}
 			taskStatement.executeBatch();
@@ -119,8 +117,11 @@ public class AssignmentTaskStorage {
 			
 			// commit to the database
 			con.commit();
-		} catch (final ClassNotFoundException e) {
-			Utilities.printException("AssignmentTaskStorage: addAssignment: db drive class not found", e);
+			assignment.setVersion(0);
+			for (final ITask task : assignment.getTasks()) {
+				task.setVersion(0);
+			}
+			cacheAssignment(assignment, assignments);
 		} catch (final SQLException e) {
 			Utilities.printSQLException("AssignmentTaskStorage: addAssignment: "
 				+ "attempting to roll back transaction", e);
@@ -160,15 +161,16 @@ public class AssignmentTaskStorage {
 	 * Remove an Assignment and all of its associated Tasks from the database
 	 * 
 	 * @param assignment IAssignment to be removed
-	 * @param pool JdbcConnectionPool for retrieving connection to the database
+	 * @param assignments Cache of assignments, evicted from once the removal is committed
+	 * @param pool StatementPool for retrieving connection to the database
 	 * @return IAssignment that was removed, for chaining calls
 	 */
-	protected static IAssignment removeAssignment(final IAssignment assignment, final JdbcConnectionPool pool) {
+	protected static IAssignment removeAssignment(final IAssignment assignment, final Cache<Assignment> assignments,
+			final StatementPool pool) {
 		PreparedStatement assignmentStatement = null;
 		Connection con = null;
 		
 		try {
-			Class.forName("org.h2.Driver");
 			con = pool.getConnection();
 			
 			con.setAutoCommit(false);
@@ -180,8 +182,7 @@ public class AssignmentTaskStorage {
 			
 			// commit to the database
 			con.commit();
-		} catch (final ClassNotFoundException e) {
-			Utilities.printException("AssignmentTaskStorage: removeAssignment: db drive class not found", e);
+			assignments.invalidate(assignmentId);
 		} catch (final SQLException e) {
 			Utilities.printSQLException("AssignmentTaskStorage: removeAssignment: attempting to roll back transaction",
 					e);
@@ -215,13 +216,18 @@ public class AssignmentTaskStorage {
 	 * Update Assignment and clear and repopulate its associated Tasks Checks to see if the Template associated with the
 	 * Assignment can still be found in the db
 	 * 
+	 * The Assignment's row must still be at the Assignment's version. Since updating a Task moves its Assignment's
+	 * version on, this also catches Tasks changed since the Assignment was read.
+	 * 
 	 * @param assignment Assignment to be updated
-	 * @param pool JdbcConnectionPool for retrieving connection to the database
+	 * @param assignments Cache of assignments, updated once the Assignment is committed
+	 * @param pool StatementPool for retrieving connection to the database
 	 * @return Assignment that was updated, for chaining calls
 	 * @throws StorageServiceException Thrown when the Assignment's associated Template cannot be found in the db
+	 * @throws StaleDataException Thrown when the Assignment was changed or removed since it was read
 	 */
-	protected static Assignment updateAssignment(final Assignment assignment, final JdbcConnectionPool pool)
-			throws StorageServiceException {
+	protected static Assignment updateAssignment(final Assignment assignment, final Cache<Assignment> assignments,
+			final StatementPool pool) throws StorageServiceException {
 		PreparedStatement assignmentStatement = null;
 		PreparedStatement taskDeleteStatement = null;
 		PreparedStatement taskInsertStatement = null;
@@ -229,7 +235,6 @@ public class AssignmentTaskStorage {
 		Connection con = null;
 		
 		try {
-			Class.forName("org.h2.Driver");
 			con = pool.getConnection();
 			con.setAutoCommit(false);
 			
@@ -259,8 +264,14 @@ public class AssignmentTaskStorage {
 			final String assignmentId = assignment.getID();
 			
 			Utilities.setValues(assignmentStatement, assignment.getName(), assignment.getExpectedHours(), assignment
-					.getDueDate().getTime(), assignment.getTemplate().getID(), assignmentId);
-			assignmentStatement.execute();
+					.getDueDate().getTime(), assignment.getTemplate().getID(), assignmentId, assignment.getVersion());
+			
+			// If the row is no longer at the Assignment's version, someone else got there first
+			if (assignmentStatement.executeUpdate() == 0) {
+				con.rollback();
+				throw new StaleDataException("AssignmentTaskStorage: updateAssignment: Assignment " + assignmentId
+					+ " was changed since it was read");
+			}
 			
 			// Delete all template steps from before
 			taskDeleteStatement = con.prepareStatement(Utilities.DELETE_TASKS_BY_ID);
@@ -272,15 +283,18 @@ public class AssignmentTaskStorage {
 			for (final ITask task : assignment.getTasks()) {
 				Utilities.setValues(taskInsertStatement, assignmentId, task.getTaskID(), task.getName(),
 						task.getTaskNumber(), task.getPercentOfTotal(), task.getPercentComplete(), 
-						task.getPreferredTimeOfDay().name(), task.getSuggestedBlockLength());
+						task.getPreferredTimeOfDay().name(), task.getSuggestedBlockLength(), task.getVersion() + 1);
 				taskInsertStatement.addBatch();
 			}
 			taskInsertStatement.executeBatch();
 			
 			// commit to the database
 			con.commit();
-		} catch (final ClassNotFoundException e) {
-			Utilities.printException("AssignmentTaskStorage: updateAssignment: db drive class not found", e);
+			assignment.setVersion(assignment.getVersion() + 1);
+			for (final ITask task : assignment.getTasks()) {
+				task.setVersion(task.getVersion() + 1);
+			}
+			cacheAssignment(assignment, assignments);
 		} catch (final SQLException e) {
 			Utilities.printSQLException("AssignmentTaskStorage: updateAssignment: "
 				+ "attempting to roll back transaction", e);
@@ -324,12 +338,20 @@ public class AssignmentTaskStorage {
 	 * Get the Assignment identified by the passed-in id value
 	 * 
 	 * @param toBeFoundId Id value of the Assignment to be retrieved
+	 * @param assignments Cache of assignments, checked first and populated on a miss
 	 * @param templates Cache of templates for finding the associated Template
-	 * @param pool JdbcConnectionPool for retrieving connection to the database
+	 * @param pool StatementPool for retrieving connection to the database
 	 * @return Assignment that was found, or null if the Assignment was not found
 	 */
-	protected static Assignment getAssignment(final String toBeFoundId, final Cache<ITemplate> templates,
-			final JdbcConnectionPool pool) {
+	protected static Assignment getAssignment(final String toBeFoundId, final Cache<Assignment> assignments,
+			final Cache<ITemplate> templates, final StatementPool pool) {
+		final Assignment cached = assignments.get(toBeFoundId);
+		if (cached != null) {
+			return copyAssignment(cached);
+		}
+		
+		// Taken before reading, so that a copy read before a concurrent commit isn't cached after it
+		final long generation = assignments.getGeneration();
 		PreparedStatement assignmentStatement = null;
 		PreparedStatement templateStatement = null;
 		Connection con = null;
@@ -338,7 +360,6 @@ public class AssignmentTaskStorage {
 		String templateId = "";
 		
 		try {
-			Class.forName("org.h2.Driver");
 			con = pool.getConnection();
 			
 			assignmentStatement = con.prepareStatement(Utilities.SELECT_ASGN_BY_ID);
@@ -361,6 +382,7 @@ public class AssignmentTaskStorage {
 				
 				final Task task = new Task(taskId, taskName, taskNumber, taskPercentTotal, asgnId, 
 						taskPercentComplete, taskTimeOfDay, taskSuggestedLength);
+				task.setVersion(asgnTaskResults.getLong("TASK_VERSION"));
 				
 				// if the assignment hasn't been reconstructed yet
 				if (result == null) {
@@ -372,6 +394,7 @@ public class AssignmentTaskStorage {
 					
 					asgnTaskList.add(task);
 					result = new Assignment(asgnId, asgnName, asgnDueDate, asgnExpectedHours, asgnTaskList);
+					result.setVersion(asgnTaskResults.getLong("ASGN_VERSION"));
 				}
 				// if the assignment has already been reconstructed, just add task to its task list
 				else {
@@ -387,9 +410,8 @@ public class AssignmentTaskStorage {
 			templateStatement = con.prepareStatement(Utilities.SELECT_TEMPLATES_AND_STEPS_BY_ID);
 			
 			// Now add the appropriate template reference to each assignment
-			if (templates.contains(templateId)) {
-				template = templates.get(templateId);
-			} else {
+			template = templates.get(templateId);
+			if (template == null) {
 				Utilities.setValues(templateStatement, templateId);
 				final ResultSet templateStepResults = templateStatement.executeQuery();
 				
@@ -424,8 +446,6 @@ public class AssignmentTaskStorage {
 			if (template != null) {
 				result.setTemplate(template);
 			}
-		} catch (final ClassNotFoundException e) {
-			Utilities.printException("AssignmentTaskStorage: getAssignmentById: db drive class not found", e);
 		} catch (final SQLException e) {
 			Utilities.printSQLException("AssignmentTaskStorage: getAssignmentById: could not retrieve assignments", e);
 		}
@@ -447,6 +467,7 @@ public class AssignmentTaskStorage {
 		
 		if (result != null) {
 			AssignmentTaskStorage.sortTasks(result);
+			assignments.insertIfUnchanged(toBeFoundId, copyAssignment(result), generation);
 		}
 		return result;
 	}
@@ -455,11 +476,11 @@ public class AssignmentTaskStorage {
 	 * Retrieves all Assignments
 	 * 
 	 * @param templates Cache of templates for retrieving the associated Templates
-	 * @param pool JdbcConnectionPool for retrieving connection to the database
+	 * @param pool StatementPool for retrieving connection to the database
 	 * @return List of all Assignments stored in the db
 	 */
 	protected static List<IAssignment> getAllAssignments(final Cache<ITemplate> templates, 
-			final JdbcConnectionPool pool) {
+			final StatementPool pool) {
 		PreparedStatement assignmentStatement = null;
 		PreparedStatement templateStatement = null;
 		Connection con = null;
@@ -469,7 +490,6 @@ public class AssignmentTaskStorage {
 		final List<IAssignment> results = new ArrayList<>();
 		
 		try {
-			Class.forName("org.h2.Driver");
 			con = pool.getConnection();
 			
 			assignmentStatement = con.prepareStatement(Utilities.SELECT_ALL_ASGNS);
@@ -493,6 +513,7 @@ public class AssignmentTaskStorage {
 				Assignment asgn;
 				final Task task = new Task(taskId, taskName, taskNumber, taskPercentTotal, asgnId, 
 						taskPercentComplete, taskTimeOfDay, taskSuggestedLength);
+				task.setVersion(asgnTaskResults.getLong("TASK_VERSION"));
 				
 				// if the assignment hasn't been reconstructed yet
 				if (!idToAssignment.containsKey(asgnId)) {
@@ -503,6 +524,7 @@ public class AssignmentTaskStorage {
 					
 					asgnTaskList.add(task);
 					asgn = new Assignment(asgnId, asgnName, asgnDueDate, asgnExpectedHours, asgnTaskList);
+					asgn.setVersion(asgnTaskResults.getLong("ASGN_VERSION"));
 					idToAssignment.put(asgnId, asgn);
 				}
 				// if the assignment has already been reconstructed, just add task to its task list
@@ -532,9 +554,10 @@ public class AssignmentTaskStorage {
 				final String listTemplateId = entry.getKey();
 				final List<Assignment> associatedAssignments = entry.getValue();
 				
-				if (templates.contains(listTemplateId)) {
+				final ITemplate cachedTemplate = templates.get(listTemplateId);
+				if (cachedTemplate != null) {
 					for (final Assignment a : associatedAssignments) {
-						a.setTemplate(templates.get(listTemplateId));
+						a.setTemplate(cachedTemplate);
 					}
 				} else {
 					Utilities.setValues(templateStatement, listTemplateId);
@@ -574,9 +597,6 @@ public class AssignmentTaskStorage {
 					templates.insert(listTemplateId, idToTemplate.get(listTemplateId));
 				}
 			}
-		} catch (final ClassNotFoundException e) {
-			Utilities
-					.printException("AssignmentTaskStorage: getAllAssignmentsWithinRange: db drive class not found", e);
 		} catch (final SQLException e) {
 			Utilities.printSQLException("AssignmentTaskStorage: getAllAssignmentsWithinRange: "
 				+ "could not retrieve assignments", e);
@@ -612,11 +632,11 @@ public class AssignmentTaskStorage {
 	 * @param date1 Lower bound of the date range
 	 * @param date2 Upper bound of the date range
 	 * @param templates Cache of templates for retrieving the associated Templates
-	 * @param pool JdbcConnectionPool for retrieving connection to the database
+	 * @param pool StatementPool for retrieving connection to the database
 	 * @return List of Assignments whose dueDate falls within the specified date range
 	 */
 	protected static List<IAssignment> getAllAssignmentsWithinRange(final Date date1, final Date date2,
-			final Cache<ITemplate> templates, final JdbcConnectionPool pool) {
+			final Cache<ITemplate> templates, final StatementPool pool) {
 		PreparedStatement assignmentStatement = null;
 		PreparedStatement templateStatement = null;
 		Connection con = null;
@@ -630,7 +650,6 @@ public class AssignmentTaskStorage {
 		final Date later = (date2.compareTo(date1) > 0) ? date2 : date1;
 		
 		try {
-			Class.forName("org.h2.Driver");
 			con = pool.getConnection();
 			
 			assignmentStatement = con.prepareStatement(Utilities.SELECT_ASGNS_TASKS_BY_DATE);
@@ -655,6 +674,7 @@ public class AssignmentTaskStorage {
 				Assignment asgn;
 				final Task task = new Task(taskId, taskName, taskNumber, taskPercentTotal, asgnId, 
 						taskPercentComplete, taskTimeOfDay, taskSuggestedLength);
+				task.setVersion(asgnTaskResults.getLong("TASK_VERSION"));
 				
 				// if the assignment hasn't been reconstructed yet
 				if (!idToAssignment.containsKey(asgnId)) {
@@ -665,6 +685,7 @@ public class AssignmentTaskStorage {
 					
 					asgnTaskList.add(task);
 					asgn = new Assignment(asgnId, asgnName, asgnDueDate, asgnExpectedHours, asgnTaskList);
+					asgn.setVersion(asgnTaskResults.getLong("ASGN_VERSION"));
 					idToAssignment.put(asgnId, asgn);
 				}
 				// if the assignment has already been reconstructed, just add task to its task list
@@ -694,9 +715,10 @@ public class AssignmentTaskStorage {
 				final String listTemplateId = entry.getKey();
 				final List<Assignment> associatedAssignments = entry.getValue();
 				
-				if (templates.contains(listTemplateId)) {
+				final ITemplate cachedTemplate = templates.get(listTemplateId);
+				if (cachedTemplate != null) {
 					for (final Assignment a : associatedAssignments) {
-						a.setTemplate(templates.get(listTemplateId));
+						a.setTemplate(cachedTemplate);
 					}
 				} else {
 					Utilities.setValues(templateStatement, listTemplateId);
@@ -736,9 +758,6 @@ public class AssignmentTaskStorage {
 					templates.insert(listTemplateId, idToTemplate.get(listTemplateId));
 				}
 			}
-		} catch (final ClassNotFoundException e) {
-			Utilities
-					.printException("AssignmentTaskStorage: getAllAssignmentsWithinRange: db drive class not found", e);
 		} catch (final SQLException e) {
 			Utilities.printSQLException("AssignmentTaskStorage: getAllAssignmentsWithinRange: "
 				+ "could not retrieve assignments", e);
@@ -769,33 +788,49 @@ public class AssignmentTaskStorage {
 	}
 	
 	/**
-	 * Update a task that already exists in the db.
+	 * Update a task that already exists in the db, if its row is still at the Task's version. The versions of the Task
+	 * and of its Assignment move on once the update is committed.
 	 * 
 	 * @param task Task to be updated
-	 * @param pool JdbcConnectionPool for retrieving connection to the database
+	 * @param assignments Cache of assignments; the Task's Assignment is evicted once the update is committed
+	 * @param pool StatementPool for retrieving connection to the database
 	 * @return Task that was updated, for chaining calls 
+	 * @throws StaleDataException Thrown when the Task was changed or removed since it was read
 	 */
-	protected static ITask updateTask(final ITask task, final JdbcConnectionPool pool) {
+	protected static ITask updateTask(final ITask task, final Cache<Assignment> assignments,
+			final StatementPool pool) throws StaleDataException {
 		PreparedStatement taskStatement = null;
+		PreparedStatement assignmentStatement = null;
 	    Connection con = null; 
 	    
 	    try {
-	    	Class.forName("org.h2.Driver");
 	    	con = pool.getConnection();
 	        con.setAutoCommit(false);
 	        
 	        taskStatement = con.prepareStatement(Utilities.UPDATE_TASK); 
             Utilities.setValues(taskStatement, task.getName(), task.getPercentOfTotal(), 
             		task.getPercentComplete(), task.getPreferredTimeOfDay().name(), 
-            		task.getSuggestedBlockLength(), task.getTaskID());
-            taskStatement.execute();
+            		task.getSuggestedBlockLength(), task.getTaskID(), task.getVersion());
+            
+            // If the row is no longer at the Task's version, someone else got there first
+            if (taskStatement.executeUpdate() == 0) {
+            	con.rollback();
+            	throw new StaleDataException("AssignmentTaskStorage: updateTask: Task " + task.getTaskID()
+            		+ " was changed since it was read");
+            }
+            
+            // Updating a Task changes its Assignment too
+            assignmentStatement = con.prepareStatement(Utilities.TOUCH_ASGN);
+            Utilities.setValues(assignmentStatement, task.getAssignmentID());
+            assignmentStatement.execute();
             
             //commit to the database
             con.commit();
+            task.setVersion(task.getVersion() + 1);
+            if (task.getAssignmentID() != null) {
+            	assignments.invalidate(task.getAssignmentID());
+            }
 	    } 
-	    catch (final ClassNotFoundException e) {
-			Utilities.printException("AssignmentTaskStorage: updateTask: db drive class not found", e);
-		} 
 	    catch (final SQLException e) {
 	        Utilities.printSQLException("AssignmentTaskStorage: updateTask: " +
 	        		"attempting to roll back transaction", e);
@@ -814,6 +849,9 @@ public class AssignmentTaskStorage {
 	    		if (taskStatement != null) {
 		            taskStatement.close();
 		        }
+	    		if (assignmentStatement != null) {
+	    			assignmentStatement.close();
+	    		}
 		        con.setAutoCommit(true);
 		        if (con != null) {
 	    			con.close(); 
@@ -833,11 +871,11 @@ public class AssignmentTaskStorage {
 	 * 
 	 * @param date1 Lower bound of the date range
 	 * @param date2 Upper bound of the date range
-	 * @param pool JdbcConnectionPool for retrieving connection to the database
+	 * @param pool StatementPool for retrieving connection to the database
 	 * @return List of Tasks that fall within the date range specified
 	 */
 	protected static List<ITask> getAllTasksWithinRange(final Date date1, final Date date2,
-			final JdbcConnectionPool pool) {
+			final StatementPool pool) {
 		PreparedStatement statement = null;
 		Connection con = null;
 		final ArrayList<ITask> results = new ArrayList<>();
@@ -847,7 +885,6 @@ public class AssignmentTaskStorage {
 		final Date later = (date2.compareTo(date1) > 0) ? date2 : date1;
 		
 		try {
-			Class.forName("org.h2.Driver");
 			con = pool.getConnection();
 			
 			statement = con.prepareStatement(Utilities.SELECT_TASKS_BY_DATE);
@@ -866,11 +903,11 @@ public class AssignmentTaskStorage {
 				final TimeOfDay taskTimeOfDay = TimeOfDay.valueOf(timeOfDay);
 				final double taskSuggestedLength = taskResults.getDouble("TASK_SUGGESTED_LENGTH");
 				
-				results.add(new Task(taskId, taskName, taskNumber, taskPercentTotal, asgnId, taskPercentComplete, 
-						taskTimeOfDay, taskSuggestedLength));
+				final Task task = new Task(taskId, taskName, taskNumber, taskPercentTotal, asgnId, taskPercentComplete, 
+						taskTimeOfDay, taskSuggestedLength);
+				task.setVersion(taskResults.getLong("TASK_VERSION"));
+				results.add(task);
 			}
-		} catch (final ClassNotFoundException e) {
-			Utilities.printException("AssignmentTaskStorage: getAllTasksWithinRange: db drive class not found", e);
 		} catch (final SQLException e) {
 			Utilities.printSQLException("AssignmentTaskStorage: getAllTasksWithinRange: "
 				+ "could not retrieve assignments", e);
@@ -896,6 +933,44 @@ public class AssignmentTaskStorage {
 	 * Helper methods
 	 */
 	
+	/**
+	 * Keep the cache in step with an Assignment that was just committed. Assignments that are not concrete Assignment
+	 * objects are evicted instead, so the next read rebuilds them from the db.
+	 * 
+	 * @param assignment Assignment that was committed
+	 * @param assignments Cache of assignments
+	 */
+	private static void cacheAssignment(final IAssignment assignment, final Cache<Assignment> assignments) {
+		if (assignment instanceof Assignment) {
+			assignments.insert(assignment.getID(), copyAssignment((Assignment) assignment));
+		} else {
+			assignments.invalidate(assignment.getID());
+		}
+	}
+	
+	/**
+	 * The cache keeps its own copies and hands out copies of them, so that a caller changing an Assignment or its
+	 * Tasks before (or without) writing them never changes what every other caller reads
+	 * 
+	 * @param assignment Assignment to copy
+	 * @return Copy of the Assignment and its Tasks, sharing its Template, which is cached on its own
+	 */
+	private static Assignment copyAssignment(final Assignment assignment) {
+		final List<ITask> tasks = new ArrayList<>(assignment.getTasks().size());
+		for (final ITask task : assignment.getTasks()) {
+			final Task copy = new Task(task.getTaskID(), task.getName(), task.getTaskNumber(), task.getPercentOfTotal(),
+					task.getAssignmentID(), task.getPercentComplete(), task.getPreferredTimeOfDay(), task
+							.getSuggestedBlockLength());
+			copy.setVersion(task.getVersion());
+			tasks.add(copy);
+		}
+		final Assignment copy = new Assignment(assignment.getID(), assignment.getName(), new Date(assignment
+				.getDueDate().getTime()), assignment.getExpectedHours(), tasks);
+		copy.setTemplate(assignment.getTemplate());
+		copy.setVersion(assignment.getVersion());
+		return copy;
+	}
+	
 	public static void sortTasks(IAssignment assignment) {
 		Collections.sort(assignment.getTasks(), new Comparator<ITask>() {
 			@Override
@@ -1,28 +1,290 @@
 package backend.database;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Keyed cache for objects rebuilt from the database.
+ *
+ * A cache can be bounded to a maximum number of entries, in which case the least recently used entry is evicted to
+ * make room for a new one, and can expire entries a fixed time after they were inserted. Hits, misses, evictions and
+ * the time spent in loaders are counted so callers can see how well a cache is doing.
+ *
+ * All operations lock the cache; loaders passed to get(key, loader) run outside the lock. Since a value loaded outside
+ * the lock may already be out of date by the time it is ready, every insert and invalidation moves the cache to a new
+ * generation, and insertIfUnchanged only caches a value if the cache is still at the generation the load began in.
+ */
 public class Cache<T> {
-	private ConcurrentHashMap<String, T> _cache; 
-	
+
+	/**
+	 * Builds the value for a key that is not cached
+	 */
+	public interface Loader<T> {
+		/**
+		 * @param key Key that missed
+		 * @return Value for the key, or null if there is none (null values are not cached)
+		 */
+		T load(String key);
+	}
+
+	private final LinkedHashMap<String, Entry<T>>	_entries;
+	private final int								_maxEntries;
+	private final long								_ttlNanos;
+
+	// Guarded by this
+	private long									_generation;
+
+	private final AtomicLong						_hits;
+	private final AtomicLong						_misses;
+	private final AtomicLong						_evictions;
+	private final AtomicLong						_loads;
+	private final AtomicLong						_loadNanos;
+
+	/**
+	 * Unbounded cache whose entries never expire
+	 */
 	public Cache() {
-		_cache = new ConcurrentHashMap<>(); 
+		this(0, 0, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @param maxEntries Maximum number of entries held at once; 0 for no limit
+	 */
+	public Cache(final int maxEntries) {
+		this(maxEntries, 0, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @param maxEntries Maximum number of entries held at once; 0 for no limit
+	 * @param ttl How long an entry stays valid after it is inserted; 0 for no expiry
+	 * @param unit Unit of ttl
+	 */
+	public Cache(final int maxEntries, final long ttl, final TimeUnit unit) {
+		if (maxEntries < 0 || ttl < 0) {
+			throw new IllegalArgumentException("Cache: maxEntries and ttl must not be negative");
+		}
+
+		// Access order makes the first entry the least recently used one
+		_entries = new LinkedHashMap<>(16, 0.75f, true);
+		_maxEntries = maxEntries;
+		_ttlNanos = unit.toNanos(ttl);
+
+		_hits = new AtomicLong();
+		_misses = new AtomicLong();
+		_evictions = new AtomicLong();
+		_loads = new AtomicLong();
+		_loadNanos = new AtomicLong();
+	}
+
+	/**
+	 * @param key Key of the value
+	 * @return Whether a live value is cached for key. Does not count as a hit or a miss.
+	 */
+	public synchronized boolean contains(final String key) {
+		return getLive(key) != null;
+	}
+
+	/**
+	 * Cache a value, evicting the least recently used entry if the cache is full
+	 *
+	 * @param key Key of the value
+	 * @param value Value to cache
+	 * @return Value previously cached for key, or null
+	 */
+	public synchronized T insert(final String key, final T value) {
+		_generation++;
+		final Entry<T> previous = _entries.put(key, new Entry<>(value, expiryFromNow()));
+		evictOverflow();
+		return previous == null || previous.isExpired(System.nanoTime()) ? null : previous._value;
+	}
+
+	/**
+	 * Cache a value loaded outside the lock, unless anything was inserted or invalidated since the load began, in
+	 * which case the value may be older than what is stored
+	 *
+	 * @param key Key of the value
+	 * @param value Value to cache
+	 * @param generation What getGeneration returned before the value was loaded
+	 * @return Whether the value was cached
+	 */
+	public synchronized boolean insertIfUnchanged(final String key, final T value, final long generation) {
+		if (generation != _generation) {
+			return false;
+		}
+		insert(key, value);
+		return true;
+	}
+
+	/**
+	 * @return The cache's generation, which moves on with every insert and invalidation; see insertIfUnchanged
+	 */
+	public synchronized long getGeneration() {
+		return _generation;
+	}
+
+	public synchronized void insertAll(final Map<? extends String, ? extends T> map) {
+		for (final Map.Entry<? extends String, ? extends T> entry : map.entrySet()) {
+			insert(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Look up a value, counting the lookup as a hit or a miss
+	 *
+	 * @param key Key of the value
+	 * @return Cached value, or null if there is none
+	 */
+	public synchronized T get(final String key) {
+		final T value = getLive(key);
+		if (value == null) {
+			_misses.incrementAndGet();
+		} else {
+			_hits.incrementAndGet();
+		}
+		return value;
+	}
+
+	/**
+	 * Look up a value, building and caching it with loader on a miss
+	 *
+	 * @param key Key of the value
+	 * @param loader Builds the value if it is not cached
+	 * @return Cached or loaded value, or null if the loader found nothing
+	 */
+	public T get(final String key, final Loader<T> loader) {
+		final T cached = get(key);
+		if (cached != null) {
+			return cached;
+		}
+
+		final long generation = getGeneration();
+		final long start = System.nanoTime();
+		final T loaded = loader.load(key);
+		_loadNanos.addAndGet(System.nanoTime() - start);
+		_loads.incrementAndGet();
+
+		if (loaded != null) {
+			insertIfUnchanged(key, loaded, generation);
+		}
+		return loaded;
+	}
+
+	/**
+	 * Drop the value cached for key
+	 *
+	 * @param key Key of the value
+	 * @return Value that was cached, or null
+	 */
+	public synchronized T invalidate(final String key) {
+		_generation++;
+		final Entry<T> removed = _entries.remove(key);
+		return removed == null ? null : removed._value;
+	}
+
+	/**
+	 * Drop every cached value
+	 */
+	public synchronized void invalidateAll() {
+		_generation++;
+		_entries.clear();
+	}
+
+	/**
+	 * @return Number of entries held, including expired entries not yet cleaned up
+	 */
+	public synchronized int size() {
+		return _entries.size();
 	}
-	
-	public boolean contains(String key) {
-		return _cache.containsKey(key); 
+
+	public long getHits() {
+		return _hits.get();
+	}
+
+	public long getMisses() {
+		return _misses.get();
 	}
-	
-	public T insert(String key, T value) {
-		return _cache.put(key, value); 
+
+	/**
+	 * @return Number of entries dropped because the cache was full or they expired
+	 */
+	public long getEvictions() {
+		return _evictions.get();
 	}
-	
-	public void insertAll(Map<? extends String, ? extends T> map) {
-		_cache.putAll(map);
+
+	/**
+	 * @return Number of times a loader was run
+	 */
+	public long getLoadCount() {
+		return _loads.get();
+	}
+
+	/**
+	 * @param unit Unit of the result
+	 * @return Total time spent running loaders
+	 */
+	public long getTotalLoadTime(final TimeUnit unit) {
+		return unit.convert(_loadNanos.get(), TimeUnit.NANOSECONDS);
 	}
-	
-	public T get(String key) {
-		return _cache.get(key); 
+
+	@Override
+	public synchronized String toString() {
+		return "Cache: [size: " + _entries.size() + "; hits: " + _hits.get() + "; misses: " + _misses.get()
+			+ "; evictions: " + _evictions.get() + "; loads: " + _loads.get() + "]";
+	}
+
+	/*
+	 * Helper methods
+	 */
+
+	/**
+	 * @param key Key of the value
+	 * @return Live value for key, or null. Expired entries are dropped.
+	 */
+	private T getLive(final String key) {
+		final Entry<T> entry = _entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (entry.isExpired(System.nanoTime())) {
+			_entries.remove(key);
+			_evictions.incrementAndGet();
+			return null;
+		}
+		return entry._value;
+	}
+
+	private void evictOverflow() {
+		if (_maxEntries == 0) {
+			return;
+		}
+		final Iterator<Map.Entry<String, Entry<T>>> it = _entries.entrySet().iterator();
+		while (_entries.size() > _maxEntries && it.hasNext()) {
+			it.next();
+			it.remove();
+			_evictions.incrementAndGet();
+		}
+	}
+
+	private long expiryFromNow() {
+		return _ttlNanos == 0 ? Long.MAX_VALUE : System.nanoTime() + _ttlNanos;
+	}
+
+	private static class Entry<T> {
+
+		private final T		_value;
+		private final long	_expiresAt;
+
+		private Entry(final T value, final long expiresAt) {
+			_value = value;
+			_expiresAt = expiresAt;
+		}
+
+		private boolean isExpired(final long now) {
+			// Subtract instead of comparing directly, since nanoTime may wrap
+			return _expiresAt != Long.MAX_VALUE && now - _expiresAt >= 0;
+		}
 	}
 }
@@ -0,0 +1,94 @@
+package backend.database;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import data.UnavailableBlock;
+
+/**
+ * The default weekly pattern of unavailable blocks, as entered in the startup survey.
+ *
+ * Default blocks are stored relative to the week of Sunday, January 4th 1970. The pattern keeps each block as an
+ * offset from that Sunday so it can be shifted into any week with plain arithmetic, instead of re-reading and
+ * re-shifting every default row for every week asked for.
+ */
+public class DefaultWeek {
+
+	private final String[]	_ids;
+	private final long[]	_startOffsets;
+	private final long[]	_endOffsets;
+	private final boolean[]	_movable;
+
+	/**
+	 * @param entries Default unavailable entries, ordered by start
+	 */
+	protected DefaultWeek(final List<TimeBlockIndex.Entry> entries) {
+		final long msWeekStartDefault = getDefaultWeekStart();
+
+		final int size = entries.size();
+		_ids = new String[size];
+		_startOffsets = new long[size];
+		_endOffsets = new long[size];
+		_movable = new boolean[size];
+		for (int i = 0; i < size; i++) {
+			final TimeBlockIndex.Entry entry = entries.get(i);
+			_ids[i] = entry.getBlockId();
+			_startOffsets[i] = entry.getStart() - msWeekStartDefault;
+			_endOffsets[i] = entry.getEnd() - msWeekStartDefault;
+			_movable[i] = entry.isMovable();
+		}
+	}
+
+	/**
+	 * Shift the pattern into the week starting at msWeekStart, adding every block that overlaps [lo, hi]
+	 *
+	 * @param msWeekStart Sunday 00:00 of the week to expand into
+	 * @param lo Lower bound in ms
+	 * @param hi Upper bound in ms
+	 * @param results List the shifted blocks are added to
+	 */
+	protected void expandInto(final long msWeekStart, final long lo, final long hi,
+			final List<UnavailableBlock> results) {
+		for (int i = 0; i < _ids.length; i++) {
+			final long blockStart = msWeekStart + _startOffsets[i];
+			final long blockEnd = msWeekStart + _endOffsets[i];
+			if (blockStart <= hi && blockEnd >= lo) {
+				results.add(new UnavailableBlock(_ids[i], new Date(blockStart), new Date(blockEnd), null, _movable[i]));
+			}
+		}
+	}
+
+	/**
+	 * @return Whether the pattern has no blocks at all
+	 */
+	protected boolean isEmpty() {
+		return _ids.length == 0;
+	}
+
+	/**
+	 * @param date Any moment in the week in question
+	 * @return Sunday 00:00 of the week containing date, in local time
+	 */
+	protected static long getWeekStart(final Date date) {
+		final Calendar cal = Calendar.getInstance();
+		cal.setFirstDayOfWeek(Calendar.SUNDAY);
+		cal.setTime(date);
+		cal.set(Calendar.DAY_OF_WEEK, Calendar.SUNDAY);
+		cal.set(Calendar.HOUR_OF_DAY, 0);
+		cal.set(Calendar.MINUTE, 0);
+		cal.set(Calendar.SECOND, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+		return cal.getTimeInMillis();
+	}
+
+	/**
+	 * @return The week default blocks are stored relative to, as the survey built them
+	 */
+	private static long getDefaultWeekStart() {
+		final Calendar cal = Calendar.getInstance();
+		cal.setTime(new Date(0));
+		cal.add(Calendar.DAY_OF_YEAR, 3);
+		return cal.getTimeInMillis();
+	}
+}
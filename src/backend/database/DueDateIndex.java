@@ -0,0 +1,82 @@
+package backend.database;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import data.IAssignment;
+
+/**
+ * Write-through, in-memory index of Assignment due dates, so that the latest due date can be found without loading
+ * every Assignment.
+ *
+ * The index is filled from the backend the first time it is asked, and then kept up to date by StorageService as
+ * Assignments are added, updated and removed. Due dates are counted in a sorted multiset, so the latest one is found in
+ * O(log n) and removing one Assignment never hides another Assignment due at the same time.
+ */
+class DueDateIndex {
+
+	private final Map<String, Long>		_byId	= new HashMap<String, Long>();
+	private final TreeMap<Long, Integer>	_counts	= new TreeMap<Long, Integer>();
+	private boolean						_loaded;
+
+	/**
+	 * @param backend Backend to fill the index from, the first time it is asked
+	 * @return The latest due date of any Assignment, or null if there are none
+	 */
+	synchronized Date last(final IStorageBackend backend) {
+		if (!_loaded) {
+			final List<IAssignment> asgns = backend.getAllAssignments();
+			for (final IAssignment asgn : asgns) {
+				put(asgn);
+			}
+			_loaded = true;
+		}
+		return _counts.isEmpty() ? null : new Date(_counts.lastKey());
+	}
+
+	/**
+	 * Records an Assignment that was added or updated, replacing its old due date
+	 *
+	 * @param asgn The Assignment
+	 */
+	synchronized void put(final IAssignment asgn) {
+		if (asgn == null || asgn.getID() == null || asgn.getDueDate() == null) {
+			return;
+		}
+		remove(asgn.getID());
+		final long due = asgn.getDueDate().getTime();
+		_byId.put(asgn.getID(), due);
+		final Integer count = _counts.get(due);
+		_counts.put(due, (count == null) ? 1 : count + 1);
+	}
+
+	/**
+	 * Forgets an Assignment that was removed
+	 *
+	 * @param id Id of the Assignment
+	 */
+	synchronized void remove(final String id) {
+		final Long due = _byId.remove(id);
+		if (due == null) {
+			return;
+		}
+		final int count = _counts.get(due);
+		if (count == 1) {
+			_counts.remove(due);
+		} else {
+			_counts.put(due, count - 1);
+		}
+	}
+
+	/**
+	 * Forgets everything, so that the index is filled again from the backend the next time it is asked
+	 */
+	synchronized void clear() {
+		_byId.clear();
+		_counts.clear();
+		_loaded = false;
+	}
+}
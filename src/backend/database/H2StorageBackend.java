@@ -0,0 +1,317 @@
+package backend.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+
+import data.Assignment;
+import data.AssignmentBlock;
+import data.IAssignment;
+import data.ITask;
+import data.ITemplate;
+import data.ITimeBlockable;
+import data.UnavailableBlock;
+
+/**
+ * Stores Carly's data in an H2 database, through the static Storage classes
+ */
+public class H2StorageBackend implements IStorageBackend {
+	
+	/**
+	 * Most Templates and Assignments kept in memory at once; the least recently used ones are rebuilt from the db
+	 */
+	private static final int			TEMPLATE_CACHE_SIZE		= 256;
+	private static final int			ASSIGNMENT_CACHE_SIZE	= 1024;
+	
+	/**
+	 * Smaller caches for tenants, since many of them are open at once
+	 */
+	private static final int			TENANT_TEMPLATE_CACHE_SIZE		= 32;
+	private static final int			TENANT_ASSIGNMENT_CACHE_SIZE	= 128;
+	
+	/**
+	 * Where each tenant's database is kept, unless TENANT_DB_URL is set; %s is replaced by the tenant's id
+	 */
+	private static final String			DEFAULT_TENANT_DB_URL	= "jdbc:h2:tenants/%s/.carly_db";
+	
+	private final Properties			_props;
+	private final int					_templateCacheSize;
+	private final int					_assignmentCacheSize;
+	private Cache<ITemplate>			_templates;
+	private Cache<Assignment>			_assignments;
+	private TimeBlockIndex				_timeBlocks;
+	private JdbcConnectionPool			_pool;
+	private StatementPool				_statements;
+	
+	/**
+	 * @param props Database properties: DB_URL, DB_USER and DB_PWD, and optionally TENANT_DB_URL
+	 */
+	public H2StorageBackend(final Properties props) {
+		this(props, TEMPLATE_CACHE_SIZE, ASSIGNMENT_CACHE_SIZE);
+	}
+	
+	private H2StorageBackend(final Properties props, final int templateCacheSize, final int assignmentCacheSize) {
+		_props = props;
+		_templateCacheSize = templateCacheSize;
+		_assignmentCacheSize = assignmentCacheSize;
+	}
+	
+	@Override
+	public boolean initialize(final boolean dropTables) throws StorageServiceException {
+		_templates = new Cache<>(_templateCacheSize);
+		_assignments = new Cache<>(_assignmentCacheSize);
+		_timeBlocks = new TimeBlockIndex();
+		_pool = JdbcConnectionPool.create(_props.getProperty("DB_URL"), _props.getProperty("DB_USER"),
+				_props.getProperty("DB_PWD"));
+		_statements = new StatementPool(_pool);
+		
+		boolean firstStart = false;
+		// Create or upgrade the tables in the database
+		try (Connection con = _pool.getConnection()) {
+			int version = SchemaMigrator.getVersion(con);
+			if (version == 0) {
+				firstStart = true;
+			}
+			
+			if (dropTables) {
+				try (Statement stmt = con.createStatement()) {
+					stmt.execute(Utilities.DROP_ALL_TABLES);
+				}
+				version = 0;
+			}
+			
+			SchemaMigrator.migrate(con, version);
+		} catch (final SQLException e) {
+			throw new StorageServiceException("H2StorageBackend: initialize: could not migrate all tables: "
+				+ e.getMessage());
+		}
+		
+		// Mirror TIME_BLOCK in memory so range queries don't scan the table
+		TimeBlockStorage.loadIndex(_timeBlocks, _statements);
+		return firstStart;
+	}
+	
+	@Override
+	public void cleanup() {
+		_statements.dispose();
+		_pool.dispose();
+	}
+	
+	@Override
+	public void dropTables() {
+		try (Connection con = _pool.getConnection()) {
+			try (Statement stmt = con.createStatement()) {
+				stmt.execute(Utilities.DROP_ALL_TABLES);
+			}
+			_timeBlocks.clear();
+			_templates.invalidateAll();
+			_assignments.invalidateAll();
+		} catch (final SQLException e) {
+			Utilities.printSQLException("H2StorageBackend: dropTables: could not create all tables", e);
+		}
+	}
+	
+	/**
+	 * Each tenant gets its own database, at TENANT_DB_URL (by default, under tenants/), with the same user and password
+	 */
+	@Override
+	public IStorageBackend newTenantBackend(final String tenantId) {
+		final Properties props = new Properties();
+		props.putAll(_props);
+		props.setProperty("DB_URL", String.format(_props.getProperty("TENANT_DB_URL", DEFAULT_TENANT_DB_URL), tenantId));
+		return new H2StorageBackend(props, TENANT_TEMPLATE_CACHE_SIZE, TENANT_ASSIGNMENT_CACHE_SIZE);
+	}
+	
+	@Override
+	public boolean isPersistent() {
+		return true;
+	}
+	
+	@Override
+	public IAssignment addAssignment(final IAssignment assignment) throws StorageServiceException {
+		return AssignmentTaskStorage.addAssignment(assignment, _assignments, _statements);
+	}
+	
+	@Override
+	public IAssignment removeAssignment(final IAssignment assignment) {
+		return AssignmentTaskStorage.removeAssignment(assignment, _assignments, _statements);
+	}
+	
+	@Override
+	public Assignment updateAssignment(final Assignment assignment) throws StorageServiceException {
+		return AssignmentTaskStorage.updateAssignment(assignment, _assignments, _statements);
+	}
+	
+	@Override
+	public Assignment getAssignment(final String toBeFoundId) {
+		return AssignmentTaskStorage.getAssignment(toBeFoundId, _assignments, _templates, _statements);
+	}
+	
+	@Override
+	public long getAssignmentCacheHits() {
+		return _assignments.getHits();
+	}
+	
+	@Override
+	public long getAssignmentCacheMisses() {
+		return _assignments.getMisses();
+	}
+	
+	@Override
+	public List<IAssignment> getAllAssignments() {
+		return AssignmentTaskStorage.getAllAssignments(_templates, _statements);
+	}
+	
+	@Override
+	public List<IAssignment> getAllAssignmentsWithinRange(final Date date1, final Date date2) {
+		return AssignmentTaskStorage.getAllAssignmentsWithinRange(date1, date2, _templates, _statements);
+	}
+	
+	@Override
+	public ITask updateTask(final ITask task) throws StaleDataException {
+		return AssignmentTaskStorage.updateTask(task, _assignments, _statements);
+	}
+	
+	@Override
+	public List<ITask> getAllTasksWithinRange(final Date date1, final Date date2) {
+		return AssignmentTaskStorage.getAllTasksWithinRange(date1, date2, _statements);
+	}
+	
+	@Override
+	public List<UnavailableBlock> getAllUnavailableBlocksWithinRange(final Date date1, final Date date2) {
+		return TimeBlockStorage.getAllUnavailableBlocksWithinRange(date1, date2, _timeBlocks);
+	}
+	
+	@Override
+	public List<AssignmentBlock> getAllAssignmentBlocksWithinRange(final Date date1, final Date date2) {
+		return TimeBlockStorage.getAllAssignmentBlocksWithinRange(date1, date2, _timeBlocks, _statements);
+	}
+	
+	@Override
+	public AssignmentBlock getAssignmentBlock(final String blockId) {
+		return TimeBlockStorage.getAssignmentBlock(blockId, _statements);
+	}
+	
+	@Override
+	public UnavailableBlock getUnavailableBlock(final String blockId) {
+		return TimeBlockStorage.getUnavailableBlock(blockId, _statements);
+	}
+	
+	@Override
+	public void addTimeBlock(final ITimeBlockable block) throws StorageServiceException {
+		TimeBlockStorage.addTimeBlock(block, _timeBlocks, _statements);
+	}
+	
+	@Override
+	public List<ITimeBlockable> mergeAllTimeBlocks(final List<ITimeBlockable> blockList) {
+		return TimeBlockStorage.mergeAllTimeBlocks(blockList, _timeBlocks, _statements);
+	}
+	
+	@Override
+	public List<ITimeBlockable> applyTimeBlockChanges(final TimeBlockChangeSet changes)
+			throws StorageServiceException {
+		return TimeBlockStorage.applyTimeBlockChanges(changes, _timeBlocks, _assignments, _statements);
+	}
+	
+	@Override
+	public ITimeBlockable updateTimeBlock(final ITimeBlockable block) throws StorageServiceException {
+		return TimeBlockStorage.updateTimeBlock(block, _timeBlocks, _statements);
+	}
+	
+	@Override
+	public List<ITimeBlockable> updateAllTimeBlocks(final List<ITimeBlockable> blockList) {
+		return TimeBlockStorage.updateAllTimeBlocks(blockList, _timeBlocks, _statements);
+	}
+	
+	@Override
+	public void updateTimeBlocks(final List<ITimeBlockable> blockList) throws StorageServiceException {
+		TimeBlockStorage.updateTimeBlocks(blockList, _timeBlocks, _statements);
+	}
+	
+	@Override
+	public ITimeBlockable removeTimeBlock(final ITimeBlockable block) {
+		return TimeBlockStorage.removeTimeBlock(block, _timeBlocks, _statements);
+	}
+	
+	@Override
+	public void addAllDefaultUnavailableBlocks(final List<UnavailableBlock> blockList) {
+		TimeBlockStorage.addAllDefaultUnavailableBlocks(blockList, _timeBlocks, _statements);
+	}
+	
+	@Override
+	public void replaceUnavailableBlocks(final Date startDate, final Date endDate,
+			final List<? extends ITimeBlockable> blockList) {
+		TimeBlockStorage.replaceUnavailableBlocks(startDate, endDate, blockList, _timeBlocks, _statements);
+	}
+	
+	@Override
+	public ITemplate getTemplate(final String id) {
+		return TemplateStepStorage.getTemplate(id, _templates, _statements, false);
+	}
+	
+	@Override
+	public ITemplate getTemplateByName(final String name) {
+		return TemplateStepStorage.getTemplateByName(name, _statements);
+	}
+	
+	@Override
+	public List<ITemplate> getAllTemplates() {
+		return TemplateStepStorage.getAllTemplates(_statements);
+	}
+	
+	@Override
+	public ITemplate addTemplate(final ITemplate temp) throws StorageServiceException {
+		return TemplateStepStorage.addTemplate(temp, _statements);
+	}
+	
+	@Override
+	public ITemplate updateTemplate(final ITemplate temp) throws StorageServiceException {
+		// Cached Assignments hold a reference to the old Template
+		_assignments.invalidateAll();
+		return TemplateStepStorage.updateTemplate(temp, _templates, _statements);
+	}
+	
+	@Override
+	public ITemplate removeTemplate(final ITemplate temp) {
+		_assignments.invalidateAll();
+		return TemplateStepStorage.removeTemplate(temp, _templates, _statements);
+	}
+	
+	@Override
+	public void learnTemplateStepTimeOfDay(final ITask task, final String todKey, final double deltaTod) {
+		_assignments.invalidateAll();
+		TemplateStepStorage.learnTemplateStepTimeOfDay(task, todKey, deltaTod, _templates, _statements);
+	}
+	
+	@Override
+	public void learnTemplateConsecutiveHours(final ITask task, final double consecutiveHours) {
+		_assignments.invalidateAll();
+		TemplateStepStorage.learnTemplateConsecutiveHours(task, consecutiveHours, _templates, _statements);
+	}
+	
+	@Override
+	public void mergeSetting(final String name, final String val) {
+		SettingStorage.mergeSetting(name, val, _statements);
+	}
+	
+	@Override
+	public boolean mergeAllSettings(final Map<String, String> settings) {
+		return SettingStorage.mergeAllSettings(settings, _statements);
+	}
+	
+	@Override
+	public String getSetting(final String name) {
+		return SettingStorage.getSetting(name, _statements);
+	}
+	
+	@Override
+	public Map<String, String> getAllSettings() {
+		return SettingStorage.getAllSettings(_statements);
+	}
+}
@@ -0,0 +1,363 @@
+package backend.database;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import data.Assignment;
+import data.AssignmentBlock;
+import data.IAssignment;
+import data.ITask;
+import data.ITemplate;
+import data.ITimeBlockable;
+import data.UnavailableBlock;
+
+/**
+ * Everything StorageService can store and retrieve. StorageService delegates each of its calls to the backend it was
+ * initialized with, so the rest of Carly does not depend on how (or whether) data is persisted.
+ * 
+ * Stored blocks, Tasks and Assignments carry a version, which objects read from a backend hold on to. Updates are
+ * compare-and-set: one that finds the row at another version throws StaleDataException and writes nothing, so two
+ * callers editing the same row cannot silently overwrite each other. Each committed update moves the version on, both
+ * in the backend and on the object that was written.
+ */
+public interface IStorageBackend {
+	
+	/**
+	 * Called each time application starts up, before any other method
+	 * 
+	 * @param dropTables If true, starts from an empty store; if false, keeps the data from last time
+	 * @return boolean True if first start, false if not first start
+	 * @throws StorageServiceException if there was an error
+	 */
+	public boolean initialize(boolean dropTables) throws StorageServiceException;
+	
+	/**
+	 * Releases the backend's resources when the application is shutting down
+	 */
+	public void cleanup();
+	
+	/**
+	 * Removes all stored data
+	 */
+	public void dropTables();
+	
+	/**
+	 * Makes a backend of the same kind for one tenant's calendar, whose data is kept apart from this backend's and
+	 * every other tenant's. The new backend is not initialized yet.
+	 * 
+	 * @param tenantId Id of the tenant, made only of letters, digits, '-' and '_'
+	 * @return The tenant's backend
+	 */
+	public IStorageBackend newTenantBackend(String tenantId);
+	
+	/**
+	 * @return True if the data outlives the backend, so that a backend closed and made again for the same tenant
+	 *         still has it; false if it is gone once the backend is closed
+	 */
+	public boolean isPersistent();
+	
+	/**
+	 * Adds an Assignment and all of the Assignment's associated Tasks to the database The Assignment's associated
+	 * Template must already be in the database
+	 * 
+	 * @param assignment Assignment to be added to the database
+	 * @return Assignment that was added, for chaining calls
+	 * @throws StorageServiceException Thrown when the Assigment's associated Template is not in the db
+	 */
+	public IAssignment addAssignment(IAssignment assignment) throws StorageServiceException;
+	
+	/**
+	 * Remove an Assignment and all of its associated Tasks from the database
+	 * 
+	 * @param assignment IAssignment to be removed
+	 * @return IAssignment that was removed, for chaining calls
+	 */
+	public IAssignment removeAssignment(IAssignment assignment);
+	
+	/**
+	 * Update Assignment and clear and repopulate its associated Tasks Checks to see if the Template associated with the
+	 * Assignment can still be found in the db
+	 * 
+	 * @param assignment Assignment to be updated
+	 * @return Assignment that was updated, for chaining calls
+	 * @throws StorageServiceException Thrown when the Assignment's associated Template cannot be found in the db
+	 * @throws StaleDataException Thrown when the Assignment, or one of its Tasks, was changed or removed since it was
+	 *             read
+	 */
+	public Assignment updateAssignment(Assignment assignment) throws StorageServiceException;
+	
+	/**
+	 * Get the Assignment identified by the passed-in id value
+	 * 
+	 * @param toBeFoundId Id value of the Assignment to be retrieved
+	 * @return Assignment that was found, or null if the Assignment was not found
+	 */
+	public Assignment getAssignment(String toBeFoundId);
+	
+	/**
+	 * @return Number of getAssignment calls answered from an Assignment cache; 0 for backends without one
+	 */
+	public long getAssignmentCacheHits();
+	
+	/**
+	 * @return Number of getAssignment calls that missed the Assignment cache; 0 for backends without one
+	 */
+	public long getAssignmentCacheMisses();
+	
+	/**
+	 * Retrieves all Assignments
+	 * 
+	 * @return List of all Assignments stored in the db
+	 */
+	public List<IAssignment> getAllAssignments();
+	
+	/**
+	 * Retrieves all Assignments whose dueDate falls into the range specified, inclusive of the bounds
+	 * 
+	 * @param date1 Lower bound of the date range
+	 * @param date2 Upper bound of the date range
+	 * @return List of Assignments whose dueDate falls within the specified date range
+	 */
+	public List<IAssignment> getAllAssignmentsWithinRange(Date date1, Date date2);
+	
+	/**
+	 * Update a task that already exists in the db. The version of the Task's Assignment moves on too.
+	 * 
+	 * @param task Task to be updated
+	 * @return Task that was updated, for chaining calls
+	 * @throws StaleDataException Thrown when the Task was changed or removed since it was read
+	 */
+	public ITask updateTask(ITask task) throws StaleDataException;
+	
+	/**
+	 * Retrieves all the Tasks whose associated Assignment's dueDate falls within the range specified, inclusive of
+	 * bounds.
+	 * 
+	 * @param date1 Lower bound of the date range
+	 * @param date2 Upper bound of the date range
+	 * @return List of Tasks that fall within the date range specified
+	 */
+	public List<ITask> getAllTasksWithinRange(Date date1, Date date2);
+	
+	/**
+	 * Gets all Unavailable Blocks within the specified range
+	 * 
+	 * @param date1 Lower bound for the date range
+	 * @param date2 Upper bound for the date range
+	 * @return List of all the blocks that fall COMPLETELY within these bounds
+	 */
+	public List<UnavailableBlock> getAllUnavailableBlocksWithinRange(Date date1, Date date2);
+	
+	/**
+	 * Gets all Assignment Blocks within the specified range
+	 * 
+	 * @param date1 Lower bound for the date range
+	 * @param date2 Upper bound for the date range
+	 * @return List of all the blocks that fall COMPLETELY within these bounds
+	 */
+	public List<AssignmentBlock> getAllAssignmentBlocksWithinRange(Date date1, Date date2);
+	
+	/**
+	 * Gets an Assignment Block
+	 * 
+	 * @param blockId Id of the Assignment Block in question
+	 * @return AssignmentBlock corresponding to the given id
+	 */
+	public AssignmentBlock getAssignmentBlock(String blockId);
+	
+	/**
+	 * Get an Unavailable Block
+	 * 
+	 * @param blockId Block id of the unavailable block
+	 * @return UnavailableBlock found corresponding to the given id
+	 */
+	public UnavailableBlock getUnavailableBlock(String blockId);
+	
+	/**
+	 * Adds a Time Block
+	 * 
+	 * @param block Block to be stored in the database
+	 * @throws StorageServiceException When the TimeBlock's associated Task is not in the database
+	 */
+	public void addTimeBlock(ITimeBlockable block) throws StorageServiceException;
+	
+	/**
+	 * Adds VALID Available Blocks if they don't already exist in the database Updates any TimeBlocks that already have been
+	 * stored in the database
+	 * 
+	 * All unavailable blocks passed in will be ignored. 
+	 * 
+	 * @param blockList
+	 * @return A list of INVALID TimeBlocks (that is, those whose associated Task cannot be found in the database) that
+	 *         were NOT added/updated
+	 */
+	public List<ITimeBlockable> mergeAllTimeBlocks(List<ITimeBlockable> blockList);
+	
+	/**
+	 * Writes only the blocks a scheduling pass inserted, moved or deleted, and the Tasks it updated, in one transaction
+	 * 
+	 * Unavailable blocks that were inserted or moved are ignored, as in mergeAllTimeBlocks. Inserted blocks are merged,
+	 * and deleted blocks removed, whatever their version.
+	 * 
+	 * @param changes Changes recorded during the scheduling pass
+	 * @return A list of INVALID TimeBlocks (that is, those whose associated Task cannot be found in the database) that
+	 *         were NOT added/updated
+	 * @throws StorageServiceException Thrown when the transaction failed; nothing was written
+	 * @throws StaleDataException Thrown when a moved block or an updated Task was changed since it was read; nothing
+	 *             was written
+	 */
+	public List<ITimeBlockable> applyTimeBlockChanges(TimeBlockChangeSet changes) throws StorageServiceException;
+	
+	/**
+	 * Update TimeBlock with new start date, end date and associated task values
+	 * 
+	 * @param block Updated block
+	 * @return Block that was passed in, for chaining calls
+	 * @throws StorageServiceException Thrown when the TimeBlock's associated Task cannot be found in the database
+	 * @throws StaleDataException Thrown when the block was changed or removed since it was read
+	 */
+	public ITimeBlockable updateTimeBlock(ITimeBlockable block) throws StorageServiceException;
+	
+	/**
+	 * Update the start date, end date and associated task of several TimeBlocks in one transaction, whatever their
+	 * versions, leaving each stored row at its block's version; for writers whose updates are already ordered, like
+	 * TimeBlockWriteBehind
+	 * 
+	 * @param blockList Updated blocks
+	 * @return A list of INVALID TimeBlocks (that is, those whose associated Task cannot be found in the database) that
+	 *         were NOT updated
+	 */
+	public List<ITimeBlockable> updateAllTimeBlocks(List<ITimeBlockable> blockList);
+	
+	/**
+	 * Update the start date, end date and associated task of several TimeBlocks, assignment or unavailable, in one
+	 * transaction: either every block is updated or none is
+	 * 
+	 * @param blockList Updated blocks
+	 * @throws StorageServiceException Thrown when an associated Task cannot be found in the database, or the
+	 *             transaction failed; nothing was updated
+	 * @throws StaleDataException Thrown when a block was changed or removed since it was read; nothing was updated
+	 */
+	public void updateTimeBlocks(List<ITimeBlockable> blockList) throws StorageServiceException;
+	
+	/**
+	 * Remove TimeBlock from the database
+	 * 
+	 * @param block Block to remove from the database
+	 * @return Block that was removed, for chaining calls
+	 */
+	public ITimeBlockable removeTimeBlock(ITimeBlockable block);
+	
+	/**
+	 * Add all default unavailable blocks from the startup survey
+	 * 
+	 * @param blockList List of default unavailable blocks to add
+	 */
+	public void addAllDefaultUnavailableBlocks(List<UnavailableBlock> blockList);
+	
+	/**
+	 * @param startDate
+	 * @param endDate
+	 * @param blockList
+	 */
+	public void replaceUnavailableBlocks(Date startDate, Date endDate,
+			List<? extends ITimeBlockable> blockList);
+	
+	/**
+	 * Get Template corresponding to the provided Id
+	 * 
+	 * @param id Id of the template to be found
+	 * @return Found template
+	 */
+	public ITemplate getTemplate(String id);
+	
+	/**
+	 * Get Template corresponding to the provided name
+	 * 
+	 * @param name Name of the Template to be found
+	 * @return Found template
+	 */
+	public ITemplate getTemplateByName(String name);
+	
+	/**
+	 * Get all templates stored in the database
+	 * 
+	 * @return List containing all templates stored in the database
+	 */
+	public List<ITemplate> getAllTemplates();
+	
+	/**
+	 * Add a template to the database
+	 * 
+	 * @param temp Template to be added
+	 * @return Template that was added, for chaining calls
+	 * @throws StorageServiceException Thrown when the Template has zero TemplateSteps
+	 */
+	public ITemplate addTemplate(ITemplate temp) throws StorageServiceException;
+	
+	/**
+	 * Update a template already existing in the database
+	 * 
+	 * @param temp Template to be updated
+	 * @return Template that was updated, for chaining calls
+	 * @throws StorageServiceException Thrown when the Template has zero TemplateSteps
+	 */
+	public ITemplate updateTemplate(ITemplate temp) throws StorageServiceException;
+	
+	/**
+	 * Remove a template from the database
+	 * 
+	 * @param temp Template to be removed
+	 * @return Template that was removed, for chaining method calls
+	 */
+	public ITemplate removeTemplate(ITemplate temp);
+	
+	/**
+	 * Learn from and set the appropriate TimeOfDay for a TemplateStep corresponding to the Task
+	 * 
+	 * @param task Task corresponding to the TemplateStep we will update
+	 * @param todKey String name of the TimeOfDay enum we will apply the deltaTod to
+	 * @param deltaTod How much we will change the counter by
+	 */
+	public void learnTemplateStepTimeOfDay(ITask task, String todKey, double deltaTod);
+	
+	/**
+	 * Learn from and set the consecutiveHours for the Template corresponding to the Task
+	 * 
+	 * @param task Task corresponding to the Template we will update
+	 * @param consecutiveHours Consecutive hours we will add to the running average
+	 */
+	public void learnTemplateConsecutiveHours(ITask task, double consecutiveHours);
+	
+	/**
+	 * Merge one setting into the database
+	 * 
+	 * @param name String name of the setting to be merged
+	 * @param val String value of the setting to be merged
+	 */
+	public void mergeSetting(String name, String val);
+	
+	/**
+	 * Merge all settings to the database
+	 * 
+	 * @param settings Map of String to String where key is the name of the setting and value is the info of the setting
+	 * @return Boolean indicating if ALL settings were merged successfully
+	 */
+	public boolean mergeAllSettings(Map<String, String> settings);
+	
+	/**
+	 * Get the setting information corresponding to the passed-in setting name
+	 * 
+	 * @param name Setting name to retrieve information for
+	 * @return String value for the setting name passed in
+	 */
+	public String getSetting(String name);
+	
+	/**
+	 * Gets all the settings stored in the database
+	 * 
+	 * @return Mapping of String to String where key is the name of the setting, and value is the info of the setting
+	 */
+	public Map<String, String> getAllSettings();
+}
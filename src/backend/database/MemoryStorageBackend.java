@@ -0,0 +1,945 @@
+package backend.database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import data.Assignment;
+import data.AssignmentBlock;
+import data.IAssignment;
+import data.ITask;
+import data.ITemplate;
+import data.ITemplateStep;
+import data.ITimeBlockable;
+import data.Task;
+import data.Template;
+import data.TemplateStep;
+import data.TimeOfDay;
+import data.UnavailableBlock;
+import frontend.Utils;
+
+/**
+ * Keeps Carly's data in plain Java collections, for simulations and benchmarks that should not touch a database.
+ * Nothing is persisted: the data lives as long as the backend object.
+ *
+ * Behaves like H2StorageBackend: objects handed in are copied when stored and objects handed out are fresh copies, so
+ * callers cannot change stored data without going through the backend, and the same validation errors are raised.
+ * Versions are kept and checked the same way too, so StaleDataException is thrown in the same cases.
+ *
+ * Locking is striped by table: assignments and tasks, templates and blocks each have their own read/write lock, and
+ * settings live in a concurrent map. Operations needing more than one lock take them in that order (assignments,
+ * then templates, then blocks).
+ */
+public class MemoryStorageBackend implements IStorageBackend {
+
+	private final ReentrantReadWriteLock			_assignmentLock;
+	private final ReentrantReadWriteLock			_templateLock;
+	private final ReentrantReadWriteLock			_blockLock;
+
+	// Guarded by _assignmentLock
+	private final Map<String, StoredAssignment>		_assignments;
+	private final Map<String, Task>					_tasks;
+
+	// Guarded by _templateLock
+	private final Map<String, Template>				_templates;
+	private final Map<String, Map<String, Double[]>>	_todCounters;
+	private final Map<String, Integer>				_numConsecutive;
+
+	// Guarded by _blockLock
+	private final TimeBlockIndex					_timeBlocks;
+
+	private final ConcurrentHashMap<String, String>	_settings;
+	private boolean									_initialized;
+
+	public MemoryStorageBackend() {
+		_assignmentLock = new ReentrantReadWriteLock();
+		_templateLock = new ReentrantReadWriteLock();
+		_blockLock = new ReentrantReadWriteLock();
+		_assignments = new HashMap<>();
+		_tasks = new HashMap<>();
+		_templates = new LinkedHashMap<>();
+		_todCounters = new HashMap<>();
+		_numConsecutive = new HashMap<>();
+		_timeBlocks = new TimeBlockIndex();
+		_settings = new ConcurrentHashMap<>();
+		_initialized = false;
+	}
+
+	@Override
+	public synchronized boolean initialize(final boolean dropTables) throws StorageServiceException {
+		final boolean firstStart = !_initialized;
+		_initialized = true;
+		if (dropTables) {
+			dropTables();
+		}
+		return firstStart;
+	}
+
+	@Override
+	public void cleanup() {
+		// Nothing to release
+	}
+
+	@Override
+	public void dropTables() {
+		_assignmentLock.writeLock().lock();
+		_templateLock.writeLock().lock();
+		_blockLock.writeLock().lock();
+		try {
+			_assignments.clear();
+			_tasks.clear();
+			_templates.clear();
+			_todCounters.clear();
+			_numConsecutive.clear();
+			_timeBlocks.clear();
+			_settings.clear();
+		} finally {
+			_blockLock.writeLock().unlock();
+			_templateLock.writeLock().unlock();
+			_assignmentLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Each tenant gets its own empty backend; like this one, its data is gone once it is closed
+	 */
+	@Override
+	public IStorageBackend newTenantBackend(final String tenantId) {
+		return new MemoryStorageBackend();
+	}
+
+	@Override
+	public boolean isPersistent() {
+		return false;
+	}
+
+	/*
+	 * Assignments & Tasks
+	 */
+
+	@Override
+	public IAssignment addAssignment(final IAssignment assignment) throws StorageServiceException {
+		_assignmentLock.writeLock().lock();
+		try {
+			if (!hasTemplate(assignment.getTemplate())) {
+				throw new StorageServiceException("MemoryStorageBackend: addAssignment: "
+					+ "Assignments's associated Template must be in the database.");
+			}
+			if (_assignments.containsKey(assignment.getID())) {
+				Utils.printError("MemoryStorageBackend: addAssignment: Assignment " + assignment.getID()
+					+ " is already stored");
+				return assignment;
+			}
+			assignment.setVersion(0);
+			for (final ITask task : assignment.getTasks()) {
+				task.setVersion(0);
+			}
+			storeAssignment(assignment);
+		} finally {
+			_assignmentLock.writeLock().unlock();
+		}
+		return assignment;
+	}
+
+	@Override
+	public IAssignment removeAssignment(final IAssignment assignment) {
+		_assignmentLock.writeLock().lock();
+		try {
+			final StoredAssignment stored = _assignments.remove(assignment.getID());
+			if (stored != null) {
+				for (final String taskId : stored._taskIds) {
+					_tasks.remove(taskId);
+				}
+			}
+		} finally {
+			_assignmentLock.writeLock().unlock();
+		}
+		return assignment;
+	}
+
+	@Override
+	public Assignment updateAssignment(final Assignment assignment) throws StorageServiceException {
+		_assignmentLock.writeLock().lock();
+		try {
+			if (!hasTemplate(assignment.getTemplate())) {
+				throw new StorageServiceException("MemoryStorageBackend: updateAssignment: "
+					+ "Assignments's associated Template must be in the database.");
+			}
+			final StoredAssignment stored = _assignments.get(assignment.getID());
+			if (stored == null || stored._version != assignment.getVersion()) {
+				throw new StaleDataException("MemoryStorageBackend: updateAssignment: Assignment "
+					+ assignment.getID() + " was changed since it was read");
+			}
+			for (final String taskId : stored._taskIds) {
+				_tasks.remove(taskId);
+			}
+			assignment.setVersion(assignment.getVersion() + 1);
+			for (final ITask task : assignment.getTasks()) {
+				task.setVersion(task.getVersion() + 1);
+			}
+			storeAssignment(assignment);
+		} finally {
+			_assignmentLock.writeLock().unlock();
+		}
+		return assignment;
+	}
+
+	@Override
+	public Assignment getAssignment(final String toBeFoundId) {
+		_assignmentLock.readLock().lock();
+		try {
+			final StoredAssignment stored = _assignments.get(toBeFoundId);
+			return stored == null ? null : buildAssignment(stored);
+		} finally {
+			_assignmentLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public long getAssignmentCacheHits() {
+		return 0;
+	}
+
+	@Override
+	public long getAssignmentCacheMisses() {
+		return 0;
+	}
+
+	@Override
+	public List<IAssignment> getAllAssignments() {
+		_assignmentLock.readLock().lock();
+		try {
+			final List<IAssignment> results = new ArrayList<>();
+			for (final StoredAssignment stored : sortedAssignments()) {
+				results.add(buildAssignment(stored));
+			}
+			return results;
+		} finally {
+			_assignmentLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public List<IAssignment> getAllAssignmentsWithinRange(final Date date1, final Date date2) {
+		final long earlier = Math.min(date1.getTime(), date2.getTime());
+		final long later = Math.max(date1.getTime(), date2.getTime());
+
+		_assignmentLock.readLock().lock();
+		try {
+			final List<IAssignment> results = new ArrayList<>();
+			for (final StoredAssignment stored : sortedAssignments()) {
+				if (stored._dueDate >= earlier && stored._dueDate <= later) {
+					results.add(buildAssignment(stored));
+				}
+			}
+			return results;
+		} finally {
+			_assignmentLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public ITask updateTask(final ITask task) throws StaleDataException {
+		_assignmentLock.writeLock().lock();
+		try {
+			checkVersion(task, "updateTask");
+			storeTask(task);
+		} finally {
+			_assignmentLock.writeLock().unlock();
+		}
+		return task;
+	}
+
+	@Override
+	public List<ITask> getAllTasksWithinRange(final Date date1, final Date date2) {
+		final long earlier = Math.min(date1.getTime(), date2.getTime());
+		final long later = Math.max(date1.getTime(), date2.getTime());
+
+		_assignmentLock.readLock().lock();
+		try {
+			final List<ITask> results = new ArrayList<>();
+			for (final StoredAssignment stored : sortedAssignments()) {
+				if (stored._dueDate >= earlier && stored._dueDate <= later) {
+					for (final String taskId : stored._taskIds) {
+						results.add(copyTask(_tasks.get(taskId)));
+					}
+				}
+			}
+			return results;
+		} finally {
+			_assignmentLock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * TimeBlocks
+	 */
+
+	@Override
+	public List<UnavailableBlock> getAllUnavailableBlocksWithinRange(final Date date1, final Date date2) {
+		_blockLock.readLock().lock();
+		try {
+			return TimeBlockStorage.getAllUnavailableBlocksWithinRange(date1, date2, _timeBlocks);
+		} finally {
+			_blockLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public List<AssignmentBlock> getAllAssignmentBlocksWithinRange(final Date date1, final Date date2) {
+		final long earlier = Math.min(date1.getTime(), date2.getTime());
+		final long later = Math.max(date1.getTime(), date2.getTime());
+
+		_assignmentLock.readLock().lock();
+		_blockLock.readLock().lock();
+		try {
+			final List<AssignmentBlock> results = new ArrayList<>();
+			for (final TimeBlockIndex.Entry entry : _timeBlocks.findOverlapping(TimeBlockIndex.Kind.ASSIGNMENT,
+					earlier, later)) {
+				// Blocks whose Task has been removed are left out
+				final Task task = _tasks.get(entry.getTaskId());
+				if (task != null) {
+					results.add(buildAssignmentBlock(entry, task));
+				}
+			}
+			return results;
+		} finally {
+			_blockLock.readLock().unlock();
+			_assignmentLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public AssignmentBlock getAssignmentBlock(final String blockId) {
+		_assignmentLock.readLock().lock();
+		_blockLock.readLock().lock();
+		try {
+			final TimeBlockIndex.Entry entry = _timeBlocks.get(blockId);
+			if (entry == null || !_tasks.containsKey(entry.getTaskId())) {
+				return null;
+			}
+			return buildAssignmentBlock(entry, _tasks.get(entry.getTaskId()));
+		} finally {
+			_blockLock.readLock().unlock();
+			_assignmentLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public UnavailableBlock getUnavailableBlock(final String blockId) {
+		_blockLock.readLock().lock();
+		try {
+			final TimeBlockIndex.Entry entry = _timeBlocks.get(blockId);
+			if (entry == null) {
+				return null;
+			}
+			final UnavailableBlock block = new UnavailableBlock(entry.getBlockId(), new Date(entry.getStart()),
+					new Date(entry.getEnd()), null, entry.isMovable());
+			block.setVersion(entry.getVersion());
+			return block;
+		} finally {
+			_blockLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void addTimeBlock(final ITimeBlockable block) throws StorageServiceException {
+		_assignmentLock.readLock().lock();
+		_blockLock.writeLock().lock();
+		try {
+			if (!hasTask(block)) {
+				throw new StorageServiceException("MemoryStorageBackend: addTimeBlock: "
+					+ "TimeBlock's associated Task must be in the database.");
+			}
+			if (_timeBlocks.get(block.getId()) != null) {
+				Utils.printError("MemoryStorageBackend: addTimeBlock: TimeBlock " + block.getId()
+					+ " is already stored");
+				return;
+			}
+			_timeBlocks.put(new TimeBlockIndex.Entry(block.getId(), block.getTaskId(), block.getStart().getTime(),
+					block.getEnd().getTime(), block.isMovable(), false));
+			block.setVersion(0);
+		} finally {
+			_blockLock.writeLock().unlock();
+			_assignmentLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public List<ITimeBlockable> mergeAllTimeBlocks(final List<ITimeBlockable> blockList) {
+		final List<ITimeBlockable> blocksNotAdded = new ArrayList<>();
+
+		_assignmentLock.readLock().lock();
+		_blockLock.writeLock().lock();
+		try {
+			for (final ITimeBlockable block : blockList) {
+				// Only assignment blocks are merged
+				if (!block.getTaskId().matches("")) {
+					if (hasTask(block)) {
+						block.setVersion(_timeBlocks.merge(block.getId(), block.getTaskId(), block.getStart().getTime(),
+								block.getEnd().getTime(), block.isMovable()));
+					} else {
+						blocksNotAdded.add(block);
+					}
+				}
+			}
+		} finally {
+			_blockLock.writeLock().unlock();
+			_assignmentLock.readLock().unlock();
+		}
+		return blocksNotAdded;
+	}
+
+	@Override
+	public List<ITimeBlockable> applyTimeBlockChanges(final TimeBlockChangeSet changes) throws StaleDataException {
+		final List<ITimeBlockable> blocksNotAdded = new ArrayList<>();
+		final List<ITimeBlockable> blocksToMove = new ArrayList<>();
+
+		_assignmentLock.writeLock().lock();
+		_blockLock.writeLock().lock();
+		try {
+			// Nothing is written unless every moved block and updated Task is still at the version it was read at
+			for (final ITimeBlockable block : changes.getMoved()) {
+				if (!block.getTaskId().matches("")) {
+					if (hasTask(block)) {
+						checkVersion(block, "applyTimeBlockChanges");
+						blocksToMove.add(block);
+					} else {
+						blocksNotAdded.add(block);
+					}
+				}
+			}
+			for (final ITask task : changes.getUpdatedTasks()) {
+				checkVersion(task, "applyTimeBlockChanges");
+			}
+
+			// Only assignment blocks are written
+			for (final ITimeBlockable block : changes.getInserted()) {
+				if (!block.getTaskId().matches("")) {
+					if (hasTask(block)) {
+						block.setVersion(_timeBlocks.merge(block.getId(), block.getTaskId(), block.getStart().getTime(),
+								block.getEnd().getTime(), block.isMovable()));
+					} else {
+						blocksNotAdded.add(block);
+					}
+				}
+			}
+			for (final ITimeBlockable block : blocksToMove) {
+				updateBlock(block);
+			}
+			for (final ITimeBlockable block : changes.getDeleted()) {
+				_timeBlocks.remove(block.getId());
+			}
+			for (final ITask task : changes.getUpdatedTasks()) {
+				storeTask(task);
+			}
+		} finally {
+			_blockLock.writeLock().unlock();
+			_assignmentLock.writeLock().unlock();
+		}
+		return blocksNotAdded;
+	}
+
+	@Override
+	public ITimeBlockable updateTimeBlock(final ITimeBlockable block) throws StorageServiceException {
+		_assignmentLock.readLock().lock();
+		_blockLock.writeLock().lock();
+		try {
+			if (!hasTask(block)) {
+				throw new StorageServiceException("MemoryStorageBackend: updateTimeBlock: "
+					+ "TimeBlock's associated Task must be in the database.");
+			}
+			checkVersion(block, "updateTimeBlock");
+			updateBlock(block);
+		} finally {
+			_blockLock.writeLock().unlock();
+			_assignmentLock.readLock().unlock();
+		}
+		return block;
+	}
+
+	@Override
+	public List<ITimeBlockable> updateAllTimeBlocks(final List<ITimeBlockable> blockList) {
+		final List<ITimeBlockable> blocksNotUpdated = new ArrayList<>();
+
+		_assignmentLock.readLock().lock();
+		_blockLock.writeLock().lock();
+		try {
+			for (final ITimeBlockable block : blockList) {
+				if (hasTask(block)) {
+					_timeBlocks.update(block.getId(), block.getTaskId(), block.getStart().getTime(), block.getEnd()
+							.getTime(), block.getVersion());
+				} else {
+					blocksNotUpdated.add(block);
+				}
+			}
+		} finally {
+			_blockLock.writeLock().unlock();
+			_assignmentLock.readLock().unlock();
+		}
+		return blocksNotUpdated;
+	}
+
+	@Override
+	public void updateTimeBlocks(final List<ITimeBlockable> blockList) throws StorageServiceException {
+		_assignmentLock.readLock().lock();
+		_blockLock.writeLock().lock();
+		try {
+			for (final ITimeBlockable block : blockList) {
+				if (!hasTask(block)) {
+					throw new StorageServiceException("MemoryStorageBackend: updateTimeBlocks: "
+						+ "TimeBlock's associated Task must be in the database.");
+				}
+				checkVersion(block, "updateTimeBlocks");
+			}
+			for (final ITimeBlockable block : blockList) {
+				updateBlock(block);
+			}
+		} finally {
+			_blockLock.writeLock().unlock();
+			_assignmentLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public ITimeBlockable removeTimeBlock(final ITimeBlockable block) {
+		_blockLock.writeLock().lock();
+		try {
+			_timeBlocks.remove(block.getId());
+		} finally {
+			_blockLock.writeLock().unlock();
+		}
+		return block;
+	}
+
+	@Override
+	public void addAllDefaultUnavailableBlocks(final List<UnavailableBlock> blockList) {
+		_blockLock.writeLock().lock();
+		try {
+			for (final ITimeBlockable block : blockList) {
+				_timeBlocks.put(new TimeBlockIndex.Entry(block.getId(), block.getTaskId(), block.getStart().getTime(),
+						block.getEnd().getTime(), block.isMovable(), true));
+			}
+		} finally {
+			_blockLock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void replaceUnavailableBlocks(final Date startDate, final Date endDate,
+			final List<? extends ITimeBlockable> blockList) {
+		final long earlier = Math.min(startDate.getTime(), endDate.getTime());
+		final long later = Math.max(startDate.getTime(), endDate.getTime());
+
+		_blockLock.writeLock().lock();
+		try {
+			_timeBlocks.removeOverlapping(TimeBlockIndex.Kind.CUSTOM_UNAVAILABLE, earlier, later);
+			for (final ITimeBlockable block : blockList) {
+				_timeBlocks.put(new TimeBlockIndex.Entry(block.getId(), block.getTaskId(), block.getStart().getTime(),
+						block.getEnd().getTime(), block.isMovable(), false));
+			}
+		} finally {
+			_blockLock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * Templates
+	 */
+
+	@Override
+	public ITemplate getTemplate(final String id) {
+		_templateLock.readLock().lock();
+		try {
+			final Template template = _templates.get(id);
+			return template == null ? null : copyTemplate(template, template.getPreferredConsecutiveHours());
+		} finally {
+			_templateLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public ITemplate getTemplateByName(final String name) {
+		_templateLock.readLock().lock();
+		try {
+			for (final Template template : _templates.values()) {
+				if (template.getName().equals(name)) {
+					return copyTemplate(template, template.getPreferredConsecutiveHours());
+				}
+			}
+			return null;
+		} finally {
+			_templateLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public List<ITemplate> getAllTemplates() {
+		_templateLock.readLock().lock();
+		try {
+			final List<ITemplate> results = new ArrayList<>();
+			for (final Template template : _templates.values()) {
+				results.add(copyTemplate(template, template.getPreferredConsecutiveHours()));
+			}
+			return results;
+		} finally {
+			_templateLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public ITemplate addTemplate(final ITemplate temp) throws StorageServiceException {
+		if (temp.getAllSteps().size() == 0) {
+			throw new StorageServiceException("MemoryStorageBackend: addTemplate: "
+				+ "Template must have at least one Template Step");
+		}
+
+		_templateLock.writeLock().lock();
+		try {
+			if (_templates.containsKey(temp.getID())) {
+				Utils.printError("MemoryStorageBackend: addTemplate: Template " + temp.getID() + " is already stored");
+				return temp;
+			}
+			storeTemplate(temp, new HashMap<String, Double[]>());
+			_numConsecutive.put(temp.getID(), 1);
+		} finally {
+			_templateLock.writeLock().unlock();
+		}
+		return temp;
+	}
+
+	@Override
+	public ITemplate updateTemplate(final ITemplate temp) throws StorageServiceException {
+		if (temp.getAllSteps().size() == 0) {
+			throw new StorageServiceException("MemoryStorageBackend: updateTemplate: "
+				+ "Template must have at least one Template Step");
+		}
+
+		_templateLock.writeLock().lock();
+		try {
+			// Steps keep what was learned about them, matched by name
+			final Map<String, Double[]> counters = _todCounters.get(temp.getID());
+			if (counters != null) {
+				storeTemplate(temp, counters);
+			}
+		} finally {
+			_templateLock.writeLock().unlock();
+		}
+		return temp;
+	}
+
+	@Override
+	public ITemplate removeTemplate(final ITemplate temp) {
+		_templateLock.writeLock().lock();
+		try {
+			_templates.remove(temp.getID());
+			_todCounters.remove(temp.getID());
+			_numConsecutive.remove(temp.getID());
+		} finally {
+			_templateLock.writeLock().unlock();
+		}
+		return temp;
+	}
+
+	@Override
+	public void learnTemplateStepTimeOfDay(final ITask task, final String todKey, final double deltaTod) {
+		// Can't learn when the todKey is a valid time of day
+		if (todKey.equals("")) {
+			return;
+		}
+
+		_assignmentLock.readLock().lock();
+		_templateLock.writeLock().lock();
+		try {
+			final Template template = findTemplate(task);
+			if (template == null) {
+				return;
+			}
+
+			for (final ITemplateStep step : template.getAllSteps()) {
+				if (step.getStepNumber() == task.getTaskNumber()) {
+					final Double[] todCounters = _todCounters.get(template.getID()).get(step.getName());
+					String highestTodKey = step.getBestTimeToWork().name();
+
+					// Modify tod with learnings
+					final int countersIndex = TemplateStepStorage.todKeyToIndex(todKey);
+					if (countersIndex != -1) {
+						todCounters[countersIndex] += deltaTod;
+						highestTodKey = TemplateStepStorage.maxTodKey(todCounters);
+					} else {
+						Utils.printError("MemoryStorageBackend: learnTemplateStepTimeOfDay: "
+							+ "Could not resolve passed in todKey: " + todKey);
+					}
+
+					// TemplateSteps cannot change their time of day, so the step is replaced
+					final List<ITemplateStep> steps = new ArrayList<>();
+					for (final ITemplateStep s : template.getAllSteps()) {
+						steps.add(s == step ? new TemplateStep(s.getName(), s.getPercentOfTotal(), s.getStepNumber(),
+								TimeOfDay.valueOf(highestTodKey)) : s);
+					}
+					_templates.put(template.getID(), new Template(template.getID(), template.getName(), steps,
+							template.getPreferredConsecutiveHours()));
+					return;
+				}
+			}
+		} finally {
+			_templateLock.writeLock().unlock();
+			_assignmentLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void learnTemplateConsecutiveHours(final ITask task, final double consecutiveHours) {
+		_assignmentLock.readLock().lock();
+		_templateLock.writeLock().lock();
+		try {
+			final Template template = findTemplate(task);
+			if (template == null) {
+				return;
+			}
+
+			final int numConsecutive = _numConsecutive.get(template.getID());
+			final double templateConsecutiveHours = (template.getPreferredConsecutiveHours() * numConsecutive + consecutiveHours)
+				/ (numConsecutive + 1);
+			_numConsecutive.put(template.getID(), numConsecutive + 1);
+			_templates.put(template.getID(), copyTemplate(template, templateConsecutiveHours));
+		} finally {
+			_templateLock.writeLock().unlock();
+			_assignmentLock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * Settings
+	 */
+
+	@Override
+	public void mergeSetting(final String name, final String val) {
+		_settings.put(name, val);
+	}
+
+	@Override
+	public boolean mergeAllSettings(final Map<String, String> settings) {
+		_settings.putAll(settings);
+		return true;
+	}
+
+	@Override
+	public String getSetting(final String name) {
+		final String value = _settings.get(name);
+		return value == null ? "" : value;
+	}
+
+	@Override
+	public Map<String, String> getAllSettings() {
+		return new HashMap<>(_settings);
+	}
+
+	/*
+	 * Helper methods
+	 */
+
+	/**
+	 * Caller must hold the assignment write lock
+	 */
+	private void storeAssignment(final IAssignment assignment) {
+		final List<String> taskIds = new ArrayList<>();
+		for (final ITask task : assignment.getTasks()) {
+			_tasks.put(task.getTaskID(), copyTask(task, assignment.getID()));
+			taskIds.add(task.getTaskID());
+		}
+		_assignments.put(assignment.getID(), new StoredAssignment(assignment, taskIds));
+	}
+
+	/**
+	 * Caller must hold the assignment write lock and have checked the Task's version. The Task's number and Assignment
+	 * are not updatable; its version and its Assignment's version move on.
+	 */
+	private void storeTask(final ITask task) {
+		final Task stored = _tasks.get(task.getTaskID());
+		task.setVersion(task.getVersion() + 1);
+		final Task updated = new Task(stored.getTaskID(), task.getName(), stored.getTaskNumber(),
+				task.getPercentOfTotal(), stored.getAssignmentID(), task.getPercentComplete(),
+				task.getPreferredTimeOfDay(), task.getSuggestedBlockLength());
+		updated.setVersion(task.getVersion());
+		_tasks.put(stored.getTaskID(), updated);
+
+		final StoredAssignment assignment = _assignments.get(stored.getAssignmentID());
+		if (assignment != null) {
+			assignment._version++;
+		}
+	}
+
+	/**
+	 * Caller must hold the block write lock and have checked the block's version
+	 */
+	private void updateBlock(final ITimeBlockable block) {
+		_timeBlocks.update(block.getId(), block.getTaskId(), block.getStart().getTime(), block.getEnd().getTime());
+		block.setVersion(block.getVersion() + 1);
+	}
+
+	/**
+	 * Caller must hold the assignment lock
+	 *
+	 * @throws StaleDataException if the Task is gone or at another version
+	 */
+	private void checkVersion(final ITask task, final String method) throws StaleDataException {
+		final Task stored = _tasks.get(task.getTaskID());
+		if (stored == null || stored.getVersion() != task.getVersion()) {
+			throw new StaleDataException("MemoryStorageBackend: " + method + ": Task " + task.getTaskID()
+				+ " was changed since it was read");
+		}
+	}
+
+	/**
+	 * Caller must hold the block lock
+	 *
+	 * @throws StaleDataException if the block is gone or at another version
+	 */
+	private void checkVersion(final ITimeBlockable block, final String method) throws StaleDataException {
+		final TimeBlockIndex.Entry entry = _timeBlocks.get(block.getId());
+		if (entry == null || entry.getVersion() != block.getVersion()) {
+			throw new StaleDataException("MemoryStorageBackend: " + method + ": TimeBlock " + block.getId()
+				+ " was changed since it was read");
+		}
+	}
+
+	/**
+	 * Caller must hold the assignment lock and the block lock
+	 */
+	private static AssignmentBlock buildAssignmentBlock(final TimeBlockIndex.Entry entry, final Task task) {
+		final AssignmentBlock block = new AssignmentBlock(entry.getBlockId(), new Date(entry.getStart()), new Date(
+				entry.getEnd()), copyTask(task), entry.isMovable());
+		block.setVersion(entry.getVersion());
+		return block;
+	}
+
+	/**
+	 * Caller must hold the assignment lock
+	 */
+	private Assignment buildAssignment(final StoredAssignment stored) {
+		final List<ITask> tasks = new ArrayList<>();
+		for (final String taskId : stored._taskIds) {
+			tasks.add(copyTask(_tasks.get(taskId)));
+		}
+		final Assignment result = new Assignment(stored._id, stored._name, new Date(stored._dueDate),
+				stored._expectedHours, tasks);
+		result.setVersion(stored._version);
+
+		final ITemplate template = getTemplate(stored._templateId);
+		if (template != null) {
+			result.setTemplate(template);
+		}
+		AssignmentTaskStorage.sortTasks(result);
+		return result;
+	}
+
+	/**
+	 * Caller must hold the assignment lock
+	 */
+	private List<StoredAssignment> sortedAssignments() {
+		final List<StoredAssignment> sorted = new ArrayList<>(_assignments.values());
+		Collections.sort(sorted, new Comparator<StoredAssignment>() {
+
+			@Override
+			public int compare(final StoredAssignment a1, final StoredAssignment a2) {
+				return Long.compare(a1._dueDate, a2._dueDate);
+			}
+		});
+		return sorted;
+	}
+
+	/**
+	 * Caller must hold the assignment lock
+	 *
+	 * @return Whether the block is an unavailable block, or an assignment block whose Task is stored
+	 */
+	private boolean hasTask(final ITimeBlockable block) {
+		return block.getTaskId().matches("") || _tasks.containsKey(block.getTaskId());
+	}
+
+	private boolean hasTemplate(final ITemplate template) {
+		_templateLock.readLock().lock();
+		try {
+			return template != null && _templates.containsKey(template.getID());
+		} finally {
+			_templateLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Caller must hold the assignment lock and the template lock
+	 *
+	 * @return Stored Template of the Task's Assignment, or null
+	 */
+	private Template findTemplate(final ITask task) {
+		final StoredAssignment stored = _assignments.get(task.getAssignmentID());
+		return stored == null ? null : _templates.get(stored._templateId);
+	}
+
+	/**
+	 * Caller must hold the template write lock
+	 */
+	private void storeTemplate(final ITemplate temp, final Map<String, Double[]> previousCounters) {
+		final Map<String, Double[]> counters = new HashMap<>();
+		for (final ITemplateStep step : temp.getAllSteps()) {
+			final Double[] previous = previousCounters.get(step.getName());
+			counters.put(step.getName(), previous != null ? previous : new Double[] { 0.0, 0.0, 0.0, 0.0 });
+		}
+		_todCounters.put(temp.getID(), counters);
+		_templates.put(temp.getID(), copyTemplate(temp, temp.getPreferredConsecutiveHours()));
+	}
+
+	private static Template copyTemplate(final ITemplate template, final double consecutiveHours) {
+		final List<ITemplateStep> steps = new ArrayList<>();
+		for (final ITemplateStep step : template.getAllSteps()) {
+			steps.add(new TemplateStep(step.getName(), step.getPercentOfTotal(), step.getStepNumber(), step
+					.getBestTimeToWork()));
+		}
+		final Template copy = new Template(template.getID(), template.getName(), steps, consecutiveHours);
+		TemplateStepStorage.sortSteps(copy);
+		return copy;
+	}
+
+	private static Task copyTask(final ITask task) {
+		return copyTask(task, task.getAssignmentID());
+	}
+
+	private static Task copyTask(final ITask task, final String assignmentId) {
+		final Task copy = new Task(task.getTaskID(), task.getName(), task.getTaskNumber(), task.getPercentOfTotal(),
+				assignmentId, task.getPercentComplete(), task.getPreferredTimeOfDay(), task.getSuggestedBlockLength());
+		copy.setVersion(task.getVersion());
+		return copy;
+	}
+
+	/**
+	 * The stored fields of an Assignment; its Tasks are kept separately, by id
+	 */
+	private static class StoredAssignment {
+
+		private final String		_id;
+		private final String		_name;
+		private final long			_dueDate;
+		private final double		_expectedHours;
+		private final String		_templateId;
+		private final List<String>	_taskIds;
+		private long				_version;
+
+		private StoredAssignment(final IAssignment assignment, final List<String> taskIds) {
+			_version = assignment.getVersion();
+			_id = assignment.getID();
+			_name = assignment.getName();
+			_dueDate = assignment.getDueDate().getTime();
+			_expectedHours = assignment.getExpectedHours();
+			_templateId = assignment.getTemplate().getID();
+			_taskIds = taskIds;
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package backend.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Brings the database schema up to date, one numbered migration at a time.
+ *
+ * The version a database is at is stored in the SCHEMA_VERSION table. Databases created before versioning existed
+ * have no SCHEMA_VERSION table; if all of their base tables are present they are treated as version 1, otherwise as
+ * an empty (version 0) database.
+ *
+ * Every migration statement is idempotent (IF NOT EXISTS), since H2 commits DDL implicitly and a migration that is
+ * interrupted part way through has to be safe to re-run on the next start.
+ */
+public class SchemaMigrator {
+
+	/**
+	 * Version the schema is at once every migration has been applied
+	 */
+	protected static final int		CURRENT_VERSION	= 3;
+
+	private static final String[]	BASE_TABLES		= { "ASSIGNMENT", "TASK", "TEMPLATE", "TEMPLATE_STEP",
+			"TIME_BLOCK", "SETTING"				};
+
+	/**
+	 * Determine which schema version the database is currently at
+	 *
+	 * @param con Connection to the database
+	 * @return Current schema version; 0 if the database has not been created yet
+	 * @throws SQLException When the schema could not be inspected
+	 */
+	protected static int getVersion(final Connection con) throws SQLException {
+		if (tableExists(con, "SCHEMA_VERSION")) {
+			try (PreparedStatement statement = con.prepareStatement(Utilities.SELECT_SCHEMA_VERSION)) {
+				final ResultSet rs = statement.executeQuery();
+				if (rs.next()) {
+					return rs.getInt("SCHEMA_VERSION");
+				}
+			}
+		}
+
+		// Pre-versioning database: only a complete set of tables counts as version 1
+		for (final String table : BASE_TABLES) {
+			if (!tableExists(con, table)) {
+				return 0;
+			}
+		}
+		return 1;
+	}
+
+	/**
+	 * Apply every migration after fromVersion, recording each version as it completes
+	 *
+	 * @param con Connection to the database
+	 * @param fromVersion Version the database is currently at
+	 * @throws SQLException When a migration could not be applied
+	 */
+	protected static void migrate(final Connection con, final int fromVersion) throws SQLException {
+		try (Statement stmt = con.createStatement()) {
+			stmt.execute(Utilities.CREATE_SCHEMA_VERSION);
+		}
+
+		for (int version = fromVersion + 1; version <= CURRENT_VERSION; version++) {
+			try (Statement stmt = con.createStatement()) {
+				for (final String query : getMigration(version)) {
+					stmt.addBatch(query);
+				}
+				stmt.executeBatch();
+			}
+
+			try (PreparedStatement statement = con.prepareStatement(Utilities.MERGE_SCHEMA_VERSION)) {
+				Utilities.setValues(statement, 1, version);
+				statement.execute();
+			}
+		}
+	}
+
+	/**
+	 * Statements making up one migration
+	 *
+	 * @param version Version the migration brings the database to
+	 * @return List of statements to execute, in order
+	 */
+	private static List<String> getMigration(final int version) {
+		final ArrayList<String> queries = new ArrayList<>();
+		switch (version) {
+			case 1:
+				// Base tables
+				AssignmentTaskStorage.buildTable(queries);
+				TemplateStepStorage.buildTable(queries);
+				TimeBlockStorage.buildTable(queries);
+				SettingStorage.buildTable(queries);
+				break;
+			case 2:
+				// Indexes for the columns every hot query filters or joins on
+				queries.add(Utilities.CREATE_TIME_BLOCK_RANGE_INDEX);
+				queries.add(Utilities.CREATE_TASK_ASGN_INDEX);
+				queries.add(Utilities.CREATE_TEMPLATE_STEP_NUMBER_INDEX);
+				break;
+			case 3:
+				// Row versions for optimistic concurrency control; existing rows start at 0
+				queries.add(Utilities.ADD_TIME_BLOCK_VERSION);
+				queries.add(Utilities.ADD_TASK_VERSION);
+				queries.add(Utilities.ADD_ASGN_VERSION);
+				break;
+			default:
+				throw new IllegalArgumentException("SchemaMigrator: no migration to version " + version);
+		}
+		return queries;
+	}
+
+	private static boolean tableExists(final Connection con, final String table) throws SQLException {
+		try (PreparedStatement statement = con.prepareStatement(Utilities.SELECT_TABLE_BY_NAME)) {
+			Utilities.setValues(statement, table);
+			return statement.executeQuery().next();
+		}
+	}
+}
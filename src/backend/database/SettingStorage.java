@@ -10,8 +10,6 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 
-import org.h2.jdbcx.JdbcConnectionPool;
-
 public class SettingStorage {
 	
 	/**
@@ -32,13 +30,12 @@ public class SettingStorage {
 	 * 
 	 * @param name String name of the setting to be merged
 	 * @param val String value of the setting to be merged
-	 * @param pool JdbcConnectionPool for retrieving connection to the database
+	 * @param pool StatementPool for retrieving connection to the database
 	 */
-	protected static void mergeSetting(String name, String val, JdbcConnectionPool pool) {		
+	protected static void mergeSetting(String name, String val, StatementPool pool) {		
 		PreparedStatement settingStatement = null;
 	    Connection con = null; 
 	    try {
-	    	Class.forName("org.h2.Driver");
 	    	con = pool.getConnection();
 	        con.setAutoCommit(false);
 	        settingStatement = con.prepareStatement(Utilities.MERGE_SETTING); 
@@ -48,9 +45,6 @@ public class SettingStorage {
             //commit to the database
             con.commit();
 	    } 
-	    catch (ClassNotFoundException e) {
-			Utilities.printException("SettingStorage: addSetting: db drive class not found", e);
-		} 
 	    catch (SQLException e) {
 	        Utilities.printSQLException("SettingStorage: addSetting: " +
 	        		"attempting to roll back transaction", e);
@@ -84,16 +78,15 @@ public class SettingStorage {
 	 * Merge all settings to the database 
 	 * 
 	 * @param settings Map of String to String where key is the name of the setting and value is the info of the setting
-	 * @param pool JdbcConnectionPool for retrieving connection to the database
+	 * @param pool StatementPool for retrieving connection to the database
 	 * @return Boolean indicating if ALL settings were merged successfully
 	 */
-	protected static boolean mergeAllSettings(Map<String,String> settings, JdbcConnectionPool pool) {
+	protected static boolean mergeAllSettings(Map<String,String> settings, StatementPool pool) {
 		PreparedStatement settingStatement = null;
 	    Connection con = null; 
 	    boolean allSuccess = true; 
 	    
 	    try {
-	    	Class.forName("org.h2.Driver");
 	    	con = pool.getConnection();
 	        con.setAutoCommit(false);
 	        
@@ -113,9 +106,6 @@ public class SettingStorage {
             //commit to the database
             con.commit();
 	    } 
-	    catch (ClassNotFoundException e) {
-			Utilities.printException("SettingStorage: addAllSettings: db drive class not found", e);
-		} 
 	    catch (SQLException e) {
 	        Utilities.printSQLException("SettingStorage: addAllSettings: " +
 	        		"attempting to roll back transaction", e);
@@ -151,16 +141,15 @@ public class SettingStorage {
 	 * Get the setting information corresponding to the passed-in setting name
 	 * 
 	 * @param name Setting name to retrieve information for
-	 * @param pool JdbcConnectionPool for retrieving connection to the database
+	 * @param pool StatementPool for retrieving connection to the database
 	 * @return String value for the setting name passed in 
 	 */
-	protected static String getSetting(String name, JdbcConnectionPool pool) {
+	protected static String getSetting(String name, StatementPool pool) {
 		PreparedStatement statement = null; 
 	    Connection con = null; 
 	    String value = ""; 
 	    	    
 	    try {
-	    	Class.forName("org.h2.Driver");
 	    	con = pool.getConnection();
 			
 	        statement = con.prepareStatement(Utilities.SELECT_SETTING_BY_NAME); 
@@ -172,10 +161,6 @@ public class SettingStorage {
         	
         	value = settingResults.getString("SETTING_VALUE");
 	    } 
-	    catch (ClassNotFoundException e) {
-			Utilities.printException("SettingStorage: getSetting: " +
-					"db drive class not found", e);
-		} 
 	    catch (SQLException e) {
 	        Utilities.printSQLException("SettingStorage: getSetting: " +
 	        		"could not retrieve value based on the setting name \"" + name + "\"", e);
@@ -201,16 +186,15 @@ public class SettingStorage {
 	/**
 	 * Gets all the settings stored in the database
 	 * 
-	 * @param pool JdbcConnectionPool for retrieving connection to the database
+	 * @param pool StatementPool for retrieving connection to the database
 	 * @return Mapping of String to String where key is the name of the setting, and value is the info of the setting
 	 */
-	protected static Map<String, String> getAllSettings(JdbcConnectionPool pool) {
+	protected static Map<String, String> getAllSettings(StatementPool pool) {
 		PreparedStatement statement = null; 
 	    Connection con = null; 
 	    HashMap<String, String> result = new HashMap<>(); 
 	    	    
 	    try {
-	    	Class.forName("org.h2.Driver");
 	    	con = pool.getConnection();
 			
 	        statement = con.prepareStatement(Utilities.SELECT_ALL_SETTINGS); 
@@ -223,10 +207,6 @@ public class SettingStorage {
         		result.put(name, value); 
         	}
 	    } 
-	    catch (ClassNotFoundException e) {
-			Utilities.printException("SettingStorage: getAllSettings: " +
-					"db drive class not found", e);
-		} 
 	    catch (SQLException e) {
 	        Utilities.printSQLException("SettingStorage: getAllSettings: " +
 	        		"could not retrieve all the settings", e);
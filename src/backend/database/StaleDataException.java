@@ -0,0 +1,13 @@
+package backend.database;
+
+/**
+ * Thrown when an update was refused because the stored row changed since the object being written was read. Nothing
+ * from the refused transaction is written; read the object again and redo the change.
+ */
+public class StaleDataException extends StorageServiceException {
+	private static final long serialVersionUID = -2986351826395519772L;
+
+	public StaleDataException(final String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,217 @@
+package backend.database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+
+/**
+ * Hands out database connections that keep their prepared statements between uses.
+ *
+ * A connection returned by getConnection() is a handle onto a connection kept open by this pool. Calling
+ * prepareStatement(sql) on it returns the statement already prepared for that SQL string on the same connection (the
+ * SQL strings are the constants in Utilities, so there is one statement per constant), with its parameters and batch
+ * cleared. Closing the statement leaves it prepared; closing the handle hands the connection back to the pool instead
+ * of closing it. Storage methods can therefore keep borrowing a connection per call and closing what they prepared,
+ * without the SQL being parsed and planned again every time.
+ *
+ * A handle must only be used by one thread at a time, and must not be used after it is closed.
+ */
+public class StatementPool {
+
+	/**
+	 * Most connections kept open while idle; connections beyond this are closed when handed back
+	 */
+	private static final int				MAX_IDLE	= 4;
+
+	private final JdbcConnectionPool		_pool;
+	private final ArrayDeque<PooledConnection>	_idle;
+	private boolean							_disposed;
+
+	/**
+	 * @param pool Pool the underlying connections are borrowed from
+	 */
+	public StatementPool(final JdbcConnectionPool pool) {
+		_pool = pool;
+		_idle = new ArrayDeque<>();
+		_disposed = false;
+	}
+
+	/**
+	 * Borrow a connection. Close it when done to hand it back.
+	 *
+	 * @return Connection whose prepared statements are cached
+	 * @throws SQLException When no connection could be opened
+	 */
+	public Connection getConnection() throws SQLException {
+		PooledConnection pooled;
+		synchronized (this) {
+			pooled = _idle.pollFirst();
+		}
+		if (pooled == null) {
+			pooled = new PooledConnection(_pool.getConnection());
+		}
+		return pooled.open();
+	}
+
+	/**
+	 * Close every idle connection and every connection handed back from now on
+	 */
+	public void dispose() {
+		synchronized (this) {
+			_disposed = true;
+		}
+		PooledConnection pooled;
+		while ((pooled = poll()) != null) {
+			pooled.closeAll();
+		}
+	}
+
+	private synchronized PooledConnection poll() {
+		return _idle.pollFirst();
+	}
+
+	private void release(final PooledConnection pooled) {
+		synchronized (this) {
+			if (!_disposed && _idle.size() < MAX_IDLE) {
+				_idle.addFirst(pooled);
+				return;
+			}
+		}
+		pooled.closeAll();
+	}
+
+	/**
+	 * A connection borrowed from the underlying pool, and the statements prepared on it
+	 */
+	private class PooledConnection {
+
+		private final Connection						_con;
+		private final Map<String, CachedStatement>		_statements;
+
+		private PooledConnection(final Connection con) {
+			_con = con;
+			_statements = new HashMap<>();
+		}
+
+		private Connection open() {
+			return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, new Handle(this));
+		}
+
+		private PreparedStatement prepare(final String sql) throws SQLException {
+			CachedStatement cached = _statements.get(sql);
+			if (cached == null || cached._statement.isClosed()) {
+				cached = new CachedStatement(_con.prepareStatement(sql));
+				_statements.put(sql, cached);
+			} else {
+				cached._statement.clearParameters();
+				cached._statement.clearBatch();
+			}
+			return cached._proxy;
+		}
+
+		/**
+		 * Undo whatever the last borrower left behind, then hand the connection back
+		 */
+		private void reset() {
+			try {
+				if (!_con.getAutoCommit()) {
+					_con.rollback();
+					_con.setAutoCommit(true);
+				}
+				release(this);
+			} catch (final SQLException e) {
+				Utilities.printSQLException("StatementPool: could not reset connection", e);
+				closeAll();
+			}
+		}
+
+		private void closeAll() {
+			try {
+				for (final CachedStatement cached : _statements.values()) {
+					cached._statement.close();
+				}
+				_statements.clear();
+				_con.close();
+			} catch (final SQLException e) {
+				Utilities.printSQLException("StatementPool: could not close connection", e);
+			}
+		}
+	}
+
+	/**
+	 * Connection handed out to one borrower: caches prepareStatement(sql) and hands the connection back on close
+	 */
+	private static class Handle implements InvocationHandler {
+
+		private final PooledConnection	_pooled;
+		private boolean					_closed;
+
+		private Handle(final PooledConnection pooled) {
+			_pooled = pooled;
+			_closed = false;
+		}
+
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+			final String name = method.getName();
+			if (name.equals("close")) {
+				if (!_closed) {
+					_closed = true;
+					_pooled.reset();
+				}
+				return null;
+			}
+			if (name.equals("isClosed")) {
+				return _closed;
+			}
+			if (_closed) {
+				throw new SQLException("StatementPool: connection used after it was closed");
+			}
+			if (name.equals("prepareStatement") && args.length == 1) {
+				return _pooled.prepare((String) args[0]);
+			}
+			return forward(_pooled._con, method, args);
+		}
+	}
+
+	/**
+	 * A prepared statement and the handle given out for it, whose close() leaves the statement prepared
+	 */
+	private static class CachedStatement implements InvocationHandler {
+
+		private final PreparedStatement	_statement;
+		private final PreparedStatement	_proxy;
+
+		private CachedStatement(final PreparedStatement statement) {
+			_statement = statement;
+			_proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+					new Class<?>[] { PreparedStatement.class }, this);
+		}
+
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+			if (method.getName().equals("close")) {
+				return null;
+			}
+			return forward(_statement, method, args);
+		}
+	}
+
+	private static Object forward(final Object target, final Method method, final Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (final InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+}
@@ -5,17 +5,11 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
-import java.sql.Connection;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.sql.Statement;
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-
-import org.h2.jdbcx.JdbcConnectionPool;
+import java.util.concurrent.TimeUnit;
 
 import data.Assignment;
 import data.AssignmentBlock;
@@ -34,18 +28,32 @@ import data.UnavailableBlock;
  */
 public class StorageService {
 	
-	private static Cache<ITemplate>		_templates;
-	private static JdbcConnectionPool	_pool;
+	/**
+	 * Number of queued TimeBlock updates that makes the write-behind queue flush before its interval is up
+	 */
+	private static final int				WRITE_BEHIND_THRESHOLD	= 64;
+	
+	/**
+	 * Most tenants' calendars kept open once nobody is using them, unless MAX_OPEN_TENANTS is set
+	 */
+	public static final int					DEFAULT_MAX_OPEN_TENANTS	= 64;
+	
+	private static volatile Tenant			_default;
+	private static volatile TenantRegistry	_tenants;
+	private static final ThreadLocal<Tenant>	_current				= new ThreadLocal<>();
+	private static boolean					_flushOnExit;
 	
 	/**
-	 * Called each time application starts up
+	 * Called each time application starts up. Uses the backend named by STORAGE_BACKEND in config/db.properties: "h2"
+	 * (the default) or "memory". If TIME_BLOCK_WRITE_BEHIND_MS is set to more than 0, TimeBlock updates are queued and
+	 * written at most that many milliseconds later (see enableTimeBlockWriteBehind). MAX_OPEN_TENANTS bounds how many
+	 * tenants' calendars are kept open (see enterTenant).
 	 * 
 	 * @param dropTables If true, recreates new blank tables; if false, persists data from last time
 	 * @return boolean True if first start, false if not first start
 	 * @throws StorageServiceException if there was an error
 	 */
 	public static boolean initialize(final boolean dropTables) throws StorageServiceException {
-		_templates = new Cache<>();
 		final Properties props = new Properties();
 		try {
 			props.loadFromXML(new FileInputStream(new File("config/db.properties")));
@@ -53,99 +61,225 @@ public class StorageService {
 			throw new StorageServiceException("StorageService: initialize: could not load database properties"
 				+ x.getMessage());
 		}
-		_pool = JdbcConnectionPool.create(props.getProperty("DB_URL"), props.getProperty("DB_USER"),
-				props.getProperty("DB_PWD"));
 		
-		boolean firstStart = false;
-		// Create tables in the database
-		try (Connection con = _pool.getConnection()) {
-			Class.forName("org.h2.Driver");
-			
-			int tableNum = 0;
-			final String startupQuery = "SHOW TABLES";
-			try (Statement stmt = con.createStatement()) {
-				final ResultSet rs = stmt.executeQuery(startupQuery);
-				while (rs.next()) {
-					tableNum++;
-				}
-			}
-			
-			if (tableNum < 6) {
-				firstStart = true;
-			}
-			
-			if (dropTables) {
-				try (Statement stmt = con.createStatement()) {
-					stmt.execute(Utilities.DROP_ALL_TABLES);
-				}
-			}
-			
-			final ArrayList<String> queries = new ArrayList<>();
-			AssignmentTaskStorage.buildTable(queries);
-			TemplateStepStorage.buildTable(queries);
-			TimeBlockStorage.buildTable(queries);
-			SettingStorage.buildTable(queries);
-			
-			try (Statement stmt = con.createStatement()) {
-				for (final String query : queries) {
-					stmt.addBatch(query);
-				}
-				stmt.executeBatch();
-			}
-		} catch (final ClassNotFoundException e) {
-			throw new StorageServiceException("StorageService: initialize: db drive class not found: " + e.getMessage());
-		} catch (final SQLException e) {
-			throw new StorageServiceException("StorageService: initialize: could not create all tables: "
-				+ e.getMessage());
+		int maxOpenTenants;
+		try {
+			maxOpenTenants = Integer.parseInt(props.getProperty("MAX_OPEN_TENANTS",
+					String.valueOf(DEFAULT_MAX_OPEN_TENANTS)));
+		} catch (final NumberFormatException x) {
+			throw new StorageServiceException("StorageService: initialize: invalid MAX_OPEN_TENANTS: " + x.getMessage());
+		}
+		
+		final String backend = props.getProperty("STORAGE_BACKEND", "h2");
+		final boolean firstStart;
+		if (backend.equals("h2")) {
+			firstStart = StorageService.initialize(new H2StorageBackend(props), dropTables, maxOpenTenants);
+		} else if (backend.equals("memory")) {
+			firstStart = StorageService.initialize(new MemoryStorageBackend(), dropTables, maxOpenTenants);
+		} else {
+			throw new StorageServiceException("StorageService: initialize: unknown storage backend: " + backend);
 		}
 		
-		// Add default templates
+		try {
+			final long writeBehindMs = Long.parseLong(props.getProperty("TIME_BLOCK_WRITE_BEHIND_MS", "0"));
+			if (writeBehindMs > 0) {
+				enableTimeBlockWriteBehind(writeBehindMs, TimeUnit.MILLISECONDS, WRITE_BEHIND_THRESHOLD);
+			}
+		} catch (final NumberFormatException x) {
+			throw new StorageServiceException("StorageService: initialize: invalid TIME_BLOCK_WRITE_BEHIND_MS: "
+				+ x.getMessage());
+		}
+		return firstStart;
+	}
+	
+	/**
+	 * Called each time application starts up, with the backend to store data in
+	 * 
+	 * @param backend Backend every call is delegated to
+	 * @param dropTables If true, recreates new blank tables; if false, persists data from last time
+	 * @return boolean True if first start, false if not first start
+	 * @throws StorageServiceException if there was an error
+	 */
+	public static boolean initialize(final IStorageBackend backend, final boolean dropTables)
+			throws StorageServiceException {
+		return initialize(backend, dropTables, DEFAULT_MAX_OPEN_TENANTS);
+	}
+	
+	/**
+	 * Called each time application starts up, with the backend to store data in
+	 * 
+	 * @param backend Backend every call is delegated to, unless the calling thread entered a tenant
+	 * @param dropTables If true, recreates new blank tables; if false, persists data from last time
+	 * @param maxOpenTenants Most tenants' calendars kept open once nobody is using them; calendars in a backend that
+	 *            isn't persistent are all kept open
+	 * @return boolean True if first start, false if not first start
+	 * @throws StorageServiceException if there was an error
+	 */
+	public static boolean initialize(final IStorageBackend backend, final boolean dropTables,
+			final int maxOpenTenants) throws StorageServiceException {
+		if (_default != null) {
+			disableTimeBlockWriteBehind();
+		}
+		if (_tenants != null) {
+			_tenants.closeAll();
+		}
+		_default = new Tenant(null, backend);
+		_tenants = new TenantRegistry(backend, maxOpenTenants);
+		final boolean firstStart = backend.initialize(dropTables);
 		if (firstStart) {
-			try {
-				final BufferedReader reader = new BufferedReader(new FileReader("config/templates.txt"));
-				String line;
-				Template currTemplate = null;
-				while ((line = reader.readLine()) != null) {
-					if (line.startsWith("START")) {
-						final String[] arr = line.split(";");
-						currTemplate = new Template(arr[1], Double.parseDouble(arr[2]));
-					} else if (line.startsWith("END") && currTemplate != null) {
-						StorageService.addTemplate(currTemplate);
-					} else if (currTemplate != null) {
-						final String[] arr = line.split(";");
-						currTemplate.addStep(new TemplateStep(arr[0], Double.parseDouble(arr[1]), currTemplate
-								.getAllSteps().size()));
-					}
+			addDefaultTemplates(backend);
+		}
+		return firstStart;
+	}
+	
+	/**
+	 * Adds the templates in config/templates.txt to a new backend
+	 * 
+	 * @param backend Backend to add them to
+	 * @throws StorageServiceException if the file couldn't be read or the templates couldn't be stored
+	 */
+	static void addDefaultTemplates(final IStorageBackend backend) throws StorageServiceException {
+		try {
+			final BufferedReader reader = new BufferedReader(new FileReader("config/templates.txt"));
+			String line;
+			Template currTemplate = null;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("START")) {
+					final String[] arr = line.split(";");
+					currTemplate = new Template(arr[1], Double.parseDouble(arr[2]));
+				} else if (line.startsWith("END") && currTemplate != null) {
+					backend.addTemplate(currTemplate);
+				} else if (currTemplate != null) {
+					final String[] arr = line.split(";");
+					currTemplate.addStep(new TemplateStep(arr[0], Double.parseDouble(arr[1]), currTemplate
+							.getAllSteps().size()));
 				}
-				reader.close();
-				
-			} catch (final IOException | NumberFormatException | IndexOutOfBoundsException e) {
-				throw new StorageServiceException("Template file couldn't be parsed: " + e.getMessage());
 			}
+			reader.close();
+			
+		} catch (final IOException | NumberFormatException | IndexOutOfBoundsException e) {
+			throw new StorageServiceException("Template file couldn't be parsed: " + e.getMessage());
 		}
-		return firstStart;
 	}
 	
 	/**
 	 * Cleans up when the application is shutting down
 	 */
 	public static void cleanup() {
-		_pool.dispose();
+		_tenants.closeAll();
+		_default.close();
+	}
+	
+	/*
+	 * ================================================ Tenants ================================================
+	 */
+	
+	/**
+	 * Binds the calling thread to a tenant's calendar, opening it if needed, until leaveTenant is called. Until then
+	 * every StorageService call on this thread reads and writes only that tenant's data, which is kept in its own
+	 * backend (see IStorageBackend.newTenantBackend). Threads that never enter a tenant use the default calendar.
+	 * 
+	 * @param tenantId Id of the tenant, made only of letters, digits, '-' and '_'
+	 * @throws StorageServiceException if the tenant's calendar couldn't be opened
+	 * @throws IllegalStateException if the thread already entered a tenant
+	 */
+	public static void enterTenant(final String tenantId) throws StorageServiceException {
+		if (_current.get() != null) {
+			throw new IllegalStateException("StorageService: enterTenant: already in tenant " + _current.get().getId());
+		}
+		_current.set(_tenants.acquire(tenantId));
+	}
+	
+	/**
+	 * Unbinds the calling thread from its tenant, so it uses the default calendar again. The tenant's calendar stays
+	 * open until it is among the least recently used. Does nothing if the thread didn't enter a tenant.
+	 */
+	public static void leaveTenant() {
+		final Tenant tenant = _current.get();
+		if (tenant != null) {
+			_current.remove();
+			_tenants.release(tenant);
+		}
+	}
+	
+	/**
+	 * @return Id of the tenant the calling thread entered, or null if it uses the default calendar
+	 */
+	public static String getCurrentTenant() {
+		final Tenant tenant = _current.get();
+		return (tenant == null) ? null : tenant.getId();
+	}
+	
+	/**
+	 * @return Number of tenants' calendars open now
+	 */
+	public static int getOpenTenantCount() {
+		return _tenants.getOpenCount();
 	}
 	
 	/**
 	 * Drops all tables from the db
 	 */
 	public static void dropTables() {
-		try (Connection con = _pool.getConnection()) {
-			Class.forName("org.h2.Driver");
-			try (Statement stmt = con.createStatement()) {
-				stmt.execute(Utilities.DROP_ALL_TABLES);
-			}
-		} catch (final ClassNotFoundException e) {
-			Utilities.printException("StorageService: dropTables: db drive class not found", e);
-		} catch (final SQLException e) {
-			Utilities.printSQLException("StorageService: dropTables: could not create all tables", e);
+		final Tenant tenant = current();
+		final TimeBlockWriteBehind writeBehind = tenant.getWriteBehind();
+		if (writeBehind != null) {
+			writeBehind.discardAll();
+		}
+		tenant.getBackend().dropTables();
+		tenant.getDueDates().clear();
+	}
+	
+	/**
+	 * Queue TimeBlock updates instead of writing each one straight away. Queued updates are coalesced per block and
+	 * written together in one transaction every interval, or once threshold blocks are queued. Reads of TimeBlocks see
+	 * queued updates; other TimeBlock writes flush the queue first, so writes reach the backend in order.
+	 * 
+	 * While enabled, updateTimeBlock no longer throws when the block's Task is missing: the update is reported and
+	 * dropped when it is flushed. Queued updates are written whatever the stored block's version.
+	 * 
+	 * @param interval Longest time an update stays queued
+	 * @param unit Unit of interval
+	 * @param threshold Number of queued blocks that triggers a flush straight away
+	 */
+	public static synchronized void enableTimeBlockWriteBehind(final long interval, final TimeUnit unit,
+			final int threshold) {
+		disableTimeBlockWriteBehind();
+		final Tenant tenant = current();
+		tenant.setWriteBehind(new TimeBlockWriteBehind(tenant.getBackend(), interval, unit, threshold));
+		
+		// The application exits without calling cleanup, so queued updates are written on the way out
+		if (!_flushOnExit) {
+			_flushOnExit = true;
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				
+				@Override
+				public void run() {
+					flushTimeBlockUpdates();
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Write all queued TimeBlock updates and go back to writing each update straight away
+	 */
+	public static synchronized void disableTimeBlockWriteBehind() {
+		final Tenant tenant = current();
+		final TimeBlockWriteBehind writeBehind = tenant.getWriteBehind();
+		tenant.setWriteBehind(null);
+		if (writeBehind != null) {
+			writeBehind.shutdown();
+		}
+	}
+	
+	/**
+	 * Write all queued TimeBlock updates, waiting until they are written. Does nothing when write-behind is disabled.
+	 */
+	public static void flushTimeBlockUpdates() {
+		final TimeBlockWriteBehind writeBehind = current().getWriteBehind();
+		if (writeBehind != null) {
+			writeBehind.flush();
 		}
 	}
 	
@@ -163,7 +297,9 @@ public class StorageService {
 	 * @throws StorageServiceException Thrown when the Assigment's associated Template is not in the db
 	 */
 	public static IAssignment addAssignment(final IAssignment assignment) throws StorageServiceException {
-		return AssignmentTaskStorage.addAssignment(assignment, _pool);
+		final IAssignment added = backend().addAssignment(assignment);
+		current().getDueDates().put(assignment);
+		return added;
 	}
 	
 	/**
@@ -173,7 +309,11 @@ public class StorageService {
 	 * @return IAssignment that was removed, for chaining calls
 	 */
 	public static IAssignment removeAssignment(final IAssignment assignment) {
-		return AssignmentTaskStorage.removeAssignment(assignment, _pool);
+		final IAssignment removed = backend().removeAssignment(assignment);
+		if (assignment != null) {
+			current().getDueDates().remove(assignment.getID());
+		}
+		return removed;
 	}
 	
 	/**
@@ -185,7 +325,9 @@ public class StorageService {
 	 * @throws StorageServiceException Thrown when the Assignment's associated Template cannot be found in the db
 	 */
 	public static Assignment updateAssignment(final Assignment assignment) throws StorageServiceException {
-		return AssignmentTaskStorage.updateAssignment(assignment, _pool);
+		final Assignment updated = backend().updateAssignment(assignment);
+		current().getDueDates().put(assignment);
+		return updated;
 	}
 	
 	/**
@@ -195,7 +337,31 @@ public class StorageService {
 	 * @return Assignment that was found, or null if the Assignment was not found
 	 */
 	public static Assignment getAssignment(final String toBeFoundId) {
-		return AssignmentTaskStorage.getAssignment(toBeFoundId, _templates, _pool);
+		return backend().getAssignment(toBeFoundId);
+	}
+	
+	/**
+	 * @return Number of getAssignment calls answered from the Assignment cache
+	 */
+	public static long getAssignmentCacheHits() {
+		return backend().getAssignmentCacheHits();
+	}
+	
+	/**
+	 * @return Number of getAssignment calls that had to go to the db
+	 */
+	public static long getAssignmentCacheMisses() {
+		return backend().getAssignmentCacheMisses();
+	}
+	
+	/**
+	 * Answered from an index that is kept up to date as Assignments are written, so only the first call after
+	 * initialize reads every Assignment
+	 * 
+	 * @return The latest due date of any Assignment, or null if there are none
+	 */
+	public static Date getLastDueDate() {
+		return current().getDueDates().last(backend());
 	}
 	
 	/**
@@ -204,7 +370,7 @@ public class StorageService {
 	 * @return List of all Assignments stored in the db
 	 */
 	public static List<IAssignment> getAllAssignments() {
-		return AssignmentTaskStorage.getAllAssignments(_templates, _pool);
+		return backend().getAllAssignments();
 	}
 	
 	/**
@@ -215,7 +381,7 @@ public class StorageService {
 	 * @return List of Assignments whose dueDate falls within the specified date range
 	 */
 	public static List<IAssignment> getAllAssignmentsWithinRange(final Date date1, final Date date2) {
-		return AssignmentTaskStorage.getAllAssignmentsWithinRange(date1, date2, _templates, _pool);
+		return backend().getAllAssignmentsWithinRange(date1, date2);
 	}
 	
 	/**
@@ -223,9 +389,10 @@ public class StorageService {
 	 * 
 	 * @param task Task to be updated
 	 * @return Task that was updated, for chaining calls
+	 * @throws StaleDataException if the task or its assignment changed since the task was read; nothing was written
 	 */
-	public static ITask updateTask(final ITask task) {
-		return AssignmentTaskStorage.updateTask(task, _pool);
+	public static ITask updateTask(final ITask task) throws StaleDataException {
+		return backend().updateTask(task);
 	}
 	
 	/**
@@ -237,7 +404,7 @@ public class StorageService {
 	 * @return List of Tasks that fall within the date range specified
 	 */
 	public static List<ITask> getAllTasksWithinRange(final Date date1, final Date date2) {
-		return AssignmentTaskStorage.getAllTasksWithinRange(date1, date2, _pool);
+		return backend().getAllTasksWithinRange(date1, date2);
 	}
 	
 	/*
@@ -253,7 +420,9 @@ public class StorageService {
 	 * @return List of all the blocks that fall COMPLETELY within these bounds
 	 */
 	public static List<UnavailableBlock> getAllUnavailableBlocksWithinRange(final Date date1, final Date date2) {
-		return TimeBlockStorage.getAllUnavailableBlocksWithinRange(date1, date2, _pool);
+		final TimeBlockWriteBehind writeBehind = current().getWriteBehind();
+		final List<UnavailableBlock> stored = backend().getAllUnavailableBlocksWithinRange(date1, date2);
+		return writeBehind == null ? stored : writeBehind.overlay(stored, date1, date2, UnavailableBlock.class);
 	}
 	
 	/**
@@ -264,7 +433,9 @@ public class StorageService {
 	 * @return List of all the blocks that fall COMPLETELY within these bounds
 	 */
 	public static List<AssignmentBlock> getAllAssignmentBlocksWithinRange(final Date date1, final Date date2) {
-		return TimeBlockStorage.getAllAssignmentBlocksWithinRange(date1, date2, _pool);
+		final TimeBlockWriteBehind writeBehind = current().getWriteBehind();
+		final List<AssignmentBlock> stored = backend().getAllAssignmentBlocksWithinRange(date1, date2);
+		return writeBehind == null ? stored : writeBehind.overlay(stored, date1, date2, AssignmentBlock.class);
 	}
 	
 	/**
@@ -274,7 +445,11 @@ public class StorageService {
 	 * @return AssignmentBlock corresponding to the given id
 	 */
 	public static AssignmentBlock getAssignmentBlock(final String blockId) {
-		return TimeBlockStorage.getAssignmentBlock(blockId, _pool);
+		final ITimeBlockable pending = getPendingTimeBlock(blockId);
+		if (pending instanceof AssignmentBlock) {
+			return (AssignmentBlock) pending;
+		}
+		return backend().getAssignmentBlock(blockId);
 	}
 	
 	/**
@@ -284,7 +459,11 @@ public class StorageService {
 	 * @return UnavailableBlock found corresponding to the given id
 	 */
 	public static UnavailableBlock getUnavailableBlock(final String blockId) {
-		return TimeBlockStorage.getUnavailableBlock(blockId, _pool);
+		final ITimeBlockable pending = getPendingTimeBlock(blockId);
+		if (pending instanceof UnavailableBlock) {
+			return (UnavailableBlock) pending;
+		}
+		return backend().getUnavailableBlock(blockId);
 	}
 	
 	/**
@@ -294,7 +473,8 @@ public class StorageService {
 	 * @throws StorageServiceException When the TimeBlock's associated Task is not in the database
 	 */
 	public static void addTimeBlock(final ITimeBlockable block) throws StorageServiceException {
-		TimeBlockStorage.addTimeBlock(block, _pool);
+		flushTimeBlockUpdates();
+		backend().addTimeBlock(block);
 	}
 	
 	/**
@@ -308,18 +488,62 @@ public class StorageService {
 	 *         were NOT added/updated
 	 */
 	public static List<ITimeBlockable> mergeAllTimeBlocks(final List<ITimeBlockable> blockList) {
-		return TimeBlockStorage.mergeAllTimeBlocks(blockList, _pool);
+		flushTimeBlockUpdates();
+		return backend().mergeAllTimeBlocks(blockList);
 	}
 	
 	/**
-	 * Update TimeBlock with new start date, end date and associated task values
+	 * Writes only the blocks a scheduling pass inserted, moved or deleted, in one transaction
+	 * 
+	 * Unavailable blocks that were inserted or moved are ignored, as in mergeAllTimeBlocks. Tasks the pass updated are
+	 * written in the same transaction.
+	 * 
+	 * @param changes Changes recorded during the scheduling pass
+	 * @return A list of INVALID TimeBlocks (that is, those whose associated Task cannot be found in the database) that
+	 *         were NOT added/updated
+	 * @throws StorageServiceException if the changes couldn't be written, or (as a StaleDataException) a moved block or
+	 *             updated task changed since the pass read it; nothing was written
+	 */
+	public static List<ITimeBlockable> applyTimeBlockChanges(final TimeBlockChangeSet changes)
+			throws StorageServiceException {
+		flushTimeBlockUpdates();
+		return backend().applyTimeBlockChanges(changes);
+	}
+	
+	/**
+	 * Update TimeBlock with new start date, end date and associated task values. Queued instead when write-behind is
+	 * enabled, in which case the block's version is checked against its queued or stored state.
 	 * 
 	 * @param block Updated block
 	 * @return Block that was passed in, for chaining calls
-	 * @throws StorageServiceException Thrown when the TimeBlock's associated Task cannot be found in the database
+	 * @throws StorageServiceException Thrown when the TimeBlock's associated Task cannot be found in the database, or
+	 *             (as a StaleDataException) when the block changed since it was read
 	 */
 	public static ITimeBlockable updateTimeBlock(final ITimeBlockable block) throws StorageServiceException {
-		return TimeBlockStorage.updateTimeBlock(block, _pool);
+		final TimeBlockWriteBehind writeBehind = current().getWriteBehind();
+		if (writeBehind != null) {
+			return writeBehind.enqueue(block);
+		}
+		return backend().updateTimeBlock(block);
+	}
+	
+	/**
+	 * Update several TimeBlocks, assignment or unavailable, in one transaction: either every block is updated or none
+	 * is. Queued together instead when write-behind is enabled, so that they are written in the same flush; as with
+	 * updateTimeBlock, their versions are then checked when they are queued, but a block whose Task is missing is only
+	 * reported when the queue is flushed.
+	 * 
+	 * @param blockList Updated blocks
+	 * @throws StorageServiceException Thrown when an associated Task cannot be found in the database, a block changed
+	 *             since it was read (as a StaleDataException), or the transaction failed; nothing was updated
+	 */
+	public static void updateTimeBlocks(final List<ITimeBlockable> blockList) throws StorageServiceException {
+		final TimeBlockWriteBehind writeBehind = current().getWriteBehind();
+		if (writeBehind != null) {
+			writeBehind.enqueueAll(blockList);
+			return;
+		}
+		backend().updateTimeBlocks(blockList);
 	}
 	
 	/**
@@ -329,7 +553,11 @@ public class StorageService {
 	 * @return Block that was removed, for chaining calls
 	 */
 	public static ITimeBlockable removeTimeBlock(final ITimeBlockable block) {
-		return TimeBlockStorage.removeTimeBlock(block, _pool);
+		final TimeBlockWriteBehind writeBehind = current().getWriteBehind();
+		if (writeBehind != null) {
+			writeBehind.discard(block.getId());
+		}
+		return backend().removeTimeBlock(block);
 	}
 	
 	/**
@@ -338,7 +566,8 @@ public class StorageService {
 	 * @param blockList List of default unavailable blocks to add
 	 */
 	public static void addAllDefaultUnavailableBlocks(final List<UnavailableBlock> blockList) {
-		TimeBlockStorage.addAllDefaultUnavailableBlocks(blockList, _pool);
+		flushTimeBlockUpdates();
+		backend().addAllDefaultUnavailableBlocks(blockList);
 	}
 	
 	/**
@@ -348,7 +577,8 @@ public class StorageService {
 	 */
 	public static void replaceUnavailableBlocks(final Date startDate, final Date endDate,
 			final List<? extends ITimeBlockable> blockList) {
-		TimeBlockStorage.replaceUnavailableBlocks(startDate, endDate, blockList, _pool);
+		flushTimeBlockUpdates();
+		backend().replaceUnavailableBlocks(startDate, endDate, blockList);
 	}
 	
 	/*
@@ -363,18 +593,7 @@ public class StorageService {
 	 * @return Found template
 	 */
 	public static ITemplate getTemplate(final String id) {
-		return TemplateStepStorage.getTemplate(id, _templates, _pool, false);
-	}
-	
-	/**
-	 * Get Template corresponding to the provided Id Option to forceUpdate for use by learning functions in
-	 * TemplateStepStorage
-	 * 
-	 * @param id Id of the template to be found
-	 * @return Found template
-	 */
-	protected static ITemplate getTemplate(final String id, final boolean forceUpdate) {
-		return TemplateStepStorage.getTemplate(id, _templates, _pool, forceUpdate);
+		return backend().getTemplate(id);
 	}
 	
 	/**
@@ -384,7 +603,7 @@ public class StorageService {
 	 * @return Found template
 	 */
 	public static ITemplate getTemplateByName(final String name) {
-		return TemplateStepStorage.getTemplateByName(name, _pool);
+		return backend().getTemplateByName(name);
 	}
 	
 	/**
@@ -393,7 +612,7 @@ public class StorageService {
 	 * @return List containing all templates stored in the database
 	 */
 	public static List<ITemplate> getAllTemplates() {
-		return TemplateStepStorage.getAllTemplates(_pool);
+		return backend().getAllTemplates();
 	}
 	
 	/**
@@ -404,7 +623,7 @@ public class StorageService {
 	 * @throws StorageServiceException Thrown when the Template has zero TemplateSteps
 	 */
 	public static ITemplate addTemplate(final ITemplate temp) throws StorageServiceException {
-		return TemplateStepStorage.addTemplate(temp, _pool);
+		return backend().addTemplate(temp);
 	}
 	
 	/**
@@ -415,7 +634,7 @@ public class StorageService {
 	 * @throws StorageServiceException Thrown when the Template has zero TemplateSteps
 	 */
 	public static ITemplate updateTemplate(final ITemplate temp) throws StorageServiceException {
-		return TemplateStepStorage.updateTemplate(temp, _templates, _pool);
+		return backend().updateTemplate(temp);
 	}
 	
 	/**
@@ -425,7 +644,7 @@ public class StorageService {
 	 * @return Template that was removed, for chaining method calls
 	 */
 	public static ITemplate removeTemplate(final ITemplate temp) {
-		return TemplateStepStorage.removeTemplate(temp, _pool);
+		return backend().removeTemplate(temp);
 	}
 	
 	/**
@@ -436,7 +655,7 @@ public class StorageService {
 	 * @param deltaTod How much we will change the counter by
 	 */
 	public static void learnTemplateStepTimeOfDay(final ITask task, final String todKey, final double deltaTod) {
-		TemplateStepStorage.learnTemplateStepTimeOfDay(task, todKey, deltaTod, _templates, _pool);
+		backend().learnTemplateStepTimeOfDay(task, todKey, deltaTod);
 	}
 	
 	/**
@@ -446,7 +665,7 @@ public class StorageService {
 	 * @param consecutiveHours Consecutive hours we will add to the running average
 	 */
 	public static void learnTemplateConsecutiveHours(final ITask task, final double consecutiveHours) {
-		TemplateStepStorage.learnTemplateConsecutiveHours(task, consecutiveHours, _templates, _pool);
+		backend().learnTemplateConsecutiveHours(task, consecutiveHours);
 	}
 	
 	/*
@@ -460,7 +679,7 @@ public class StorageService {
 	 * @param val String value of the setting to be merged
 	 */
 	public static void mergeSetting(final String name, final String val) {
-		SettingStorage.mergeSetting(name, val, _pool);
+		backend().mergeSetting(name, val);
 	}
 	
 	/**
@@ -470,7 +689,7 @@ public class StorageService {
 	 * @return Boolean indicating if ALL settings were merged successfully
 	 */
 	public static boolean mergeAllSettings(final Map<String, String> settings) {
-		return SettingStorage.mergeAllSettings(settings, _pool);
+		return backend().mergeAllSettings(settings);
 	}
 	
 	/**
@@ -480,7 +699,7 @@ public class StorageService {
 	 * @return String value for the setting name passed in
 	 */
 	public static String getSetting(final String name) {
-		return SettingStorage.getSetting(name, _pool);
+		return backend().getSetting(name);
 	}
 	
 	/**
@@ -489,7 +708,7 @@ public class StorageService {
 	 * @return Mapping of String to String where key is the name of the setting, and value is the info of the setting
 	 */
 	public static Map<String, String> getAllSettings() {
-		return SettingStorage.getAllSettings(_pool);
+		return backend().getAllSettings();
 	}
 	
 	/*
@@ -499,4 +718,25 @@ public class StorageService {
 	protected static String concatColumn(final String columnName, final String dataType) {
 		return columnName + " " + dataType;
 	}
+	
+	/**
+	 * @return The tenant the calling thread entered, or else the default one
+	 */
+	private static Tenant current() {
+		final Tenant tenant = _current.get();
+		return (tenant != null) ? tenant : _default;
+	}
+	
+	private static IStorageBackend backend() {
+		return current().getBackend();
+	}
+	
+	/**
+	 * @param blockId Id of the block
+	 * @return Queued update of the block, or null if there is none or write-behind is disabled
+	 */
+	private static ITimeBlockable getPendingTimeBlock(final String blockId) {
+		final TimeBlockWriteBehind writeBehind = current().getWriteBehind();
+		return writeBehind == null ? null : writeBehind.getPending(blockId);
+	}
 }
@@ -11,8 +11,6 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 
-import org.h2.jdbcx.JdbcConnectionPool;
-
 import data.ITask;
 import data.ITemplate;
 import data.ITemplateStep;
@@ -56,13 +54,16 @@ public class TemplateStepStorage {
 	 * 
 	 * @param id Id of the template to be found
 	 * @param templates Cache of templates recently searched for
-	 * @param pool JdbcConnectionPool for retrieving connection to the database
+	 * @param pool StatementPool for retrieving connection to the database
 	 * @return Found template
 	 */
 	protected static ITemplate getTemplate(final String id, final Cache<ITemplate> templates,
-			final JdbcConnectionPool pool, final boolean forceUpdate) {
-		if (templates.contains(id) && !forceUpdate) {
-			return templates.get(id);
+			final StatementPool pool, final boolean forceUpdate) {
+		if (!forceUpdate) {
+			final ITemplate cached = templates.get(id);
+			if (cached != null) {
+				return cached;
+			}
 		}
 		
 		PreparedStatement statement = null;
@@ -71,7 +72,6 @@ public class TemplateStepStorage {
 		final ArrayList<ArrayList<ITemplateStep>> listOfStepLists = new ArrayList<>();
 		
 		try {
-			Class.forName("org.h2.Driver");
 			con = pool.getConnection();
 			
 			statement = con.prepareStatement(Utilities.SELECT_TEMPLATES_AND_STEPS_BY_ID);
@@ -109,8 +109,6 @@ public class TemplateStepStorage {
 			if (template != null) {
 				templates.insert(id, template);
 			}
-		} catch (final ClassNotFoundException e) {
-			Utilities.printException("TemplateStepStorage: getTemplate: db drive class not found", e);
 		} catch (final SQLException e) {
 			Utilities.printSQLException("TemplateStepStorage: getTemplate: " + "could not retrieve assignments", e);
 		}
@@ -137,17 +135,16 @@ public class TemplateStepStorage {
 	 * Get Template corresponding to the provided name
 	 * 
 	 * @param name Name of the Template to be found
-	 * @param pool JdbcConnectionPool for retrieving connection to the database
+	 * @param pool StatementPool for retrieving connection to the database
 	 * @return Found template
 	 */
-	protected static ITemplate getTemplateByName(final String name, final JdbcConnectionPool pool) {
+	protected static ITemplate getTemplateByName(final String name, final StatementPool pool) {
 		PreparedStatement statement = null;
 		Connection con = null;
 		Template template = null;
 		ArrayList<ITemplateStep> stepList = null;
 		
 		try {
-			Class.forName("org.h2.Driver");
 			con = pool.getConnection();
 			
 			statement = con.prepareStatement(Utilities.SELECT_TEMPLATES_AND_STEPS_BY_NAME);
@@ -180,8 +177,6 @@ public class TemplateStepStorage {
 					template.addStep(step);
 				}
 			}
-		} catch (final ClassNotFoundException e) {
-			Utilities.printException("TemplateStepStorage: getTemplateByName: db drive class not found", e);
 		} catch (final SQLException e) {
 			Utilities.printSQLException("TemplateStepStorage: getTemplateByName: " + "could not retrieve assignments",
 					e);
@@ -209,11 +204,11 @@ public class TemplateStepStorage {
 	 * Add a template to the database
 	 * 
 	 * @param temp Template to be added
-	 * @param pool JdbcConnectionPool for retrieving connection to the database
+	 * @param pool StatementPool for retrieving connection to the database
 	 * @return Template that was added, for chaining calls
 	 * @throws StorageServiceException Thrown when the Template has zero TemplateSteps
 	 */
-	protected static ITemplate addTemplate(final ITemplate temp, final JdbcConnectionPool pool)
+	protected static ITemplate addTemplate(final ITemplate temp, final StatementPool pool)
 			throws StorageServiceException {
 		if (temp.getAllSteps().size() == 0) {
 			throw new StorageServiceException("TemplateStepStorage: addTemplate: "
@@ -225,7 +220,6 @@ public class TemplateStepStorage {
 		Connection con = null;
 		
 		try {
-			Class.forName("org.h2.Driver");
 			con = pool.getConnection();
 			
 			con.setAutoCommit(false);
@@ -247,8 +241,6 @@ public class TemplateStepStorage {
 			
 			// commit to the database
 			con.commit();
-		} catch (final ClassNotFoundException e) {
-			Utilities.printException("TemplateStepStorage: addTemplate: db drive class not found", e);
 		} catch (final SQLException e) {
 			Utilities.printSQLException("TemplateStepStorage: addTemplate: attempting to roll back transaction", e);
 			if (con != null) {
@@ -284,12 +276,12 @@ public class TemplateStepStorage {
 	 * 
 	 * @param temp Template to be updated
 	 * @param templates Cache of templates recently searched for
-	 * @param pool JdbcConnectionPool for retrieving connection to the database
+	 * @param pool StatementPool for retrieving connection to the database
 	 * @return Template that was updated, for chaining calls
 	 * @throws StorageServiceException Thrown when the Template has zero TemplateSteps
 	 */
 	protected static ITemplate updateTemplate(final ITemplate temp, final Cache<ITemplate> templates,
-			final JdbcConnectionPool pool) throws StorageServiceException {
+			final StatementPool pool) throws StorageServiceException {
 		if (temp.getAllSteps().size() == 0) {
 			throw new StorageServiceException("TemplateStepStorage: updateTemplate: "
 				+ "Template must have at least one Template Step");
@@ -302,7 +294,6 @@ public class TemplateStepStorage {
 		Connection con = null;
 		
 		try {
-			Class.forName("org.h2.Driver");
 			con = pool.getConnection();
 			con.setAutoCommit(false);
 			
@@ -354,8 +345,6 @@ public class TemplateStepStorage {
 			
 			// commit to the database
 			con.commit();
-		} catch (final ClassNotFoundException e) {
-			Utilities.printException("TemplateStepStorage: updateTemplate: db drive class not found", e);
 		} catch (final SQLException e) {
 			Utilities.printSQLException(
 					"TemplateStepStorage: updateTemplate: " + "attempting to roll back transaction", e);
@@ -398,15 +387,16 @@ public class TemplateStepStorage {
 	 * Remove a template from the database
 	 * 
 	 * @param temp Template to be removed
-	 * @param pool JdbcConnectionPool for retrieving connection to the database
+	 * @param templates Cache of templates, evicted from once the removal is committed
+	 * @param pool StatementPool for retrieving connection to the database
 	 * @return Template that was removed, for chaining method calls
 	 */
-	protected static ITemplate removeTemplate(final ITemplate temp, final JdbcConnectionPool pool) {
+	protected static ITemplate removeTemplate(final ITemplate temp, final Cache<ITemplate> templates,
+			final StatementPool pool) {
 		PreparedStatement statement = null;
 		Connection con = null;
 		
 		try {
-			Class.forName("org.h2.Driver");
 			con = pool.getConnection();
 			
 			con.setAutoCommit(false);
@@ -416,8 +406,7 @@ public class TemplateStepStorage {
 			
 			// commit to the database
 			con.commit();
-		} catch (final ClassNotFoundException e) {
-			Utilities.printException("TimeBlockStorage: removeTemplate: db drive class not found", e);
+			templates.invalidate(temp.getID());
 		} catch (final SQLException e) {
 			Utilities.printSQLException(
 					"TemplateStepStorage: removeTemplate: " + "attempting to roll back transaction", e);
@@ -449,10 +438,10 @@ public class TemplateStepStorage {
 	/**
 	 * Get all templates stored in the database
 	 * 
-	 * @param pool JdbcConnectionPool for retrieving connection to the database
+	 * @param pool StatementPool for retrieving connection to the database
 	 * @return List containing all templates stored in the database
 	 */
-	protected static List<ITemplate> getAllTemplates(final JdbcConnectionPool pool) {
+	protected static List<ITemplate> getAllTemplates(final StatementPool pool) {
 		final ArrayList<ITemplate> results = new ArrayList<>();
 		final HashMap<String, Template> idToTemplate = new HashMap<>();
 		final ArrayList<ArrayList<ITemplateStep>> listOfTaskLists = new ArrayList<>();
@@ -460,7 +449,6 @@ public class TemplateStepStorage {
 		Connection con = null;
 		
 		try {
-			Class.forName("org.h2.Driver");
 			con = pool.getConnection();
 			
 			statement = con.prepareStatement(Utilities.SELECT_ALL_TEMPLATES_AND_STEPS);
@@ -492,8 +480,6 @@ public class TemplateStepStorage {
 					template.addStep(step);
 				}
 			}
-		} catch (final ClassNotFoundException e) {
-			Utilities.printException("TemplateStepStorage: getAllTemplates: db drive class not found", e);
 		} catch (final SQLException e) {
 			Utilities.printSQLException("TemplateStepStorage: getAllTemplates: " + "could not retrieve all templates",
 					e);
@@ -525,10 +511,10 @@ public class TemplateStepStorage {
 	 * @param todKey String name of the TimeOfDay enum we will apply the deltaTod to
 	 * @param deltaTod How much we will change the counter by
 	 * @param templates Cache of templates recently searched for
-	 * @param pool JdbcConnectionPool for retrieving connection to the database
+	 * @param pool StatementPool for retrieving connection to the database
 	 */
 	protected static void learnTemplateStepTimeOfDay(final ITask task, final String todKey, final double deltaTod,
-			final Cache<ITemplate> templates, final JdbcConnectionPool pool) {
+			final Cache<ITemplate> templates, final StatementPool pool) {
 		// Can't learn when the todKey is a valid time of day
 		if (todKey.equals("")) {
 			return;
@@ -540,7 +526,6 @@ public class TemplateStepStorage {
 		String templateId = "";
 		
 		try {
-			Class.forName("org.h2.Driver");
 			con = pool.getConnection();
 			
 			con.setAutoCommit(false);
@@ -579,8 +564,6 @@ public class TemplateStepStorage {
 			
 			// commit to the database
 			con.commit();
-		} catch (final ClassNotFoundException e) {
-			Utilities.printException("TimeBlockStorage: learnTemplateStepTimeOfDay: db drive class not found", e);
 		} catch (final SQLException e) {
 			Utilities.printSQLException("TemplateStepStorage: learnTemplateStepTimeOfDay: "
 				+ "attempting to roll back transaction", e);
@@ -613,7 +596,7 @@ public class TemplateStepStorage {
 		
 		// Update the cache
 		if (!templateId.equals("")) {
-			final ITemplate template = StorageService.getTemplate(templateId, true);
+			final ITemplate template = TemplateStepStorage.getTemplate(templateId, templates, pool, true);
 			templates.insert(templateId, template);
 		}
 	}
@@ -624,17 +607,16 @@ public class TemplateStepStorage {
 	 * @param task Task corresponding to the Template we will update
 	 * @param consecutiveHours Consecutive hours we will add to the running average
 	 * @param templates Cache of templates recently searched for
-	 * @param pool JdbcConnectionPool for retrieving connection to the database
+	 * @param pool StatementPool for retrieving connection to the database
 	 */
 	protected static void learnTemplateConsecutiveHours(final ITask task, final double consecutiveHours,
-			final Cache<ITemplate> templates, final JdbcConnectionPool pool) {
+			final Cache<ITemplate> templates, final StatementPool pool) {
 		PreparedStatement retrieveStatement = null;
 		PreparedStatement storeStatement = null;
 		Connection con = null;
 		String templateId = "";
 		
 		try {
-			Class.forName("org.h2.Driver");
 			con = pool.getConnection();
 			
 			con.setAutoCommit(false);
@@ -661,8 +643,6 @@ public class TemplateStepStorage {
 			
 			// commit to the database
 			con.commit();
-		} catch (final ClassNotFoundException e) {
-			Utilities.printException("TimeBlockStorage: learnTemplateConsecutiveHours: db drive class not found", e);
 		} catch (final SQLException e) {
 			Utilities.printSQLException("TemplateStepStorage: learnTemplateConsecutiveHours: "
 				+ "attempting to roll back transaction", e);
@@ -695,7 +675,7 @@ public class TemplateStepStorage {
 		
 		// Update the cache
 		if (!templateId.equals("")) {
-			final ITemplate template = StorageService.getTemplate(templateId, true);
+			final ITemplate template = TemplateStepStorage.getTemplate(templateId, templates, pool, true);
 			templates.insert(templateId, template);
 		}
 	}
@@ -704,7 +684,7 @@ public class TemplateStepStorage {
 	 * Helper methods
 	 */
 	
-	private static int todKeyToIndex(final String todKey) {
+	protected static int todKeyToIndex(final String todKey) {
 		int i = 0;
 		for (final TimeOfDay tod : TimeOfDay.values()) {
 			if (tod.name().equals(todKey)) {
@@ -726,7 +706,7 @@ public class TemplateStepStorage {
 		return "";
 	}
 	
-	private static String maxTodKey(final Double[] todCounters) {
+	protected static String maxTodKey(final Double[] todCounters) {
 		int maxIndex = 0;
 		double maxValue = 0.0;
 		int i = 0;
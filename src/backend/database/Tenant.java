@@ -0,0 +1,73 @@
+package backend.database;
+
+/**
+ * One calendar's storage: its backend and the state StorageService keeps beside it. StorageService sends each call to
+ * the Tenant bound to the calling thread, or else to the default one it was initialized with.
+ */
+class Tenant {
+	
+	private final String						_id;
+	private final IStorageBackend				_backend;
+	private final DueDateIndex					_dueDates;
+	private volatile TimeBlockWriteBehind		_writeBehind;
+	
+	// Guarded by the TenantRegistry the Tenant belongs to
+	private int									_users;
+	
+	/**
+	 * @param id Id of the tenant, or null for the default one
+	 * @param backend Initialized backend holding the tenant's data
+	 */
+	Tenant(final String id, final IStorageBackend backend) {
+		_id = id;
+		_backend = backend;
+		_dueDates = new DueDateIndex();
+	}
+	
+	String getId() {
+		return _id;
+	}
+	
+	IStorageBackend getBackend() {
+		return _backend;
+	}
+	
+	DueDateIndex getDueDates() {
+		return _dueDates;
+	}
+	
+	/**
+	 * @return The tenant's write-behind queue, or null if TimeBlock updates are written straight away
+	 */
+	TimeBlockWriteBehind getWriteBehind() {
+		return _writeBehind;
+	}
+	
+	void setWriteBehind(final TimeBlockWriteBehind writeBehind) {
+		_writeBehind = writeBehind;
+	}
+	
+	int getUsers() {
+		return _users;
+	}
+	
+	void addUser() {
+		_users++;
+	}
+	
+	void removeUser() {
+		_users--;
+	}
+	
+	/**
+	 * Writes any queued TimeBlock updates and releases the backend's resources
+	 */
+	void close() {
+		final TimeBlockWriteBehind writeBehind = _writeBehind;
+		_writeBehind = null;
+		if (writeBehind != null) {
+			writeBehind.shutdown();
+		}
+		_backend.cleanup();
+	}
+}
@@ -0,0 +1,221 @@
+package backend.database;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.regex.Pattern;
+
+/**
+ * The tenants' calendars that are open, so that one process can serve many calendars with a bounded number of open
+ * databases. A tenant's backend is made from the default one and opened the first time the tenant is acquired; once
+ * more than maxOpen tenants are open, the least recently used ones that nobody is using are closed. They are opened
+ * again, from their stored data, when they are next acquired. Tenants whose backend isn't persistent are never
+ * closed before closeAll, since closing one would throw its calendar away.
+ * 
+ * A tenant is opened outside the registry's lock, so a slow open only holds up callers asking for that same tenant.
+ */
+class TenantRegistry {
+	
+	private static final Pattern						TENANT_ID	= Pattern.compile("[A-Za-z0-9_-]{1,64}");
+	
+	private final IStorageBackend						_prototype;
+	private final int									_maxOpen;
+	
+	// Guarded by this. In access order, so the least recently used tenant comes first.
+	private final LinkedHashMap<String, Tenant>			_open;
+	private final Map<String, FutureTask<Tenant>>		_opening;
+	private long										_opened;
+	private long										_closed;
+	
+	/**
+	 * @param prototype Backend each tenant's backend is made from (see IStorageBackend.newTenantBackend)
+	 * @param maxOpen Most tenants kept open once nobody is using them
+	 */
+	TenantRegistry(final IStorageBackend prototype, final int maxOpen) {
+		if (maxOpen <= 0) {
+			throw new IllegalArgumentException("TenantRegistry: maxOpen must be positive");
+		}
+		_prototype = prototype;
+		_maxOpen = maxOpen;
+		_open = new LinkedHashMap<>(16, 0.75f, true);
+		_opening = new HashMap<>();
+	}
+	
+	/**
+	 * Opens a tenant if it isn't open yet, and keeps it open until it is released
+	 * 
+	 * @param id Id of the tenant
+	 * @return The tenant
+	 * @throws IllegalArgumentException if the id isn't made only of letters, digits, '-' and '_'
+	 * @throws StorageServiceException if the tenant's backend couldn't be opened
+	 */
+	Tenant acquire(final String id) throws StorageServiceException {
+		if (id == null || !TENANT_ID.matcher(id).matches()) {
+			throw new IllegalArgumentException("TenantRegistry: acquire: invalid tenant id: " + id);
+		}
+		
+		while (true) {
+			FutureTask<Tenant> opening;
+			boolean opener = false;
+			synchronized (this) {
+				final Tenant open = _open.get(id);
+				if (open != null) {
+					open.addUser();
+					return open;
+				}
+				opening = _opening.get(id);
+				if (opening == null) {
+					opening = new FutureTask<>(new Callable<Tenant>() {
+						
+						@Override
+						public Tenant call() throws StorageServiceException {
+							return open(id);
+						}
+					});
+					_opening.put(id, opening);
+					opener = true;
+				}
+			}
+			
+			if (!opener) {
+				// Someone else is opening it; once they're done it is open, unless it was closed again already
+				await(opening);
+				continue;
+			}
+			
+			opening.run();
+			List<Tenant> evicted;
+			Tenant tenant;
+			try {
+				tenant = await(opening);
+			} finally {
+				synchronized (this) {
+					_opening.remove(id);
+				}
+			}
+			synchronized (this) {
+				_open.put(id, tenant);
+				_opened++;
+				tenant.addUser();
+				evicted = evict();
+			}
+			close(evicted);
+			return tenant;
+		}
+	}
+	
+	/**
+	 * Lets a tenant be closed again once it is among the least recently used
+	 * 
+	 * @param tenant A tenant returned by acquire
+	 */
+	void release(final Tenant tenant) {
+		List<Tenant> evicted;
+		synchronized (this) {
+			tenant.removeUser();
+			evicted = evict();
+		}
+		close(evicted);
+	}
+	
+	/**
+	 * Closes every open tenant, even ones that are in use, when the application is shutting down
+	 */
+	void closeAll() {
+		List<Tenant> all;
+		synchronized (this) {
+			all = new ArrayList<>(_open.values());
+			_closed += all.size();
+			_open.clear();
+		}
+		close(all);
+	}
+	
+	/**
+	 * @return Number of tenants open now
+	 */
+	synchronized int getOpenCount() {
+		return _open.size();
+	}
+	
+	/**
+	 * @return Number of times a tenant was opened
+	 */
+	synchronized long getOpened() {
+		return _opened;
+	}
+	
+	/**
+	 * @return Number of times a tenant was closed
+	 */
+	synchronized long getClosed() {
+		return _closed;
+	}
+	
+	/*
+	 * Helper methods
+	 */
+	
+	/**
+	 * @return A newly opened tenant, with the default templates if its backend is new
+	 */
+	private Tenant open(final String id) throws StorageServiceException {
+		final IStorageBackend backend = _prototype.newTenantBackend(id);
+		try {
+			if (backend.initialize(false)) {
+				StorageService.addDefaultTemplates(backend);
+			}
+		} catch (final StorageServiceException | RuntimeException e) {
+			backend.cleanup();
+			throw e;
+		}
+		return new Tenant(id, backend);
+	}
+	
+	/**
+	 * Removes the least recently used tenants nobody is using and whose data outlives them, while too many are open.
+	 * Callers must hold the lock and close the tenants returned after letting go of it.
+	 */
+	private List<Tenant> evict() {
+		final List<Tenant> evicted = new ArrayList<>();
+		final Iterator<Tenant> it = _open.values().iterator();
+		while (_open.size() > _maxOpen && it.hasNext()) {
+			final Tenant tenant = it.next();
+			if (tenant.getUsers() == 0 && tenant.getBackend().isPersistent()) {
+				it.remove();
+				evicted.add(tenant);
+				_closed++;
+			}
+		}
+		return evicted;
+	}
+	
+	private static void close(final List<Tenant> tenants) {
+		for (final Tenant tenant : tenants) {
+			tenant.close();
+		}
+	}
+	
+	private static Tenant await(final FutureTask<Tenant> opening) throws StorageServiceException {
+		try {
+			return opening.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new StorageServiceException("TenantRegistry: acquire: interrupted while opening a tenant");
+		} catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof StorageServiceException) {
+				throw (StorageServiceException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new StorageServiceException("TenantRegistry: acquire: could not open a tenant: " + cause);
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package backend.database;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import data.ITask;
+import data.ITimeBlockable;
+
+/**
+ * Records which TimeBlocks a scheduling pass inserted, moved or deleted, so that only those blocks have to be written
+ * back to the database (see StorageService.applyTimeBlockChanges). Tasks the pass changed can be recorded too, so they
+ * are written in the same transaction as the blocks.
+ *
+ * Blocks are tracked by id and by reference: the values persisted are the ones the block holds when the change set is
+ * applied. A moved block remembers the bounds and task it had when it was first marked, so blocks that end up where
+ * they started are not written at all.
+ *
+ * Moved blocks and updated Tasks are written only if their rows are still at the version they were read at; if any
+ * is not, nothing in the change set is written (see StaleDataException).
+ *
+ * Not thread safe; a change set belongs to a single scheduling pass.
+ */
+public class TimeBlockChangeSet {
+
+	private final Map<String, ITimeBlockable>	_inserted;
+	private final Map<String, ITimeBlockable>	_moved;
+	private final Map<String, ITimeBlockable>	_deleted;
+	private final Map<String, Snapshot>			_originals;
+	private final Map<String, ITask>			_tasks;
+
+	public TimeBlockChangeSet() {
+		_inserted = new LinkedHashMap<>();
+		_moved = new LinkedHashMap<>();
+		_deleted = new LinkedHashMap<>();
+		_originals = new HashMap<>();
+		_tasks = new LinkedHashMap<>();
+	}
+
+	/**
+	 * Record a block that does not exist in the database yet
+	 *
+	 * @param block Newly created block
+	 */
+	public void markInserted(final ITimeBlockable block) {
+		_deleted.remove(block.getId());
+		_inserted.put(block.getId(), block);
+	}
+
+	/**
+	 * Record that a stored block is about to change. Must be called BEFORE the block's bounds or task are modified, so
+	 * that its original values can be remembered.
+	 *
+	 * @param block Block about to be moved
+	 */
+	public void markMoved(final ITimeBlockable block) {
+		final String id = block.getId();
+		if (_inserted.containsKey(id) || _deleted.containsKey(id)) {
+			return;
+		}
+		if (!_originals.containsKey(id)) {
+			_originals.put(id, new Snapshot(block));
+		}
+		_moved.put(id, block);
+	}
+
+	/**
+	 * Record a block that should be removed from the database
+	 *
+	 * @param block Block to remove
+	 */
+	public void markDeleted(final ITimeBlockable block) {
+		final String id = block.getId();
+		_moved.remove(id);
+		_originals.remove(id);
+
+		// A block that never reached the database has nothing to delete
+		if (_inserted.remove(id) == null) {
+			_deleted.put(id, block);
+		}
+	}
+
+	/**
+	 * Record a stored Task whose fields should be written along with the blocks
+	 *
+	 * @param task Changed Task
+	 */
+	public void markTaskUpdated(final ITask task) {
+		_tasks.put(task.getTaskID(), task);
+	}
+
+	/**
+	 * @return Blocks to insert, in the order they were created
+	 */
+	public List<ITimeBlockable> getInserted() {
+		return new ArrayList<>(_inserted.values());
+	}
+
+	/**
+	 * @return Stored blocks whose bounds or task differ from when they were first marked
+	 */
+	public List<ITimeBlockable> getMoved() {
+		final List<ITimeBlockable> moved = new ArrayList<>();
+		for (final ITimeBlockable block : _moved.values()) {
+			if (!_originals.get(block.getId()).matches(block)) {
+				moved.add(block);
+			}
+		}
+		return moved;
+	}
+
+	/**
+	 * @return Blocks to remove
+	 */
+	public List<ITimeBlockable> getDeleted() {
+		return new ArrayList<>(_deleted.values());
+	}
+
+	/**
+	 * @return Tasks to update
+	 */
+	public List<ITask> getUpdatedTasks() {
+		return new ArrayList<>(_tasks.values());
+	}
+
+	/**
+	 * @return Whether applying this change set would write nothing
+	 */
+	public boolean isEmpty() {
+		return _inserted.isEmpty() && _deleted.isEmpty() && _tasks.isEmpty() && getMoved().isEmpty();
+	}
+
+	/**
+	 * Forget every recorded change
+	 */
+	public void clear() {
+		_inserted.clear();
+		_moved.clear();
+		_deleted.clear();
+		_originals.clear();
+		_tasks.clear();
+	}
+
+	@Override
+	public String toString() {
+		return "TimeBlockChangeSet: [inserted: " + _inserted.size() + "; moved: " + getMoved().size() + "; deleted: "
+			+ _deleted.size() + "; tasks: " + _tasks.size() + "]";
+	}
+
+	/**
+	 * The persisted values of a block when it was first marked as moved
+	 */
+	private static class Snapshot {
+
+		private final long		_start;
+		private final long		_end;
+		private final ITask		_task;
+
+		private Snapshot(final ITimeBlockable block) {
+			_start = block.getStart().getTime();
+			_end = block.getEnd().getTime();
+			_task = block.getTask();
+		}
+
+		private boolean matches(final ITimeBlockable block) {
+			// Switching blocks swaps their Task objects, so comparing references is enough
+			return _start == block.getStart().getTime() && _end == block.getEnd().getTime()
+				&& _task == block.getTask();
+		}
+	}
+}
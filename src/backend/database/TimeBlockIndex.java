@@ -0,0 +1,534 @@
+package backend.database;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Write-through, in-memory interval index over the TIME_BLOCK table.
+ *
+ * Blocks are kept in one interval tree per Kind (mirroring the BLOCK_MOVABLE / BLOCK_DEFAULT filters used by the
+ * SQL range queries), so that overlap queries only visit the blocks that can actually overlap the range instead of
+ * scanning the whole table. TimeBlockStorage updates the index only after the corresponding transaction has
+ * committed, so the index never holds state that the database does not.
+ *
+ * Range semantics match the SQL range queries: a block overlaps [lo, hi] iff start <= hi AND end >= lo.
+ *
+ * The default weekly pattern built from the default unavailable blocks is cached here as well, and dropped whenever
+ * one of those blocks changes.
+ *
+ * Each entry carries the row's BLOCK_VERSION, so callers can check an update against it without a query.
+ */
+public class TimeBlockIndex {
+
+	/**
+	 * Which range query a block answers to
+	 */
+	protected enum Kind {
+		ASSIGNMENT, CUSTOM_UNAVAILABLE, DEFAULT_UNAVAILABLE;
+
+		protected static Kind of(final boolean movable, final boolean isDefault) {
+			if (movable) {
+				return ASSIGNMENT;
+			}
+			return isDefault ? DEFAULT_UNAVAILABLE : CUSTOM_UNAVAILABLE;
+		}
+	}
+
+	/**
+	 * Immutable snapshot of one TIME_BLOCK row
+	 */
+	protected static class Entry {
+
+		private final String	_blockId;
+		private final String	_taskId;
+		private final long		_start;
+		private final long		_end;
+		private final boolean	_movable;
+		private final boolean	_isDefault;
+		private final long		_version;
+
+		protected Entry(final String blockId, final String taskId, final long start, final long end,
+				final boolean movable, final boolean isDefault) {
+			this(blockId, taskId, start, end, movable, isDefault, 0);
+		}
+
+		protected Entry(final String blockId, final String taskId, final long start, final long end,
+				final boolean movable, final boolean isDefault, final long version) {
+			_blockId = blockId;
+			_taskId = taskId;
+			_start = start;
+			_end = end;
+			_movable = movable;
+			_isDefault = isDefault;
+			_version = version;
+		}
+
+		protected String getBlockId() {
+			return _blockId;
+		}
+
+		protected String getTaskId() {
+			return _taskId;
+		}
+
+		protected long getStart() {
+			return _start;
+		}
+
+		protected long getEnd() {
+			return _end;
+		}
+
+		protected boolean isMovable() {
+			return _movable;
+		}
+
+		protected boolean isDefault() {
+			return _isDefault;
+		}
+
+		protected long getVersion() {
+			return _version;
+		}
+
+		protected Kind getKind() {
+			return Kind.of(_movable, _isDefault);
+		}
+	}
+
+	private final Map<String, Entry>			_byId;
+	private final EnumMap<Kind, IntervalTree>	_trees;
+	private final ReadWriteLock					_lock;
+	private DefaultWeek							_defaultWeek;
+
+	public TimeBlockIndex() {
+		_byId = new HashMap<>();
+		_trees = new EnumMap<>(Kind.class);
+		for (final Kind kind : Kind.values()) {
+			_trees.put(kind, new IntervalTree());
+		}
+		_lock = new ReentrantReadWriteLock();
+	}
+
+	/**
+	 * Insert or replace the entry for a block
+	 *
+	 * @param entry Entry to store
+	 */
+	protected void put(final Entry entry) {
+		_lock.writeLock().lock();
+		try {
+			removeUnlocked(entry.getBlockId());
+			insertUnlocked(entry);
+		} finally {
+			_lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Mirror of MERGE_TIME_BLOCK: BLOCK_DEFAULT and BLOCK_VERSION are left untouched for rows that already exist
+	 *
+	 * @param blockId Id of the merged block
+	 * @param taskId Task id of the merged block
+	 * @param start Block start in ms
+	 * @param end Block end in ms
+	 * @param movable Whether the block is movable
+	 * @return The version of the merged block
+	 */
+	protected long merge(final String blockId, final String taskId, final long start, final long end,
+			final boolean movable) {
+		_lock.writeLock().lock();
+		try {
+			final Entry old = removeUnlocked(blockId);
+			final long version = (old == null) ? 0 : old.getVersion();
+			insertUnlocked(new Entry(blockId, taskId, start, end, movable, old != null && old.isDefault(), version));
+			return version;
+		} finally {
+			_lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Mirror of UPDATE_TIME_BLOCK: only bounds and task change, and only for rows that already exist. The version moves
+	 * on by one.
+	 *
+	 * @param blockId Id of the updated block
+	 * @param taskId New task id
+	 * @param start New start in ms
+	 * @param end New end in ms
+	 */
+	protected void update(final String blockId, final String taskId, final long start, final long end) {
+		_lock.writeLock().lock();
+		try {
+			final Entry old = removeUnlocked(blockId);
+			if (old != null) {
+				insertUnlocked(new Entry(blockId, taskId, start, end, old.isMovable(), old.isDefault(),
+						old.getVersion() + 1));
+			}
+		} finally {
+			_lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Mirror of FORCE_UPDATE_TIME_BLOCK: as update, but the version is set rather than moved on
+	 *
+	 * @param blockId Id of the updated block
+	 * @param taskId New task id
+	 * @param start New start in ms
+	 * @param end New end in ms
+	 * @param version New version
+	 */
+	protected void update(final String blockId, final String taskId, final long start, final long end,
+			final long version) {
+		_lock.writeLock().lock();
+		try {
+			final Entry old = removeUnlocked(blockId);
+			if (old != null) {
+				insertUnlocked(new Entry(blockId, taskId, start, end, old.isMovable(), old.isDefault(), version));
+			}
+		} finally {
+			_lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Remove a block from the index
+	 *
+	 * @param blockId Id of the block to remove
+	 * @return The entry that was removed, or null if there was none
+	 */
+	protected Entry remove(final String blockId) {
+		_lock.writeLock().lock();
+		try {
+			return removeUnlocked(blockId);
+		} finally {
+			_lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Remove every block of the given kind overlapping [lo, hi]
+	 *
+	 * @param kind Kind of blocks to remove
+	 * @param lo Lower bound in ms
+	 * @param hi Upper bound in ms
+	 */
+	protected void removeOverlapping(final Kind kind, final long lo, final long hi) {
+		_lock.writeLock().lock();
+		try {
+			final List<Entry> doomed = new ArrayList<>();
+			_trees.get(kind).collectOverlapping(lo, hi, doomed);
+			for (final Entry entry : doomed) {
+				removeUnlocked(entry.getBlockId());
+			}
+		} finally {
+			_lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Drop every entry
+	 */
+	protected void clear() {
+		_lock.writeLock().lock();
+		try {
+			_byId.clear();
+			for (final IntervalTree tree : _trees.values()) {
+				tree.clear();
+			}
+			_defaultWeek = null;
+		} finally {
+			_lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @param blockId Id of the block in question
+	 * @return Entry for the block, or null if the block is not indexed
+	 */
+	protected Entry get(final String blockId) {
+		_lock.readLock().lock();
+		try {
+			return _byId.get(blockId);
+		} finally {
+			_lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * All blocks of the given kind overlapping [lo, hi], ordered by start
+	 *
+	 * @param kind Kind of blocks to find
+	 * @param lo Lower bound in ms
+	 * @param hi Upper bound in ms
+	 * @return List of matching entries, ordered by start then block id
+	 */
+	protected List<Entry> findOverlapping(final Kind kind, final long lo, final long hi) {
+		final List<Entry> results = new ArrayList<>();
+		_lock.readLock().lock();
+		try {
+			_trees.get(kind).collectOverlapping(lo, hi, results);
+		} finally {
+			_lock.readLock().unlock();
+		}
+		return results;
+	}
+
+	/**
+	 * All blocks of the given kind, ordered by start
+	 *
+	 * @param kind Kind of blocks to find
+	 * @return List of entries, ordered by start then block id
+	 */
+	protected List<Entry> findAll(final Kind kind) {
+		return findOverlapping(kind, Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Whether any block of the given kind overlaps [lo, hi]
+	 *
+	 * @param kind Kind of blocks to look for
+	 * @param lo Lower bound in ms
+	 * @param hi Upper bound in ms
+	 * @return True if at least one block overlaps the range
+	 */
+	protected boolean hasOverlapping(final Kind kind, final long lo, final long hi) {
+		_lock.readLock().lock();
+		try {
+			return _trees.get(kind).hasOverlapping(lo, hi);
+		} finally {
+			_lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * The default weekly pattern, built from the default unavailable blocks on first use after any of them changed
+	 *
+	 * @return Cached DefaultWeek
+	 */
+	protected DefaultWeek getDefaultWeek() {
+		_lock.readLock().lock();
+		try {
+			if (_defaultWeek != null) {
+				return _defaultWeek;
+			}
+		} finally {
+			_lock.readLock().unlock();
+		}
+
+		_lock.writeLock().lock();
+		try {
+			if (_defaultWeek == null) {
+				final List<Entry> defaults = new ArrayList<>();
+				_trees.get(Kind.DEFAULT_UNAVAILABLE).collectOverlapping(Long.MIN_VALUE, Long.MAX_VALUE, defaults);
+				_defaultWeek = new DefaultWeek(defaults);
+			}
+			return _defaultWeek;
+		} finally {
+			_lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return Number of indexed blocks
+	 */
+	protected int size() {
+		_lock.readLock().lock();
+		try {
+			return _byId.size();
+		} finally {
+			_lock.readLock().unlock();
+		}
+	}
+
+	private void insertUnlocked(final Entry entry) {
+		_byId.put(entry.getBlockId(), entry);
+		_trees.get(entry.getKind()).insert(entry);
+		if (entry.getKind() == Kind.DEFAULT_UNAVAILABLE) {
+			_defaultWeek = null;
+		}
+	}
+
+	private Entry removeUnlocked(final String blockId) {
+		final Entry old = _byId.remove(blockId);
+		if (old != null) {
+			_trees.get(old.getKind()).delete(old);
+			if (old.getKind() == Kind.DEFAULT_UNAVAILABLE) {
+				_defaultWeek = null;
+			}
+		}
+		return old;
+	}
+
+	/**
+	 * Treap ordered by (start, blockId), each node augmented with the largest end in its subtree so that whole
+	 * subtrees ending before the query range can be skipped.
+	 */
+	private static class IntervalTree {
+
+		private static class Node {
+			private final Entry	_entry;
+			private final int	_priority;
+			private long		_maxEnd;
+			private Node		_left;
+			private Node		_right;
+
+			private Node(final Entry entry, final int priority) {
+				_entry = entry;
+				_priority = priority;
+				_maxEnd = entry.getEnd();
+			}
+		}
+
+		private final Random	_random;
+		private Node			_root;
+
+		private IntervalTree() {
+			_random = new Random();
+		}
+
+		private void clear() {
+			_root = null;
+		}
+
+		private void insert(final Entry entry) {
+			_root = insert(_root, new Node(entry, _random.nextInt()));
+		}
+
+		private void delete(final Entry entry) {
+			_root = delete(_root, entry);
+		}
+
+		private void collectOverlapping(final long lo, final long hi, final List<Entry> results) {
+			collect(_root, lo, hi, results);
+		}
+
+		private boolean hasOverlapping(final long lo, final long hi) {
+			Node node = _root;
+			while (node != null && node._maxEnd >= lo) {
+				if (node._entry.getStart() <= hi && node._entry.getEnd() >= lo) {
+					return true;
+				}
+				// If the left subtree reaches the range, any overlap must be there or nowhere to the right
+				if (node._left != null && node._left._maxEnd >= lo) {
+					node = node._left;
+				} else if (node._entry.getStart() > hi) {
+					return false;
+				} else {
+					node = node._right;
+				}
+			}
+			return false;
+		}
+
+		private static int compare(final Entry a, final Entry b) {
+			final int byStart = Long.compare(a.getStart(), b.getStart());
+			return (byStart != 0) ? byStart : a.getBlockId().compareTo(b.getBlockId());
+		}
+
+		private static Node insert(final Node root, final Node node) {
+			if (root == null) {
+				return node;
+			}
+			if (compare(node._entry, root._entry) < 0) {
+				root._left = insert(root._left, node);
+				if (root._left._priority > root._priority) {
+					return rotateRight(root);
+				}
+			} else {
+				root._right = insert(root._right, node);
+				if (root._right._priority > root._priority) {
+					return rotateLeft(root);
+				}
+			}
+			update(root);
+			return root;
+		}
+
+		private static Node delete(final Node root, final Entry entry) {
+			if (root == null) {
+				return null;
+			}
+			final int cmp = compare(entry, root._entry);
+			if (cmp < 0) {
+				root._left = delete(root._left, entry);
+			} else if (cmp > 0) {
+				root._right = delete(root._right, entry);
+			} else {
+				return join(root._left, root._right);
+			}
+			update(root);
+			return root;
+		}
+
+		private static Node join(final Node left, final Node right) {
+			if (left == null) {
+				return right;
+			}
+			if (right == null) {
+				return left;
+			}
+			if (left._priority > right._priority) {
+				left._right = join(left._right, right);
+				update(left);
+				return left;
+			}
+			right._left = join(left, right._left);
+			update(right);
+			return right;
+		}
+
+		private static void collect(final Node node, final long lo, final long hi, final List<Entry> results) {
+			// Nothing in this subtree ends late enough to reach the range
+			if (node == null || node._maxEnd < lo) {
+				return;
+			}
+			collect(node._left, lo, hi, results);
+
+			// This node and everything to its right start after the range
+			if (node._entry.getStart() > hi) {
+				return;
+			}
+			if (node._entry.getEnd() >= lo) {
+				results.add(node._entry);
+			}
+			collect(node._right, lo, hi, results);
+		}
+
+		private static Node rotateRight(final Node node) {
+			final Node pivot = node._left;
+			node._left = pivot._right;
+			pivot._right = node;
+			update(node);
+			update(pivot);
+			return pivot;
+		}
+
+		private static Node rotateLeft(final Node node) {
+			final Node pivot = node._right;
+			node._right = pivot._left;
+			pivot._left = node;
+			update(node);
+			update(pivot);
+			return pivot;
+		}
+
+		private static void update(final Node node) {
+			long maxEnd = node._entry.getEnd();
+			if (node._left != null && node._left._maxEnd > maxEnd) {
+				maxEnd = node._left._maxEnd;
+			}
+			if (node._right != null && node._right._maxEnd > maxEnd) {
+				maxEnd = node._right._maxEnd;
+			}
+			node._maxEnd = maxEnd;
+		}
+	}
+}
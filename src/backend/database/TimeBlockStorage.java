@@ -6,13 +6,17 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.TreeSet;
-
-import org.h2.jdbcx.JdbcConnectionPool;
+import java.util.Map;
+import java.util.Set;
 
+import data.Assignment;
 import data.AssignmentBlock;
+import data.ITask;
 import data.ITimeBlockable;
 import data.Task;
 import data.TimeOfDay;
@@ -37,130 +41,97 @@ public class TimeBlockStorage {
 		queries.add(Utilities.buildCreateString("TIME_BLOCK", blockCols));
 	}
 	
+	/**
+	 * Populates the in-memory index with every row of the TIME_BLOCK table
+	 * 
+	 * @param index TimeBlockIndex to populate; any existing entries are dropped
+	 * @param pool StatementPool for retrieving connection to the database
+	 * @throws StorageServiceException When the TIME_BLOCK table could not be read
+	 */
+	protected static void loadIndex(final TimeBlockIndex index, final StatementPool pool)
+			throws StorageServiceException {
+		index.clear();
+		try (Connection con = pool.getConnection()) {
+			try (PreparedStatement statement = con.prepareStatement(Utilities.SELECT_ALL_TIME_BLOCKS)) {
+				final ResultSet blockResults = statement.executeQuery();
+				while (blockResults.next()) {
+					index.put(new TimeBlockIndex.Entry(blockResults.getString("BLOCK_ID"), blockResults
+							.getString("TASK_ID"), blockResults.getLong("BLOCK_START"), blockResults
+							.getLong("BLOCK_END"), blockResults.getBoolean("BLOCK_MOVABLE"), blockResults
+							.getBoolean("BLOCK_DEFAULT"), blockResults.getLong("BLOCK_VERSION")));
+				}
+			}
+		} catch (final SQLException e) {
+			throw new StorageServiceException("TimeBlockStorage: loadIndex: could not load time blocks: "
+				+ e.getMessage());
+		}
+	}
+	
 	/**
 	 * Gets all Unavailable Blocks within the specified range
 	 * 
+	 * Custom blocks come from one range query over the index. Every week in the range without a custom block gets the
+	 * cached default week, shifted into place. Where two blocks share a start time, only one is returned, custom
+	 * blocks taking precedence.
+	 * 
 	 * @param date1 Lower bound for the date range
 	 * @param date2 Upper bound for the date range
-	 * @param pool JdbcConnectionPool for retrieving connection to the database
+	 * @param index TimeBlockIndex mirroring the TIME_BLOCK table
 	 * @return List of all the blocks that fall COMPLETELY within these bounds
 	 */
 	protected static List<UnavailableBlock> getAllUnavailableBlocksWithinRange(final Date date1, final Date date2,
-			final JdbcConnectionPool pool) {
-		PreparedStatement modifiedStatement = null;
-		PreparedStatement defaultStatement = null;
-		Connection con = null;
-		final TreeSet<UnavailableBlock> results = new TreeSet<>();
+			final TimeBlockIndex index) {
+		final ArrayList<UnavailableBlock> blocks = new ArrayList<>();
 		
 		// Defensive programming in case the date1 is not earlier than date2
 		final Date earlier = (date1.compareTo(date2) < 0) ? date1 : date2;
 		final Date later = (date2.compareTo(date1) > 0) ? date2 : date1;
 		
-		final ArrayList<DateRange> ranges = TimeBlockStorage.splitIntoWeekRanges(earlier, later);
+		for (final TimeBlockIndex.Entry entry : index.findOverlapping(TimeBlockIndex.Kind.CUSTOM_UNAVAILABLE,
+				earlier.getTime(), later.getTime())) {
+			final UnavailableBlock block = new UnavailableBlock(entry.getBlockId(), new Date(entry.getStart()),
+					new Date(entry.getEnd()), null, entry.isMovable());
+			block.setVersion(entry.getVersion());
+			blocks.add(block);
+		}
 		
-		try {
-			Class.forName("org.h2.Driver");
-			con = pool.getConnection();
-			
-			for (final DateRange range : ranges) {
-				modifiedStatement = con.prepareStatement(Utilities.SELECT_CUSTOM_UNAVAILABLE_BLOCKS_BY_DATE);
-				Utilities.setValues(modifiedStatement, range.start.getTime(), range.end.getTime(),
-						range.start.getTime(), range.end.getTime(), range.start.getTime(), range.end.getTime());
-				ResultSet blockResults = modifiedStatement.executeQuery();
-				
-				int numResults = 0;
-				while (blockResults.next()) {
-					final String blockId = blockResults.getString("BLOCK_ID");
-					final Date blockStart = new Date(blockResults.getLong("BLOCK_START"));
-					final Date blockEnd = new Date(blockResults.getLong("BLOCK_END"));
-					final boolean blockMovable = blockResults.getBoolean("BLOCK_MOVABLE");
-					
-					results.add(new UnavailableBlock(blockId, blockStart, blockEnd, null, blockMovable));
-					numResults++;
-				}
-				
-				// No custom unavailable blocks this week, so return the default set!
-				if (numResults == 0) {
-					defaultStatement = con.prepareStatement(Utilities.SELECT_DEFAULT_UNAVAILABLE_BLOCKS);
-					blockResults = defaultStatement.executeQuery();
-					
-					// We need to bring the date of all of the default timeBlocks to this week
-					final Calendar cal = Calendar.getInstance();
-					cal.setFirstDayOfWeek(Calendar.SUNDAY);
-					cal.setTime(range.start);
-					cal.set(Calendar.DAY_OF_WEEK, Calendar.SUNDAY);
-					cal.set(Calendar.HOUR_OF_DAY, 0);
-					cal.set(Calendar.MINUTE, 0);
-					cal.set(Calendar.SECOND, 0);
-					cal.set(Calendar.MILLISECOND, 0);
-					final long msWeekStartNow = cal.getTimeInMillis();
-					cal.setTime(new Date(0));
-					cal.add(Calendar.DAY_OF_YEAR, 3);
-					final long msWeekStartDefault = cal.getTimeInMillis();
-					final long msModifier = msWeekStartNow - msWeekStartDefault;
-					
-					while (blockResults.next()) {
-						// Getting all of the required fields to reconstruct the UnavailableBlock
-						final String blockId = blockResults.getString("BLOCK_ID");
-						
-						long blockStartTest = blockResults.getLong("BLOCK_START"); 
-						long blockEndTest = blockResults.getLong("BLOCK_END");
-						
-						final Date blockStart = new Date(blockResults.getLong("BLOCK_START") + msModifier);
-						final Date blockEnd = new Date(blockResults.getLong("BLOCK_END") + msModifier);
-						final boolean blockMovable = blockResults.getBoolean("BLOCK_MOVABLE");
-						
-						boolean test1 = (blockStart.compareTo(range.start) >= 0 && blockStart.compareTo(range.end) <= 0);
-						boolean test2 = (blockEnd.compareTo(range.start) >= 0 && blockEnd.compareTo(range.end) <= 0); 
-						boolean test3 = (blockStart.compareTo(range.start) <= 0 && blockEnd.compareTo(range.end) >= 0); 
-						
-						if ((blockStart.compareTo(range.start) >= 0 && blockStart.compareTo(range.end) <= 0)
-							|| (blockEnd.compareTo(range.start) >= 0 && blockEnd.compareTo(range.end) <= 0)
-							|| (blockStart.compareTo(range.start) <= 0 && blockEnd.compareTo(range.end) >= 0)) {
-							results.add(new UnavailableBlock(blockId, blockStart, blockEnd, null, blockMovable));
-						}
-					}
-					
-					int i = 0; 
+		// No custom unavailable blocks in a week, so fill that week with the default set!
+		final DefaultWeek defaultWeek = index.getDefaultWeek();
+		if (!defaultWeek.isEmpty()) {
+			for (final DateRange range : TimeBlockStorage.splitIntoWeekRanges(earlier, later)) {
+				final long rangeStart = range.start.getTime();
+				final long rangeEnd = range.end.getTime();
+				if (!index.hasOverlapping(TimeBlockIndex.Kind.CUSTOM_UNAVAILABLE, rangeStart, rangeEnd)) {
+					defaultWeek.expandInto(DefaultWeek.getWeekStart(range.start), rangeStart, rangeEnd, blocks);
 				}
 			}
-		} catch (final ClassNotFoundException e) {
-			Utilities.printException("TimeBlockStorage: getAllUnavailableBlocksWithinRange: "
-				+ "db drive class not found", e);
-		} catch (final SQLException e) {
-			Utilities.printSQLException("TimeBlockStorage: getAllUnavailableBlocksWithinRange: "
-				+ "could not retrieve unavailable blocks", e);
 		}
-		finally {
-			try {
-				if (modifiedStatement != null) {
-					modifiedStatement.close();
-				}
-				if (defaultStatement != null) {
-					defaultStatement.close();
-				}
-				if (con != null) {
-					con.close();
-				}
-			} catch (final SQLException x) {
-				Utilities.printSQLException("TimeBlockStorage: getAllUnavailableBlocksWithinRange: "
-					+ "could not close resource", x);
+		
+		// Stable sort keeps the custom blocks ahead of any default block with the same start
+		Collections.sort(blocks);
+		final ArrayList<UnavailableBlock> results = new ArrayList<>(blocks.size());
+		for (final UnavailableBlock block : blocks) {
+			if (results.isEmpty() || results.get(results.size() - 1).compareTo(block) != 0) {
+				results.add(block);
 			}
 		}
-		
-		return new ArrayList<UnavailableBlock>(results);
+		return results;
 	}
 	
 	/**
 	 * Gets all Assignment Blocks within the specified range
 	 * 
+	 * Candidate blocks come from the index; their Tasks are then fetched in a single query. Blocks whose Task is no
+	 * longer in the database are left out, as they were by the old TIME_BLOCK/TASK join.
+	 * 
 	 * @param date1 Lower bound for the date range
 	 * @param date2 Upper bound for the date range
-	 * @param pool JdbcConnectionPool for retrieving connection to the database
+	 * @param index TimeBlockIndex mirroring the TIME_BLOCK table
+	 * @param pool StatementPool for retrieving connection to the database
 	 * @return List of all the blocks that fall COMPLETELY within these bounds
 	 */
 	protected static List<AssignmentBlock> getAllAssignmentBlocksWithinRange(final Date date1, final Date date2,
-			final JdbcConnectionPool pool) {
+			final TimeBlockIndex index, final StatementPool pool) {
 		PreparedStatement statement = null;
 		Connection con = null;
 		final ArrayList<AssignmentBlock> results = new ArrayList<>();
@@ -169,38 +140,56 @@ public class TimeBlockStorage {
 		final Date earlier = (date1.compareTo(date2) < 0) ? date1 : date2;
 		final Date later = (date2.compareTo(date1) > 0) ? date2 : date1;
 		
+		final List<TimeBlockIndex.Entry> entries = index.findOverlapping(TimeBlockIndex.Kind.ASSIGNMENT,
+				earlier.getTime(), later.getTime());
+		if (entries.isEmpty()) {
+			return results;
+		}
+		
+		final Set<String> taskIds = new HashSet<>();
+		for (final TimeBlockIndex.Entry entry : entries) {
+			taskIds.add(entry.getTaskId());
+		}
+		
 		try {
-			Class.forName("org.h2.Driver");
 			con = pool.getConnection();
 			
-			statement = con.prepareStatement(Utilities.SELECT_ASSIGNMENT_BLOCKS_BY_DATE);
-			Utilities.setValues(statement, earlier.getTime(), later.getTime(), earlier.getTime(), later.getTime(),
-					earlier.getTime(), later.getTime());
-			final ResultSet blockResults = statement.executeQuery();
+			statement = con.prepareStatement(Utilities.SELECT_TASKS_BY_IDS);
+			Utilities.setValues(statement, (Object) taskIds.toArray());
+			final ResultSet taskResults = statement.executeQuery();
 			
-			while (blockResults.next()) {
-				final String blockId = blockResults.getString("BLOCK_ID");
-				final String taskId = blockResults.getString("TIME_BLOCK.TASK_ID");
-				final Date blockStart = new Date(blockResults.getLong("BLOCK_START"));
-				final Date blockEnd = new Date(blockResults.getLong("BLOCK_END"));
-				final boolean blockMovable = blockResults.getBoolean("BLOCK_MOVABLE");
-				
-				final String asgnId = blockResults.getString("ASGN_ID");
-				final String taskName = blockResults.getString("TASK_NAME");
-				final int taskNumber = blockResults.getInt("TASK_TASK_NUMBER");
-				final double taskPercentTotal = blockResults.getDouble("TASK_PERCENT_TOTAL");
-				final double taskPercentComplete = blockResults.getDouble("TASK_PERCENT_COMPLETE");
-				final String timeOfDay = blockResults.getString("TASK_TIME_OF_DAY");
+			final Map<String, Task> tasks = new HashMap<>();
+			while (taskResults.next()) {
+				final String taskId = taskResults.getString("TASK_ID");
+				final String asgnId = taskResults.getString("ASGN_ID");
+				final String taskName = taskResults.getString("TASK_NAME");
+				final int taskNumber = taskResults.getInt("TASK_TASK_NUMBER");
+				final double taskPercentTotal = taskResults.getDouble("TASK_PERCENT_TOTAL");
+				final double taskPercentComplete = taskResults.getDouble("TASK_PERCENT_COMPLETE");
+				final String timeOfDay = taskResults.getString("TASK_TIME_OF_DAY");
 				final TimeOfDay taskTimeOfDay = TimeOfDay.valueOf(timeOfDay);
-				final double taskSuggestedLength = blockResults.getDouble("TASK_SUGGESTED_LENGTH");
+				final double taskSuggestedLength = taskResults.getDouble("TASK_SUGGESTED_LENGTH");
 				
 				final Task task = new Task(taskId, taskName, taskNumber, taskPercentTotal, asgnId, taskPercentComplete,
 						taskTimeOfDay, taskSuggestedLength);
-				results.add(new AssignmentBlock(blockId, blockStart, blockEnd, task, blockMovable));
+				task.setVersion(taskResults.getLong("TASK_VERSION"));
+				tasks.put(taskId, task);
+			}
+			
+			for (final TimeBlockIndex.Entry entry : entries) {
+				final Task task = tasks.get(entry.getTaskId());
+				if (task != null) {
+					// Each block gets its own Task instance, as it did when every row was read from the join
+					final Task blockTask = new Task(task.getTaskID(), task.getName(), task.getTaskNumber(),
+							task.getPercentOfTotal(), task.getAssignmentID(), task.getPercentComplete(),
+							task.getPreferredTimeOfDay(), task.getSuggestedBlockLength());
+					blockTask.setVersion(task.getVersion());
+					final AssignmentBlock block = new AssignmentBlock(entry.getBlockId(), new Date(entry.getStart()),
+							new Date(entry.getEnd()), blockTask, entry.isMovable());
+					block.setVersion(entry.getVersion());
+					results.add(block);
+				}
 			}
-		} catch (final ClassNotFoundException e) {
-			Utilities.printException("TimeBlockStorage: getAllAssignmentBlocksWithinRange: "
-				+ "db drive class not found", e);
 		} catch (final SQLException e) {
 			Utilities.printSQLException("TimeBlockStorage: getAllAssignmentBlocksWithinRange: "
 				+ "could not retrieve assignment blocks", e);
@@ -226,16 +215,15 @@ public class TimeBlockStorage {
 	 * Gets an Assignment Block
 	 * 
 	 * @param blockId Id of the Assignment Block in question
-	 * @param pool JdbcConnectionPool for retrieving connection to the database
+	 * @param pool StatementPool for retrieving connection to the database
 	 * @return AssignmentBlock corresponding to the given id
 	 */
-	protected static AssignmentBlock getAssignmentBlock(final String blockId, final JdbcConnectionPool pool) {
+	protected static AssignmentBlock getAssignmentBlock(final String blockId, final StatementPool pool) {
 		PreparedStatement statement = null;
 		Connection con = null;
 		AssignmentBlock block = null;
 		
 		try {
-			Class.forName("org.h2.Driver");
 			con = pool.getConnection();
 			
 			statement = con.prepareStatement(Utilities.SELECT_ASSIGNMENT_BLOCK_BY_ID);
@@ -262,10 +250,10 @@ public class TimeBlockStorage {
 			
 			final Task task = new Task(taskId, taskName, taskNumber, taskPercentTotal, asgnId, taskPercentComplete,
 					taskTimeOfDay, taskSuggestedLength);
+			task.setVersion(blockResults.getLong("TASK_VERSION"));
 			
 			block = new AssignmentBlock(id, blockStart, blockEnd, task, blockMovable);
-		} catch (final ClassNotFoundException e) {
-			Utilities.printException("TimeBlockStorage: getAssignmentBlock: " + "db drive class not found", e);
+			block.setVersion(blockResults.getLong("BLOCK_VERSION"));
 		} catch (final SQLException e) {
 			Utilities.printSQLException("TimeBlockStorage: getAssignmentBlock: " + "could not retrieve time block", e);
 		}
@@ -289,16 +277,15 @@ public class TimeBlockStorage {
 	 * Get an Unavailable Block
 	 * 
 	 * @param blockId Block id of the unavailable block
-	 * @param pool JdbcConnectionPool for retrieving connection to the database
+	 * @param pool StatementPool for retrieving connection to the database
 	 * @return UnavailableBlock found corresponding to the given id
 	 */
-	protected static UnavailableBlock getUnavailableBlock(final String blockId, final JdbcConnectionPool pool) {
+	protected static UnavailableBlock getUnavailableBlock(final String blockId, final StatementPool pool) {
 		PreparedStatement statement = null;
 		Connection con = null;
 		UnavailableBlock block = null;
 		
 		try {
-			Class.forName("org.h2.Driver");
 			con = pool.getConnection();
 			
 			statement = con.prepareStatement(Utilities.SELECT_UNAVAILABLE_BLOCK_BY_ID);
@@ -314,8 +301,7 @@ public class TimeBlockStorage {
 			final boolean blockMovable = blockResults.getBoolean("BLOCK_MOVABLE");
 			
 			block = new UnavailableBlock(id, blockStart, blockEnd, null, blockMovable);
-		} catch (final ClassNotFoundException e) {
-			Utilities.printException("TimeBlockStorage: getUnavailableBlock: " + "db drive class not found", e);
+			block.setVersion(blockResults.getLong("BLOCK_VERSION"));
 		} catch (final SQLException e) {
 			Utilities.printSQLException("TimeBlockStorage: getUnavailableBlock: " + "could not retrieve time block", e);
 		}
@@ -339,23 +325,23 @@ public class TimeBlockStorage {
 	 * Adds a Time Block
 	 * 
 	 * @param block Block to be stored in the database
-	 * @param pool JdbcConnectionPool for retrieving connection to the database
+	 * @param index TimeBlockIndex to keep in sync once the block is committed
+	 * @param pool StatementPool for retrieving connection to the database
 	 * @throws StorageServiceException When the TimeBlock's associated Task is not in the database
 	 */
-	protected static void addTimeBlock(final ITimeBlockable block, final JdbcConnectionPool pool)
-			throws StorageServiceException {
+	protected static void addTimeBlock(final ITimeBlockable block, final TimeBlockIndex index,
+			final StatementPool pool) throws StorageServiceException {
 		PreparedStatement blockStatement = null;
 		PreparedStatement taskStatement = null;
 		Connection con = null;
 		
 		try {
-			Class.forName("org.h2.Driver");
 			con = pool.getConnection();
 			
 			con.setAutoCommit(false);
 			blockStatement = con.prepareStatement(Utilities.INSERT_TIME_BLOCK);
 			Utilities.setValues(blockStatement, block.getId(), block.getTaskId(), block.getStart().getTime(), block
-					.getEnd().getTime(), block.isMovable(), false);
+					.getEnd().getTime(), block.isMovable(), false, 0);
 			blockStatement.execute();
 			
 			// Only perform this check for assignment blocks
@@ -385,8 +371,9 @@ public class TimeBlockStorage {
 			
 			// commit to the database
 			con.commit();
-		} catch (final ClassNotFoundException e) {
-			Utilities.printException("TimeBlockStorage: addTimeBlock: db drive class not found", e);
+			block.setVersion(0);
+			index.put(new TimeBlockIndex.Entry(block.getId(), block.getTaskId(), block.getStart().getTime(), block
+					.getEnd().getTime(), block.isMovable(), false));
 		} catch (final SQLException e) {
 			Utilities.printSQLException("TimeBlockStorage: addTimeBlock: " + "attempting to roll back transaction", e);
 			if (con != null) {
@@ -423,12 +410,13 @@ public class TimeBlockStorage {
 	 * All unavailable blocks passed in will be ignored. 
 	 * 
 	 * @param blockList List of blocks to to be added to or updated in the database
-	 * @param pool JdbcConnectionPool for retrieving connection to the database
+	 * @param index TimeBlockIndex to keep in sync once the blocks are committed
+	 * @param pool StatementPool for retrieving connection to the database
 	 * @return A list of INVALID TimeBlocks (that is, those whose associated Task cannot be found in the database) that
 	 *         were NOT added/updated
 	 */
 	protected static List<ITimeBlockable> mergeAllTimeBlocks(final List<ITimeBlockable> blockList,
-			final JdbcConnectionPool pool) {
+			final TimeBlockIndex index, final StatementPool pool) {
 		final List<ITimeBlockable> blocksNotAdded = new ArrayList<>();
 		final List<ITimeBlockable> blocksToAdd = new ArrayList<>();
 		PreparedStatement blockStatement = null;
@@ -436,28 +424,22 @@ public class TimeBlockStorage {
 		Connection con = null;
 		
 		try {
-			Class.forName("org.h2.Driver");
 			con = pool.getConnection();
 			
 			con.setAutoCommit(false);
 			
+			// Check to see that the tasks associated with the time blocks have been added to the db
+			taskStatement = con.prepareStatement(Utilities.SELECT_TASK_IDS_BY_IDS);
+			final Set<String> storedTaskIds = getStoredTaskIds(taskStatement, blockList);
+			
 			for (final ITimeBlockable block : blockList) {
 				// Only perform this check for assignment blocks
 				if (!block.getTaskId().matches("")) {
-					// Check to see that the task associated with the time block has been added to the db
-					taskStatement = con.prepareStatement(Utilities.SELECT_TASK_BY_ID);
-					Utilities.setValues(taskStatement, block.getTaskId());
-					final ResultSet rs = taskStatement.executeQuery();
-					int numTasks = 0;
-					while (rs.next()) {
-						numTasks++;
-					}
-					
-					// If the associated task is not in the db, rollback and throw and exception
-					if (numTasks == 0) {
-						blocksNotAdded.add(block);
-					} else {
+					// If the associated task is not in the db, the block is not added
+					if (storedTaskIds.contains(block.getTaskId())) {
 						blocksToAdd.add(block);
+					} else {
+						blocksNotAdded.add(block);
 					}
 				}
 			}
@@ -472,8 +454,10 @@ public class TimeBlockStorage {
 			
 			// commit to the database
 			con.commit();
-		} catch (final ClassNotFoundException e) {
-			Utilities.printException("TimeBlockStorage: mergeAllTimeBlocks: db drive class not found", e);
+			for (final ITimeBlockable block : blocksToAdd) {
+				block.setVersion(index.merge(block.getId(), block.getTaskId(), block.getStart().getTime(), block
+						.getEnd().getTime(), block.isMovable()));
+			}
 		} catch (final SQLException e) {
 			Utilities.printSQLException("TimeBlockStorage: mergeAllTimeBlocks: "
 				+ "attempting to roll back transaction", e);
@@ -507,21 +491,23 @@ public class TimeBlockStorage {
 	}
 	
 	/**
-	 * Update TimeBlock with new start date, end date and associated task values
+	 * Update TimeBlock with new start date, end date and associated task values, if its row is still at the block's
+	 * version. The block's version moves on once the update is committed.
 	 * 
 	 * @param block Updated block
-	 * @param pool JdbcConnectionPool for retrieving connection to the database
+	 * @param index TimeBlockIndex to keep in sync once the update is committed
+	 * @param pool StatementPool for retrieving connection to the database
 	 * @return Block that was passed in, for chaining calls
 	 * @throws StorageServiceException Thrown when the TimeBlock's associated Task cannot be found in the database
+	 * @throws StaleDataException Thrown when the block's row was changed or removed since the block was read
 	 */
-	protected static ITimeBlockable updateTimeBlock(final ITimeBlockable block, final JdbcConnectionPool pool)
-			throws StorageServiceException {
+	protected static ITimeBlockable updateTimeBlock(final ITimeBlockable block, final TimeBlockIndex index,
+			final StatementPool pool) throws StorageServiceException {
 		PreparedStatement blockStatement = null;
 		PreparedStatement taskStatement = null;
 		Connection con = null;
 		
 		try {
-			Class.forName("org.h2.Driver");
 			con = pool.getConnection();
 			
 			con.setAutoCommit(false);
@@ -553,13 +539,19 @@ public class TimeBlockStorage {
 			
 			blockStatement = con.prepareStatement(Utilities.UPDATE_TIME_BLOCK);
 			Utilities.setValues(blockStatement, block.getStart().getTime(), block.getEnd().getTime(),
-					block.getTaskId(), block.getId());
-			blockStatement.execute();
+					block.getTaskId(), block.getId(), block.getVersion());
+			
+			// If the row is no longer at the block's version, someone else got there first
+			if (blockStatement.executeUpdate() == 0) {
+				con.rollback();
+				throw new StaleDataException("TimeBlockStorage: updateTimeBlock: TimeBlock " + block.getId()
+					+ " was changed since it was read");
+			}
 			
 			// commit to the database
 			con.commit();
-		} catch (final ClassNotFoundException e) {
-			Utilities.printException("TimeBlockStorage: updateTimeBlock: db drive class not found", e);
+			block.setVersion(block.getVersion() + 1);
+			index.update(block.getId(), block.getTaskId(), block.getStart().getTime(), block.getEnd().getTime());
 		} catch (final SQLException e) {
 			Utilities.printSQLException("TimeBlockStorage: updateTimeBlock: " + "attempting to roll back transaction",
 					e);
@@ -591,19 +583,187 @@ public class TimeBlockStorage {
 		return block;
 	}
 	
+	/**
+	 * Update the start date, end date and associated task of several TimeBlocks in one transaction. Versions are not
+	 * checked: whatever is stored is overwritten, and left at the version of the block written over it.
+	 * 
+	 * @param blockList Updated blocks
+	 * @param index TimeBlockIndex to keep in sync once the updates are committed
+	 * @param pool StatementPool for retrieving connection to the database
+	 * @return A list of INVALID TimeBlocks (that is, those whose associated Task cannot be found in the database) that
+	 *         were NOT updated
+	 */
+	protected static List<ITimeBlockable> updateAllTimeBlocks(final List<ITimeBlockable> blockList,
+			final TimeBlockIndex index, final StatementPool pool) {
+		final List<ITimeBlockable> blocksNotUpdated = new ArrayList<>();
+		final List<ITimeBlockable> blocksToUpdate = new ArrayList<>();
+		PreparedStatement taskStatement = null;
+		PreparedStatement blockStatement = null;
+		Connection con = null;
+		
+		try {
+			con = pool.getConnection();
+			
+			con.setAutoCommit(false);
+			
+			// Check to see that the tasks associated with the time blocks have been added to the db
+			taskStatement = con.prepareStatement(Utilities.SELECT_TASK_IDS_BY_IDS);
+			final Set<String> storedTaskIds = getStoredTaskIds(taskStatement, blockList);
+			
+			for (final ITimeBlockable block : blockList) {
+				// Only perform this check for assignment blocks
+				if (block.getTaskId().matches("") || storedTaskIds.contains(block.getTaskId())) {
+					blocksToUpdate.add(block);
+				} else {
+					blocksNotUpdated.add(block);
+				}
+			}
+			
+			blockStatement = con.prepareStatement(Utilities.FORCE_UPDATE_TIME_BLOCK);
+			for (final ITimeBlockable block : blocksToUpdate) {
+				Utilities.setValues(blockStatement, block.getStart().getTime(), block.getEnd().getTime(),
+						block.getTaskId(), block.getVersion(), block.getId());
+				blockStatement.addBatch();
+			}
+			blockStatement.executeBatch();
+			
+			// commit to the database
+			con.commit();
+			for (final ITimeBlockable block : blocksToUpdate) {
+				index.update(block.getId(), block.getTaskId(), block.getStart().getTime(), block.getEnd().getTime(),
+						block.getVersion());
+			}
+		} catch (final SQLException e) {
+			Utilities.printSQLException("TimeBlockStorage: updateAllTimeBlocks: "
+				+ "attempting to roll back transaction", e);
+			if (con != null) {
+				try {
+					con.rollback();
+				} catch (final SQLException x) {
+					Utilities.printSQLException("TimeBlockStorage: updateAllTimeBlocks: "
+						+ "could not roll back transaction", x);
+				}
+			}
+		}
+		finally {
+			try {
+				if (taskStatement != null) {
+					taskStatement.close();
+				}
+				if (blockStatement != null) {
+					blockStatement.close();
+				}
+				if (con != null) {
+					con.setAutoCommit(true);
+					con.close();
+				}
+			} catch (final SQLException x) {
+				Utilities.printSQLException("TimeBlockStorage: updateAllTimeBlocks: could not close resource", x);
+			}
+		}
+		return blocksNotUpdated;
+	}
+	
+	/**
+	 * Update the start date, end date and associated task of several TimeBlocks in one transaction, all or nothing.
+	 * Every block's row must still be at the block's version; the versions move on once the update is committed.
+	 * 
+	 * @param blockList Updated blocks, assignment or unavailable
+	 * @param index TimeBlockIndex to keep in sync once the update is committed
+	 * @param pool StatementPool for retrieving connection to the database
+	 * @throws StorageServiceException Thrown when an associated Task cannot be found in the database, or the
+	 *             transaction failed; nothing was updated
+	 * @throws StaleDataException Thrown when a block's row was changed or removed since the block was read; nothing
+	 *             was updated
+	 */
+	protected static void updateTimeBlocks(final List<ITimeBlockable> blockList, final TimeBlockIndex index,
+			final StatementPool pool) throws StorageServiceException {
+		PreparedStatement taskStatement = null;
+		PreparedStatement blockStatement = null;
+		Connection con = null;
+		
+		try {
+			con = pool.getConnection();
+			
+			con.setAutoCommit(false);
+			
+			// Check to see that the tasks associated with the time blocks have been added to the db
+			taskStatement = con.prepareStatement(Utilities.SELECT_TASK_IDS_BY_IDS);
+			final Set<String> storedTaskIds = getStoredTaskIds(taskStatement, blockList);
+			for (final ITimeBlockable block : blockList) {
+				// Only perform this check for assignment blocks
+				if (!block.getTaskId().matches("") && !storedTaskIds.contains(block.getTaskId())) {
+					con.rollback();
+					throw new StorageServiceException("TimeBlockStorage: updateTimeBlocks: "
+						+ "TimeBlock's associated Task must be in the database.");
+				}
+			}
+			
+			blockStatement = con.prepareStatement(Utilities.UPDATE_TIME_BLOCK);
+			for (final ITimeBlockable block : blockList) {
+				Utilities.setValues(blockStatement, block.getStart().getTime(), block.getEnd().getTime(),
+						block.getTaskId(), block.getId(), block.getVersion());
+				blockStatement.addBatch();
+			}
+			final int stale = firstUnchanged(blockStatement.executeBatch());
+			if (stale != -1) {
+				con.rollback();
+				throw new StaleDataException("TimeBlockStorage: updateTimeBlocks: TimeBlock "
+					+ blockList.get(stale).getId() + " was changed since it was read");
+			}
+			
+			// commit to the database
+			con.commit();
+			for (final ITimeBlockable block : blockList) {
+				block.setVersion(block.getVersion() + 1);
+				index.update(block.getId(), block.getTaskId(), block.getStart().getTime(), block.getEnd().getTime());
+			}
+		} catch (final SQLException e) {
+			Utilities.printSQLException("TimeBlockStorage: updateTimeBlocks: " + "attempting to roll back transaction",
+					e);
+			if (con != null) {
+				try {
+					con.rollback();
+				} catch (final SQLException x) {
+					Utilities.printSQLException("TimeBlockStorage: updateTimeBlocks: "
+						+ "could not roll back transaction", x);
+				}
+			}
+			throw new StorageServiceException("TimeBlockStorage: updateTimeBlocks: could not update blocks: "
+				+ e.getMessage());
+		}
+		finally {
+			try {
+				if (taskStatement != null) {
+					taskStatement.close();
+				}
+				if (blockStatement != null) {
+					blockStatement.close();
+				}
+				if (con != null) {
+					con.setAutoCommit(true);
+					con.close();
+				}
+			} catch (final SQLException x) {
+				Utilities.printSQLException("TimeBlockStorage: updateTimeBlocks: could not close resource", x);
+			}
+		}
+	}
+	
 	/**
 	 * Remove TimeBlock from the database
 	 * 
 	 * @param block Block to remove from the database
-	 * @param pool JdbcConnectionPool for retrieving connection to the database
+	 * @param index TimeBlockIndex to keep in sync once the removal is committed
+	 * @param pool StatementPool for retrieving connection to the database
 	 * @return Block that was removed, for chaining callsA
 	 */
-	protected static ITimeBlockable removeTimeBlock(final ITimeBlockable block, final JdbcConnectionPool pool) {
+	protected static ITimeBlockable removeTimeBlock(final ITimeBlockable block, final TimeBlockIndex index,
+			final StatementPool pool) {
 		PreparedStatement blockStatement = null;
 		Connection con = null;
 		
 		try {
-			Class.forName("org.h2.Driver");
 			con = pool.getConnection();
 			
 			con.setAutoCommit(false);
@@ -613,8 +773,7 @@ public class TimeBlockStorage {
 			
 			// commit to the database
 			con.commit();
-		} catch (final ClassNotFoundException e) {
-			Utilities.printException("TimeBlockStorage: removeTimeBlock: db drive class not found", e);
+			index.remove(block.getId());
 		} catch (final SQLException e) {
 			Utilities.printSQLException("TimeBlockStorage: removeTimeBlock: " + "attempting to roll back transaction",
 					e);
@@ -647,15 +806,15 @@ public class TimeBlockStorage {
 	 * Add all default unavailable blocks from the startup survey
 	 * 
 	 * @param blockList List of default unavailable blocks to add
-	 * @param pool JdbcConnectionPool for retrieving connection to the database
+	 * @param index TimeBlockIndex to keep in sync once the blocks are committed
+	 * @param pool StatementPool for retrieving connection to the database
 	 */
 	protected static void addAllDefaultUnavailableBlocks(final List<UnavailableBlock> blockList,
-			final JdbcConnectionPool pool) {
+			final TimeBlockIndex index, final StatementPool pool) {
 		PreparedStatement blockStatement = null;
 		Connection con = null;
 		
 		try {
-			Class.forName("org.h2.Driver");
 			con = pool.getConnection();
 			
 			con.setAutoCommit(false);
@@ -663,7 +822,7 @@ public class TimeBlockStorage {
 			blockStatement = con.prepareStatement(Utilities.INSERT_TIME_BLOCK);
 			for (final ITimeBlockable block : blockList) {
 				Utilities.setValues(blockStatement, block.getId(), block.getTaskId(), block.getStart().getTime(), block
-						.getEnd().getTime(), block.isMovable(), true);
+						.getEnd().getTime(), block.isMovable(), true, 0);
 				blockStatement.addBatch();
 			}
 			
@@ -671,8 +830,10 @@ public class TimeBlockStorage {
 			
 			// commit to the database
 			con.commit();
-		} catch (final ClassNotFoundException e) {
-			Utilities.printException("TimeBlockStorage: addAllDefaultUnavailableBlocks: db drive class not found", e);
+			for (final ITimeBlockable block : blockList) {
+				index.put(new TimeBlockIndex.Entry(block.getId(), block.getTaskId(), block.getStart().getTime(), block
+						.getEnd().getTime(), block.isMovable(), true));
+			}
 		} catch (final SQLException e) {
 			Utilities.printSQLException("TimeBlockStorage: addAllDefaultUnavailableBlocks: "
 				+ "attempting to roll back transaction", e);
@@ -705,10 +866,11 @@ public class TimeBlockStorage {
 	 * @param startDate
 	 * @param endDate
 	 * @param blockList
-	 * @param pool JdbcConnectionPool for retrieving connection to the database
+	 * @param index TimeBlockIndex to keep in sync once the replacement is committed
+	 * @param pool StatementPool for retrieving connection to the database
 	 */
 	public static void replaceUnavailableBlocks(final Date startDate, final Date endDate,
-			final List<? extends ITimeBlockable> blockList, final JdbcConnectionPool pool) {
+			final List<? extends ITimeBlockable> blockList, final TimeBlockIndex index, final StatementPool pool) {
 		PreparedStatement deleteBlockStatement = null;
 		PreparedStatement blockStatement = null;
 		Connection con = null;
@@ -717,7 +879,6 @@ public class TimeBlockStorage {
 		final Date later = (endDate.compareTo(startDate) > 0) ? endDate : startDate;
 		
 		try {
-			Class.forName("org.h2.Driver");
 			con = pool.getConnection();
 			
 			con.setAutoCommit(false);
@@ -732,7 +893,7 @@ public class TimeBlockStorage {
 			blockStatement = con.prepareStatement(Utilities.INSERT_TIME_BLOCK);
 			for (final ITimeBlockable block : blockList) {
 				Utilities.setValues(blockStatement, block.getId(), block.getTaskId(), block.getStart().getTime(), block
-						.getEnd().getTime(), block.isMovable(), false);
+						.getEnd().getTime(), block.isMovable(), false, 0);
 				blockStatement.addBatch();
 			}
 			
@@ -740,8 +901,11 @@ public class TimeBlockStorage {
 			
 			// commit to the database
 			con.commit();
-		} catch (final ClassNotFoundException e) {
-			Utilities.printException("TimeBlockStorage: replaceUnavailableBlocks: db drive class not found", e);
+			index.removeOverlapping(TimeBlockIndex.Kind.CUSTOM_UNAVAILABLE, earlier.getTime(), later.getTime());
+			for (final ITimeBlockable block : blockList) {
+				index.put(new TimeBlockIndex.Entry(block.getId(), block.getTaskId(), block.getStart().getTime(), block
+						.getEnd().getTime(), block.isMovable(), false));
+			}
 		} catch (final SQLException e) {
 			Utilities.printSQLException("TimeBlockStorage: replaceUnavailableBlocks: "
 				+ "attempting to roll back transaction", e);
@@ -773,9 +937,233 @@ public class TimeBlockStorage {
 		}
 	}
 	
+	/**
+	 * Applies the inserts, moves, deletes and Task updates recorded in a change set in one transaction
+	 * 
+	 * As with mergeAllTimeBlocks, inserted and moved unavailable blocks are ignored, and assignment blocks whose Task
+	 * cannot be found in the database are rejected rather than written.
+	 * 
+	 * Moved blocks and updated Tasks are compared against the versions they were read at. If any row has moved on,
+	 * nothing is written. Otherwise their versions move on once the changes are committed; so does the version of the
+	 * Assignment of each updated Task.
+	 * 
+	 * @param changes Changes to apply
+	 * @param index TimeBlockIndex to keep in sync once the changes are committed
+	 * @param assignments Cache of assignments; the Assignments of updated Tasks are evicted once the changes are
+	 *            committed
+	 * @param pool StatementPool for retrieving connection to the database
+	 * @return A list of INVALID TimeBlocks (that is, those whose associated Task cannot be found in the database) that
+	 *         were NOT added/updated
+	 * @throws StorageServiceException Thrown when the transaction failed, or (as a StaleDataException) when a moved
+	 *             block or an updated Task was changed since it was read; nothing was written
+	 */
+	protected static List<ITimeBlockable> applyTimeBlockChanges(final TimeBlockChangeSet changes,
+			final TimeBlockIndex index, final Cache<Assignment> assignments, final StatementPool pool)
+			throws StorageServiceException {
+		final List<ITimeBlockable> blocksNotAdded = new ArrayList<>();
+		final List<ITimeBlockable> blocksToInsert = new ArrayList<>();
+		final List<ITimeBlockable> blocksToMove = new ArrayList<>();
+		final List<ITimeBlockable> blocksToDelete = changes.getDeleted();
+		final List<ITimeBlockable> inserted = changes.getInserted();
+		final List<ITimeBlockable> moved = changes.getMoved();
+		final List<ITask> tasksToUpdate = changes.getUpdatedTasks();
+		PreparedStatement taskStatement = null;
+		PreparedStatement insertStatement = null;
+		PreparedStatement moveStatement = null;
+		PreparedStatement deleteStatement = null;
+		PreparedStatement taskUpdateStatement = null;
+		PreparedStatement assignmentStatement = null;
+		Connection con = null;
+		
+		try {
+			con = pool.getConnection();
+			
+			con.setAutoCommit(false);
+			
+			// Check to see that the tasks associated with the time blocks have been added to the db
+			final List<ITimeBlockable> written = new ArrayList<>(inserted);
+			written.addAll(moved);
+			taskStatement = con.prepareStatement(Utilities.SELECT_TASK_IDS_BY_IDS);
+			final Set<String> storedTaskIds = getStoredTaskIds(taskStatement, written);
+			
+			// Only assignment blocks are written
+			for (final ITimeBlockable block : inserted) {
+				if (!block.getTaskId().matches("")) {
+					if (storedTaskIds.contains(block.getTaskId())) {
+						blocksToInsert.add(block);
+					} else {
+						blocksNotAdded.add(block);
+					}
+				}
+			}
+			for (final ITimeBlockable block : moved) {
+				if (!block.getTaskId().matches("")) {
+					if (storedTaskIds.contains(block.getTaskId())) {
+						blocksToMove.add(block);
+					} else {
+						blocksNotAdded.add(block);
+					}
+				}
+			}
+			
+			insertStatement = con.prepareStatement(Utilities.MERGE_TIME_BLOCK);
+			for (final ITimeBlockable block : blocksToInsert) {
+				Utilities.setValues(insertStatement, block.getId(), block.getTaskId(), block.getStart().getTime(),
+						block.getEnd().getTime(), block.isMovable());
+				insertStatement.addBatch();
+			}
+			insertStatement.executeBatch();
+			
+			moveStatement = con.prepareStatement(Utilities.UPDATE_TIME_BLOCK);
+			for (final ITimeBlockable block : blocksToMove) {
+				Utilities.setValues(moveStatement, block.getStart().getTime(), block.getEnd().getTime(),
+						block.getTaskId(), block.getId(), block.getVersion());
+				moveStatement.addBatch();
+			}
+			final int staleBlock = firstUnchanged(moveStatement.executeBatch());
+			if (staleBlock != -1) {
+				con.rollback();
+				throw new StaleDataException("TimeBlockStorage: applyTimeBlockChanges: TimeBlock "
+					+ blocksToMove.get(staleBlock).getId() + " was changed since it was read");
+			}
+			
+			// Updating a Task changes its Assignment too
+			taskUpdateStatement = con.prepareStatement(Utilities.UPDATE_TASK);
+			assignmentStatement = con.prepareStatement(Utilities.TOUCH_ASGN);
+			for (final ITask task : tasksToUpdate) {
+				Utilities.setValues(taskUpdateStatement, task.getName(), task.getPercentOfTotal(),
+						task.getPercentComplete(), task.getPreferredTimeOfDay().name(), task.getSuggestedBlockLength(),
+						task.getTaskID(), task.getVersion());
+				taskUpdateStatement.addBatch();
+				Utilities.setValues(assignmentStatement, task.getAssignmentID());
+				assignmentStatement.addBatch();
+			}
+			final int staleTask = firstUnchanged(taskUpdateStatement.executeBatch());
+			if (staleTask != -1) {
+				con.rollback();
+				throw new StaleDataException("TimeBlockStorage: applyTimeBlockChanges: Task "
+					+ tasksToUpdate.get(staleTask).getTaskID() + " was changed since it was read");
+			}
+			assignmentStatement.executeBatch();
+			
+			deleteStatement = con.prepareStatement(Utilities.DELETE_TIME_BLOCK);
+			for (final ITimeBlockable block : blocksToDelete) {
+				Utilities.setValues(deleteStatement, block.getId());
+				deleteStatement.addBatch();
+			}
+			deleteStatement.executeBatch();
+			
+			// commit to the database
+			con.commit();
+			for (final ITimeBlockable block : blocksToInsert) {
+				block.setVersion(index.merge(block.getId(), block.getTaskId(), block.getStart().getTime(), block
+						.getEnd().getTime(), block.isMovable()));
+			}
+			for (final ITimeBlockable block : blocksToMove) {
+				block.setVersion(block.getVersion() + 1);
+				index.update(block.getId(), block.getTaskId(), block.getStart().getTime(), block.getEnd().getTime());
+			}
+			for (final ITimeBlockable block : blocksToDelete) {
+				index.remove(block.getId());
+			}
+			for (final ITask task : tasksToUpdate) {
+				task.setVersion(task.getVersion() + 1);
+				assignments.invalidate(task.getAssignmentID());
+			}
+		} catch (final SQLException e) {
+			Utilities.printSQLException("TimeBlockStorage: applyTimeBlockChanges: "
+				+ "attempting to roll back transaction", e);
+			if (con != null) {
+				try {
+					con.rollback();
+				} catch (final SQLException x) {
+					Utilities.printSQLException("TimeBlockStorage: applyTimeBlockChanges: "
+						+ "could not roll back transaction", x);
+				}
+			}
+			throw new StorageServiceException("TimeBlockStorage: applyTimeBlockChanges: could not apply changes: "
+				+ e.getMessage());
+		}
+		finally {
+			try {
+				if (taskStatement != null) {
+					taskStatement.close();
+				}
+				if (insertStatement != null) {
+					insertStatement.close();
+				}
+				if (moveStatement != null) {
+					moveStatement.close();
+				}
+				if (deleteStatement != null) {
+					deleteStatement.close();
+				}
+				if (taskUpdateStatement != null) {
+					taskUpdateStatement.close();
+				}
+				if (assignmentStatement != null) {
+					assignmentStatement.close();
+				}
+				con.setAutoCommit(true);
+				if (con != null) {
+					con.close();
+				}
+			} catch (final SQLException x) {
+				Utilities.printSQLException("TimeBlockStorage: applyTimeBlockChanges: could not close resource", x);
+			}
+		}
+		
+		return blocksNotAdded;
+	}
+	
 	/*
 	 * Helper methods and classes
 	 */
+	
+	/**
+	 * Finds which of the blocks' Tasks are stored in the database, using one query for all of them
+	 * 
+	 * @param taskStatement Prepared SELECT_TASK_IDS_BY_IDS statement
+	 * @param blocks Blocks whose Tasks should be looked up; unavailable blocks are skipped
+	 * @return Set of the Task ids that were found
+	 * @throws SQLException When the Tasks could not be looked up
+	 */
+	private static Set<String> getStoredTaskIds(final PreparedStatement taskStatement,
+			final List<? extends ITimeBlockable> blocks) throws SQLException {
+		final Set<String> taskIds = new HashSet<>();
+		for (final ITimeBlockable block : blocks) {
+			if (!block.getTaskId().matches("")) {
+				taskIds.add(block.getTaskId());
+			}
+		}
+		
+		final Set<String> storedTaskIds = new HashSet<>();
+		if (!taskIds.isEmpty()) {
+			Utilities.setValues(taskStatement, (Object) taskIds.toArray());
+			final ResultSet rs = taskStatement.executeQuery();
+			while (rs.next()) {
+				storedTaskIds.add(rs.getString("TASK_ID"));
+			}
+		}
+		return storedTaskIds;
+	}
+	
+	/**
+	 * Finds the first statement of a batch of compare-and-set updates that matched no row, because the row was changed
+	 * or removed since it was read
+	 * 
+	 * @param counts Update counts returned by executeBatch
+	 * @return Index of the first statement that updated nothing, or -1 if every statement updated its row
+	 */
+	private static int firstUnchanged(final int[] counts) {
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] == 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
 	// Public for testing
 	public static ArrayList<DateRange> splitIntoWeekRanges(final Date earlier, final Date later) {
 		final ArrayList<DateRange> ranges = new ArrayList<>();
@@ -0,0 +1,272 @@
+package backend.database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import data.AssignmentBlock;
+import data.ITimeBlockable;
+import data.UnavailableBlock;
+import frontend.Utils;
+
+/**
+ * Queues TimeBlock updates and writes them to a backend in batches, so that interactive edits (dragging or resizing
+ * blocks, which commit a BlockMovePlan) do not wait for a commit each.
+ *
+ * Updates are coalesced per block: only the latest bounds of a block are kept until the next flush. A background
+ * thread flushes everything queued in one transaction every interval, or as soon as the number of queued blocks reaches
+ * the threshold. Until a block is written, getPending and overlay let reads see the queued state instead of the stored
+ * one.
+ *
+ * Updates are validated when they are flushed rather than when they are queued, so updates to blocks whose Task is not
+ * in the database are reported then and dropped.
+ *
+ * Versions are checked when a block is queued, against its queued state if it has one and the stored row otherwise,
+ * so an update made from an out of date copy is refused as it would be by the backend. Queueing a block moves its
+ * version on, as writing it would, and the flush leaves the stored row at that version, so the caller's block, queued
+ * reads and the stored row all agree on it and a later compare-and-set from any of them goes through.
+ */
+public class TimeBlockWriteBehind {
+
+	private final IStorageBackend				_backend;
+	private final int							_threshold;
+	private final ScheduledExecutorService		_flusher;
+
+	// Guarded by this
+	private Map<String, ITimeBlockable>			_pending;
+	private Map<String, ITimeBlockable>			_inFlight;
+
+	// Held while a batch is written, so batches reach the backend in the order they were queued
+	private final Object						_flushLock;
+
+	/**
+	 * @param backend Backend the updates are written to
+	 * @param interval Longest time an update stays queued
+	 * @param unit Unit of interval
+	 * @param threshold Number of queued blocks that triggers a flush straight away
+	 */
+	public TimeBlockWriteBehind(final IStorageBackend backend, final long interval, final TimeUnit unit,
+			final int threshold) {
+		if (interval <= 0 || threshold <= 0) {
+			throw new IllegalArgumentException("TimeBlockWriteBehind: interval and threshold must be positive");
+		}
+
+		_backend = backend;
+		_threshold = threshold;
+		_pending = new LinkedHashMap<>();
+		_inFlight = Collections.emptyMap();
+		_flushLock = new Object();
+		_flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(final Runnable r) {
+				final Thread thread = new Thread(r, "TimeBlockWriteBehind");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		_flusher.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				flush();
+			}
+		}, interval, interval, unit);
+	}
+
+	/**
+	 * Queue an update of a block's start date, end date and associated task. The values are copied, so later changes to
+	 * the block are not written unless it is queued again. The block's version moves on by one.
+	 *
+	 * @param block Updated block
+	 * @return Block that was passed in, for chaining calls
+	 * @throws StaleDataException if the block is gone or changed since it was read; nothing was queued
+	 */
+	public ITimeBlockable enqueue(final ITimeBlockable block) throws StaleDataException {
+		enqueueAll(Collections.singletonList(block));
+		return block;
+	}
+
+	/**
+	 * Queue updates of several blocks at once. They are queued together, so they are all written in the same flush.
+	 *
+	 * @param blocks Updated blocks
+	 * @throws StaleDataException if any block is gone or changed since it was read; nothing was queued
+	 */
+	public void enqueueAll(final List<ITimeBlockable> blocks) throws StaleDataException {
+		final boolean full;
+		synchronized (this) {
+			for (final ITimeBlockable block : blocks) {
+				checkVersion(block);
+			}
+			for (final ITimeBlockable block : blocks) {
+				block.setVersion(block.getVersion() + 1);
+				_pending.put(block.getId(), copy(block));
+			}
+			full = _pending.size() >= _threshold;
+		}
+		if (full) {
+			_flusher.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					flush();
+				}
+			});
+		}
+	}
+
+	/**
+	 * @param blockId Id of the block
+	 * @return Queued state of the block not yet written, or null if there is none
+	 */
+	public synchronized ITimeBlockable getPending(final String blockId) {
+		final ITimeBlockable pending = _pending.get(blockId);
+		return pending != null ? pending : _inFlight.get(blockId);
+	}
+
+	/**
+	 * Apply the queued updates to blocks read from the backend
+	 *
+	 * @param stored Blocks of one type read from the backend for [date1, date2]
+	 * @param date1 One end of the range that was read
+	 * @param date2 Other end of the range that was read
+	 * @param type Type of block that was read
+	 * @return Blocks as they will be once the queue is flushed, ordered by start
+	 */
+	public <T extends ITimeBlockable> List<T> overlay(final List<T> stored, final Date date1, final Date date2,
+			final Class<T> type) {
+		final long earlier = Math.min(date1.getTime(), date2.getTime());
+		final long later = Math.max(date1.getTime(), date2.getTime());
+
+		final Map<String, ITimeBlockable> queued = new LinkedHashMap<>();
+		synchronized (this) {
+			if (_pending.isEmpty() && _inFlight.isEmpty()) {
+				return stored;
+			}
+			queued.putAll(_inFlight);
+			queued.putAll(_pending);
+		}
+
+		final List<T> results = new ArrayList<>();
+		for (final T block : stored) {
+			if (!queued.containsKey(block.getId())) {
+				results.add(block);
+			}
+		}
+		// Queued blocks may have moved into or out of the range
+		for (final ITimeBlockable block : queued.values()) {
+			if (type.isInstance(block) && block.getStart().getTime() <= later && block.getEnd().getTime() >= earlier) {
+				results.add(type.cast(block));
+			}
+		}
+		Collections.sort(results, new Comparator<T>() {
+
+			@Override
+			public int compare(final T b1, final T b2) {
+				return Long.compare(b1.getStart().getTime(), b2.getStart().getTime());
+			}
+		});
+		return results;
+	}
+
+	/**
+	 * Drop the queued update of a block, if there is one
+	 *
+	 * @param blockId Id of the block
+	 */
+	public synchronized void discard(final String blockId) {
+		_pending.remove(blockId);
+	}
+
+	/**
+	 * Drop every queued update
+	 */
+	public synchronized void discardAll() {
+		_pending.clear();
+	}
+
+	/**
+	 * Write everything queued so far in one transaction, waiting until it is written
+	 */
+	public void flush() {
+		synchronized (_flushLock) {
+			final List<ITimeBlockable> batch;
+			synchronized (this) {
+				if (_pending.isEmpty()) {
+					return;
+				}
+				_inFlight = _pending;
+				_pending = new LinkedHashMap<>();
+				batch = new ArrayList<>(_inFlight.values());
+			}
+
+			try {
+				final List<ITimeBlockable> rejected = _backend.updateAllTimeBlocks(batch);
+				for (final ITimeBlockable block : rejected) {
+					Utils.printError("TimeBlockWriteBehind: flush: TimeBlock " + block.getId()
+						+ " was not updated because its associated Task is not in the database");
+				}
+			} finally {
+				synchronized (this) {
+					_inFlight = Collections.emptyMap();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stop the background flusher after writing everything queued
+	 */
+	public void shutdown() {
+		_flusher.shutdown();
+		try {
+			_flusher.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flush();
+	}
+
+	/*
+	 * Helper methods
+	 */
+
+	/**
+	 * Caller must hold the lock on this
+	 *
+	 * @throws StaleDataException if the block is gone or at another version
+	 */
+	private void checkVersion(final ITimeBlockable block) throws StaleDataException {
+		ITimeBlockable current = getPending(block.getId());
+		if (current == null) {
+			current = (block instanceof AssignmentBlock) ? _backend.getAssignmentBlock(block.getId()) : _backend
+					.getUnavailableBlock(block.getId());
+		}
+		if (current == null || current.getVersion() != block.getVersion()) {
+			throw new StaleDataException("TimeBlockWriteBehind: enqueue: TimeBlock " + block.getId()
+				+ " was changed since it was read");
+		}
+	}
+
+	private static ITimeBlockable copy(final ITimeBlockable block) {
+		final Date start = new Date(block.getStart().getTime());
+		final Date end = new Date(block.getEnd().getTime());
+		final ITimeBlockable copy;
+		if (block instanceof AssignmentBlock) {
+			copy = new AssignmentBlock(block.getId(), start, end, block.getTask(), block.isMovable());
+		} else {
+			copy = new UnavailableBlock(block.getId(), start, end, block.getTask(), block.isMovable());
+		}
+		copy.setVersion(block.getVersion());
+		return copy;
+	}
+}
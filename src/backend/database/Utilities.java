@@ -12,22 +12,60 @@ public abstract class Utilities {
 	 * Misc SQL statements
 	 */
 	
-	protected static final String	DROP_ALL_TABLES										= "DROP TABLE IF EXISTS ASSIGNMENT, TASK, TEMPLATE, TEMPLATE_STEP, TIME_BLOCK, SETTING";
+	protected static final String	DROP_ALL_TABLES										= "DROP TABLE IF EXISTS ASSIGNMENT, TASK, TEMPLATE, TEMPLATE_STEP, TIME_BLOCK, SETTING, SCHEMA_VERSION";
+	
+	protected static final String	SELECT_TABLE_BY_NAME								= "SELECT TABLE_NAME FROM INFORMATION_SCHEMA.TABLES "
+																							+ "WHERE TABLE_SCHEMA = SCHEMA() AND TABLE_NAME = ? ";
+	
+	/*
+	 * Schema migration SQL statements
+	 */
+	
+	protected static final String	CREATE_SCHEMA_VERSION								= "CREATE TABLE IF NOT EXISTS SCHEMA_VERSION "
+																							+ "(SCHEMA_ID INT NOT NULL PRIMARY KEY, SCHEMA_VERSION INT NOT NULL)";
+	
+	protected static final String	SELECT_SCHEMA_VERSION								= "SELECT SCHEMA_VERSION FROM SCHEMA_VERSION ";
+	
+	protected static final String	MERGE_SCHEMA_VERSION								= "MERGE INTO SCHEMA_VERSION "
+																							+ "(SCHEMA_ID, SCHEMA_VERSION) "
+																							+ "VALUES (?, ?) ";
+	
+	protected static final String	CREATE_TIME_BLOCK_RANGE_INDEX						= "CREATE INDEX IF NOT EXISTS IDX_TIME_BLOCK_RANGE "
+																							+ "ON TIME_BLOCK (BLOCK_MOVABLE, BLOCK_DEFAULT, BLOCK_START, BLOCK_END)";
+	
+	protected static final String	CREATE_TASK_ASGN_INDEX								= "CREATE INDEX IF NOT EXISTS IDX_TASK_ASGN "
+																							+ "ON TASK (ASGN_ID)";
+	
+	protected static final String	CREATE_TEMPLATE_STEP_NUMBER_INDEX					= "CREATE INDEX IF NOT EXISTS IDX_TEMPLATE_STEP_NUMBER "
+																							+ "ON TEMPLATE_STEP (TEMPLATE_ID, STEP_STEP_NUMBER)";
+	
+	protected static final String	ADD_TIME_BLOCK_VERSION								= "ALTER TABLE TIME_BLOCK "
+																							+ "ADD COLUMN IF NOT EXISTS BLOCK_VERSION BIGINT DEFAULT 0 NOT NULL";
+	
+	protected static final String	ADD_TASK_VERSION									= "ALTER TABLE TASK "
+																							+ "ADD COLUMN IF NOT EXISTS TASK_VERSION BIGINT DEFAULT 0 NOT NULL";
+	
+	protected static final String	ADD_ASGN_VERSION									= "ALTER TABLE ASSIGNMENT "
+																							+ "ADD COLUMN IF NOT EXISTS ASGN_VERSION BIGINT DEFAULT 0 NOT NULL";
 	
 	/*
 	 * ITimeBlockable SQL insertion statements
 	 */
 	
 	protected static final String	INSERT_TIME_BLOCK									= "INSERT INTO TIME_BLOCK "
-																							+ "(BLOCK_ID, TASK_ID, BLOCK_START, BLOCK_END, BLOCK_MOVABLE, BLOCK_DEFAULT) "
-																							+ "VALUES (?, ?, ?, ?, ?, ?) ";
+																							+ "(BLOCK_ID, TASK_ID, BLOCK_START, BLOCK_END, BLOCK_MOVABLE, BLOCK_DEFAULT, BLOCK_VERSION) "
+																							+ "VALUES (?, ?, ?, ?, ?, ?, ?) ";
 	
 	protected static final String	MERGE_TIME_BLOCK									= "MERGE INTO TIME_BLOCK "
 																							+ "(BLOCK_ID, TASK_ID, BLOCK_START, BLOCK_END, BLOCK_MOVABLE) "
 																							+ "VALUES (?, ?, ?, ?, ?) ";
 	
 	protected static final String	UPDATE_TIME_BLOCK									= "UPDATE TIME_BLOCK "
-																							+ "SET BLOCK_START = ?, BLOCK_END = ?, TASK_ID = ? "
+																							+ "SET BLOCK_START = ?, BLOCK_END = ?, TASK_ID = ?, BLOCK_VERSION = BLOCK_VERSION + 1 "
+																							+ "WHERE BLOCK_ID = ? AND BLOCK_VERSION = ? ";
+	
+	protected static final String	FORCE_UPDATE_TIME_BLOCK								= "UPDATE TIME_BLOCK "
+																							+ "SET BLOCK_START = ?, BLOCK_END = ?, TASK_ID = ?, BLOCK_VERSION = ? "
 																							+ "WHERE BLOCK_ID = ? ";
 	
 	protected static final String	DELETE_TIME_BLOCK									= "DELETE FROM TIME_BLOCK "
@@ -73,6 +111,9 @@ public abstract class Utilities {
 																							"AND BLOCK_MOVABLE = FALSE AND BLOCK_DEFAULT = FALSE "
 																							+ "ORDER BY TIME_BLOCK.BLOCK_START";
 	
+	protected static final String	SELECT_ALL_TIME_BLOCKS								= "SELECT BLOCK_ID, TASK_ID, BLOCK_START, BLOCK_END, BLOCK_MOVABLE, BLOCK_DEFAULT, BLOCK_VERSION "
+																							+ "FROM TIME_BLOCK ";
+	
 	protected static final String	SELECT_DEFAULT_UNAVAILABLE_BLOCKS					= "SELECT * FROM TIME_BLOCK "
 																							+ "WHERE BLOCK_DEFAULT = TRUE AND BLOCK_MOVABLE = FALSE "
 																							+ "ORDER BY TIME_BLOCK.BLOCK_START";
@@ -94,14 +135,19 @@ public abstract class Utilities {
 	 */
 	
 	protected static final String	INSERT_ASGN											= "INSERT INTO ASSIGNMENT "
-																							+ "(ASGN_ID, ASGN_NAME, ASGN_EXPECTED_HOURS, ASGN_DATE, ASGN_TEMPLATE_ID) "
-																							+ "VALUES (?, ?, ?, ?, ?) ";
+																							+ "(ASGN_ID, ASGN_NAME, ASGN_EXPECTED_HOURS, ASGN_DATE, ASGN_TEMPLATE_ID, ASGN_VERSION) "
+																							+ "VALUES (?, ?, ?, ?, ?, ?) ";
 	
 	protected static final String	DELETE_ASGN											= "DELETE FROM ASSIGNMENT "
 																							+ "WHERE ASGN_ID = ? ";
 	
 	protected static final String	UPDATE_ASGN											= "UPDATE ASSIGNMENT "
-																							+ "SET ASGN_NAME = ?, ASGN_EXPECTED_HOURS = ?, ASGN_DATE = ?, ASGN_TEMPLATE_ID = ? "
+																							+ "SET ASGN_NAME = ?, ASGN_EXPECTED_HOURS = ?, ASGN_DATE = ?, ASGN_TEMPLATE_ID = ?, "
+																							+ "ASGN_VERSION = ASGN_VERSION + 1 "
+																							+ "WHERE ASGN_ID = ? AND ASGN_VERSION = ? ";
+	
+	protected static final String	TOUCH_ASGN											= "UPDATE ASSIGNMENT "
+																							+ "SET ASGN_VERSION = ASGN_VERSION + 1 "
 																							+ "WHERE ASGN_ID = ? ";
 	
 	protected static final String	SELECT_ALL_ASGNS									= "SELECT * FROM ASSIGNMENT "
@@ -127,13 +173,13 @@ public abstract class Utilities {
 	
 	protected static final String	UPDATE_TASK											= "UPDATE TASK "
 																							+ "SET TASK_NAME = ?, TASK_PERCENT_TOTAL = ?, TASK_PERCENT_COMPLETE = ?, "
-																							+ "TASK_TIME_OF_DAY = ?, TASK_SUGGESTED_LENGTH = ? "
-																							+ "WHERE TASK_ID = ? ";
+																							+ "TASK_TIME_OF_DAY = ?, TASK_SUGGESTED_LENGTH = ?, TASK_VERSION = TASK_VERSION + 1 "
+																							+ "WHERE TASK_ID = ? AND TASK_VERSION = ? ";
 	
 	protected static final String	INSERT_TASK											= "INSERT INTO TASK "
 																							+ "(ASGN_ID, TASK_ID, TASK_NAME, TASK_TASK_NUMBER, TASK_PERCENT_TOTAL, TASK_PERCENT_COMPLETE, "
-																							+ "TASK_TIME_OF_DAY, TASK_SUGGESTED_LENGTH) "
-																							+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?) ";
+																							+ "TASK_TIME_OF_DAY, TASK_SUGGESTED_LENGTH, TASK_VERSION) "
+																							+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) ";
 	
 	protected static final String	SELECT_TASKS_BY_DATE								= "SELECT TASK.* FROM TASK "
 																							+ "INNER JOIN ASSIGNMENT "
@@ -144,6 +190,12 @@ public abstract class Utilities {
 	protected static final String	SELECT_TASK_BY_ID									= "SELECT * FROM TASK "
 																							+ "WHERE TASK_ID = ? ";
 	
+	protected static final String	SELECT_TASKS_BY_IDS									= "SELECT * FROM TASK "
+																							+ "WHERE TASK_ID IN (SELECT X FROM TABLE(X VARCHAR = ?)) ";
+	
+	protected static final String	SELECT_TASK_IDS_BY_IDS								= "SELECT TASK_ID FROM TASK "
+																							+ "WHERE TASK_ID IN (SELECT X FROM TABLE(X VARCHAR = ?)) ";
+	
 	protected static final String	DELETE_TASKS_BY_ID									= "DELETE FROM TASK "
 																							+ "WHERE ASGN_ID = ? ";
 	
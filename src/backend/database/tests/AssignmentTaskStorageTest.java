@@ -12,6 +12,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import backend.database.StaleDataException;
 import backend.database.StorageService;
 import backend.database.StorageServiceException;
 import data.Assignment;
@@ -292,6 +293,49 @@ public class AssignmentTaskStorageTest {
 		assertTrue(numMatch == 3);
 	}
 	
+	@Test
+	public void getLastDueDate() {
+		final ArrayList<ITemplateStep> templateSteps = new ArrayList<>();
+		templateSteps.add(new TemplateStep("Step", 1.0, 1));
+		final Template template = new Template("Template", templateSteps);
+	
+		final Date due1 = new Date(System.currentTimeMillis() + (86400 * 1000) * 2);
+		final Date due2 = new Date(System.currentTimeMillis() + (86400 * 1000) * 5);
+		final Assignment assignment1 = new Assignment("Assignment 1", due1, template);
+		final Assignment assignment2 = new Assignment("Assignment 2", due2, template);
+		final Assignment assignment3 = new Assignment("Assignment 3", due2, template);
+	
+		assertTrue(StorageService.getLastDueDate() == null);
+	
+		try {
+			StorageService.addTemplate(template);
+			StorageService.addAssignment(assignment1);
+			StorageService.addAssignment(assignment2);
+			StorageService.addAssignment(assignment3);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+		assertEquals(due2, StorageService.getLastDueDate());
+	
+		// Another Assignment is still due at the same time
+		StorageService.removeAssignment(assignment2);
+		assertEquals(due2, StorageService.getLastDueDate());
+	
+		// Moving the due date earlier is seen without reloading
+		final Assignment moved = new Assignment(assignment3.getID(), assignment3.getName(), new Date(due1.getTime()
+			- 1000), template);
+		try {
+			StorageService.updateAssignment(moved);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+		assertEquals(due1, StorageService.getLastDueDate());
+	
+		StorageService.removeAssignment(assignment1);
+		StorageService.removeAssignment(assignment3);
+		assertTrue(StorageService.getLastDueDate() == null);
+	}
+	
 	@Test
 	public void getAssignmentsWithinRange() {
 		final ArrayList<ITemplateStep> templateSteps = new ArrayList<>();
@@ -373,12 +417,179 @@ public class AssignmentTaskStorageTest {
 		}
 		
 		task.setPercentComplete(0.174);
-		StorageService.updateTask(task);
+		try {
+			StorageService.updateTask(task);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
 		
 		final Assignment afterAsgn = StorageService.getAssignment(asgnId);
 		assertEquals(asgn.fullString(), afterAsgn.fullString());
 	}
 	
+	@Test
+	public void updateStaleTask() {
+		final Date dueDate = new Date();
+		final Template template = new Template("Template 1");
+		template.addStep(new TemplateStep("Step 1", 1.0));
+		final Assignment asgn = new Assignment("Assignment 1", dueDate, template);
+		final Task task = new Task("Task 1", 1, 1, asgn.getID());
+		asgn.addTask(task);
+		
+		try {
+			StorageService.addTemplate(template);
+			StorageService.addAssignment(asgn);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+		
+		// A copy of the task as it was added, which is out of date once the task is updated
+		final Task stale = new Task("Task 1", 1, 1, asgn.getID());
+		assertEquals(task.getTaskID(), stale.getTaskID());
+		
+		task.setPercentComplete(0.5);
+		try {
+			StorageService.updateTask(task);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+		
+		stale.setPercentComplete(0.25);
+		try {
+			StorageService.updateTask(stale);
+			fail("A stale Task was written");
+		} catch (final StaleDataException e) {
+			// Expected
+		}
+		
+		// Updating the task moved its Assignment on too, so the Assignment as it was added is out of date
+		try {
+			StorageService.updateAssignment(asgn);
+			fail("A stale Assignment was written");
+		} catch (final StaleDataException e) {
+			// Expected
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+		
+		final Assignment afterAsgn = StorageService.getAssignment(asgn.getID());
+		assertEquals(0.5, findTask(afterAsgn, task.getTaskID()).getPercentComplete(), 0);
+		
+		// Read again, the change goes through
+		findTask(afterAsgn, task.getTaskID()).setPercentComplete(0.75);
+		try {
+			StorageService.updateAssignment(afterAsgn);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+		assertEquals(0.75, findTask(StorageService.getAssignment(asgn.getID()), task.getTaskID())
+				.getPercentComplete(), 0);
+	}
+	
+	private static ITask findTask(final Assignment asgn, final String taskId) {
+		for (final ITask task : asgn.getTasks()) {
+			if (task.getTaskID().equals(taskId)) {
+				return task;
+			}
+		}
+		return null;
+	}
+	
+	@Test
+	public void assignmentCache() {
+		final Date dueDate = new Date();
+		final Template template = new Template("Template 1");
+		template.addStep(new TemplateStep("Step 1", 1.0));
+		final Assignment asgn = new Assignment("Assignment 1", dueDate, template);
+		final Task task = new Task("Task 1", 1, 1, asgn.getID());
+		asgn.addTask(task);
+		
+		final String asgnId = asgn.getID();
+		
+		try {
+			StorageService.addTemplate(template);
+			StorageService.addAssignment(asgn);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+		
+		// Adding populates the cache
+		long hits = StorageService.getAssignmentCacheHits();
+		long misses = StorageService.getAssignmentCacheMisses();
+		assertEquals(asgn.fullString(), StorageService.getAssignment(asgnId).fullString());
+		assertEquals(hits + 1, StorageService.getAssignmentCacheHits());
+		assertEquals(misses, StorageService.getAssignmentCacheMisses());
+		
+		// Updating a Task evicts its Assignment; the next read goes to the db and repopulates the cache
+		task.setPercentComplete(0.5);
+		try {
+			StorageService.updateTask(task);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+		hits = StorageService.getAssignmentCacheHits();
+		misses = StorageService.getAssignmentCacheMisses();
+		Assignment afterAsgn = StorageService.getAssignment(asgnId);
+		assertTrue(afterAsgn != asgn);
+		assertEquals(asgn.fullString(), afterAsgn.fullString());
+		assertEquals(misses + 1, StorageService.getAssignmentCacheMisses());
+		
+		afterAsgn = StorageService.getAssignment(asgnId);
+		assertEquals(hits + 1, StorageService.getAssignmentCacheHits());
+		
+		// Removing evicts the Assignment
+		StorageService.removeAssignment(asgn);
+		assertTrue(StorageService.getAssignment(asgnId) == null);
+		
+		// The cache does not outlive the db contents
+		try {
+			StorageService.addAssignment(asgn);
+			StorageService.cleanup();
+			StorageService.initialize(false);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+		misses = StorageService.getAssignmentCacheMisses();
+		assertEquals(asgn.fullString(), StorageService.getAssignment(asgnId).fullString());
+		assertEquals(misses + 1, StorageService.getAssignmentCacheMisses());
+	}
+	
+	@Test
+	public void assignmentCacheHandsOutCopies() {
+		final Template template = new Template("Template 1");
+		template.addStep(new TemplateStep("Step 1", 1.0));
+		final Assignment asgn = new Assignment("Assignment 1", new Date(), template);
+		asgn.addTask(new Task("Task 1", 1, 1, asgn.getID()));
+		final String asgnId = asgn.getID();
+		
+		try {
+			StorageService.addTemplate(template);
+			StorageService.addAssignment(asgn);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+		
+		// Changing the added Assignment without writing it doesn't reach the cache
+		asgn.getTasks().get(0).setPercentComplete(0.5);
+		assertEquals(0.0, StorageService.getAssignment(asgnId).getTasks().get(0).getPercentComplete(), 0.0);
+		
+		// Nor does changing an Assignment that was read from it, whether it was cached or loaded
+		final Assignment hit = StorageService.getAssignment(asgnId);
+		assertTrue(hit != StorageService.getAssignment(asgnId));
+		hit.getTasks().get(0).setPercentComplete(0.75);
+		assertEquals(0.0, StorageService.getAssignment(asgnId).getTasks().get(0).getPercentComplete(), 0.0);
+		
+		try {
+			StorageService.cleanup();
+			StorageService.initialize(false);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+		final Assignment loaded = StorageService.getAssignment(asgnId);
+		loaded.getTasks().get(0).setPercentComplete(0.75);
+		assertEquals(0.0, StorageService.getAssignment(asgnId).getTasks().get(0).getPercentComplete(), 0.0);
+	}
+	
 	@Test
 	public void getTasksWithinRange() {
 		final ArrayList<ITemplateStep> templateSteps = new ArrayList<>();
@@ -0,0 +1,129 @@
+package backend.database.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import backend.database.Cache;
+
+public class CacheTest {
+	
+	@Test
+	public void hitsAndMisses() {
+		final Cache<String> cache = new Cache<>();
+		cache.insert("a", "A");
+		
+		assertEquals("A", cache.get("a"));
+		assertTrue(cache.get("b") == null);
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		
+		// contains is not counted
+		assertTrue(cache.contains("a"));
+		assertEquals(1, cache.getHits());
+	}
+	
+	@Test
+	public void evictsLeastRecentlyUsed() {
+		final Cache<String> cache = new Cache<>(2);
+		cache.insert("a", "A");
+		cache.insert("b", "B");
+		
+		// Touch a so that b is the least recently used
+		cache.get("a");
+		cache.insert("c", "C");
+		
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictions());
+		assertTrue(cache.contains("a"));
+		assertFalse(cache.contains("b"));
+		assertTrue(cache.contains("c"));
+	}
+	
+	@Test
+	public void expiresAfterTtl() throws InterruptedException {
+		final Cache<String> cache = new Cache<>(0, 20, TimeUnit.MILLISECONDS);
+		cache.insert("a", "A");
+		assertEquals("A", cache.get("a"));
+		
+		Thread.sleep(40);
+		assertTrue(cache.get("a") == null);
+		assertEquals(1, cache.getEvictions());
+		assertEquals(0, cache.size());
+	}
+	
+	@Test
+	public void invalidate() {
+		final Cache<String> cache = new Cache<>();
+		cache.insert("a", "A");
+		cache.insert("b", "B");
+		
+		assertEquals("A", cache.invalidate("a"));
+		assertFalse(cache.contains("a"));
+		assertTrue(cache.contains("b"));
+		
+		cache.invalidateAll();
+		assertEquals(0, cache.size());
+	}
+	
+	@Test
+	public void loader() {
+		final Cache<String> cache = new Cache<>();
+		final Cache.Loader<String> loader = new Cache.Loader<String>() {
+			@Override
+			public String load(final String key) {
+				return key.equals("missing") ? null : key.toUpperCase();
+			}
+		};
+		
+		assertEquals("A", cache.get("a", loader));
+		assertEquals("A", cache.get("a", loader));
+		assertEquals(1, cache.getLoadCount());
+		assertEquals(1, cache.getHits());
+		
+		// Null results are not cached
+		assertTrue(cache.get("missing", loader) == null);
+		assertFalse(cache.contains("missing"));
+		assertEquals(2, cache.getLoadCount());
+	}
+	
+	@Test
+	public void insertIfUnchanged() {
+		final Cache<String> cache = new Cache<>();
+		long generation = cache.getGeneration();
+		assertTrue(cache.insertIfUnchanged("a", "A", generation));
+		assertEquals("A", cache.get("a"));
+		
+		// An invalidation while loading means the loaded value may be stale
+		generation = cache.getGeneration();
+		cache.invalidate("a");
+		assertFalse(cache.insertIfUnchanged("a", "old A", generation));
+		assertFalse(cache.contains("a"));
+		
+		// As does an insert of a newer value
+		generation = cache.getGeneration();
+		cache.insert("a", "new A");
+		assertFalse(cache.insertIfUnchanged("a", "old A", generation));
+		assertEquals("new A", cache.get("a"));
+	}
+	
+	@Test
+	public void loaderRacingInvalidation() {
+		final Cache<String> cache = new Cache<>();
+		final Cache.Loader<String> loader = new Cache.Loader<String>() {
+			@Override
+			public String load(final String key) {
+				// The value is written and invalidated after this load has read it
+				cache.invalidate(key);
+				return "old " + key;
+			}
+		};
+		
+		assertEquals("old a", cache.get("a", loader));
+		assertFalse(cache.contains("a"));
+	}
+}
@@ -0,0 +1,242 @@
+package backend.database.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import backend.database.MemoryStorageBackend;
+import backend.database.StaleDataException;
+import backend.database.StorageService;
+import backend.database.StorageServiceException;
+import data.Assignment;
+import data.AssignmentBlock;
+import data.IAssignment;
+import data.ITimeBlockable;
+import data.Task;
+import data.Template;
+import data.TemplateStep;
+import data.TimeOfDay;
+import data.UnavailableBlock;
+
+public class MemoryStorageBackendTest {
+
+	@Before
+	public void setUp() {
+		try {
+			StorageService.initialize(new MemoryStorageBackend(), true);
+		} catch (final StorageServiceException e) {
+			e.printStackTrace();
+		}
+	}
+
+	@After
+	public void cleanUp() {
+		StorageService.cleanup();
+	}
+
+	@Test
+	public void assignments() {
+		final Template template = new Template("Template 1");
+		template.addStep(new TemplateStep("Step 1", 1.0));
+		final Date dueDate = new Date();
+		final Assignment asgn = new Assignment("Assignment 1", dueDate, template);
+
+		try {
+			StorageService.addTemplate(template);
+			StorageService.addAssignment(asgn);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+		assertEquals(asgn.fullString(), StorageService.getAssignment(asgn.getID()).fullString());
+
+		// Stored data is a copy of what was passed in
+		asgn.setExpectedHours(7);
+		assertTrue(StorageService.getAssignment(asgn.getID()).getExpectedHours() != 7);
+
+		try {
+			StorageService.updateAssignment(asgn);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+		assertTrue(StorageService.getAssignment(asgn.getID()).getExpectedHours() == 7);
+
+		final List<IAssignment> inRange = StorageService.getAllAssignmentsWithinRange(new Date(dueDate.getTime() - 1000),
+				dueDate);
+		assertEquals(1, inRange.size());
+		assertEquals(0, StorageService.getAllAssignmentsWithinRange(new Date(0), new Date(1000)).size());
+
+		StorageService.removeAssignment(asgn);
+		assertNull(StorageService.getAssignment(asgn.getID()));
+	}
+
+	@Test
+	public void assignmentNeedsTemplate() {
+		final Template template = new Template("Template 1");
+		template.addStep(new TemplateStep("Step 1", 1.0));
+		final Assignment asgn = new Assignment("Assignment 1", new Date(), template);
+
+		try {
+			StorageService.addAssignment(asgn);
+			fail("Assignment was added without its Template");
+		} catch (final StorageServiceException e) {
+			// Expected
+		}
+		assertNull(StorageService.getAssignment(asgn.getID()));
+	}
+
+	@Test
+	public void timeBlocks() {
+		final Template template = new Template("Template 1");
+		template.addStep(new TemplateStep("Step 1", 1.0));
+		final Assignment asgn = new Assignment("Assignment 1", new Date(), template);
+		final Task orphan = new Task("Orphan", 1.0, 1);
+
+		final AssignmentBlock block = new AssignmentBlock(new Date(1000), new Date(2000), asgn.getTasks().get(0));
+		final AssignmentBlock orphanBlock = new AssignmentBlock(new Date(3000), new Date(4000), orphan);
+		final UnavailableBlock unavailable = new UnavailableBlock(new Date(5000), new Date(6000));
+
+		try {
+			StorageService.addTemplate(template);
+			StorageService.addAssignment(asgn);
+			StorageService.addTimeBlock(unavailable);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+
+		final List<ITimeBlockable> blocks = new ArrayList<>();
+		blocks.add(block);
+		blocks.add(orphanBlock);
+		final List<ITimeBlockable> rejected = StorageService.mergeAllTimeBlocks(blocks);
+		assertEquals(1, rejected.size());
+		assertEquals(orphanBlock.getId(), rejected.get(0).getId());
+
+		final List<AssignmentBlock> assignmentBlocks = StorageService.getAllAssignmentBlocksWithinRange(new Date(0),
+				new Date(10000));
+		assertEquals(1, assignmentBlocks.size());
+		assertEquals(block.getId(), assignmentBlocks.get(0).getId());
+		assertEquals(1, StorageService.getAllUnavailableBlocksWithinRange(new Date(0), new Date(10000)).size());
+
+		try {
+			StorageService.addTimeBlock(orphanBlock);
+			fail("TimeBlock was added without its Task");
+		} catch (final StorageServiceException e) {
+			// Expected
+		}
+
+		StorageService.removeTimeBlock(block);
+		assertNull(StorageService.getAssignmentBlock(block.getId()));
+	}
+
+	@Test
+	public void versions() {
+		final Template template = new Template("Template 1");
+		template.addStep(new TemplateStep("Step 1", 1.0));
+		final Assignment asgn = new Assignment("Assignment 1", new Date(), template);
+		final AssignmentBlock block = new AssignmentBlock(new Date(1000), new Date(2000), asgn.getTasks().get(0));
+
+		try {
+			StorageService.addTemplate(template);
+			StorageService.addAssignment(asgn);
+			StorageService.addTimeBlock(block);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+
+		// Both copies are read before either is written, so the second write is refused
+		final AssignmentBlock first = StorageService.getAssignmentBlock(block.getId());
+		final AssignmentBlock second = StorageService.getAssignmentBlock(block.getId());
+		first.setEnd(new Date(3000));
+		second.setEnd(new Date(4000));
+		try {
+			StorageService.updateTimeBlock(first);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+		try {
+			StorageService.updateTimeBlock(second);
+			fail("A stale TimeBlock was written");
+		} catch (final StaleDataException e) {
+			// Expected
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+		assertEquals(first.fullString(), StorageService.getAssignmentBlock(block.getId()).fullString());
+
+		// Same for a Task, and updating a Task moves its Assignment on too
+		final Assignment firstAsgn = StorageService.getAssignment(asgn.getID());
+		final Assignment secondAsgn = StorageService.getAssignment(asgn.getID());
+		firstAsgn.getTasks().get(0).setPercentComplete(0.5);
+		secondAsgn.getTasks().get(0).setPercentComplete(0.25);
+		try {
+			StorageService.updateTask(firstAsgn.getTasks().get(0));
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+		try {
+			StorageService.updateTask(secondAsgn.getTasks().get(0));
+			fail("A stale Task was written");
+		} catch (final StaleDataException e) {
+			// Expected
+		}
+		try {
+			StorageService.updateAssignment(secondAsgn);
+			fail("A stale Assignment was written");
+		} catch (final StaleDataException e) {
+			// Expected
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+		assertEquals(0.5, StorageService.getAssignment(asgn.getID()).getTasks().get(0).getPercentComplete(), 0);
+	}
+
+	@Test
+	public void learnTemplate() {
+		final Template template = new Template("Template 1", 5);
+		template.addStep(new TemplateStep("Step 1", 0.5, 0));
+		template.addStep(new TemplateStep("Step 2", 0.5, 1));
+		final Assignment asgn = new Assignment("Assignment 1", new Date(), template);
+
+		try {
+			StorageService.addTemplate(template);
+			StorageService.addAssignment(asgn);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+
+		StorageService.learnTemplateStepTimeOfDay(asgn.getTasks().get(0), TimeOfDay.MORNING.name(), 20.0);
+		assertEquals(TimeOfDay.MORNING, StorageService.getAssignment(asgn.getID()).getTemplate()
+				.getStepByName("Step 1").getBestTimeToWork());
+
+		StorageService.learnTemplateStepTimeOfDay(asgn.getTasks().get(0), TimeOfDay.AFTERNOON.name(), 25.0);
+		assertEquals(TimeOfDay.AFTERNOON, StorageService.getAssignment(asgn.getID()).getTemplate()
+				.getStepByName("Step 1").getBestTimeToWork());
+
+		StorageService.learnTemplateConsecutiveHours(asgn.getTasks().get(0), 10);
+		assertTrue(StorageService.getTemplate(template.getID()).getPreferredConsecutiveHours() == ((5.0 + 10.0) / 2));
+	}
+
+	@Test
+	public void settings() {
+		assertEquals("", StorageService.getSetting("missing"));
+
+		final Map<String, String> settings = new HashMap<>();
+		settings.put("a", "1");
+		settings.put("b", "2");
+		assertTrue(StorageService.mergeAllSettings(settings));
+		StorageService.mergeSetting("a", "3");
+
+		assertEquals("3", StorageService.getSetting("a"));
+		assertEquals(2, StorageService.getAllSettings().size());
+	}
+}
@@ -0,0 +1,94 @@
+package backend.database.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import backend.database.StatementPool;
+
+public class StatementPoolTest {
+	
+	private JdbcConnectionPool	_pool;
+	private StatementPool		_statements;
+	
+	@Before
+	public void setUp() throws SQLException {
+		_pool = JdbcConnectionPool.create("jdbc:h2:mem:statement_pool_test;DB_CLOSE_DELAY=-1", "", "");
+		_statements = new StatementPool(_pool);
+		try (Connection con = _pool.getConnection(); Statement stmt = con.createStatement()) {
+			stmt.execute("CREATE TABLE IF NOT EXISTS ITEM (ITEM_ID INT PRIMARY KEY)");
+			stmt.execute("DELETE FROM ITEM");
+		}
+	}
+	
+	@After
+	public void tearDown() {
+		_statements.dispose();
+		_pool.dispose();
+	}
+	
+	@Test
+	public void reusesStatements() throws SQLException {
+		Connection con = _statements.getConnection();
+		final PreparedStatement first = con.prepareStatement("INSERT INTO ITEM (ITEM_ID) VALUES (?)");
+		first.setInt(1, 1);
+		first.execute();
+		first.close();
+		con.close();
+		assertTrue(con.isClosed());
+		
+		// The same connection comes back, with the statement still prepared
+		con = _statements.getConnection();
+		final PreparedStatement second = con.prepareStatement("INSERT INTO ITEM (ITEM_ID) VALUES (?)");
+		assertTrue(first == second);
+		second.setInt(1, 2);
+		second.execute();
+		
+		final PreparedStatement count = con.prepareStatement("SELECT COUNT(*) FROM ITEM");
+		final ResultSet rs = count.executeQuery();
+		rs.next();
+		assertEquals(2, rs.getInt(1));
+		con.close();
+	}
+	
+	@Test
+	public void rollsBackUncommittedWork() throws SQLException {
+		Connection con = _statements.getConnection();
+		con.setAutoCommit(false);
+		final PreparedStatement insert = con.prepareStatement("INSERT INTO ITEM (ITEM_ID) VALUES (?)");
+		insert.setInt(1, 1);
+		insert.execute();
+		con.close();
+		
+		con = _statements.getConnection();
+		assertTrue(con.getAutoCommit());
+		final ResultSet rs = con.prepareStatement("SELECT COUNT(*) FROM ITEM").executeQuery();
+		rs.next();
+		assertEquals(0, rs.getInt(1));
+		con.close();
+	}
+	
+	@Test
+	public void closedHandleCannotBeUsed() throws SQLException {
+		final Connection con = _statements.getConnection();
+		con.close();
+		try {
+			con.prepareStatement("SELECT COUNT(*) FROM ITEM");
+			fail("Expected an SQLException");
+		} catch (final SQLException e) {
+			assertFalse(e.getMessage().isEmpty());
+		}
+	}
+}
@@ -85,6 +85,56 @@ public class StorageServiceTest {
 		}
 	}
 	
+	@Test
+	public void upgradeUnversionedDatabase() {
+		try {
+			// Simulate a database created before schema versioning
+			try (Statement stmt = _con.createStatement()) {
+				stmt.execute("DROP TABLE SCHEMA_VERSION");
+				stmt.execute("DROP INDEX IDX_TIME_BLOCK_RANGE");
+			}
+			
+			assertTrue(!StorageService.initialize(false));
+			validateTables();
+			validateIndexes();
+		} catch (final SQLException | StorageServiceException e) {
+			fail("StorageServiceTest: upgradeUnversionedDatabase: could not upgrade tables" + e.getMessage());
+		}
+	}
+	
+	@Test
+	public void createIndexes() {
+		try {
+			validateIndexes();
+		} catch (final SQLException e) {
+			fail("StorageServiceTest: createIndexes: could not create all indexes" + e.getMessage());
+		}
+	}
+	
+	private void validateIndexes() throws SQLException {
+		final ArrayList<String> indexNames = new ArrayList<>();
+		final String query = "SELECT INDEX_NAME FROM INFORMATION_SCHEMA.INDEXES";
+		try (Statement stmt = _con.createStatement()) {
+			final ResultSet rs = stmt.executeQuery(query);
+			while (rs.next()) {
+				indexNames.add(rs.getString("INDEX_NAME"));
+			}
+		}
+		
+		assertTrue(indexNames.contains("IDX_TIME_BLOCK_RANGE"));
+		assertTrue(indexNames.contains("IDX_TASK_ASGN"));
+		assertTrue(indexNames.contains("IDX_TEMPLATE_STEP_NUMBER"));
+		
+		int version = 0;
+		try (Statement stmt = _con.createStatement()) {
+			final ResultSet rs = stmt.executeQuery("SELECT SCHEMA_VERSION FROM SCHEMA_VERSION");
+			while (rs.next()) {
+				version = rs.getInt("SCHEMA_VERSION");
+			}
+		}
+		assertEquals(3, version);
+	}
+	
 	private void validateTables() throws SQLException {
 		// Make sure the correct number of tables are created
 		final ArrayList<String> tableNames = new ArrayList<>();
@@ -96,7 +146,8 @@ public class StorageServiceTest {
 			}
 		}
 		
-		assertTrue(tableNames.size() == 6);
+		assertTrue(tableNames.size() == 7);
+		assertTrue(tableNames.contains("SCHEMA_VERSION"));
 		assertTrue(tableNames.contains("ASSIGNMENT"));
 		assertTrue(tableNames.contains("TASK"));
 		assertTrue(tableNames.contains("TEMPLATE"));
@@ -114,12 +165,13 @@ public class StorageServiceTest {
 			}
 		}
 		
-		assertTrue(asgnCol.size() == 5);
+		assertTrue(asgnCol.size() == 6);
 		assertEquals("VARCHAR(255)", asgnCol.get("ASGN_ID"));
 		assertEquals("VARCHAR(255)", asgnCol.get("ASGN_NAME"));
 		assertEquals("INTEGER(10)", asgnCol.get("ASGN_EXPECTED_HOURS"));
 		assertEquals("BIGINT(19)", asgnCol.get("ASGN_DATE"));
 		assertEquals("VARCHAR(255)", asgnCol.get("ASGN_TEMPLATE_ID"));
+		assertEquals("BIGINT(19)", asgnCol.get("ASGN_VERSION"));
 		
 		// Make sure Task table is correct
 		final HashMap<String, String> taskCol = new HashMap<>();
@@ -131,7 +183,7 @@ public class StorageServiceTest {
 			}
 		}
 		
-		assertTrue(taskCol.size() == 8);
+		assertTrue(taskCol.size() == 9);
 		assertEquals("VARCHAR(255)", taskCol.get("ASGN_ID"));
 		assertEquals("VARCHAR(255)", taskCol.get("TASK_ID"));
 		assertEquals("VARCHAR(255)", taskCol.get("TASK_NAME"));
@@ -140,6 +192,7 @@ public class StorageServiceTest {
 		assertEquals("DOUBLE(17)", taskCol.get("TASK_PERCENT_COMPLETE"));
 		assertEquals("VARCHAR(255)", taskCol.get("TASK_TIME_OF_DAY"));
 		assertEquals("DOUBLE(17)", taskCol.get("TASK_SUGGESTED_LENGTH"));
+		assertEquals("BIGINT(19)", taskCol.get("TASK_VERSION"));
 		
 		// Make sure Template table is correct
 		final HashMap<String, String> templateCol = new HashMap<>();
@@ -185,13 +238,14 @@ public class StorageServiceTest {
 			}
 		}
 		
-		assertTrue(blockCol.size() == 6);
+		assertTrue(blockCol.size() == 7);
 		assertEquals("VARCHAR(255)", blockCol.get("BLOCK_ID"));
 		assertEquals("VARCHAR(255)", blockCol.get("TASK_ID"));
 		assertEquals("BIGINT(19)", blockCol.get("BLOCK_START"));
 		assertEquals("BIGINT(19)", blockCol.get("BLOCK_END"));
 		assertEquals("BOOLEAN(1)", blockCol.get("BLOCK_MOVABLE"));
 		assertEquals("BOOLEAN(1)", blockCol.get("BLOCK_DEFAULT"));
+		assertEquals("BIGINT(19)", blockCol.get("BLOCK_VERSION"));
 		
 		// Make sure Setting table is correct
 		final HashMap<String, String> settingCol = new HashMap<>();
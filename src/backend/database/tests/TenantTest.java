@@ -0,0 +1,160 @@
+package backend.database.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import backend.database.IStorageBackend;
+import backend.database.MemoryStorageBackend;
+import backend.database.StorageService;
+import backend.database.StorageServiceException;
+import data.Template;
+import data.TemplateStep;
+
+public class TenantTest {
+
+	@Before
+	public void setUp() throws StorageServiceException {
+		StorageService.initialize(new MemoryStorageBackend(), true, 2);
+	}
+
+	@After
+	public void cleanUp() {
+		StorageService.leaveTenant();
+		StorageService.cleanup();
+	}
+
+	@Test
+	public void tenantsAreIsolated() throws StorageServiceException {
+		final Template template = newTemplate("Alice's template");
+		StorageService.enterTenant("alice");
+		assertEquals("alice", StorageService.getCurrentTenant());
+		StorageService.addTemplate(template);
+		StorageService.mergeSetting("learner", "false");
+		assertNotNull(StorageService.getTemplate(template.getID()));
+		StorageService.leaveTenant();
+
+		// Neither the default calendar nor another tenant sees it
+		assertNull(StorageService.getCurrentTenant());
+		assertNull(StorageService.getTemplate(template.getID()));
+		StorageService.enterTenant("bob");
+		assertNull(StorageService.getTemplate(template.getID()));
+		assertNotEquals("false", StorageService.getSetting("learner"));
+		StorageService.leaveTenant();
+
+		StorageService.enterTenant("alice");
+		assertNotNull(StorageService.getTemplate(template.getID()));
+		assertEquals("false", StorageService.getSetting("learner"));
+	}
+
+	@Test
+	public void leastRecentlyUsedTenantsAreClosed() throws Exception {
+		StorageService.cleanup();
+		StorageService.initialize(new PersistentMemoryBackend(), true, 2);
+		final Template template = newTemplate("Pinned");
+		final CountDownLatch entered = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(1);
+		final Thread user = new Thread() {
+
+			@Override
+			public void run() {
+				try {
+					StorageService.enterTenant("pinned");
+					StorageService.addTemplate(template);
+					entered.countDown();
+					done.await();
+				} catch (final StorageServiceException | InterruptedException e) {
+					e.printStackTrace();
+				} finally {
+					StorageService.leaveTenant();
+				}
+			}
+		};
+		user.start();
+		assertEquals(true, entered.await(5, TimeUnit.SECONDS));
+
+		// A tenant in use is never closed, however many others are opened
+		for (final String id : new String[] { "a", "b", "c" }) {
+			StorageService.enterTenant(id);
+			StorageService.leaveTenant();
+			assertEquals(2, StorageService.getOpenTenantCount());
+		}
+		done.countDown();
+		user.join();
+		assertEquals(2, StorageService.getOpenTenantCount());
+
+		// These tenants start empty when reopened, so the template shows the pinned tenant stayed open
+		StorageService.enterTenant("pinned");
+		assertNotNull(StorageService.getTemplate(template.getID()));
+		StorageService.leaveTenant();
+		StorageService.enterTenant("a");
+		StorageService.leaveTenant();
+		assertEquals(2, StorageService.getOpenTenantCount());
+	}
+
+	@Test
+	public void memoryTenantsAreNeverClosed() throws StorageServiceException {
+		final Template template = newTemplate("Kept");
+		StorageService.enterTenant("kept");
+		StorageService.addTemplate(template);
+		StorageService.leaveTenant();
+
+		// Closing a memory tenant would lose its calendar, so they stay open past the limit
+		for (final String id : new String[] { "a", "b", "c" }) {
+			StorageService.enterTenant(id);
+			StorageService.leaveTenant();
+		}
+		assertEquals(4, StorageService.getOpenTenantCount());
+		StorageService.enterTenant("kept");
+		assertNotNull(StorageService.getTemplate(template.getID()));
+	}
+
+	@Test
+	public void badTenantsAreRejected() throws StorageServiceException {
+		try {
+			StorageService.enterTenant("../alice");
+			fail("Tenant ids can't name other files");
+		} catch (final IllegalArgumentException e) {
+			assertNull(StorageService.getCurrentTenant());
+		}
+
+		StorageService.enterTenant("alice");
+		try {
+			StorageService.enterTenant("bob");
+			fail("A thread is in one tenant at a time");
+		} catch (final IllegalStateException e) {
+			assertEquals("alice", StorageService.getCurrentTenant());
+		}
+	}
+
+	/**
+	 * A memory backend that claims to be persistent, so that its tenants are closed like H2's without touching disk
+	 */
+	private static class PersistentMemoryBackend extends MemoryStorageBackend {
+
+		@Override
+		public IStorageBackend newTenantBackend(final String tenantId) {
+			return new PersistentMemoryBackend();
+		}
+
+		@Override
+		public boolean isPersistent() {
+			return true;
+		}
+	}
+
+	private static Template newTemplate(final String name) {
+		final Template template = new Template(name);
+		template.addStep(new TemplateStep("Work", 1.0, 0));
+		return template;
+	}
+}
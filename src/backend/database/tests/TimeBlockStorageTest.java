@@ -14,8 +14,10 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import backend.database.StaleDataException;
 import backend.database.StorageService;
 import backend.database.StorageServiceException;
+import backend.database.TimeBlockChangeSet;
 import backend.database.TimeBlockStorage;
 import backend.database.TimeBlockStorage.DateRange;
 import data.Assignment;
@@ -519,6 +521,226 @@ public class TimeBlockStorageTest {
 	 assertEquals(StorageService.getAssignmentBlock(block3.getId()).fullString(), block3.fullString());
 	 }
 	
+	@Test
+	public void mergeAllTimeBlocksChecksEveryTask() {
+		final ArrayList<ITemplateStep> templateSteps = new ArrayList<>();
+		templateSteps.add(new TemplateStep("Step", 1.0, 1));
+		final Template template = new Template("Template", templateSteps);
+		final Assignment assignment = new Assignment("Assignment", new Date(), template);
+		final Task stored1 = new Task("Stored1", 0.5, 1, assignment.getID());
+		assignment.addTask(stored1);
+		final Task stored2 = new Task("Stored2", 0.5, 2, assignment.getID());
+		assignment.addTask(stored2);
+		final Task missing1 = new Task("Missing1", 1, 3, assignment.getID());
+		final Task missing2 = new Task("Missing2", 1, 4, assignment.getID());
+
+		try {
+			StorageService.addTemplate(template);
+			StorageService.addAssignment(assignment);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+
+		// Several blocks share each task, so each distinct task is looked up once for all of them
+		final long now = System.currentTimeMillis();
+		final Task[] tasks = { stored1, missing1, stored2, missing2, stored1, missing1 };
+		final List<ITimeBlockable> blockList = new ArrayList<>();
+		for (int i = 0; i < tasks.length; i++) {
+			blockList.add(new AssignmentBlock(new Date(now + (86400 * 1000) * (i + 2)), new Date(now + (86400 * 1000)
+				* (i + 2) + 3600 * 1000), tasks[i]));
+		}
+		blockList.add(new UnavailableBlock(new Date(now + (86400 * 1000) * 9), new Date(now + (86400 * 1000) * 10)));
+
+		final List<ITimeBlockable> blocksNotAdded = StorageService.mergeAllTimeBlocks(blockList);
+		assertEquals(3, blocksNotAdded.size());
+		assertEquals(blockList.get(1).getId(), blocksNotAdded.get(0).getId());
+		assertEquals(blockList.get(3).getId(), blocksNotAdded.get(1).getId());
+		assertEquals(blockList.get(5).getId(), blocksNotAdded.get(2).getId());
+		for (final int i : new int[] { 0, 2, 4 }) {
+			assertEquals(blockList.get(i).getTaskId(), StorageService.getAssignmentBlock(blockList.get(i).getId())
+					.getTaskId());
+		}
+		for (final int i : new int[] { 1, 3, 5 }) {
+			assertNull(StorageService.getAssignmentBlock(blockList.get(i).getId()));
+		}
+	}
+
+	@Test
+	public void updateTimeBlocksRejectsAMissingTask() {
+		final ArrayList<ITemplateStep> templateSteps = new ArrayList<>();
+		templateSteps.add(new TemplateStep("Step", 1.0, 1));
+		final Template template = new Template("Template", templateSteps);
+		final Assignment assignment = new Assignment("Assignment", new Date(), template);
+		final Task stored = new Task("Stored", 1, 1, assignment.getID());
+		assignment.addTask(stored);
+		final Task missing = new Task("Missing", 1, 2, assignment.getID());
+
+		final long now = System.currentTimeMillis();
+		final AssignmentBlock block1 = new AssignmentBlock(new Date(now + (86400 * 1000) * 2), new Date(now
+			+ (86400 * 1000) * 3), stored);
+		final AssignmentBlock block2 = new AssignmentBlock(new Date(now + (86400 * 1000) * 3), new Date(now
+			+ (86400 * 1000) * 4), stored);
+		try {
+			StorageService.addTemplate(template);
+			StorageService.addAssignment(assignment);
+			StorageService.addTimeBlock(block1);
+			StorageService.addTimeBlock(block2);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+
+		// One block among several pointing at a missing task fails the whole update
+		block1.setStart(new Date(now + (86400 * 1000) * 5));
+		block1.setEnd(new Date(now + (86400 * 1000) * 6));
+		block2.setTask(missing);
+		final List<ITimeBlockable> blockList = new ArrayList<>();
+		blockList.add(block1);
+		blockList.add(block2);
+		try {
+			StorageService.updateTimeBlocks(blockList);
+			fail("A TimeBlock with a missing Task was written");
+		} catch (final StorageServiceException e) {
+			// Expected
+		}
+		assertEquals(now + (86400 * 1000) * 2, StorageService.getAssignmentBlock(block1.getId()).getStart().getTime());
+		assertEquals(stored.getTaskID(), StorageService.getAssignmentBlock(block2.getId()).getTaskId());
+	}
+
+	@Test
+	public void applyTimeBlockChanges() {
+		// Create needed objects
+		final ArrayList<ITemplateStep> templateSteps = new ArrayList<>();
+		templateSteps.add(new TemplateStep("Step", 1.0, 1));
+		final Template template = new Template("Template", templateSteps);
+		final Assignment assignment = new Assignment("Assignment", new Date(), template);
+		final Task task = new Task("Task", 1, 1, assignment.getID());
+		assignment.addTask(task);
+		final Task missingTask = new Task("Missing", 1, 2, assignment.getID());
+
+		final long now = System.currentTimeMillis();
+		final AssignmentBlock moved = new AssignmentBlock(new Date(now + (86400 * 1000) * 2), new Date(now
+			+ (86400 * 1000) * 3), task);
+		final AssignmentBlock untouched = new AssignmentBlock(new Date(now + (86400 * 1000) * 4), new Date(now
+			+ (86400 * 1000) * 5), task);
+		final AssignmentBlock deleted = new AssignmentBlock(new Date(now + (86400 * 1000) * 6), new Date(now
+			+ (86400 * 1000) * 7), task);
+
+		try {
+			StorageService.addTemplate(template);
+			StorageService.addAssignment(assignment);
+			StorageService.addTimeBlock(moved);
+			StorageService.addTimeBlock(untouched);
+			StorageService.addTimeBlock(deleted);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+
+		final TimeBlockChangeSet changes = new TimeBlockChangeSet();
+		final AssignmentBlock inserted = new AssignmentBlock(new Date(now + (86400 * 1000) * 8), new Date(now
+			+ (86400 * 1000) * 9), task);
+		final AssignmentBlock invalid = new AssignmentBlock(new Date(now + (86400 * 1000) * 10), new Date(now
+			+ (86400 * 1000) * 11), missingTask);
+		changes.markInserted(inserted);
+		changes.markInserted(invalid);
+		changes.markMoved(moved);
+		moved.setStart(new Date(now + (86400 * 1000) * 1));
+		moved.setEnd(new Date(now + (86400 * 1000) * 2));
+		changes.markDeleted(deleted);
+
+		// A block marked as moved that ends up where it started is not written
+		changes.markMoved(untouched);
+		assertTrue(changes.getMoved().size() == 1);
+
+		List<ITimeBlockable> blocksNotAdded = null;
+		try {
+			blocksNotAdded = StorageService.applyTimeBlockChanges(changes);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+		assertTrue(blocksNotAdded.size() == 1);
+		assertEquals(blocksNotAdded.get(0).getId(), invalid.getId());
+
+		assertEquals(StorageService.getAssignmentBlock(moved.getId()).fullString(), moved.fullString());
+		assertEquals(StorageService.getAssignmentBlock(inserted.getId()).fullString(), inserted.fullString());
+		assertTrue(StorageService.getAssignmentBlock(deleted.getId()) == null);
+		assertTrue(StorageService.getAllAssignmentBlocksWithinRange(new Date(now),
+				new Date(now + (86400 * 1000) * 12)).size() == 3);
+	}
+
+	@Test
+	public void staleTimeBlockChanges() {
+		// Create needed objects
+		final ArrayList<ITemplateStep> templateSteps = new ArrayList<>();
+		templateSteps.add(new TemplateStep("Step", 1.0, 1));
+		final Template template = new Template("Template", templateSteps);
+		final Assignment assignment = new Assignment("Assignment", new Date(), template);
+		final Task task = new Task("Task", 1, 1, assignment.getID());
+		assignment.addTask(task);
+
+		final long now = System.currentTimeMillis();
+		final AssignmentBlock block = new AssignmentBlock(new Date(now + (86400 * 1000) * 2), new Date(now
+			+ (86400 * 1000) * 3), task);
+
+		try {
+			StorageService.addTemplate(template);
+			StorageService.addAssignment(assignment);
+			StorageService.addTimeBlock(block);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+
+		// Two copies of the block, read before either is written
+		final AssignmentBlock first = StorageService.getAssignmentBlock(block.getId());
+		final AssignmentBlock second = StorageService.getAssignmentBlock(block.getId());
+		assertEquals(first.getVersion(), second.getVersion());
+
+		first.setEnd(new Date(now + (86400 * 1000) * 4));
+		try {
+			StorageService.updateTimeBlock(first);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+		assertEquals(second.getVersion() + 1, first.getVersion());
+
+		// The second copy is out of date, so neither an update nor a change set may overwrite the first
+		second.setStart(new Date(now + (86400 * 1000) * 1));
+		try {
+			StorageService.updateTimeBlock(second);
+			fail("A stale TimeBlock was written");
+		} catch (final StaleDataException e) {
+			// Expected
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+
+		final AssignmentBlock inserted = new AssignmentBlock(new Date(now + (86400 * 1000) * 8), new Date(now
+			+ (86400 * 1000) * 9), task);
+		final TimeBlockChangeSet changes = new TimeBlockChangeSet();
+		changes.markInserted(inserted);
+		changes.markMoved(second);
+		second.setEnd(new Date(now + (86400 * 1000) * 5));
+		try {
+			StorageService.applyTimeBlockChanges(changes);
+			fail("A stale TimeBlock was written");
+		} catch (final StaleDataException e) {
+			// Expected
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+		assertEquals(StorageService.getAssignmentBlock(block.getId()).fullString(), first.fullString());
+		assertTrue(StorageService.getAssignmentBlock(inserted.getId()) == null);
+
+		// Read again, the change goes through
+		final AssignmentBlock fresh = StorageService.getAssignmentBlock(block.getId());
+		fresh.setStart(new Date(now + (86400 * 1000) * 1));
+		try {
+			StorageService.updateTimeBlock(fresh);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+		assertEquals(StorageService.getAssignmentBlock(block.getId()).fullString(), fresh.fullString());
+	}
+
 	 /*
 	 * Testing Assignment Block retrieval
 	 */
@@ -574,7 +796,84 @@ public class TimeBlockStorageTest {
 	 new Date(System.currentTimeMillis() + (86400 * 1000) * 2),
 	 new Date(System.currentTimeMillis() + (86400 * 1000) * 5)).size() == 5);
 	 }
-	
+
+	@Test
+	public void getAllAssignmentBlocksWithinRangeAfterUpdateAndRemove() {
+		// Create needed objects
+		final ArrayList<ITemplateStep> templateSteps = new ArrayList<>();
+		templateSteps.add(new TemplateStep("Step", 1.0, 1));
+		final Template template = new Template("Template", templateSteps);
+		final Assignment assignment = new Assignment("Assignment", new Date(), template);
+		final Task task = new Task("Task", 1, 1, assignment.getID());
+		assignment.addTask(task);
+
+		final long now = System.currentTimeMillis();
+		final AssignmentBlock block1 = new AssignmentBlock(new Date(now + (86400 * 1000) * 2), new Date(now
+			+ (86400 * 1000) * 3), task);
+		final AssignmentBlock block2 = new AssignmentBlock(new Date(now + (86400 * 1000) * 3), new Date(now
+			+ (86400 * 1000) * 4), task);
+
+		try {
+			StorageService.addTemplate(template);
+			StorageService.addAssignment(assignment);
+			StorageService.addTimeBlock(block1);
+			StorageService.addTimeBlock(block2);
+
+			// Move block1 out of the range and remove block2
+			block1.setStart(new Date(now + (86400 * 1000) * 10));
+			block1.setEnd(new Date(now + (86400 * 1000) * 11));
+			StorageService.updateTimeBlock(block1);
+			StorageService.removeTimeBlock(block2);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+
+		assertTrue(StorageService.getAllAssignmentBlocksWithinRange(new Date(now + (86400 * 1000) * 2),
+				new Date(now + (86400 * 1000) * 5)).isEmpty());
+
+		final List<AssignmentBlock> moved = StorageService.getAllAssignmentBlocksWithinRange(new Date(now
+			+ (86400 * 1000) * 9), new Date(now + (86400 * 1000) * 12));
+		assertTrue(moved.size() == 1);
+		assertEquals(moved.get(0).getId(), block1.getId());
+		assertEquals(moved.get(0).getStart().getTime(), block1.getStart().getTime());
+		assertEquals(moved.get(0).getTaskId(), task.getTaskID());
+	}
+
+	@Test
+	public void getAllAssignmentBlocksWithinRangeAfterRestart() {
+		// Create needed objects
+		final ArrayList<ITemplateStep> templateSteps = new ArrayList<>();
+		templateSteps.add(new TemplateStep("Step", 1.0, 1));
+		final Template template = new Template("Template", templateSteps);
+		final Assignment assignment = new Assignment("Assignment", new Date(), template);
+		final Task task = new Task("Task", 1, 1, assignment.getID());
+		assignment.addTask(task);
+
+		final long now = System.currentTimeMillis();
+		final AssignmentBlock block = new AssignmentBlock(new Date(now + (86400 * 1000) * 2), new Date(now
+			+ (86400 * 1000) * 3), task);
+		final UnavailableBlock unavailable = new UnavailableBlock(new Date(now + (86400 * 1000) * 2), new Date(now
+			+ (86400 * 1000) * 3));
+
+		try {
+			StorageService.addTemplate(template);
+			StorageService.addAssignment(assignment);
+			StorageService.addTimeBlock(block);
+			StorageService.addTimeBlock(unavailable);
+
+			// Blocks stored before a restart must still be found afterwards
+			StorageService.cleanup();
+			StorageService.initialize(false);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+
+		final List<AssignmentBlock> blocks = StorageService.getAllAssignmentBlocksWithinRange(new Date(now),
+				new Date(now + (86400 * 1000) * 5));
+		assertTrue(blocks.size() == 1);
+		assertEquals(blocks.get(0).getId(), block.getId());
+	}
+
 	 /*
 	 * Testing Unavailable Block retrieval
 	 */
@@ -830,6 +1129,81 @@ public class TimeBlockStorageTest {
 	 new Date(msBase + TimeUnit.MILLISECONDS.convert(169, TimeUnit.HOURS))).size() == 4);
 	 }
 	
+	@Test
+	public void defaultWeekIsExpandedIntoEachWeek() {
+		final long defaultWeekStart = getDefaultWeekStart();
+		final long mondayOffset = TimeUnit.HOURS.toMillis(33);
+		final long wednesdayOffset = TimeUnit.HOURS.toMillis(86);
+		final List<UnavailableBlock> defaultBlocks = new ArrayList<>();
+		defaultBlocks.add(new UnavailableBlock(new Date(defaultWeekStart + mondayOffset), new Date(defaultWeekStart
+			+ mondayOffset + TimeUnit.HOURS.toMillis(3))));
+		defaultBlocks.add(new UnavailableBlock(new Date(defaultWeekStart + wednesdayOffset), new Date(
+				defaultWeekStart + wednesdayOffset + TimeUnit.HOURS.toMillis(1))));
+		StorageService.addAllDefaultUnavailableBlocks(defaultBlocks);
+
+		// Each of three weeks gets its own copy of the pattern, at the same offsets from its Sunday
+		final long[] weekStarts = getWeekStarts(3);
+		final List<UnavailableBlock> blocks = StorageService.getAllUnavailableBlocksWithinRange(new Date(
+				weekStarts[0]), new Date(weekStarts[3] - 1));
+		assertEquals(6, blocks.size());
+		for (int week = 0; week < 3; week++) {
+			assertEquals(weekStarts[week] + mondayOffset, blocks.get(2 * week).getStart().getTime());
+			assertEquals(weekStarts[week] + mondayOffset + TimeUnit.HOURS.toMillis(3), blocks.get(2 * week).getEnd()
+					.getTime());
+			assertEquals(weekStarts[week] + wednesdayOffset, blocks.get(2 * week + 1).getStart().getTime());
+			assertEquals(defaultBlocks.get(0).getId(), blocks.get(2 * week).getId());
+		}
+
+		// A window partway through a week only gets the blocks overlapping it
+		final List<UnavailableBlock> monday = StorageService.getAllUnavailableBlocksWithinRange(new Date(
+				weekStarts[1] + mondayOffset + TimeUnit.HOURS.toMillis(1)), new Date(weekStarts[1] + wednesdayOffset
+			- 1));
+		assertEquals(1, monday.size());
+		assertEquals(weekStarts[1] + mondayOffset, monday.get(0).getStart().getTime());
+
+		// Adding a default block drops the cached pattern
+		defaultBlocks.clear();
+		defaultBlocks.add(new UnavailableBlock(new Date(defaultWeekStart + wednesdayOffset + TimeUnit.HOURS
+				.toMillis(48)), new Date(defaultWeekStart + wednesdayOffset + TimeUnit.HOURS.toMillis(49))));
+		StorageService.addAllDefaultUnavailableBlocks(defaultBlocks);
+		assertEquals(9, StorageService.getAllUnavailableBlocksWithinRange(new Date(weekStarts[0]), new Date(
+				weekStarts[3] - 1)).size());
+	}
+
+	@Test
+	public void customBlocksReplaceDefaultWeek() {
+		final long defaultWeekStart = getDefaultWeekStart();
+		final long mondayOffset = TimeUnit.HOURS.toMillis(33);
+		final List<UnavailableBlock> defaultBlocks = new ArrayList<>();
+		defaultBlocks.add(new UnavailableBlock(new Date(defaultWeekStart + mondayOffset), new Date(defaultWeekStart
+			+ mondayOffset + TimeUnit.HOURS.toMillis(3))));
+		StorageService.addAllDefaultUnavailableBlocks(defaultBlocks);
+
+		// Only the middle week has a custom block, on Tuesday
+		final long[] weekStarts = getWeekStarts(3);
+		final UnavailableBlock custom = new UnavailableBlock(new Date(weekStarts[1] + TimeUnit.HOURS.toMillis(58)),
+				new Date(weekStarts[1] + TimeUnit.HOURS.toMillis(59)));
+		try {
+			StorageService.addTimeBlock(custom);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+
+		final List<UnavailableBlock> blocks = StorageService.getAllUnavailableBlocksWithinRange(new Date(
+				weekStarts[0]), new Date(weekStarts[3] - 1));
+		assertEquals(3, blocks.size());
+		assertEquals(weekStarts[0] + mondayOffset, blocks.get(0).getStart().getTime());
+		assertEquals(custom.getId(), blocks.get(1).getId());
+		assertEquals(weekStarts[2] + mondayOffset, blocks.get(2).getStart().getTime());
+
+		// Once the custom block is gone, the week is filled from the default pattern again
+		StorageService.removeTimeBlock(custom);
+		final List<UnavailableBlock> middle = StorageService.getAllUnavailableBlocksWithinRange(new Date(
+				weekStarts[1]), new Date(weekStarts[2] - 1));
+		assertEquals(1, middle.size());
+		assertEquals(weekStarts[1] + mondayOffset, middle.get(0).getStart().getTime());
+	}
+
 	@Test
 	public void replaceUnavailableBlocks() {
 		// Create needed objects
@@ -943,4 +1317,35 @@ public class TimeBlockStorageTest {
 		
 		assertEquals(before.toString(), after.toString());
 	}
+
+	/**
+	 * @return The start of the week default blocks are stored relative to, as the startup survey builds them
+	 */
+	private static long getDefaultWeekStart() {
+		final Calendar cal = Calendar.getInstance();
+		cal.setTime(new Date(0));
+		cal.add(Calendar.DAY_OF_YEAR, 3);
+		return cal.getTimeInMillis();
+	}
+
+	/**
+	 * @param weeks Number of weeks
+	 * @return Sunday 00:00 of each of the given number of weeks starting two weeks from now, and of the week after
+	 */
+	private static long[] getWeekStarts(final int weeks) {
+		final Calendar cal = Calendar.getInstance();
+		cal.setFirstDayOfWeek(Calendar.SUNDAY);
+		cal.add(Calendar.WEEK_OF_YEAR, 2);
+		cal.set(Calendar.DAY_OF_WEEK, Calendar.SUNDAY);
+		cal.set(Calendar.HOUR_OF_DAY, 0);
+		cal.set(Calendar.MINUTE, 0);
+		cal.set(Calendar.SECOND, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+		final long[] starts = new long[weeks + 1];
+		for (int week = 0; week <= weeks; week++) {
+			starts[week] = cal.getTimeInMillis();
+			cal.add(Calendar.WEEK_OF_YEAR, 1);
+		}
+		return starts;
+	}
 }
@@ -0,0 +1,249 @@
+package backend.database.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import backend.database.MemoryStorageBackend;
+import backend.database.StaleDataException;
+import backend.database.StorageService;
+import backend.database.StorageServiceException;
+import backend.database.TimeBlockWriteBehind;
+import backend.time.BlockMovePlan;
+import data.Assignment;
+import data.AssignmentBlock;
+import data.ITimeBlockable;
+import data.Template;
+import data.TemplateStep;
+
+public class TimeBlockWriteBehindTest {
+
+	private static final long	HOUR	= 3600 * 1000;
+
+	@Before
+	public void setUp() {
+		try {
+			StorageService.initialize(true);
+		} catch (final StorageServiceException e) {
+			e.printStackTrace();
+		}
+	}
+
+	@After
+	public void cleanUp() {
+		StorageService.disableTimeBlockWriteBehind();
+		StorageService.cleanup();
+	}
+
+	@Test
+	public void readsSeeQueuedUpdates() {
+		final Assignment asgn = addAssignment();
+		final AssignmentBlock block = new AssignmentBlock(new Date(HOUR), new Date(2 * HOUR), asgn.getTasks().get(0));
+		try {
+			StorageService.addTimeBlock(block);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+
+		// Long interval and threshold, so nothing is written until flushed
+		StorageService.enableTimeBlockWriteBehind(1, TimeUnit.HOURS, 100);
+		try {
+			block.setStart(new Date(5 * HOUR));
+			block.setEnd(new Date(6 * HOUR));
+			StorageService.updateTimeBlock(block);
+			block.setEnd(new Date(7 * HOUR));
+			StorageService.updateTimeBlock(block);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+
+		assertEquals(block.fullString(), StorageService.getAssignmentBlock(block.getId()).fullString());
+		assertEquals(0, StorageService.getAllAssignmentBlocksWithinRange(new Date(0), new Date(3 * HOUR)).size());
+		final List<AssignmentBlock> moved = StorageService.getAllAssignmentBlocksWithinRange(new Date(4 * HOUR),
+				new Date(8 * HOUR));
+		assertEquals(1, moved.size());
+		assertEquals(block.fullString(), moved.get(0).fullString());
+
+		// Once written, the stored block matches the last update
+		StorageService.disableTimeBlockWriteBehind();
+		assertEquals(block.fullString(), StorageService.getAssignmentBlock(block.getId()).fullString());
+	}
+
+	@Test
+	public void planMovesAreQueued() {
+		final MemoryStorageBackend backend = new MemoryStorageBackend();
+		StorageService.cleanup();
+		try {
+			StorageService.initialize(backend, true);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+		final Assignment asgn = addAssignment();
+		final AssignmentBlock block1 = new AssignmentBlock(new Date(HOUR), new Date(2 * HOUR), asgn.getTasks().get(0));
+		final AssignmentBlock block2 = new AssignmentBlock(new Date(3 * HOUR), new Date(4 * HOUR), asgn.getTasks()
+				.get(0));
+		try {
+			StorageService.addTimeBlock(block1);
+			StorageService.addTimeBlock(block2);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+
+		// A drag's moves are queued rather than written, and reads see them straight away
+		StorageService.enableTimeBlockWriteBehind(1, TimeUnit.HOURS, 100);
+		final BlockMovePlan plan = new BlockMovePlan();
+		plan.move(block1, new Date(HOUR), new Date(3 * HOUR));
+		plan.move(block2, new Date(3 * HOUR), new Date(5 * HOUR));
+		try {
+			assertTrue(plan.commit());
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+		assertEquals(2 * HOUR, backend.getAssignmentBlock(block1.getId()).getEnd().getTime());
+		assertEquals(block1.fullString(), StorageService.getAssignmentBlock(block1.getId()).fullString());
+		assertEquals(block2.fullString(), StorageService.getAssignmentBlock(block2.getId()).fullString());
+
+		// Both are written in the same flush, which leaves the stored versions where the queued blocks have them
+		StorageService.flushTimeBlockUpdates();
+		assertEquals(block1.fullString(), backend.getAssignmentBlock(block1.getId()).fullString());
+		assertEquals(block2.fullString(), backend.getAssignmentBlock(block2.getId()).fullString());
+		assertEquals(block1.getVersion(), backend.getAssignmentBlock(block1.getId()).getVersion());
+		assertEquals(block2.getVersion(), backend.getAssignmentBlock(block2.getId()).getVersion());
+	}
+
+	@Test
+	public void removeDiscardsQueuedUpdate() {
+		final Assignment asgn = addAssignment();
+		final AssignmentBlock block = new AssignmentBlock(new Date(HOUR), new Date(2 * HOUR), asgn.getTasks().get(0));
+		try {
+			StorageService.addTimeBlock(block);
+			StorageService.enableTimeBlockWriteBehind(1, TimeUnit.HOURS, 100);
+			block.setEnd(new Date(3 * HOUR));
+			StorageService.updateTimeBlock(block);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+
+		StorageService.removeTimeBlock(block);
+		assertNull(StorageService.getAssignmentBlock(block.getId()));
+		StorageService.flushTimeBlockUpdates();
+		assertNull(StorageService.getAssignmentBlock(block.getId()));
+	}
+
+	@Test
+	public void thresholdTriggersFlush() throws InterruptedException {
+		final MemoryStorageBackend backend = new MemoryStorageBackend();
+		final Template template = new Template("Template");
+		template.addStep(new TemplateStep("Step", 1.0));
+		final Assignment asgn = new Assignment("Assignment", new Date(), template);
+		final AssignmentBlock block1 = new AssignmentBlock(new Date(HOUR), new Date(2 * HOUR), asgn.getTasks().get(0));
+		final AssignmentBlock block2 = new AssignmentBlock(new Date(3 * HOUR), new Date(4 * HOUR), asgn.getTasks()
+				.get(0));
+		try {
+			backend.initialize(true);
+			backend.addTemplate(template);
+			backend.addAssignment(asgn);
+			backend.addTimeBlock(block1);
+			backend.addTimeBlock(block2);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+
+		final TimeBlockWriteBehind writeBehind = new TimeBlockWriteBehind(backend, 1, TimeUnit.HOURS, 2);
+		try {
+			block1.setEnd(new Date(HOUR + HOUR / 2));
+			writeBehind.enqueue(block1);
+			block2.setEnd(new Date(3 * HOUR + HOUR / 2));
+			writeBehind.enqueue(block2);
+
+			// The second update fills the queue, so both are written without waiting for the interval
+			for (int i = 0; i < 100 && writeBehind.getPending(block1.getId()) != null; i++) {
+				Thread.sleep(50);
+			}
+			assertNull(writeBehind.getPending(block1.getId()));
+			assertEquals(block1.fullString(), backend.getAssignmentBlock(block1.getId()).fullString());
+			assertEquals(block2.fullString(), backend.getAssignmentBlock(block2.getId()).fullString());
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		} finally {
+			writeBehind.shutdown();
+		}
+	}
+
+	@Test
+	public void staleUpdatesAreRefused() {
+		final Assignment asgn = addAssignment();
+		final AssignmentBlock block1 = new AssignmentBlock(new Date(HOUR), new Date(2 * HOUR), asgn.getTasks().get(0));
+		final AssignmentBlock block2 = new AssignmentBlock(new Date(3 * HOUR), new Date(4 * HOUR), asgn.getTasks()
+				.get(0));
+		try {
+			StorageService.addTimeBlock(block1);
+			StorageService.addTimeBlock(block2);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+		final AssignmentBlock stale1 = StorageService.getAssignmentBlock(block1.getId());
+		final AssignmentBlock stale2 = StorageService.getAssignmentBlock(block2.getId());
+
+		// A move queued from one copy makes the other copy stale
+		StorageService.enableTimeBlockWriteBehind(1, TimeUnit.HOURS, 100);
+		try {
+			block1.setEnd(new Date(3 * HOUR));
+			StorageService.updateTimeBlock(block1);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+		stale1.setStart(new Date(5 * HOUR));
+		stale1.setEnd(new Date(6 * HOUR));
+		stale2.setEnd(new Date(5 * HOUR));
+		try {
+			StorageService.updateTimeBlocks(Arrays.<ITimeBlockable> asList(stale2, stale1));
+			fail("A stale TimeBlock was queued");
+		} catch (final StaleDataException e) {
+			// Expected
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+
+		// Nothing from the refused batch was queued, and the move survives the flush
+		assertEquals(0, stale2.getVersion());
+		assertEquals(4 * HOUR, StorageService.getAssignmentBlock(block2.getId()).getEnd().getTime());
+		StorageService.flushTimeBlockUpdates();
+		assertEquals(block1.fullString(), StorageService.getAssignmentBlock(block1.getId()).fullString());
+		assertEquals(4 * HOUR, StorageService.getAssignmentBlock(block2.getId()).getEnd().getTime());
+
+		// The stored row is checked once the queue is empty
+		stale1.setVersion(block1.getVersion() - 1);
+		try {
+			StorageService.updateTimeBlock(stale1);
+			fail("A stale TimeBlock was queued");
+		} catch (final StaleDataException e) {
+			// Expected
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	private static Assignment addAssignment() {
+		final Template template = new Template("Template");
+		template.addStep(new TemplateStep("Step", 1.0));
+		final Assignment asgn = new Assignment("Assignment", new Date(), template);
+		try {
+			StorageService.addTemplate(template);
+			StorageService.addAssignment(asgn);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+		return asgn;
+	}
+}
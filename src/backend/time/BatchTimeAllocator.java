@@ -0,0 +1,152 @@
+package backend.time;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import backend.database.StorageService;
+import backend.database.TimeBlockChangeSet;
+import data.AssignmentBlock;
+import data.IAssignment;
+import data.ITimeBlockable;
+import data.UnavailableBlock;
+import frontend.view.settings.SettingsConstants;
+
+/**
+ * Places many Assignments in one scheduling pass: the calendar is read from the StorageService once, for the window
+ * from the start to the latest due date, every Assignment is placed on the same Timeline, and a single
+ * TimeBlockChangeSet is left to be persisted.
+ * 
+ * Assignments are placed earliest-deadline-first, those with less slack (free time before the due date beyond the
+ * hours they need) first when due at the same time, so that the result does not depend on the order they were given
+ * in. An Assignment that cannot be placed is skipped, without leaving any of its blocks behind.
+ */
+public class BatchTimeAllocator {
+	
+	private final List<IAssignment>		m_asgns;
+	private final PlacementPolicy		m_policy;
+	private final List<IAssignment>		m_failed;
+	private final TimeBlockChangeSet	m_changes;
+	private List<ITimeBlockable>		m_localChangesToBlocks;
+	
+	/**
+	 * Uses the PlacementPolicy named by the placement setting
+	 * @param asgns The Assignments to insert
+	 */
+	public BatchTimeAllocator(final List<? extends IAssignment> asgns) {
+		this(asgns, null);
+	}
+	
+	/**
+	 * @param asgns The Assignments to insert
+	 * @param policy The PlacementPolicy to try first, or null to use the one named by the placement setting
+	 */
+	public BatchTimeAllocator(final List<? extends IAssignment> asgns, final PlacementPolicy policy) {
+		m_asgns = new ArrayList<IAssignment>(asgns);
+		m_policy = policy;
+		m_failed = new ArrayList<IAssignment>();
+		m_changes = new TimeBlockChangeSet();
+		m_localChangesToBlocks = new ArrayList<ITimeBlockable>();
+	}
+	
+	/**
+	 * Places every Assignment between "start" and its own due date. The Assignments must already be in the
+	 * StorageService, as decompaction looks them up there.
+	 * @param start The date to start inserting blocks from
+	 * @return The Assignments that were placed, in the order they were placed in
+	 */
+	public List<IAssignment> insertAsgns(final Date start) {
+		m_failed.clear();
+		m_changes.clear();
+		m_localChangesToBlocks = new ArrayList<ITimeBlockable>();
+		
+		final List<IAssignment> placed = new ArrayList<IAssignment>();
+		if (m_asgns.isEmpty()) {
+			return placed;
+		}
+		
+		final List<IAssignment> ordered = orderByDeadline(m_asgns, start);
+		final Date end = ordered.get(ordered.size() - 1).getDueDate();
+		
+		// Read the union of every Assignment's window once
+		final List<UnavailableBlock> unavailable = StorageService.getAllUnavailableBlocksWithinRange(start, end);
+		final List<AssignmentBlock> curr_asgns = StorageService.getAllAssignmentBlocksWithinRange(start, end);
+		Timeline timeline = new Timeline(TimeUtilities.zipTimeBlockLists(unavailable, curr_asgns));
+		final FreeGapIndex gaps = new FreeGapIndex(timeline);
+		
+		final PlacementPolicy policy = (m_policy != null) ? m_policy
+				: PlacementPolicies.forName(StorageService.getSetting(SettingsConstants.PLACEMENT_SETTING));
+		for (final IAssignment asgn : ordered) {
+			// Place on a copy, so that a failed Assignment leaves nothing behind
+			final Timeline trial = new Timeline(timeline);
+			try {
+				new TimeAllocator(asgn, policy).placeAsgn(trial, gaps, start, asgn.getDueDate());
+				timeline = trial;
+				placed.add(asgn);
+			} catch (final NotEnoughTimeException e) {
+				gaps.rebuild(timeline);
+				m_failed.add(asgn);
+			}
+		}
+		
+		// Decompact each Assignment's blocks within its own window, as TimeAllocator does
+		final List<ITimeBlockable> placedBlocks = timeline.toBlocks(m_changes);
+		for (final IAssignment asgn : placed) {
+			TimeCompactor.decompact(placedBlocks, start, asgn.getDueDate(), asgn.getID(), m_changes);
+		}
+		
+		m_localChangesToBlocks = placedBlocks;
+		return placed;
+	}
+	
+	/**
+	 * ONLY call this function after calling the "insertAsgns()" function.
+	 * @return The Assignments that could not be placed, in the order they were tried in
+	 */
+	public List<IAssignment> getFailedAssignments() {
+		return new ArrayList<IAssignment>(m_failed);
+	}
+	
+	/**
+	 * ONLY call this function after calling the "insertAsgns()" function.
+	 * @return The List of ITimeBlockables representing the time stream.
+	 */
+	public List<ITimeBlockable> getEntireBlockSet() {
+		return new ArrayList<ITimeBlockable>(m_localChangesToBlocks);
+	}
+	
+	/**
+	 * ONLY call this function after calling the "insertAsgns()" function.
+	 * @return The TimeBlockChangeSet of blocks inserted and moved for every placed Assignment, so that
+	 * 			only those need to be persisted.
+	 */
+	public TimeBlockChangeSet getChangeSet() {
+		return m_changes;
+	}
+	
+	/**
+	 * @param asgns The Assignments to order
+	 * @param start The date insertion starts from
+	 * @return The Assignments earliest-deadline-first, least slack first among those due at the same time
+	 */
+	static List<IAssignment> orderByDeadline(final List<IAssignment> asgns, final Date start) {
+		final List<IAssignment> ordered = new ArrayList<IAssignment>(asgns);
+		Collections.sort(ordered, new Comparator<IAssignment>() {
+			
+			@Override
+			public int compare(final IAssignment a1, final IAssignment a2) {
+				final int byDue = a1.getDueDate().compareTo(a2.getDueDate());
+				return (byDue != 0) ? byDue : Long.compare(slack(a1, start), slack(a2, start));
+			}
+		});
+		return ordered;
+	}
+	
+	private static long slack(final IAssignment asgn, final Date start) {
+		final long needed = (long) (asgn.getExpectedHours() * TimeUnit.HOURS.toMillis(1));
+		return asgn.getDueDate().getTime() - start.getTime() - needed;
+	}
+}
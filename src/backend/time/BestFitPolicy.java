@@ -0,0 +1,36 @@
+package backend.time;
+
+import data.ITask;
+
+/**
+ * Places a block in the shortest gap that is long enough, the earliest one if several are as short. Keeps long gaps
+ * whole for later blocks, so compaction is needed less often.
+ */
+public class BestFitPolicy implements PlacementPolicy {
+
+	@Override
+	public String getName() {
+		return PlacementPolicies.BEST_FIT;
+	}
+
+	@Override
+	public long findFit(final Timeline timeline, final FreeGapIndex gaps, final long blockLength, final long after,
+			final long end, final ITask task) {
+		if (PlacementPolicies.isEmptyBefore(timeline, end)) {
+			return after;
+		}
+
+		// Candidates in chronological order, so that ties go to the earliest
+		FreeGapIndex.Gap best = PlacementPolicies.headGap(timeline, after, blockLength);
+		best = shorter(best, gaps.bestFitGap(after, end, blockLength));
+		best = shorter(best, PlacementPolicies.tailGap(timeline, end, blockLength));
+		return (best == null) ? FreeGapIndex.NO_FIT : best.getStart();
+	}
+
+	private static FreeGapIndex.Gap shorter(final FreeGapIndex.Gap current, final FreeGapIndex.Gap candidate) {
+		if (current == null) {
+			return candidate;
+		}
+		return (candidate != null && candidate.getLength() < current.getLength()) ? candidate : current;
+	}
+}
@@ -0,0 +1,185 @@
+package backend.time;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import backend.database.StaleDataException;
+import backend.database.StorageService;
+import backend.database.StorageServiceException;
+import backend.database.TimeBlockChangeSet;
+import data.ITask;
+import data.ITimeBlockable;
+
+/**
+ * The moves planned by one edit of the calendar, kept apart from the blocks they move until they are committed.
+ *
+ * Planning only records the bounds and Task each block should end up with, and the getters answer with the planned
+ * values, so a plan can be built up step by step, evaluated, and thrown away without touching the blocks or the
+ * StorageService. commit then writes every move in one transaction, so that either all of them happen or none do.
+ * When TimeBlock write-behind is enabled, commit queues the moves together instead (see
+ * StorageService.updateTimeBlocks), so a drag does not wait for the database.
+ *
+ * Not thread safe; a plan belongs to a single edit.
+ */
+public class BlockMovePlan {
+
+	private final Map<String, Move>	m_moves;
+
+	public BlockMovePlan() {
+		m_moves = new LinkedHashMap<String, Move>();
+	}
+
+	/**
+	 * Plans new bounds for a block, keeping its planned Task
+	 * @param block The block to move
+	 * @param start Its new start
+	 * @param end Its new end
+	 */
+	public void move(final ITimeBlockable block, final Date start, final Date end) {
+		final Move move = moveOf(block);
+		move.m_start = start.getTime();
+		move.m_end = end.getTime();
+	}
+
+	/**
+	 * Plans a new Task for a block, keeping its planned bounds
+	 * @param block The block to change
+	 * @param task Its new Task
+	 */
+	public void setTask(final ITimeBlockable block, final ITask task) {
+		moveOf(block).m_task = task;
+	}
+
+	/**
+	 * @param block A block
+	 * @return The start the block will have once the plan is carried out
+	 */
+	public Date getStart(final ITimeBlockable block) {
+		final Move move = m_moves.get(block.getId());
+		return (move == null) ? block.getStart() : new Date(move.m_start);
+	}
+
+	/**
+	 * @param block A block
+	 * @return The end the block will have once the plan is carried out
+	 */
+	public Date getEnd(final ITimeBlockable block) {
+		final Move move = m_moves.get(block.getId());
+		return (move == null) ? block.getEnd() : new Date(move.m_end);
+	}
+
+	/**
+	 * @param block A block
+	 * @return The Task the block will have once the plan is carried out
+	 */
+	public ITask getTask(final ITimeBlockable block) {
+		final Move move = m_moves.get(block.getId());
+		return (move == null) ? block.getTask() : move.m_task;
+	}
+
+	/**
+	 * @param block A block
+	 * @return The length in milliseconds the block will have once the plan is carried out
+	 */
+	public long getLength(final ITimeBlockable block) {
+		return getEnd(block).getTime() - getStart(block).getTime();
+	}
+
+	/**
+	 * @return Whether the plan moves no block
+	 */
+	public boolean isEmpty() {
+		return m_moves.isEmpty();
+	}
+
+	/**
+	 * Carries out the plan on the blocks, recording each move in a change set to be written later
+	 * @param changes The TimeBlockChangeSet the moves are recorded in
+	 */
+	public void apply(final TimeBlockChangeSet changes) {
+		for (final Move move : m_moves.values()) {
+			changes.markMoved(move.m_block);
+			move.setOn(move.m_block);
+		}
+	}
+
+	/**
+	 * Carries out the plan on the blocks and writes them to the StorageService in one transaction. If the write fails,
+	 * the blocks are put back as they were.
+	 * @return Returns true if every move was written; false if none was
+	 * @throws StaleDataException if a block changed since it was read; none was written, so read the blocks again and
+	 *             plan again
+	 */
+	public boolean commit() throws StaleDataException {
+		if (m_moves.isEmpty()) {
+			return true;
+		}
+
+		final List<ITimeBlockable> blocks = new ArrayList<ITimeBlockable>(m_moves.size());
+		final List<Move> originals = new ArrayList<Move>(m_moves.size());
+		for (final Move move : m_moves.values()) {
+			originals.add(new Move(move.m_block));
+			move.setOn(move.m_block);
+			blocks.add(move.m_block);
+		}
+
+		try {
+			StorageService.updateTimeBlocks(blocks);
+			return true;
+		} catch (final StaleDataException sde) {
+			putBack(originals);
+			throw sde;
+		} catch (final StorageServiceException sse) {
+			sse.printStackTrace();
+			putBack(originals);
+			return false;
+		}
+	}
+
+	/*
+	 * Helper methods
+	 */
+
+	private static void putBack(final List<Move> originals) {
+		for (final Move original : originals) {
+			original.setOn(original.m_block);
+		}
+	}
+
+	private Move moveOf(final ITimeBlockable block) {
+		Move move = m_moves.get(block.getId());
+		if (move == null) {
+			move = new Move(block);
+			m_moves.put(block.getId(), move);
+		}
+		return move;
+	}
+
+	/**
+	 * The bounds and Task planned for one block
+	 */
+	private static class Move {
+		private final ITimeBlockable	m_block;
+		private long					m_start;
+		private long					m_end;
+		private ITask					m_task;
+
+		private Move(final ITimeBlockable block) {
+			m_block = block;
+			m_start = block.getStart().getTime();
+			m_end = block.getEnd().getTime();
+			m_task = block.getTask();
+		}
+
+		private void setOn(final ITimeBlockable block) {
+			block.setStart(new Date(m_start));
+			block.setEnd(new Date(m_end));
+			if (block.getTask() != m_task) {
+				block.setTask(m_task);
+			}
+		}
+	}
+}
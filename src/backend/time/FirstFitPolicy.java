@@ -0,0 +1,36 @@
+package backend.time;
+
+import data.ITask;
+
+/**
+ * Places a block in the earliest gap that is long enough. Fast, and keeps work as early as possible, but leaves small
+ * fragments of free time behind.
+ */
+public class FirstFitPolicy implements PlacementPolicy {
+
+	@Override
+	public String getName() {
+		return PlacementPolicies.FIRST_FIT;
+	}
+
+	@Override
+	public long findFit(final Timeline timeline, final FreeGapIndex gaps, final long blockLength, final long after,
+			final long end, final ITask task) {
+		if (PlacementPolicies.isEmptyBefore(timeline, end)) {
+			return after;
+		}
+
+		final FreeGapIndex.Gap head = PlacementPolicies.headGap(timeline, after, blockLength);
+		if (head != null) {
+			return head.getStart();
+		}
+
+		final FreeGapIndex.Gap gap = gaps.firstFitGap(after, end, blockLength);
+		if (gap != null) {
+			return gap.getStart();
+		}
+
+		final FreeGapIndex.Gap tail = PlacementPolicies.tailGap(timeline, end, blockLength);
+		return (tail == null) ? FreeGapIndex.NO_FIT : tail.getStart();
+	}
+}
@@ -0,0 +1,465 @@
+package backend.time;
+
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import data.ITimeBlockable;
+
+/**
+ * Index over the free gaps between the blocks of a time stream, so that a fit for a new block can be found without
+ * walking the stream gap by gap.
+ *
+ * The index mirrors a List of ITimeBlockables sorted by start Date, position for position. The gap before the block at
+ * position i (i > 0) runs from the end of block i - 1 to the start of block i, exactly as TimeAllocator measures it; the
+ * first block has no gap before it. Blocks are kept in a treap ordered by position, each node augmented with the
+ * largest gap in its subtree, and gaps are also kept sorted by length for best-fit searches.
+ *
+ * Inserting a block updates the index in O(log n); any other change to the list (compaction, for instance) needs a
+ * rebuild. Not thread safe.
+ */
+public class FreeGapIndex {
+
+	/**
+	 * Returned by the searches taking and returning milliseconds when no gap is long enough
+	 */
+	public static final long	NO_FIT	= Long.MIN_VALUE;
+
+	private static final long	NO_GAP	= Long.MIN_VALUE;
+
+	private final Random		m_random;
+	private final TreeSet<Node>	m_bySize;
+	private Node				m_root;
+	private long				m_nextSerial;
+
+	/**
+	 * @param blocks List of ITimeBlockables sorted by start Date
+	 */
+	public FreeGapIndex(final List<? extends ITimeBlockable> blocks) {
+		this();
+		rebuild(blocks);
+	}
+
+	/**
+	 * @param timeline Timeline to mirror
+	 */
+	public FreeGapIndex(final Timeline timeline) {
+		this();
+		rebuild(timeline);
+	}
+
+	private FreeGapIndex() {
+		m_random = new Random();
+		m_bySize = new TreeSet<Node>(new Comparator<Node>() {
+
+			@Override
+			public int compare(final Node n1, final Node n2) {
+				final int byGap = Long.compare(n1.m_gap, n2.m_gap);
+				if (byGap != 0) {
+					return byGap;
+				}
+				final int byStart = Long.compare(n1.m_prevEnd, n2.m_prevEnd);
+				return (byStart != 0) ? byStart : Long.compare(n1.m_serial, n2.m_serial);
+			}
+		});
+	}
+
+	/**
+	 * Throw away the index and build it again from the list it mirrors
+	 * @param blocks List of ITimeBlockables sorted by start Date
+	 */
+	public void rebuild(final List<? extends ITimeBlockable> blocks) {
+		m_root = null;
+		m_bySize.clear();
+		for (final ITimeBlockable block : blocks) {
+			insert(size(), block);
+		}
+	}
+
+	/**
+	 * Throw away the index and build it again from the timeline it mirrors
+	 * @param timeline Timeline to mirror
+	 */
+	public void rebuild(final Timeline timeline) {
+		m_root = null;
+		m_bySize.clear();
+		for (int i = 0; i < timeline.size(); ++i) {
+			insert(i, timeline.getStart(i), timeline.getEnd(i));
+		}
+	}
+
+	/**
+	 * @return The number of blocks in the index
+	 */
+	public int size() {
+		return size(m_root);
+	}
+
+	/**
+	 * Records a block inserted into the mirrored list
+	 * @param position The index the block was inserted at
+	 * @param block The inserted block
+	 */
+	public void insert(final int position, final ITimeBlockable block) {
+		insert(position, block.getStart().getTime(), block.getEnd().getTime());
+	}
+
+	/**
+	 * Records a block inserted into the mirrored list or timeline
+	 * @param position The index the block was inserted at
+	 * @param start Start of the block in milliseconds
+	 * @param end End of the block in milliseconds
+	 */
+	public void insert(final int position, final long start, final long end) {
+		if (position < 0 || position > size()) {
+			throw new IndexOutOfBoundsException("FreeGapIndex: position " + position + " out of [0, " + size() + "]");
+		}
+
+		final Node node = new Node(start, end, m_random.nextInt(), m_nextSerial++);
+		final Node[] halves = split(m_root, position);
+
+		// The new block's gap runs from the end of the block before it...
+		final Node before = last(halves[0]);
+		setPrevEnd(node, (before == null) ? NO_GAP : before.m_end);
+
+		// ...and the gap of the block after it now starts at the new block's end
+		halves[1] = setFirstPrevEnd(halves[1], node.m_end);
+
+		m_root = merge(merge(halves[0], node), halves[1]);
+	}
+
+	/**
+	 * First-fit search: the earliest gap at least "length" long before a block starting at or after "after"
+	 * @param after The earliest start Date of the block that closes the gap
+	 * @param length The length of the gap needed, in milliseconds
+	 * @return The start Date of the gap found, or null if there is none
+	 */
+	public Date firstFit(final Date after, final long length) {
+		final long found = firstFit(after.getTime(), length);
+		return (found == NO_FIT) ? null : new Date(found);
+	}
+
+	/**
+	 * Same as firstFit(Date, long), in milliseconds
+	 * @param after The earliest start of the block that closes the gap
+	 * @param length The length of the gap needed
+	 * @return The start of the gap found, or NO_FIT if there is none
+	 */
+	public long firstFit(final long after, final long length) {
+		final Node found = firstFit(m_root, after, length);
+		return (found == null) ? NO_FIT : found.m_prevEnd;
+	}
+
+	/**
+	 * Best-fit search: the shortest gap at least "length" long, the earliest one if several are as short
+	 * @param length The length of the gap needed, in milliseconds
+	 * @return The start Date of the gap found, or null if there is none
+	 */
+	public Date bestFit(final long length) {
+		final Node shortest = m_bySize.ceiling(probe(length));
+		return (shortest == null) ? null : new Date(shortest.m_prevEnd);
+	}
+
+	/**
+	 * Same as firstFit(long, long), limited to gaps before blocks starting before "before", returning the whole gap
+	 * @param after The earliest start of the block that closes the gap
+	 * @param before The start the block that closes the gap must start before
+	 * @param length The length of the gap needed
+	 * @return The gap found, or null if there is none
+	 */
+	public Gap firstFitGap(final long after, final long before, final long length) {
+		final Node found = firstFit(m_root, after, length);
+		return (found == null || found.m_start >= before) ? null : toGap(found);
+	}
+
+	/**
+	 * Best-fit search among the gaps before blocks starting in [after, before): the shortest gap at least "length"
+	 * long, the earliest one if several are as short. Takes O(log n + k), k being the number of gaps that fit but are
+	 * closed by a block starting outside of the range.
+	 * @param after The earliest start of the block that closes the gap
+	 * @param before The start the block that closes the gap must start before
+	 * @param length The length of the gap needed
+	 * @return The gap found, or null if there is none
+	 */
+	public Gap bestFitGap(final long after, final long before, final long length) {
+		for (final Node node : m_bySize.tailSet(probe(length), true)) {
+			if (node.m_start >= after && node.m_start < before) {
+				return toGap(node);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Worst-fit search among the gaps before blocks starting in [after, before): the longest gap, the earliest one if
+	 * several are as long, as long as it is at least "length" long
+	 * @param after The earliest start of the block that closes the gap
+	 * @param before The start the block that closes the gap must start before
+	 * @param length The length of the gap needed
+	 * @return The gap found, or null if there is none
+	 */
+	public Gap worstFitGap(final long after, final long before, final long length) {
+		final Node longest = longest(m_root, after, before);
+		return (longest == null || longest.m_gap < length) ? null : toGap(longest);
+	}
+
+	/**
+	 * A free gap, from the end of one block to the start of the next
+	 */
+	public static final class Gap {
+		private final long	m_start;
+		private final long	m_end;
+
+		/**
+		 * @param start Start of the gap in milliseconds
+		 * @param end End of the gap in milliseconds
+		 */
+		public Gap(final long start, final long end) {
+			m_start = start;
+			m_end = end;
+		}
+
+		public long getStart() {
+			return m_start;
+		}
+
+		public long getEnd() {
+			return m_end;
+		}
+
+		public long getLength() {
+			return m_end - m_start;
+		}
+	}
+
+	/*
+	 * Helper methods
+	 */
+
+	private static Node probe(final long length) {
+		final Node probe = new Node(0, 0, 0, Long.MIN_VALUE);
+		probe.m_gap = length;
+		probe.m_prevEnd = Long.MIN_VALUE;
+		return probe;
+	}
+
+	private static Gap toGap(final Node node) {
+		return (node == null) ? null : new Gap(node.m_prevEnd, node.m_start);
+	}
+
+	private void setPrevEnd(final Node node, final long prevEnd) {
+		if (node.m_gap != NO_GAP) {
+			m_bySize.remove(node);
+		}
+		node.m_prevEnd = prevEnd;
+		node.m_gap = (prevEnd == NO_GAP) ? NO_GAP : node.m_start - prevEnd;
+		if (node.m_gap != NO_GAP) {
+			m_bySize.add(node);
+		}
+		update(node);
+	}
+
+	private Node setFirstPrevEnd(final Node root, final long prevEnd) {
+		if (root == null) {
+			return null;
+		}
+		if (root.m_left != null) {
+			root.m_left = setFirstPrevEnd(root.m_left, prevEnd);
+			update(root);
+		} else {
+			setPrevEnd(root, prevEnd);
+		}
+		return root;
+	}
+
+	private static Node firstFit(final Node node, final long after, final long length) {
+		if (node == null || node.m_maxGap < length) {
+			return null;
+		}
+		// This node and everything to its left start too early
+		if (node.m_start < after) {
+			return firstFit(node.m_right, after, length);
+		}
+		final Node found = firstFit(node.m_left, after, length);
+		if (found != null) {
+			return found;
+		}
+		if (node.m_gap >= length) {
+			return node;
+		}
+		return firstFitAnywhere(node.m_right, length);
+	}
+
+	private static Node firstFitAnywhere(final Node node, final long length) {
+		if (node == null || node.m_maxGap < length) {
+			return null;
+		}
+		if (node.m_left != null && node.m_left.m_maxGap >= length) {
+			return firstFitAnywhere(node.m_left, length);
+		}
+		if (node.m_gap >= length) {
+			return node;
+		}
+		return firstFitAnywhere(node.m_right, length);
+	}
+
+	/**
+	 * @return The node with the longest gap among those starting in [after, before), the earliest if several are as
+	 * 			long, or null if none of them has a gap
+	 */
+	private static Node longest(final Node node, final long after, final long before) {
+		if (node == null) {
+			return null;
+		}
+		// This node and everything to its left start too early
+		if (node.m_start < after) {
+			return longest(node.m_right, after, before);
+		}
+		// This node and everything to its right start too late
+		if (node.m_start >= before) {
+			return longest(node.m_left, after, before);
+		}
+		// Otherwise everything to the left only needs to start late enough, everything to the right early enough
+		Node found = longestFrom(node.m_left, after);
+		found = longer(found, node.m_gap != NO_GAP ? node : null);
+		return longer(found, longestBefore(node.m_right, before));
+	}
+
+	private static Node longestFrom(final Node node, final long after) {
+		if (node == null) {
+			return null;
+		}
+		if (node.m_start < after) {
+			return longestFrom(node.m_right, after);
+		}
+		Node found = longestFrom(node.m_left, after);
+		found = longer(found, node.m_gap != NO_GAP ? node : null);
+		return longer(found, longestAnywhere(node.m_right));
+	}
+
+	private static Node longestBefore(final Node node, final long before) {
+		if (node == null) {
+			return null;
+		}
+		if (node.m_start >= before) {
+			return longestBefore(node.m_left, before);
+		}
+		Node found = longestAnywhere(node.m_left);
+		found = longer(found, node.m_gap != NO_GAP ? node : null);
+		return longer(found, longestBefore(node.m_right, before));
+	}
+
+	/**
+	 * @return "later" if it is strictly longer than "earlier", so that ties go to the earliest gap
+	 */
+	private static Node longer(final Node earlier, final Node later) {
+		if (earlier == null) {
+			return later;
+		}
+		return (later != null && later.m_gap > earlier.m_gap) ? later : earlier;
+	}
+
+	private static Node longestAnywhere(final Node root) {
+		if (root == null || root.m_maxGap == NO_GAP) {
+			return null;
+		}
+		Node node = root;
+		while (true) {
+			if (node.m_left != null && node.m_left.m_maxGap == node.m_maxGap) {
+				node = node.m_left;
+			} else if (node.m_gap == node.m_maxGap) {
+				return node;
+			} else {
+				node = node.m_right;
+			}
+		}
+	}
+
+	/**
+	 * @return {nodes before position, nodes from position on}
+	 */
+	private static Node[] split(final Node node, final int position) {
+		if (node == null) {
+			return new Node[] { null, null };
+		}
+		if (size(node.m_left) < position) {
+			final Node[] halves = split(node.m_right, position - size(node.m_left) - 1);
+			node.m_right = halves[0];
+			update(node);
+			halves[0] = node;
+			return halves;
+		}
+		final Node[] halves = split(node.m_left, position);
+		node.m_left = halves[1];
+		update(node);
+		halves[1] = node;
+		return halves;
+	}
+
+	private static Node merge(final Node left, final Node right) {
+		if (left == null) {
+			return right;
+		}
+		if (right == null) {
+			return left;
+		}
+		if (left.m_priority > right.m_priority) {
+			left.m_right = merge(left.m_right, right);
+			update(left);
+			return left;
+		}
+		right.m_left = merge(left, right.m_left);
+		update(right);
+		return right;
+	}
+
+	private static Node last(final Node root) {
+		Node node = root;
+		while (node != null && node.m_right != null) {
+			node = node.m_right;
+		}
+		return node;
+	}
+
+	private static int size(final Node node) {
+		return (node == null) ? 0 : node.m_size;
+	}
+
+	private static void update(final Node node) {
+		long maxGap = node.m_gap;
+		if (node.m_left != null && node.m_left.m_maxGap > maxGap) {
+			maxGap = node.m_left.m_maxGap;
+		}
+		if (node.m_right != null && node.m_right.m_maxGap > maxGap) {
+			maxGap = node.m_right.m_maxGap;
+		}
+		node.m_maxGap = maxGap;
+		node.m_size = 1 + size(node.m_left) + size(node.m_right);
+	}
+
+	private static class Node {
+		private final long	m_start;
+		private final long	m_end;
+		private final int	m_priority;
+		private final long	m_serial;
+		private long		m_prevEnd;
+		private long		m_gap;
+		private long		m_maxGap;
+		private int			m_size;
+		private Node		m_left;
+		private Node		m_right;
+
+		private Node(final long start, final long end, final int priority, final long serial) {
+			m_start = start;
+			m_end = end;
+			m_priority = priority;
+			m_serial = serial;
+			m_prevEnd = NO_GAP;
+			m_gap = NO_GAP;
+			m_maxGap = NO_GAP;
+			m_size = 1;
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package backend.time;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import data.ITimeBlockable;
+
+/**
+ * Cumulative index of the busy time in a time stream, so that the free time in any range can be found in O(log n),
+ * to the millisecond, without walking the stream.
+ *
+ * The index mirrors a List of ITimeBlockables sorted by start Date, position for position. Each position holds the
+ * time its block covers that no earlier block covers, in a Fenwick tree, so overlapping blocks (a custom unavailable
+ * block over a default one, for instance) are only counted once. The latest end of the blocks up to each position is
+ * kept alongside, to account for blocks running past the end of a range.
+ *
+ * Moving a block without changing its position updates the index in O(log n) when blocks do not overlap; inserting or
+ * removing blocks needs a rebuild. Not thread safe.
+ */
+public class FreeTimeIndex {
+
+	private long[]	m_starts;
+	private long[]	m_ends;
+	private long[]	m_reach;
+	private long[]	m_covered;
+	private long[]	m_tree;
+	private int		m_size;
+
+	/**
+	 * @param blocks List of ITimeBlockables sorted by start Date
+	 */
+	public FreeTimeIndex(final List<? extends ITimeBlockable> blocks) {
+		rebuild(blocks);
+	}
+
+	/**
+	 * @param timeline Timeline to mirror
+	 */
+	public FreeTimeIndex(final Timeline timeline) {
+		rebuild(timeline);
+	}
+
+	/**
+	 * Throw away the index and build it again from the list it mirrors
+	 * @param blocks List of ITimeBlockables sorted by start Date
+	 */
+	public void rebuild(final List<? extends ITimeBlockable> blocks) {
+		allocate(blocks.size());
+		for (int i = 0; i < m_size; ++i) {
+			m_starts[i] = blocks.get(i).getStart().getTime();
+			m_ends[i] = blocks.get(i).getEnd().getTime();
+		}
+		build();
+	}
+
+	/**
+	 * Throw away the index and build it again from the timeline it mirrors
+	 * @param timeline Timeline to mirror
+	 */
+	public void rebuild(final Timeline timeline) {
+		allocate(timeline.size());
+		for (int i = 0; i < m_size; ++i) {
+			m_starts[i] = timeline.getStart(i);
+			m_ends[i] = timeline.getEnd(i);
+		}
+		build();
+	}
+
+	/**
+	 * @return The number of blocks in the index
+	 */
+	public int size() {
+		return m_size;
+	}
+
+	/**
+	 * @param from Start of the range
+	 * @param to End of the range
+	 * @return The number of milliseconds in [from, to] that no block covers
+	 */
+	public long freeTime(final Date from, final Date to) {
+		return freeTime(from.getTime(), to.getTime());
+	}
+
+	/**
+	 * Same as freeTime(Date, Date), in milliseconds
+	 * @param from Start of the range
+	 * @param to End of the range
+	 * @return The number of milliseconds in [from, to] that no block covers, or 0 if "to" is not after "from"
+	 */
+	public long freeTime(final long from, final long to) {
+		if (to <= from) {
+			return 0;
+		}
+		return (to - from) - (busyBefore(to) - busyBefore(from));
+	}
+
+	/**
+	 * Records a block of the mirrored list moved to new bounds, keeping its position in the list
+	 * @param position The index of the block
+	 * @param start New start of the block in milliseconds
+	 * @param end New end of the block in milliseconds
+	 */
+	public void move(final int position, final long start, final long end) {
+		if (position < 0 || position >= m_size) {
+			throw new IndexOutOfBoundsException("FreeTimeIndex: position " + position + " out of [0, " + m_size + ")");
+		}
+		if ((position > 0 && start < m_starts[position - 1])
+			|| (position < m_size - 1 && start > m_starts[position + 1])) {
+			throw new IllegalArgumentException("FreeTimeIndex: a moved block must keep its position");
+		}
+		m_starts[position] = start;
+		m_ends[position] = end;
+
+		// Later blocks only change while the latest end reaching them does
+		for (int i = position; i < m_size; ++i) {
+			final long oldReach = m_reach[i];
+			update(i);
+			if (i > position && m_reach[i] == oldReach) {
+				break;
+			}
+		}
+	}
+
+	/*
+	 * Helper methods
+	 */
+
+	/**
+	 * @return The number of milliseconds before "time" that some block covers
+	 */
+	private long busyBefore(final long time) {
+		// The number of blocks starting before "time"
+		int lo = 0;
+		int hi = m_size;
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (m_starts[mid] < time) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		if (lo == 0) {
+			return 0;
+		}
+
+		// The block reaching furthest covers everything from "time" to its end
+		return prefixSum(lo) - Math.max(0, m_reach[lo - 1] - time);
+	}
+
+	private void allocate(final int size) {
+		m_size = size;
+		m_starts = new long[size];
+		m_ends = new long[size];
+		m_reach = new long[size];
+		m_covered = new long[size];
+		m_tree = new long[size + 1];
+	}
+
+	/**
+	 * Fills the Fenwick tree in O(n)
+	 */
+	private void build() {
+		for (int i = 0; i < m_size; ++i) {
+			final long reachBefore = (i == 0) ? Long.MIN_VALUE : m_reach[i - 1];
+			m_covered[i] = Math.max(0, m_ends[i] - Math.max(m_starts[i], reachBefore));
+			m_reach[i] = Math.max(reachBefore, m_ends[i]);
+		}
+		Arrays.fill(m_tree, 0);
+		for (int i = 1; i <= m_size; ++i) {
+			m_tree[i] += m_covered[i - 1];
+			final int parent = i + (i & -i);
+			if (parent <= m_size) {
+				m_tree[parent] += m_tree[i];
+			}
+		}
+	}
+
+	/**
+	 * Recomputes the covered time and reach of one position from the reach before it
+	 */
+	private void update(final int i) {
+		final long reachBefore = (i == 0) ? Long.MIN_VALUE : m_reach[i - 1];
+		final long covered = Math.max(0, m_ends[i] - Math.max(m_starts[i], reachBefore));
+		m_reach[i] = Math.max(reachBefore, m_ends[i]);
+		final long delta = covered - m_covered[i];
+		m_covered[i] = covered;
+		for (int k = i + 1; k <= m_size && delta != 0; k += k & -k) {
+			m_tree[k] += delta;
+		}
+	}
+
+	/**
+	 * @return The covered time of the first "count" positions
+	 */
+	private long prefixSum(final int count) {
+		long sum = 0;
+		for (int k = count; k > 0; k -= k & -k) {
+			sum += m_tree[k];
+		}
+		return sum;
+	}
+}
@@ -67,8 +67,13 @@ public class MainTimeAllocator {
 		}
 		
 		// Push to db
-		List<ITimeBlockable> results = talloc.getEntireBlockSet();
-		List<ITimeBlockable> errs = StorageService.mergeAllTimeBlocks(results);
+		List<ITimeBlockable> errs;
+		try {
+			errs = StorageService.applyTimeBlockChanges(talloc.getChangeSet());
+		} catch (final StorageServiceException e) {
+			e.printStackTrace();
+			return;
+		}
 		if (errs.size() != 0) {
 			Utils.printError(":(");
 		}
@@ -81,8 +86,12 @@ public class MainTimeAllocator {
 			return;
 		}
 		// Push to db
-		results = talloc.getEntireBlockSet();
-		errs = StorageService.mergeAllTimeBlocks(results);
+		try {
+			errs = StorageService.applyTimeBlockChanges(talloc.getChangeSet());
+		} catch (final StorageServiceException e) {
+			e.printStackTrace();
+			return;
+		}
 		if (errs.size() != 0) {
 			Utils.printError(":( 2");
 		}
@@ -118,8 +127,12 @@ public class MainTimeAllocator {
 		}
 		
 		// Push to db
-		results = talloc.getEntireBlockSet();
-		errs = StorageService.mergeAllTimeBlocks(results);
+		try {
+			errs = StorageService.applyTimeBlockChanges(talloc.getChangeSet());
+		} catch (final StorageServiceException e) {
+			e.printStackTrace();
+			return;
+		}
 		if (errs.size() != 0) {
 			Utils.printError(":( 3");
 		}
@@ -132,8 +145,12 @@ public class MainTimeAllocator {
 			return;
 		}
 		// Push to db
-		results = talloc.getEntireBlockSet();
-		errs = StorageService.mergeAllTimeBlocks(results);
+		try {
+			errs = StorageService.applyTimeBlockChanges(talloc.getChangeSet());
+		} catch (final StorageServiceException e) {
+			e.printStackTrace();
+			return;
+		}
 		if (errs.size() != 0) {
 			Utils.printError(":( 4");
 		}
@@ -0,0 +1,81 @@
+package backend.time;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Selects PlacementPolicies by the name stored in the placement setting, and holds the gap lookups they share.
+ */
+public class PlacementPolicies {
+
+	public static final String	FIRST_FIT		= "first-fit";
+	public static final String	BEST_FIT		= "best-fit";
+	public static final String	WORST_FIT		= "worst-fit";
+	public static final String	PREFERRED_TIME	= "preferred-time";
+
+	private PlacementPolicies() {}
+
+	/**
+	 * @param name Name of a policy, as stored in the placement setting
+	 * @return The policy with that name, or first-fit if the name is empty or unknown
+	 */
+	public static PlacementPolicy forName(final String name) {
+		if (BEST_FIT.equals(name)) {
+			return new BestFitPolicy();
+		}
+		if (WORST_FIT.equals(name)) {
+			return new WorstFitPolicy();
+		}
+		if (PREFERRED_TIME.equals(name)) {
+			return new PreferredTimePolicy();
+		}
+		return new FirstFitPolicy();
+	}
+
+	/**
+	 * First-fit finds a place whenever any policy could, so it ends every chain
+	 * @param selected The policy to try first
+	 * @return The policies to try in turn before giving up on a block
+	 */
+	public static List<PlacementPolicy> chain(final PlacementPolicy selected) {
+		final List<PlacementPolicy> chain = new ArrayList<PlacementPolicy>();
+		chain.add(selected);
+		if (!FIRST_FIT.equals(selected.getName())) {
+			chain.add(new FirstFitPolicy());
+		}
+		return chain;
+	}
+
+	/**
+	 * @param timeline The Timeline of blocks in range
+	 * @param end The due date of the Assignment
+	 * @return True if no block of the timeline starts before "end", so that all the time before it is free
+	 */
+	static boolean isEmptyBefore(final Timeline timeline, final long end) {
+		return timeline.indexOfFitLocn(end) == 0;
+	}
+
+	/**
+	 * @param timeline A Timeline with a block starting before the due date
+	 * @param after The time to start searching from
+	 * @param blockLength The length of the block, in milliseconds
+	 * @return The free time between "after" and the first block of the timeline, or null if it is too short
+	 */
+	static FreeGapIndex.Gap headGap(final Timeline timeline, final long after, final long blockLength) {
+		final long firstStart = timeline.getStart(0);
+		return (blockLength <= firstStart - after) ? new FreeGapIndex.Gap(after, firstStart) : null;
+	}
+
+	/**
+	 * The timeline may hold blocks past the due date (BatchTimeAllocator places several Assignments on one
+	 * timeline), so the last block is the last one starting before the due date
+	 * @param timeline A Timeline with a block starting before the due date
+	 * @param end The due date of the Assignment
+	 * @param blockLength The length of the block, in milliseconds
+	 * @return The free time between the last block of the timeline and "end", or null if it is too short
+	 */
+	static FreeGapIndex.Gap tailGap(final Timeline timeline, final long end, final long blockLength) {
+		final long lastEnd = timeline.getEnd(timeline.indexOfFitLocn(end) - 1);
+		return (blockLength <= end - lastEnd) ? new FreeGapIndex.Gap(lastEnd, end) : null;
+	}
+}
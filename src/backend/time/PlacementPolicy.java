@@ -0,0 +1,32 @@
+package backend.time;
+
+import data.ITask;
+
+/**
+ * Decides where in a Timeline TimeAllocator places the next block of a Task.
+ *
+ * The gaps a policy may choose from are the same for every policy: the free time between the search start and the
+ * first block, the gaps before blocks starting between the search start and the due date (so that the blocks of an
+ * Assignment stay in chronological order), and the free time between the last block starting before the due date and
+ * the due date. Policies differ in which of
+ * those gaps they pick, and where in it they put the block.
+ */
+public interface PlacementPolicy {
+
+	/**
+	 * @return The name the policy is selected by in the placement setting
+	 */
+	public String getName();
+
+	/**
+	 * Finds a place for a block without changing the timeline or the index
+	 * @param timeline The Timeline of blocks in range
+	 * @param gaps The FreeGapIndex mirroring the timeline
+	 * @param blockLength The length of the block to-be-inserted, in milliseconds
+	 * @param after The time to start searching from
+	 * @param end The due date of the Assignment
+	 * @param task The Task the block is for
+	 * @return The start of the free time found for the block, or FreeGapIndex.NO_FIT if a fit could not be found
+	 */
+	public long findFit(Timeline timeline, FreeGapIndex gaps, long blockLength, long after, long end, ITask task);
+}
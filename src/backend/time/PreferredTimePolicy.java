@@ -0,0 +1,98 @@
+package backend.time;
+
+import java.util.Calendar;
+
+import data.ITask;
+import data.TimeOfDay;
+
+/**
+ * Places a block so that it starts in its Task's preferred TimeOfDay, at the earliest such time in any gap long enough
+ * to hold it. Unlike the other policies, the block may start part way into a gap. Finds no fit for a Task without a
+ * preferred TimeOfDay, so that the next policy in the chain is used instead.
+ *
+ * Gaps are tried in chronological order, so a search may visit every gap in range before giving up.
+ */
+public class PreferredTimePolicy implements PlacementPolicy {
+
+	private static final double	MINS_PER_HOUR	= 60.0;
+	private static final double	SECS_PER_HOUR	= 3600.0;
+
+	@Override
+	public String getName() {
+		return PlacementPolicies.PREFERRED_TIME;
+	}
+
+	@Override
+	public long findFit(final Timeline timeline, final FreeGapIndex gaps, final long blockLength, final long after,
+			final long end, final ITask task) {
+		final TimeOfDay tod = (task == null) ? null : task.getPreferredTimeOfDay();
+		if (tod == null) {
+			return FreeGapIndex.NO_FIT;
+		}
+
+		if (PlacementPolicies.isEmptyBefore(timeline, end)) {
+			return earliestStartIn(after, end, blockLength, tod);
+		}
+
+		final FreeGapIndex.Gap head = PlacementPolicies.headGap(timeline, after, blockLength);
+		if (head != null) {
+			final long fitStart = earliestStartIn(head.getStart(), head.getEnd(), blockLength, tod);
+			if (fitStart != FreeGapIndex.NO_FIT) {
+				return fitStart;
+			}
+		}
+
+		FreeGapIndex.Gap gap = gaps.firstFitGap(after, end, blockLength);
+		while (gap != null) {
+			// Never place a block before the search start, even where the gap itself starts earlier
+			final long fitStart = earliestStartIn(Math.max(after, gap.getStart()), gap.getEnd(), blockLength, tod);
+			if (fitStart != FreeGapIndex.NO_FIT) {
+				return fitStart;
+			}
+			gap = gaps.firstFitGap(gap.getEnd() + 1, end, blockLength);
+		}
+
+		final FreeGapIndex.Gap tail = PlacementPolicies.tailGap(timeline, end, blockLength);
+		if (tail != null) {
+			return earliestStartIn(Math.max(after, tail.getStart()), tail.getEnd(), blockLength, tod);
+		}
+		return FreeGapIndex.NO_FIT;
+	}
+
+	/**
+	 * @param from Start of the free time in milliseconds
+	 * @param to End of the free time in milliseconds
+	 * @param blockLength The length of the block in milliseconds
+	 * @param tod The TimeOfDay the block should start in
+	 * @return The earliest start in [from, to - blockLength] that falls in "tod", or FreeGapIndex.NO_FIT if there is
+	 * 			none
+	 */
+	private static long earliestStartIn(final long from, final long to, final long blockLength, final TimeOfDay tod) {
+		final Calendar cal = Calendar.getInstance();
+		cal.setTimeInMillis(from);
+		final double hour = cal.get(Calendar.HOUR_OF_DAY) + cal.get(Calendar.MINUTE) / MINS_PER_HOUR
+				+ cal.get(Calendar.SECOND) / SECS_PER_HOUR;
+
+		long fitStart = from;
+		if (!isIn(hour, tod)) {
+			// Move on to the next time the window opens
+			cal.set(Calendar.HOUR_OF_DAY, (int) tod.start);
+			cal.set(Calendar.MINUTE, (int) Math.round((tod.start - (int) tod.start) * MINS_PER_HOUR));
+			cal.set(Calendar.SECOND, 0);
+			cal.set(Calendar.MILLISECOND, 0);
+			if (cal.getTimeInMillis() < from) {
+				cal.add(Calendar.DAY_OF_MONTH, 1);
+			}
+			fitStart = cal.getTimeInMillis();
+		}
+		return (fitStart + blockLength <= to) ? fitStart : FreeGapIndex.NO_FIT;
+	}
+
+	private static boolean isIn(final double hour, final TimeOfDay tod) {
+		if (tod.start < tod.end) {
+			return hour >= tod.start && hour < tod.end;
+		}
+		// The window wraps past midnight
+		return hour >= tod.start || hour < tod.end;
+	}
+}
@@ -0,0 +1,319 @@
+package backend.time;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import backend.database.StorageService;
+import backend.database.TimeBlockChangeSet;
+import data.AssignmentBlock;
+import data.IAssignment;
+import data.ITask;
+import data.ITimeBlockable;
+
+/**
+ * A snapshot of the blocks in a window of the calendar that ScheduleOptimizer can rearrange without touching the
+ * blocks themselves.
+ *
+ * Movable blocks lying entirely inside the window are held as primitive start/end pairs with their Task and due date,
+ * and can be moved, swapped and split. Every other block is fixed. Due dates are given, or looked up in the
+ * StorageService once when the snapshot is taken, so that copies can be searched on worker threads. Only applyTo writes back to the
+ * blocks, at the storage boundary.
+ *
+ * Not thread safe, but copies share nothing mutable, so each thread can work on its own copy.
+ */
+public class Schedule {
+
+	private final long					m_windowStart;
+	private final long					m_windowEnd;
+
+	// Shared between copies, never changed
+	private final long[]				m_fixedStarts;
+	private final long[]				m_fixedEnds;
+	private final List<ITimeBlockable>	m_fixed;
+	private final List<ITimeBlockable>	m_originals;
+
+	// By entry
+	private long[]						m_starts;
+	private long[]						m_ends;
+	private long[]						m_dues;
+	private ITask[]						m_tasks;
+	private int[]						m_origins;
+	private int							m_size;
+
+	/**
+	 * @param allBlocks List of ITimeBlockables sorted by start Date
+	 * @param start Start of the window that blocks may be rearranged in
+	 * @param end End of the window that blocks may be rearranged in
+	 */
+	public Schedule(final List<ITimeBlockable> allBlocks, final Date start, final Date end) {
+		this(allBlocks, start, end, null);
+	}
+
+	/**
+	 * Takes due dates from a map instead of the StorageService, so that snapshots can be taken on worker threads
+	 * @param allBlocks List of ITimeBlockables sorted by start Date
+	 * @param start Start of the window that blocks may be rearranged in
+	 * @param end End of the window that blocks may be rearranged in
+	 * @param dueDates Due dates in milliseconds by Assignment id, or null to look them up in the StorageService; blocks
+	 * 			of Assignments missing from the map are due at the end of the window
+	 */
+	public Schedule(final List<ITimeBlockable> allBlocks, final Date start, final Date end,
+			final Map<String, Long> dueDates) {
+		m_windowStart = start.getTime();
+		m_windowEnd = end.getTime();
+		m_fixed = new ArrayList<ITimeBlockable>();
+		m_originals = new ArrayList<ITimeBlockable>();
+
+		for (final ITimeBlockable block : allBlocks) {
+			if (block.isMovable() && block.getStart().getTime() >= m_windowStart
+				&& block.getEnd().getTime() <= m_windowEnd) {
+				m_originals.add(block);
+			} else {
+				m_fixed.add(block);
+			}
+		}
+
+		m_fixedStarts = new long[m_fixed.size()];
+		m_fixedEnds = new long[m_fixed.size()];
+		for (int i = 0; i < m_fixed.size(); ++i) {
+			m_fixedStarts[i] = m_fixed.get(i).getStart().getTime();
+			m_fixedEnds[i] = m_fixed.get(i).getEnd().getTime();
+		}
+
+		m_size = m_originals.size();
+		m_starts = new long[m_size];
+		m_ends = new long[m_size];
+		m_dues = new long[m_size];
+		m_tasks = new ITask[m_size];
+		m_origins = new int[m_size];
+		final Map<String, Long> dues = (dueDates == null) ? new HashMap<String, Long>() : dueDates;
+		for (int i = 0; i < m_size; ++i) {
+			final ITimeBlockable block = m_originals.get(i);
+			m_starts[i] = block.getStart().getTime();
+			m_ends[i] = block.getEnd().getTime();
+			m_tasks[i] = block.getTask();
+			m_dues[i] = dueDateOf(block.getTask(), dues, dueDates == null);
+			m_origins[i] = i;
+		}
+	}
+
+	/**
+	 * @param other Schedule to copy
+	 */
+	public Schedule(final Schedule other) {
+		m_windowStart = other.m_windowStart;
+		m_windowEnd = other.m_windowEnd;
+		m_fixedStarts = other.m_fixedStarts;
+		m_fixedEnds = other.m_fixedEnds;
+		m_fixed = other.m_fixed;
+		m_originals = other.m_originals;
+		m_starts = Arrays.copyOf(other.m_starts, other.m_starts.length);
+		m_ends = Arrays.copyOf(other.m_ends, other.m_ends.length);
+		m_dues = Arrays.copyOf(other.m_dues, other.m_dues.length);
+		m_tasks = Arrays.copyOf(other.m_tasks, other.m_tasks.length);
+		m_origins = Arrays.copyOf(other.m_origins, other.m_origins.length);
+		m_size = other.m_size;
+	}
+
+	/**
+	 * @return The number of movable blocks
+	 */
+	public int size() {
+		return m_size;
+	}
+
+	public long getWindowStart() {
+		return m_windowStart;
+	}
+
+	public long getWindowEnd() {
+		return m_windowEnd;
+	}
+
+	public long getStart(final int i) {
+		return m_starts[i];
+	}
+
+	public long getEnd(final int i) {
+		return m_ends[i];
+	}
+
+	public long getDueDate(final int i) {
+		return m_dues[i];
+	}
+
+	public ITask getTask(final int i) {
+		return m_tasks[i];
+	}
+
+	/**
+	 * @return The number of fixed blocks, which include the movable blocks that are not entirely inside the window
+	 */
+	public int fixedSize() {
+		return m_fixedStarts.length;
+	}
+
+	public long getFixedStart(final int i) {
+		return m_fixedStarts[i];
+	}
+
+	public long getFixedEnd(final int i) {
+		return m_fixedEnds[i];
+	}
+
+	/**
+	 * Moves a block, keeping its length. The caller checks that the result isFeasible.
+	 * @param i The block to move
+	 * @param start The new start of the block in milliseconds
+	 */
+	public void move(final int i, final long start) {
+		m_ends[i] = start + (m_ends[i] - m_starts[i]);
+		m_starts[i] = start;
+	}
+
+	/**
+	 * Swaps the places of two blocks: each starts where the other started. The caller checks that the result
+	 * isFeasible.
+	 * @param i One block
+	 * @param j The other block
+	 */
+	public void swap(final int i, final int j) {
+		final long iStart = m_starts[i];
+		move(i, m_starts[j]);
+		move(j, iStart);
+	}
+
+	/**
+	 * Splits a block in two. The first part keeps the place of the block, the second one starts where the block ended
+	 * but is shorter, so it can be moved elsewhere.
+	 * @param i The block to split
+	 * @param length The length of the first part, in milliseconds, strictly between 0 and the length of the block
+	 * @return The index of the second part
+	 */
+	public int split(final int i, final long length) {
+		if (m_size == m_starts.length) {
+			final int grown = Math.max(4, m_size * 2);
+			m_starts = Arrays.copyOf(m_starts, grown);
+			m_ends = Arrays.copyOf(m_ends, grown);
+			m_dues = Arrays.copyOf(m_dues, grown);
+			m_tasks = Arrays.copyOf(m_tasks, grown);
+			m_origins = Arrays.copyOf(m_origins, grown);
+		}
+		final int part = m_size++;
+		final long rest = m_ends[i] - m_starts[i] - length;
+		m_ends[i] = m_starts[i] + length;
+		m_starts[part] = m_ends[i];
+		m_ends[part] = m_starts[part] + rest;
+		m_dues[part] = m_dues[i];
+		m_tasks[part] = m_tasks[i];
+		m_origins[part] = -1;
+		return part;
+	}
+
+	/**
+	 * Takes O(n) in the number of blocks
+	 * @param i A block
+	 * @return True if the block lies inside the window, ends by its due date, and overlaps no other block
+	 */
+	public boolean isFeasible(final int i) {
+		final long start = m_starts[i];
+		final long end = m_ends[i];
+		if (start < m_windowStart || end > m_windowEnd || end > m_dues[i]) {
+			return false;
+		}
+		for (int j = 0; j < m_fixedStarts.length; ++j) {
+			if (m_fixedStarts[j] < end && m_fixedEnds[j] > start) {
+				return false;
+			}
+		}
+		for (int j = 0; j < m_size; ++j) {
+			if (j != i && m_starts[j] < end && m_ends[j] > start) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return The indices of the movable blocks, sorted by start
+	 */
+	public Integer[] byStart() {
+		final Integer[] order = new Integer[m_size];
+		for (int i = 0; i < m_size; ++i) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+
+			@Override
+			public int compare(final Integer i1, final Integer i2) {
+				return Long.compare(m_starts[i1], m_starts[i2]);
+			}
+		});
+		return order;
+	}
+
+	/**
+	 * The storage boundary: writes the bounds of moved blocks back to them, and creates an AssignmentBlock for every
+	 * part split off a block.
+	 * @param changes The TimeBlockChangeSet that moved and inserted blocks are recorded in, or null
+	 * @return List of every block in the snapshot, sorted by start Date
+	 */
+	public List<ITimeBlockable> applyTo(final TimeBlockChangeSet changes) {
+		final List<ITimeBlockable> blocks = new ArrayList<ITimeBlockable>(m_fixed);
+		for (int i = 0; i < m_size; ++i) {
+			ITimeBlockable block;
+			if (m_origins[i] < 0) {
+				block = new AssignmentBlock(new Date(m_starts[i]), new Date(m_ends[i]), m_tasks[i]);
+				if (changes != null) {
+					changes.markInserted(block);
+				}
+			} else {
+				block = m_originals.get(m_origins[i]);
+				if (block.getStart().getTime() != m_starts[i] || block.getEnd().getTime() != m_ends[i]) {
+					if (changes != null) {
+						changes.markMoved(block);
+					}
+					block.setStart(new Date(m_starts[i]));
+					block.setEnd(new Date(m_ends[i]));
+				}
+			}
+			blocks.add(block);
+		}
+
+		Collections.sort(blocks, new Comparator<ITimeBlockable>() {
+
+			@Override
+			public int compare(final ITimeBlockable b1, final ITimeBlockable b2) {
+				return b1.getStart().compareTo(b2.getStart());
+			}
+		});
+		return blocks;
+	}
+
+	/*
+	 * Helper methods
+	 */
+
+	private long dueDateOf(final ITask task, final Map<String, Long> dues, final boolean lookUp) {
+		final String id = (task == null) ? null : task.getAssignmentID();
+		if (id == null) {
+			return m_windowEnd;
+		}
+		Long due = dues.get(id);
+		if (due == null && !lookUp) {
+			return m_windowEnd;
+		}
+		if (due == null) {
+			final IAssignment asgn = StorageService.getAssignment(id);
+			due = (asgn == null) ? m_windowEnd : asgn.getDueDate().getTime();
+			dues.put(id, due);
+		}
+		return due;
+	}
+}
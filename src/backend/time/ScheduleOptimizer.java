@@ -0,0 +1,275 @@
+package backend.time;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Improves a Schedule by local search under a wall-clock budget, as an anytime algorithm: it can be stopped at any
+ * point and still hand back the best schedule found so far.
+ *
+ * Several independent searches run on a worker pool, each a simulated annealing walk from the same starting schedule
+ * with its own random moves: swapping the places of two blocks, shifting a block a little, moving it next to another
+ * block, and splitting it in two and moving the second part. Every move must leave the schedule feasible, and moves
+ * are scored with a ScheduleScorer. A listener hears about each new best schedule as soon as it is found, so a caller
+ * can show a good schedule quickly and a better one shortly after.
+ */
+public class ScheduleOptimizer {
+
+	/**
+	 * Hears about each new best schedule found by ScheduleOptimizer.optimize
+	 */
+	public interface ImprovementListener {
+
+		/**
+		 * Called on a worker thread, one call at a time, with schedules of strictly increasing scores
+		 * @param best The best schedule found so far, which is not changed afterwards
+		 * @param score Its score
+		 */
+		public void improved(Schedule best, double score);
+	}
+
+	private static final long			QUARTER_HOUR		= TimeUnit.MINUTES.toMillis(15);
+	private static final long			MIN_BLOCK_LENGTH	= (long) (TimeAllocator.MIN_BLOCK_LENGTH_HRS
+																* TimeUnit.HOURS.toMillis(1));
+	private static final double			INITIAL_TEMPERATURE	= 1.0;
+	private static final int			MAX_SHIFT_QUARTERS	= 4;
+	private static final int			NUM_MOVES			= 4;
+
+	private final ScheduleScorer		m_scorer;
+	private final ExecutorService		m_pool;
+	private final boolean				m_ownsPool;
+	private final int					m_searches;
+
+	/**
+	 * Runs one search per available processor, on a pool of daemon threads of its own
+	 * @param scorer The ScheduleScorer to maximize
+	 */
+	public ScheduleOptimizer(final ScheduleScorer scorer) {
+		m_scorer = scorer;
+		m_searches = Runtime.getRuntime().availableProcessors();
+		m_pool = Executors.newFixedThreadPool(m_searches, new ThreadFactory() {
+
+			@Override
+			public Thread newThread(final Runnable r) {
+				final Thread thread = new Thread(r, "ScheduleOptimizer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		m_ownsPool = true;
+	}
+
+	/**
+	 * @param scorer The ScheduleScorer to maximize
+	 * @param pool The pool searches run on, which the caller shuts down
+	 * @param searches The number of independent searches to run
+	 */
+	public ScheduleOptimizer(final ScheduleScorer scorer, final ExecutorService pool, final int searches) {
+		if (searches <= 0) {
+			throw new IllegalArgumentException("ScheduleOptimizer: searches must be positive");
+		}
+		m_scorer = scorer;
+		m_pool = pool;
+		m_ownsPool = false;
+		m_searches = searches;
+	}
+
+	/**
+	 * Searches for a better schedule until the budget runs out or the calling thread is interrupted, blocking the
+	 * calling thread meanwhile. The searches are independent of each other and of "initial", so several calls may run
+	 * at once.
+	 * @param initial The schedule to start from, which is not changed
+	 * @param budget Wall-clock time the search may take
+	 * @param unit Unit of budget
+	 * @param listener Hears about each new best schedule, or null
+	 * @return The best schedule found, or "initial" itself if none scored better
+	 * @throws InterruptedException if the calling thread is interrupted while waiting; the searches are stopped
+	 */
+	public Schedule optimize(final Schedule initial, final long budget, final TimeUnit unit,
+			final ImprovementListener listener) throws InterruptedException {
+		final long budgetNanos = unit.toNanos(budget);
+		final long deadline = System.nanoTime() + budgetNanos;
+		final Best best = new Best(initial, m_scorer.score(initial), listener);
+
+		final List<Callable<Void>> searches = new ArrayList<Callable<Void>>(m_searches);
+		for (int s = 0; s < m_searches; ++s) {
+			searches.add(new Search(initial, new Random(s), deadline, budgetNanos, best));
+		}
+
+		// invokeAll cancels the searches if the calling thread is interrupted while waiting
+		for (final Future<Void> search : m_pool.invokeAll(searches)) {
+			try {
+				search.get();
+			} catch (final ExecutionException e) {
+				throw new IllegalStateException("ScheduleOptimizer: search failed", e.getCause());
+			}
+		}
+		return best.get();
+	}
+
+	/**
+	 * @param schedule A Schedule
+	 * @return Its score, as the optimizer sees it
+	 */
+	public double score(final Schedule schedule) {
+		return m_scorer.score(schedule);
+	}
+
+	/**
+	 * Stops the worker threads, if the optimizer made them itself
+	 */
+	public void shutdown() {
+		if (m_ownsPool) {
+			m_pool.shutdownNow();
+		}
+	}
+
+	/*
+	 * Helper methods
+	 */
+
+	/**
+	 * Applies a random move to the schedule
+	 * @return True if the move left the schedule feasible
+	 */
+	private static boolean randomMove(final Schedule schedule, final Random random) {
+		final int i = random.nextInt(schedule.size());
+		switch (random.nextInt(NUM_MOVES)) {
+			case 0: {
+				// Swap the places of two blocks
+				if (schedule.size() < 2) {
+					return false;
+				}
+				final int j = random.nextInt(schedule.size());
+				if (i == j) {
+					return false;
+				}
+				schedule.swap(i, j);
+				return schedule.isFeasible(i) && schedule.isFeasible(j);
+			}
+			case 1: {
+				// Shift a block by up to an hour either way
+				final int quarters = random.nextInt(2 * MAX_SHIFT_QUARTERS + 1) - MAX_SHIFT_QUARTERS;
+				if (quarters == 0) {
+					return false;
+				}
+				schedule.move(i, schedule.getStart(i) + quarters * QUARTER_HOUR);
+				return schedule.isFeasible(i);
+			}
+			case 2: {
+				// Move a block next to another one, which is where free time usually starts
+				schedule.move(i, randomAnchor(schedule, random));
+				return schedule.isFeasible(i);
+			}
+			default: {
+				// Split a block, and move the second part next to another block
+				final long length = schedule.getEnd(i) - schedule.getStart(i);
+				final long quarters = (length - 2 * MIN_BLOCK_LENGTH) / QUARTER_HOUR;
+				if (quarters < 0) {
+					return false;
+				}
+				final long firstLength = MIN_BLOCK_LENGTH + random.nextInt((int) quarters + 1) * QUARTER_HOUR;
+				final int part = schedule.split(i, firstLength);
+				schedule.move(part, randomAnchor(schedule, random));
+				return schedule.isFeasible(i) && schedule.isFeasible(part);
+			}
+		}
+	}
+
+	/**
+	 * @return The end of a random block, fixed or movable, plus up to half an hour
+	 */
+	private static long randomAnchor(final Schedule schedule, final Random random) {
+		final int anchor = random.nextInt(schedule.size() + schedule.fixedSize());
+		final long end = (anchor < schedule.size()) ? schedule.getEnd(anchor)
+				: schedule.getFixedEnd(anchor - schedule.size());
+		return end + random.nextInt(3) * QUARTER_HOUR;
+	}
+
+	/**
+	 * The best schedule found by the searches of one call to optimize
+	 */
+	private static class Best {
+		private final ImprovementListener	m_listener;
+
+		// Guarded by this
+		private Schedule					m_schedule;
+		private double						m_score;
+
+		private Best(final Schedule schedule, final double score, final ImprovementListener listener) {
+			m_schedule = schedule;
+			m_score = score;
+			m_listener = listener;
+		}
+
+		private synchronized void offer(final Schedule schedule, final double score) {
+			if (score > m_score) {
+				m_schedule = schedule;
+				m_score = score;
+				if (m_listener != null) {
+					m_listener.improved(schedule, score);
+				}
+			}
+		}
+
+		private synchronized Schedule get() {
+			return m_schedule;
+		}
+	}
+
+	/**
+	 * One simulated annealing walk. Accepted schedules are never changed again, since each move is tried on a copy,
+	 * so they can be handed to Best as they are.
+	 */
+	private class Search implements Callable<Void> {
+		private final Schedule	m_initial;
+		private final Random	m_random;
+		private final long		m_deadline;
+		private final long		m_budgetNanos;
+		private final Best		m_best;
+
+		private Search(final Schedule initial, final Random random, final long deadline, final long budgetNanos,
+				final Best best) {
+			m_initial = initial;
+			m_random = random;
+			m_deadline = deadline;
+			m_budgetNanos = budgetNanos;
+			m_best = best;
+		}
+
+		@Override
+		public Void call() {
+			Schedule current = m_initial;
+			double currentScore = m_scorer.score(current);
+			if (current.size() == 0) {
+				return null;
+			}
+
+			long now = System.nanoTime();
+			while (now < m_deadline && !Thread.currentThread().isInterrupted()) {
+				final Schedule candidate = new Schedule(current);
+				if (randomMove(candidate, m_random)) {
+					final double score = m_scorer.score(candidate);
+
+					// Accept worse schedules less and less often as the budget runs out
+					final double temperature = INITIAL_TEMPERATURE * (m_deadline - now) / m_budgetNanos;
+					if (score >= currentScore || m_random.nextDouble() < Math.exp((score - currentScore) / temperature)) {
+						current = candidate;
+						currentScore = score;
+						m_best.offer(current, currentScore);
+					}
+				}
+				now = System.nanoTime();
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package backend.time;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import data.ITask;
+import data.TimeOfDay;
+
+/**
+ * Scores a Schedule for ScheduleOptimizer; higher is better. The score adds up:
+ *
+ * (1) hours worked in each Task's preferred TimeOfDay,
+ * (2) minus the hours by which breaks between consecutive work blocks fall short of a minimum break,
+ * (3) minus the number of consecutive work blocks of the same Assignment (as TimeCompactor avoids),
+ * (4) plus the slack each block leaves before its due date, up to a cap, and
+ * (5) minus a large penalty for every block of a step that starts before a block of an earlier step of the same
+ * Assignment.
+ *
+ * Each of the first four terms is weighted. Scoring takes O(n log n) in the number of blocks.
+ */
+public class ScheduleScorer {
+
+	public static final double	DEFAULT_TOD_WEIGHT		= 1.0;
+	public static final double	DEFAULT_BREAK_WEIGHT	= 2.0;
+	public static final double	DEFAULT_VARIETY_WEIGHT	= 0.5;
+	public static final double	DEFAULT_SLACK_WEIGHT	= 0.5;
+
+	private static final double	ORDER_PENALTY			= 10.0;
+	private static final long	HOUR					= TimeUnit.HOURS.toMillis(1);
+	private static final long	DAY						= TimeUnit.DAYS.toMillis(1);
+	private static final long	MIN_BREAK				= TimeUnit.MINUTES.toMillis(30);
+	private static final long	VARIETY_LIMIT			= TimeUnit.MINUTES.toMillis(60);
+	private static final long	SLACK_CAP				= TimeUnit.DAYS.toMillis(2);
+
+	private final double		m_todWeight;
+	private final double		m_breakWeight;
+	private final double		m_varietyWeight;
+	private final double		m_slackWeight;
+	private final TimeZone		m_zone;
+
+	public ScheduleScorer() {
+		this(DEFAULT_TOD_WEIGHT, DEFAULT_BREAK_WEIGHT, DEFAULT_VARIETY_WEIGHT, DEFAULT_SLACK_WEIGHT);
+	}
+
+	/**
+	 * @param todWeight Weight of each hour worked in the preferred TimeOfDay
+	 * @param breakWeight Weight of each hour that breaks fall short by
+	 * @param varietyWeight Weight of each pair of consecutive blocks of the same Assignment
+	 * @param slackWeight Weight of a block's slack before its due date, counted as a fraction of the cap
+	 */
+	public ScheduleScorer(final double todWeight, final double breakWeight, final double varietyWeight,
+			final double slackWeight) {
+		m_todWeight = todWeight;
+		m_breakWeight = breakWeight;
+		m_varietyWeight = varietyWeight;
+		m_slackWeight = slackWeight;
+		m_zone = TimeZone.getDefault();
+	}
+
+	/**
+	 * @param schedule The Schedule to score
+	 * @return The score of the schedule, higher being better
+	 */
+	public double score(final Schedule schedule) {
+		double todHours = 0;
+		double shortBreakHours = 0;
+		int sameInARow = 0;
+		double slack = 0;
+		int outOfOrder = 0;
+
+		final Map<String, Integer> latestStep = new HashMap<String, Integer>();
+		final Integer[] order = schedule.byStart();
+		for (int k = 0; k < order.length; ++k) {
+			final int i = order[k];
+			final long start = schedule.getStart(i);
+			final long end = schedule.getEnd(i);
+			final ITask task = schedule.getTask(i);
+
+			todHours += (double) timeIn(start, end, task.getPreferredTimeOfDay()) / HOUR;
+			slack += (double) Math.max(0, Math.min(SLACK_CAP, schedule.getDueDate(i) - end)) / SLACK_CAP;
+
+			if (k > 0) {
+				final int prev = order[k - 1];
+				final long gap = start - schedule.getEnd(prev);
+				if (gap < MIN_BREAK) {
+					shortBreakHours += (double) (MIN_BREAK - Math.max(0, gap)) / HOUR;
+				}
+				if (gap <= VARIETY_LIMIT && sameAssignment(task, schedule.getTask(prev))) {
+					++sameInARow;
+				}
+			}
+
+			final String asgnId = task.getAssignmentID();
+			final Integer latest = latestStep.get(asgnId);
+			if (latest != null && latest > task.getTaskNumber()) {
+				++outOfOrder;
+			} else {
+				latestStep.put(asgnId, task.getTaskNumber());
+			}
+		}
+
+		return m_todWeight * todHours - m_breakWeight * shortBreakHours - m_varietyWeight * sameInARow
+			+ m_slackWeight * slack - ORDER_PENALTY * outOfOrder;
+	}
+
+	/*
+	 * Helper methods
+	 */
+
+	/**
+	 * @return The number of milliseconds of [start, end) that fall in "tod", in the default time zone
+	 */
+	long timeIn(final long start, final long end, final TimeOfDay tod) {
+		if (tod == null) {
+			return 0;
+		}
+
+		final long windowStart = (long) (tod.start * HOUR);
+		long windowEnd = (long) (tod.end * HOUR);
+		if (windowEnd <= windowStart) {
+			// The window wraps past midnight
+			windowEnd += DAY;
+		}
+
+		// Work in local time, starting from the day before so that a window wrapping into the first day counts
+		final long localStart = start + m_zone.getOffset(start);
+		final long localEnd = end + m_zone.getOffset(end);
+		long total = 0;
+		for (long day = Math.floorDiv(localStart, DAY) * DAY - DAY; day < localEnd; day += DAY) {
+			final long from = Math.max(localStart, day + windowStart);
+			final long to = Math.min(localEnd, day + windowEnd);
+			if (to > from) {
+				total += to - from;
+			}
+		}
+		return total;
+	}
+
+	private static boolean sameAssignment(final ITask t1, final ITask t2) {
+		return t1.getAssignmentID() != null && t1.getAssignmentID().equals(t2.getAssignmentID());
+	}
+}
@@ -3,8 +3,10 @@ package backend.time;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 
 import backend.database.StorageService;
+import backend.database.TimeBlockChangeSet;
 import data.AssignmentBlock;
 import data.IAssignment;
 import data.ITask;
@@ -12,6 +14,7 @@ import data.ITemplate;
 import data.ITemplateStep;
 import data.ITimeBlockable;
 import data.UnavailableBlock;
+import frontend.view.settings.SettingsConstants;
 
 /**
  * A class that will examine a user's current calendar of events and plot the optimal schedule, given some recent change
@@ -21,17 +24,53 @@ import data.UnavailableBlock;
  */
 public class TimeAllocator {
 	
-	private static final double		DEFAULT_HRS_PER_BLOCK	= 3.0;
+	static final double				DEFAULT_HRS_PER_BLOCK	= 3.0;
 	public static final double		MIN_BLOCK_LENGTH_HRS 	= 0.25;
 	
 	private final IAssignment		m_asgn;
 	private List<ITimeBlockable>	m_localChangesToBlocks;
-	private Date					m_lastTimePlaced;
+	private final TimeBlockChangeSet	m_changes;
+	private final PlacementPolicy	m_policy;
+	private final double			m_hoursPerBlock;
+	private final boolean			m_compact;
+	private List<PlacementPolicy>	m_policies;
+	private FreeGapIndex			m_gaps;
+	private long					m_lastTimePlaced;
 	
+	/**
+	 * Uses the PlacementPolicy named by the placement setting
+	 * @param asgn The Assignment to insert
+	 */
 	public TimeAllocator(final IAssignment asgn) {
+		this(asgn, null);
+	}
+	
+	/**
+	 * @param asgn The Assignment to insert
+	 * @param policy The PlacementPolicy to try first, or null to use the one named by the placement setting
+	 */
+	public TimeAllocator(final IAssignment asgn, final PlacementPolicy policy) {
+		this(asgn, policy, 0, true);
+	}
+	
+	/**
+	 * Used by WhatIfAnalyzer to try other ways of placing an Assignment
+	 * @param asgn The Assignment to insert
+	 * @param policy The PlacementPolicy to try first, or null to use the one named by the placement setting
+	 * @param hoursPerBlock The length of the blocks to place, or 0 to use the Template's preferred length
+	 * @param compact Whether to compact the blocks in range once when no fit can be found
+	 */
+	TimeAllocator(final IAssignment asgn, final PlacementPolicy policy, final double hoursPerBlock,
+			final boolean compact) {
 		m_asgn = asgn;
+		m_policy = policy;
+		m_hoursPerBlock = hoursPerBlock;
+		m_compact = compact;
 		m_localChangesToBlocks = new ArrayList<ITimeBlockable>();
-		m_lastTimePlaced = null;
+		m_changes = new TimeBlockChangeSet();
+		m_policies = null;
+		m_gaps = null;
+		m_lastTimePlaced = 0;
 	}
 	
 	/**
@@ -40,12 +79,12 @@ public class TimeAllocator {
 	 * @param start The date to start inserting blocks of the member-variable Assignment from
 	 * @param end The date to stop inserting blocks of the member-variable Assignment from
 	 * @throws NotEnoughTimeException in the event that insertion fails
+	 * @throws CancellationException if the thread is interrupted part way through; the change set
+	 * 			must then be thrown away
 	 */
 	public void insertAsgn(final Date start, final Date end) throws NotEnoughTimeException{
-		double numHoursPerBlock;
-		int numBlocksLeft; // the number of blocks left to place
-		
 		m_localChangesToBlocks.clear();
+		m_changes.clear();
 		
 		// Get the current set of blocks that have been marked by the user as either unavailable
 		// or currently occupied by another assignment
@@ -62,14 +101,55 @@ public class TimeAllocator {
 			throw new NotEnoughTimeException("Oops! There is not enough free time available by that due date.");
 		}
 		
+		// Place blocks on a primitive timeline, and only create them once every step has been placed
+		final Timeline timeline = new Timeline(allBlocks);
+		placeAsgn(timeline, new FreeGapIndex(timeline), start, end);
+		
+		// Then, decompact all AssignmentBlocks so that a user may have a break
+		// from his/her work time. This decompact() function will consider several
+		// heuristics including (1) putting assignments in their preferred time-of-day
+		// (2) spacing them out to have breaks, (3) variety between different types of
+		// assignments if there are several AssignmentBlocks in a row
+		
+		final List<ITimeBlockable> placedBlocks = timeline.toBlocks(m_changes);
+		TimeCompactor.decompact(placedBlocks, start, end, m_asgn.getID(), m_changes);
+		
+		// Assign the value of this field so it may be accessed by the "getter"
+		// function in this class
+		m_localChangesToBlocks = placedBlocks;
+	}
+	
+	/**
+	 * Breaks the member variable Assignment into a series of Tasks, then places those Tasks
+	 * as blocks on the parameter Timeline. Neither reads nor writes blocks in the StorageService,
+	 * so that BatchTimeAllocator can place several Assignments on one Timeline.
+	 * @param timeline The Timeline of blocks in range, which the blocks are placed on
+	 * @param gaps The FreeGapIndex mirroring the timeline, which is kept up to date
+	 * @param start The date to start inserting blocks of the member-variable Assignment from
+	 * @param end The date to stop inserting blocks of the member-variable Assignment from
+	 * @throws NotEnoughTimeException in the event that insertion fails, leaving the blocks
+	 * 			placed so far on the timeline
+	 */
+	void placeAsgn(final Timeline timeline, final FreeGapIndex gaps, final Date start, final Date end)
+			throws NotEnoughTimeException {
+		double numHoursPerBlock;
+		int numBlocksLeft; // the number of blocks left to place
+		
 		// Get the number of subtasks for this assignment, determine how many chunks to break into
 		// per subtask, and how long per subtask
 		final ITemplate template = m_asgn.getTemplate();
 		numHoursPerBlock = (template == null ? DEFAULT_HRS_PER_BLOCK : template.getPreferredConsecutiveHours());
-
+		if (m_hoursPerBlock > 0) {
+			numHoursPerBlock = m_hoursPerBlock;
+		}
+		
+		// Every block falls through the chain of placement policies before compaction is tried
+		m_policies = PlacementPolicies.chain((m_policy != null) ? m_policy
+				: PlacementPolicies.forName(StorageService.getSetting(SettingsConstants.PLACEMENT_SETTING)));
+		m_gaps = gaps;
 		
 		final List<ITemplateStep> tempSteps = template.getAllSteps();
-		m_lastTimePlaced = new Date(start.getTime());
+		m_lastTimePlaced = start.getTime();
 		boolean success = false;
 		for (int i = 0; i < tempSteps.size(); ++i) {
 			// Get the number of blocks to place for this current step
@@ -79,10 +159,9 @@ public class TimeAllocator {
 			//Insert as many uniform blocks as possible that are of a consistent length
 			final double exactNumBlocks = numHoursInStep / numHoursPerBlock;
 			numBlocksLeft = (int) Math.floor(exactNumBlocks);
-			success = tryUniformInsertion(allBlocks, start, end, step, numBlocksLeft, numHoursPerBlock);
+			success = tryUniformInsertion(timeline, start, end, step, numBlocksLeft, numHoursPerBlock);
 			
-			//For the purposes of extensibility, we could try another insertion policy here.
-			//Currently, we choose to throw an exception instead to indicate failure.
+			//Every placement policy has already been tried for each block, so give up
 			if (!success) {
 				throw new NotEnoughTimeException("Oops! Carly was unable to insert the assignment.");
 			}
@@ -91,58 +170,49 @@ public class TimeAllocator {
 			double numHrsLeftover = numHoursInStep - (numBlocksLeft * numHoursPerBlock);
 			numBlocksLeft = 1;
 			if(numHrsLeftover >= MIN_BLOCK_LENGTH_HRS)
-				success = tryUniformInsertion(allBlocks, start, end, step, numBlocksLeft, numHrsLeftover);
+				success = tryUniformInsertion(timeline, start, end, step, numBlocksLeft, numHrsLeftover);
 			
-			//For the purposes of extensibility, we could try another insertion policy here.
-			//Currently, we choose to throw an exception instead to indicate failure.
 			if (!success) {
 				throw new NotEnoughTimeException("Oops! Carly was unable to insert the assignment.");
 			}
 			
 		}
-		
-		// Then, decompact all AssignmentBlocks so that a user may have a break
-		// from his/her work time. This decompact() function will consider several
-		// heuristics including (1) putting assignments in their preferred time-of-day
-		// (2) spacing them out to have breaks, (3) variety between different types of
-		// assignments if there are several AssignmentBlocks in a row
-		
-		TimeCompactor.decompact(allBlocks, start, end, m_asgn.getID());
-		
-		// Assign the value of this field so it may be accessed by the "getter"
-		// function in this class
-		m_localChangesToBlocks = allBlocks;
 	}
 	
 	/**
-	 * Attempts a uniform insertion policy over the parameter List. Returns true if successful.
-	 * @param allBlocks A List of ITimeBlockables, sorted by start Date
+	 * Attempts a uniform insertion policy over the parameter Timeline. Returns true if successful.
+	 * @param timeline The Timeline of blocks in range
 	 * @param start The Date at which to begin insertion
 	 * @param end The Date at which to end insertion
 	 * @param step The TemplateStep currently being inserted (i.e. TemplateStep ~ Template as Task ~ Assignment)
 	 * @param numBlocksLeft The number of blocks to-be-inserted via the uniform-insertion-policy.
 	 * @param numHoursPerBlock The number of recommended hours per time block.
 	 * @return Returns true if the insertion was successful, or false otherwise.  Inserts all blocks
-	 * 			into the StorageService.
+	 * 			into the Timeline.
+	 * @throws CancellationException if the thread is interrupted part way through
 	 */
-	private boolean tryUniformInsertion(final List<ITimeBlockable> allBlocks, final Date start, final Date end,
+	private boolean tryUniformInsertion(final Timeline timeline, final Date start, final Date end,
 			final ITemplateStep step, int numBlocksLeft, final double numHoursPerBlock) {
 		
-		boolean hasCompactedOnce = false;
+		boolean hasCompactedOnce = !m_compact;
+		final long blockLenInMillis = convertHoursToMillis(numHoursPerBlock);
+		final ITask task = m_asgn.getTasks().get(step.getStepNumber());
 		
 		while (numBlocksLeft > 0) {
-			// 1. Use find fit function for the next block (Best-Fit search policy)
-			final AssignmentBlock block = findFit(allBlocks, numHoursPerBlock, (Date) m_lastTimePlaced.clone(),
-					(Date) end.clone(), step);
+			TimeUtilities.checkCancelled();
 			
-			// 2. If no fit can be found, try compaction OR break the loop and move on to
-			// the next type of insertion policy
-			if (block == null) {
+			// 1. Use find fit function for the next block (falls through the placement policies)
+			final long fitStart = findFit(timeline, blockLenInMillis, m_lastTimePlaced, end.getTime(), task);
+			
+			// 2. If no fit can be found, try compaction OR break the loop to indicate failure
+			if (fitStart == FreeGapIndex.NO_FIT) {
 				
 				if (!hasCompactedOnce) {
 					// Compact existing blocks so that they fit better, and reset the lastTimePlaced
 					// reference so that it is still accurate
-					m_lastTimePlaced = TimeCompactor.compact(allBlocks, start, end, m_lastTimePlaced);
+					m_lastTimePlaced = TimeCompactor.compact(timeline, start.getTime(), end.getTime(),
+							m_lastTimePlaced);
+					m_gaps.rebuild(timeline);
 					hasCompactedOnce = true;
 					continue;					
 				} 
@@ -151,85 +221,44 @@ public class TimeAllocator {
 				}
 			}
 			
-			// 3. If a fit is found, insert the block into the list, decrement the counter
+			// 3. If a fit is found, insert the block into the timeline, decrement the counter
 			// and continue.
-			TimeUtilities.insertIntoSortedList(allBlocks, block);
+			final int position = timeline.insert(fitStart, fitStart + blockLenInMillis, task);
+			if (position >= 0) {
+				m_gaps.insert(position, fitStart, fitStart + blockLenInMillis);
+			}
 			--numBlocksLeft;
 			
 			// 4. Reset the place that the last block was placed for future searches
-			m_lastTimePlaced = block.getStart();
+			m_lastTimePlaced = fitStart;
 		}
 		
 		return true;
 	}
 	
-	// Return a newly-initialized AssignmentBlock containing the relevant start/end
-	// dates for the current chunk.
 	/**
-	 *  Iterates over the parameter List and uses a first-fit insertion policy to find a place to insert
-	 *  a block of length "blockLength".  Returns a newly-initialized AssignmentBlock containing the 
-	 *  relevant start/end dates for said block.
-	 * @param blockList The List of ITimeBlockables, sorted by start Date
-	 * @param blockLength The length of the ITimeBlockable to-be-inserted
-	 * @param asgnStart The start Date of the Assignment
-	 * @param asgnEnd The due Date of the Assignment
-	 * @param step The TemplateStep of the block being inserted
-	 * @return an initialized AssignmentBlock containing a Task, and a start/end Date over which the
-	 * 			user will be working.  Returns null if a fit could not be found.
+	 *  Tries each PlacementPolicy of the chain in turn over the parameter Timeline to find a
+	 *  place to insert a block of length "blockLenInMillis".
+	 * @param timeline The Timeline of blocks in range
+	 * @param blockLenInMillis The length of the block to-be-inserted
+	 * @param asgnStart The time to start searching from
+	 * @param asgnEnd The due date of the Assignment
+	 * @param task The Task the block is for
+	 * @return the start of the free time found for the block, or FreeGapIndex.NO_FIT if no policy
+	 * 			could find a fit.
 	 */
-	private AssignmentBlock findFit(final List<ITimeBlockable> blockList, final double blockLength, final Date asgnStart,
-			final Date asgnEnd, final ITemplateStep step) {
-		Date fitStart = null;
-		Date fitEnd = null;
-		final long blockLenInMillis = convertHoursToMillis(blockLength);
-		final ITask task = m_asgn.getTasks().get(step.getStepNumber());
-		
-		if (blockList.size() == 0) {
-			fitStart = asgnStart;
-			fitEnd = new Date(fitStart.getTime() + convertHoursToMillis(blockLength));
-			
-			// Get the corresponding task from the Assignment member variable
-			return new AssignmentBlock(fitStart, fitEnd, task);
-		}
-		
-		// Get free time between start time given and first block in list
-		if (blockLenInMillis <= (blockList.get(0).getStart().getTime() - asgnStart.getTime())) {
-			fitStart = asgnStart;
-			fitEnd = new Date(fitStart.getTime() + blockLenInMillis);
-			return new AssignmentBlock(fitStart, fitEnd, task);
-		}
-		
-		//Iterate so that items of different tasks under the same assignment are
-		//placed in the calendar in correct chronological order
-		for (int i = TimeUtilities.indexOfFitLocn(blockList, asgnStart); i < blockList.size(); ++i) {
-			// Ignore this edge case
-			if (i == 0) {
-				continue;
-			}
-			// Get free time between two blocks in the list
-			if (blockLenInMillis <= (blockList.get(i).getStart().getTime()
-				- blockList.get(i - 1).getEnd().getTime())) {
-				
-				fitStart = (Date) blockList.get(i - 1).getEnd().clone();
-				fitEnd = new Date(fitStart.getTime() + blockLenInMillis);
-				
-				//Added this to make policy FIRST-FIT rather than best fit
-				return new AssignmentBlock(fitStart, fitEnd, task);
+	private long findFit(final Timeline timeline, final long blockLenInMillis, final long asgnStart,
+			final long asgnEnd, final ITask task) {
+		for (final PlacementPolicy policy : m_policies) {
+			final long fitStart = policy.findFit(timeline, m_gaps, blockLenInMillis, asgnStart, asgnEnd, task);
+			if (fitStart != FreeGapIndex.NO_FIT) {
+				return fitStart;
 			}
 		}
 		
-		// Get free time between last block in list and end time given
-		if (blockLenInMillis <= (asgnEnd.getTime() - blockList.get(blockList.size() - 1).getEnd().getTime())) {
-			fitStart = (Date) blockList.get(blockList.size() - 1).getEnd().clone();
-			fitEnd = new Date(fitStart.getTime() + blockLenInMillis);
-			
-			//Added this to make policy FIRST-FIT rather than best fit
-			return new AssignmentBlock(fitStart, fitEnd, task);
-		}
-		
 		//In this case, no fit was found anywhere in the time stream,
-		//so return null to indicate failure
-		return null;
+		//so return NO_FIT to indicate failure
+		return FreeGapIndex.NO_FIT;
 	}
 	
 	/**
@@ -249,4 +278,13 @@ public class TimeAllocator {
 		return new ArrayList<ITimeBlockable>(m_localChangesToBlocks);
 	}
 	
+	/**
+	 * ONLY call this function after calling the "insertAsgn()" function.
+	 * @return The TimeBlockChangeSet of blocks inserted and moved by the last insertion, so that
+	 * 			only those need to be persisted.
+	 */
+	public TimeBlockChangeSet getChangeSet() {
+		return m_changes;
+	}
+	
 }
\ No newline at end of file
@@ -3,12 +3,13 @@ package backend.time;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.TimeUnit;
 
 import backend.database.StorageService;
+import backend.database.TimeBlockChangeSet;
 import data.Assignment;
 import data.ITimeBlockable;
-import data.UnavailableBlock;
 
 
 public class TimeCompactor {
@@ -29,43 +30,78 @@ public class TimeCompactor {
 	 */
 	public static Date compact(List<ITimeBlockable> allBlocks, Date start, Date end, 
 			Date lastTimePlaced) {
+		return compact(allBlocks, start, end, lastTimePlaced, null);
+	}
+	
+	/**
+	 * Compacts all movable blocks in the Date range [start, end], as above.  If a
+	 * TimeBlockChangeSet is given, every block that is moved is recorded in it
+	 * @param allBlocks A List of ITimeBlockables sorted by start Date
+	 * @param start The Date at which to begin compaction of the parameter List
+	 * @param end The Date at which to end compaction of the parameter List
+	 * @param lastTimePlaced A reference to a Date where the last successful insertion into
+	 * 						"allBlocks" was
+	 * @param changes The TimeBlockChangeSet that moved blocks are recorded in, or null
+	 * @return a Date indicating where the block corresponding to the "lastTimePlaced" Date
+	 * 			has been moved
+	 */
+	public static Date compact(List<ITimeBlockable> allBlocks, Date start, Date end, 
+			Date lastTimePlaced, TimeBlockChangeSet changes) {
 		
 		if(allBlocks.size() == 0)
 			return lastTimePlaced;
 		
-		int startInd = TimeUtilities.indexOfFitLocn(allBlocks, start);
-		Date timeToPushTo = allBlocks.get(startInd).getEnd();
+		Timeline timeline = new Timeline(allBlocks);
+		lastTimePlaced.setTime(compact(timeline, start.getTime(), end.getTime(), lastTimePlaced.getTime()));
+		timeline.toBlocks(changes);
+	
+		return lastTimePlaced;
+	}
+	
+	/**
+	 * Compacts all movable blocks of a Timeline in the range [start, end], as above, without
+	 * allocating.  Moved blocks are only written back when the Timeline's toBlocks() is called.
+	 * @param timeline A Timeline
+	 * @param start The time at which to begin compaction, in milliseconds
+	 * @param end The time at which to end compaction, in milliseconds
+	 * @param lastTimePlaced The start of the last block successfully inserted into "timeline"
+	 * @return the start of the block that started at "lastTimePlaced", after compaction
+	 * @throws CancellationException if the thread is interrupted part way through
+	 */
+	public static long compact(Timeline timeline, long start, long end, long lastTimePlaced) {
 		
-		for(int i = startInd + 1; i < allBlocks.size(); ++i) {
-			
-			ITimeBlockable block = allBlocks.get(i);
+		int startInd = timeline.indexOfFitLocn(start);
+		if(startInd >= timeline.size())
+			return lastTimePlaced;
+		
+		long timeToPushTo = timeline.getEnd(startInd);
+		
+		for(int i = startInd + 1; i < timeline.size(); ++i) {
+			TimeUtilities.checkCancelled();
 			
 			//If a block goes past the given "end" parameter, stop compacting and return
-			if(block.getEnd().getTime() > end.getTime())
+			if(timeline.getEnd(i) > end)
 				return lastTimePlaced;
 			
 			//If a block is unmovable, use the end of that block as the time to push to
 			//for safety purposes (i.e. when compacting future blocks, it is not known
 			//how much space there is between "block" and the last item that was compacted)
-			if(!block.isMovable()) {
-				timeToPushTo = block.getEnd();
+			if(!timeline.isMovable(i)) {
+				timeToPushTo = timeline.getEnd(i);
 				continue;
 			}
 			
 			//Compact the block backwards in time
-			long delta = block.getLength();
-			Date newEnd = new Date(timeToPushTo.getTime() + delta);
+			long newEnd = timeToPushTo + timeline.getLength(i);
 			
-			//Reset the value in time that the "lastTimePlaced" reference points
-			//to if it is encountered
-			if(block.getStart().getTime() == lastTimePlaced.getTime()) {
-				lastTimePlaced.setTime(timeToPushTo.getTime());
+			//Reset the value in time that "lastTimePlaced" refers to if it is encountered
+			if(timeline.getStart(i) == lastTimePlaced) {
+				lastTimePlaced = timeToPushTo;
 			}
 			
-			block.setStart(new Date(timeToPushTo.getTime()));
-			block.setEnd(new Date(newEnd.getTime()));
+			timeline.move(i, timeToPushTo, newEnd);
 			
-			//Reset the timeToPushTo pointer to be the newEnd object
+			//Reset the timeToPushTo pointer to be the newEnd
 			timeToPushTo = newEnd;
 		}
 	
@@ -84,6 +120,22 @@ public class TimeCompactor {
 	 * @param end The Date at which to end de-compaction of the parameter List
 	 */
 	public static void decompact(List<ITimeBlockable> allBlocks, Date start, Date end, String justAddedID) {
+		decompact(allBlocks, start, end, justAddedID, null);
+	}
+	
+	/**
+	 * De-compacts the schedule, as above.  If a TimeBlockChangeSet is given, every block that is
+	 * moved is recorded in it and nothing is written to the StorageService; otherwise switched
+	 * blocks are updated in the StorageService right away.
+	 * @param allBlocks A List of ITimeBlockables sorted by start Date
+	 * @param start The Date at which to begin de-compaction of the parameter List
+	 * @param end The Date at which to end de-compaction of the parameter List
+	 * @param justAddedID The id of the Assignment whose blocks were just inserted
+	 * @param changes The TimeBlockChangeSet that moved blocks are recorded in, or null
+	 * @throws CancellationException if the thread is interrupted part way through
+	 */
+	public static void decompact(List<ITimeBlockable> allBlocks, Date start, Date end, String justAddedID,
+			TimeBlockChangeSet changes) {
 
 		//Iterate over blocks.  If a block is movable, look at its preferred time of day.
 		//See if there is a block already there.  If not, try to move it there.  If so,
@@ -99,11 +151,6 @@ public class TimeCompactor {
 		
 		List<ITimeBlockable> justAddedBlocks = new ArrayList<ITimeBlockable>();
 		
-		List<UnavailableBlock> unavailables = StorageService.getAllUnavailableBlocksWithinRange(start, end);
-		List<ITimeBlockable> unavailList = new ArrayList<ITimeBlockable>(unavailables.size());
-		for(int i = 0; i < unavailables.size(); ++i)
-			unavailList.add(unavailables.get(i));
-		
 		Date timeToStartFrom = new Date(end.getTime() - MILLIS_IN_DAY);
 
 
@@ -166,6 +213,7 @@ public class TimeCompactor {
 			//	 and the block currently being placed.  If there is a conflict with an unmovable block
 			//	 that resides there, find the end of the unmovable zone (WATCH for multiple unmovables)
 			//	 then try to place the block there.
+			TimeUtilities.checkCancelled();
 			ITimeBlockable block = justAddedBlocks.get(i);
 			long delta = block.getLength();
 			
@@ -200,6 +248,8 @@ public class TimeCompactor {
 			}
 
 			//Place the block in its new location
+			if(changes != null)
+				changes.markMoved(block);
 			block.getStart().setTime(newStart);
 			block.getEnd().setTime(newEnd);
 
@@ -211,8 +261,8 @@ public class TimeCompactor {
 			//	"newStart" was actually allocated and the original recommended time.
 			if(recommendedStart > newStart) {
 				//Subtract the amount of free time in between recommendedStart and newStart
-				int newStartInd = TimeUtilities.indexOfFitLocn(allBlocks, new Date(newStart));
-				int recStartInd = TimeUtilities.indexOfFitLocn(allBlocks, new Date(recommendedStart));
+				int newStartInd = TimeUtilities.indexOfFitLocn(allBlocks, newStart);
+				int recStartInd = TimeUtilities.indexOfFitLocn(allBlocks, recommendedStart);
 				
 				//Iterate over all blocks in between the two times, and subtract the empty space between them
 				for(int j = newStartInd; j < recStartInd; ++j) {
@@ -251,7 +301,7 @@ public class TimeCompactor {
 		}
 		
 		//Try to switch the order of consecutive blocks that are of the same type
-		trySwitchBlockOrder(allBlocks);
+		trySwitchBlockOrder(allBlocks, changes);
 
 		//Try to move assignments to their preferred time-of-day if possible
 		//optimizePreferredTime(allBlocks);
@@ -263,8 +313,9 @@ public class TimeCompactor {
 	 * Assignment type, so that a variety of different Assignments appear in a row for
 	 * user-friendly work schedules.
 	 * @param allBlocks A List of ITimeBlockables, sorted by start Date
+	 * @param changes The TimeBlockChangeSet that switched blocks are recorded in, or null
 	 */
-	private static void trySwitchBlockOrder(List<ITimeBlockable> allBlocks) {
+	private static void trySwitchBlockOrder(List<ITimeBlockable> allBlocks, TimeBlockChangeSet changes) {
 		//When iterating, look at the next and previous assignments, and make sure that there
 		//are no long successions of the same assignment (consecutive HOUR-wise, not necessarily
 		//just block-wise)
@@ -272,6 +323,7 @@ public class TimeCompactor {
 		final long lim = TimeUnit.MILLISECONDS.convert(60, TimeUnit.MINUTES);
 		
 		for(int i = 1; i < allBlocks.size() - 1; ++i) {
+			TimeUtilities.checkCancelled();
 			
 			//Check for (a) 1-2 consecutive or (b) 2-1 consecutive
 			
@@ -295,7 +347,7 @@ public class TimeCompactor {
 					continue;
 				
 				//Note: this function tries several different ways of switching blocks, regardless of their lengths
-				TimeUtilities.switchTimeBlocks(allBlocks, prev, curr);
+				TimeUtilities.switchTimeBlocks(allBlocks, prev, curr, changes);
 				
 				//Increment i so that this doesn't get repeated
 				++i;
@@ -306,7 +358,7 @@ public class TimeCompactor {
 					continue;
 				
 				//Note: this function tries several different ways of switching blocks, regardless of their lengths
-				TimeUtilities.switchTimeBlocks(allBlocks, curr, next);
+				TimeUtilities.switchTimeBlocks(allBlocks, curr, next, changes);
 				
 				//Increment i so that this doesn't get repeated
 				++i;
@@ -334,7 +386,7 @@ public class TimeCompactor {
 
 		//Make sure that the block does not overlap any unavailable blocks
 		while(true) {
-			int indFit = TimeUtilities.indexOfFitLocn(allBlocks, new Date(newStart));
+			int indFit = TimeUtilities.indexOfFitLocn(allBlocks, newStart);
 			pred = (indFit == 0 ? null : allBlocks.get(indFit - 1));
 			succ = (indFit >= allBlocks.size() - 1 ? null : allBlocks.get(indFit));
 			
@@ -3,9 +3,13 @@ package backend.time;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
 
+import backend.database.StaleDataException;
 import backend.database.StorageService;
 import backend.database.StorageServiceException;
+import backend.database.TimeBlockChangeSet;
 import data.Assignment;
 import data.AssignmentBlock;
 import data.ITask;
@@ -15,16 +19,64 @@ import frontend.Utils;
 
 public class TimeModifier {
 	
+	private static final long	INITIAL_PADDING		= TimeUnit.DAYS.toMillis(1);
+	
+	// The push logic looks at "prev" and the block before it, and at "curr", "next" and the block after it
+	private static final int	NEIGHBORS_BEFORE	= 2;
+	private static final int	NEIGHBORS_AFTER		= 3;
+	
+	// How many times a move or progress update is planned before giving up on data that keeps changing underneath it
+	private static final int	MAX_ATTEMPTS		= 3;
+	
 	/**
 	 * Takes in a block, and a new start/end time and updates the block in the database. The types of operations that
 	 * merit the use of this function are (1) lengthening a block, (2) shortening a block, and (3) dragging a block.
 	 * 
+	 * If the block or one it pushes changed since it was read, the block is read again and the move is planned again,
+	 * up to MAX_ATTEMPTS times.
+	 * 
 	 * @param block The block to be updated in the database
 	 * @param newStart The new start time for the parameter block
 	 * @param newEnd The new end time for the parameter block
 	 * @return a boolean indicating whether or not the operation was successful
 	 */
 	public static boolean updateBlock(final ITimeBlockable block, final Date newStart, final Date newEnd) {
+		ITimeBlockable current = block;
+		for (int attempt = 1;; ++attempt) {
+			try {
+				if (!planAndCommitBlock(current, newStart, newEnd)) {
+					return false;
+				}
+				break;
+			} catch (final StaleDataException e) {
+				current = (attempt < MAX_ATTEMPTS) ? reloadBlock(current) : null;
+				if (current == null) {
+					Utils.printError(e.getMessage());
+					return false;
+				}
+			}
+		}
+		
+		// The caller's block is the one it shows, so it gets what was written even if a fresh copy was moved
+		if (current != block) {
+			block.setStart(current.getStart());
+			block.setEnd(current.getEnd());
+			if (current.getTask() != null && !current.getTaskId().equals(block.getTaskId())) {
+				block.setTask(current.getTask());
+			}
+			block.setVersion(current.getVersion());
+		}
+		return true;
+	}
+	
+	/**
+	 * Plans the move for updateBlock and commits it
+	 * 
+	 * @return whether the move was allowed and written
+	 * @throws StaleDataException if a block changed since it was read; nothing was written
+	 */
+	private static boolean planAndCommitBlock(final ITimeBlockable block, final Date newStart, final Date newEnd)
+			throws StaleDataException {
 		final Date now = new Date();
 		
 		final ITask task = block.getTask();
@@ -39,43 +91,34 @@ public class TimeModifier {
 			}
 		}
 		
-		// Get all blocks from now until the end of the user's calendar
-		final Date tempStart = new Date();
-		final Date tempEnd = TimeUtilities.getLastDueDate();
-		final List<AssignmentBlock> asgnBlocks = StorageService.getAllAssignmentBlocksWithinRange(tempStart, tempEnd);
-		final List<UnavailableBlock> unavBlocks = StorageService.getAllUnavailableBlocksWithinRange(tempStart, tempEnd);
-		final List<ITimeBlockable> allBlocks = TimeUtilities.zipTimeBlockLists(unavBlocks, asgnBlocks);
+		// Get the blocks around the new position of the block
+		final List<ITimeBlockable> allBlocks = loadNeighborhood(now, newStart, newEnd);
 		
 		final Date currStart = block.getStart();
 		final Date currEnd = block.getEnd();
 		
+		// Plan every move first, then write them all in one transaction
+		final BlockMovePlan plan = new BlockMovePlan();
+		
 		// Shortening a block from the top
 		if (currStart.compareTo(newStart) < 0 && currEnd.compareTo(newEnd) == 0) {
-			block.setStart(newStart);
-			try {
-				StorageService.updateTimeBlock(block);
-				return true;
-			} catch (final StorageServiceException e) {
-				e.printStackTrace();
-			}
+			plan.move(block, newStart, currEnd);
 		}
 		// Shortening a block from the bottom
 		else if (currStart.compareTo(newStart) == 0 && currEnd.compareTo(newEnd) > 0) {
-			block.setEnd(newEnd);
-			try {
-				StorageService.updateTimeBlock(block);
-				return true;
-			} catch (final StorageServiceException e) {
-				e.printStackTrace();
-			}
+			plan.move(block, currStart, newEnd);
 		}
 		// Lengthening a block from the top
 		else if (currStart.compareTo(newStart) > 0 && currEnd.compareTo(newEnd) == 0) {
-			return pushBlocksBack(allBlocks, block, now, newStart);
+			if (!planPushBack(allBlocks, block, now, newStart, plan)) {
+				return false;
+			}
 		}
 		// Lengthening a block from the bottom
 		else if (currStart.compareTo(newStart) == 0 && currEnd.compareTo(newEnd) < 0) {
-			return pushBlocksForward(allBlocks, block, now, newStart, newEnd);
+			if (!planPushForward(allBlocks, block, now, newStart, newEnd, plan)) {
+				return false;
+			}
 		}
 		// Otherwise the block has been dragged
 		else {
@@ -86,7 +129,8 @@ public class TimeModifier {
 			
 			// Try a switch operation if the starts/ends line up and no due date violations occur
 			if (curr != null && curr.getStart().equals(newStart) && curr.getEnd().equals(newEnd)) {
-				return TimeUtilities.switchTimeBlocks(allBlocks, block, curr);
+				final BlockMovePlan switchPlan = TimeUtilities.planSwitch(allBlocks, block, curr);
+				return switchPlan != null && switchPlan.commit();
 			}
 			
 			// Make sure the new block is not overlapping the bounds of "prev" and "curr" -- if so,
@@ -95,71 +139,49 @@ public class TimeModifier {
 				
 				// This is the case where a block is being dragged over itself slightly
 				if (prev.equals(block) && (curr == null || curr.getStart().getTime() >= newEnd.getTime())) {
-					block.setStart(newStart);
-					block.setEnd(newEnd);
-					
-					try {
-						StorageService.updateTimeBlock(block);
-						return true;
-					} catch (final StorageServiceException sse) {
-						sse.printStackTrace();
-						return false;
-					}
+					plan.move(block, newStart, newEnd);
+					return plan.commit();
 				}
 				
 				// Otherwise, try to push other blocks backwards to make a fit
-				if (!pushBlocksBack(allBlocks, block, now, newStart)) {
+				if (!planPushBack(allBlocks, block, now, newStart, plan)) {
 					return false;
 				}
 			}
-			if (curr != null && curr.getStart().getTime() < newEnd.getTime()) {
+			if (curr != null && plan.getStart(curr).getTime() < newEnd.getTime()) {
 				
 				// This is the case where a block is being dragged over itself slightly
-				if (curr.equals(block) && (prev == null || prev.getEnd().getTime() <= newStart.getTime())) {
-					block.setStart(newStart);
-					block.setEnd(newEnd);
-					
-					try {
-						StorageService.updateTimeBlock(block);
-						return true;
-					} catch (final StorageServiceException sse) {
-						sse.printStackTrace();
-						return false;
-					}
+				if (curr.equals(block) && (prev == null || plan.getEnd(prev).getTime() <= newStart.getTime())) {
+					plan.move(block, newStart, newEnd);
+					return plan.commit();
 				}
 				
-				if (!pushBlocksForward(allBlocks, block, now, newStart, newEnd)) {
+				if (!planPushForward(allBlocks, block, now, newStart, newEnd, plan)) {
 					return false;
 				}
 			}
 			
-			// Once any overlapping conflicts are resolved, update the db
-			block.setStart(newStart);
-			block.setEnd(newEnd);
-			
-			try {
-				StorageService.updateTimeBlock(block);
-				return true;
-			} catch (final StorageServiceException e) {
-				e.printStackTrace();
-			}
+			// Once any overlapping conflicts are resolved, move the block itself
+			plan.move(block, newStart, newEnd);
 		}
 		
-		return false;
+		// Only return false here if the database update failed
+		return plan.commit();
 	}
 	
 	/**
-	 * Given the parameter list of all blocks, attempts to compact blocks that are before the parameter "block" so that
-	 * it can fit at the time "newStart"
+	 * Given the parameter list of all blocks, plans to compact blocks that are before the parameter "block" so that
+	 * it can fit at the time "newStart". Only the plan is changed.
 	 * 
 	 * @param allBlocks a list of all blocks (unavailable and assignment) for access
 	 * @param block The block to start from
 	 * @param now The time that the function the called this function began
 	 * @param newStart The new start time for the parameter block
-	 * @return a boolean indicating whether or not the operation was successful
+	 * @param plan The BlockMovePlan the moves are added to
+	 * @return a boolean indicating whether or not a fit could be planned
 	 */
-	private static boolean pushBlocksBack(final List<ITimeBlockable> allBlocks, final ITimeBlockable block,
-			final Date now, final Date newStart) {
+	private static boolean planPushBack(final List<ITimeBlockable> allBlocks, final ITimeBlockable block,
+			final Date now, final Date newStart, final BlockMovePlan plan) {
 		final int ind = TimeUtilities.indexOfFitLocn(allBlocks, newStart);
 		
 		final ITimeBlockable prev = (ind > 0 ? allBlocks.get(ind - 1) : null);
@@ -171,79 +193,45 @@ public class TimeModifier {
 		}
 		
 		// In this case, check to see if newStart overlaps prev's end
-		if (prev != null && prev.getEnd().getTime() > newStart.getTime()) {
-			final long timeDiff = prev.getEnd().getTime() - newStart.getTime();
+		final Date prevStart = plan.getStart(prev);
+		final Date prevEnd = plan.getEnd(prev);
+		if (prevEnd.getTime() > newStart.getTime()) {
+			final long timeDiff = prevEnd.getTime() - newStart.getTime();
 			
-			// No block in front of prev -- use the "now" block at the top of this function for comparison
-			if (ind - 1 == 0) {
-				if (prev.getStart().getTime() - now.getTime() >= timeDiff) {
-					// If there is space to push prev back, update its time ranges and reset curr's range
-					final Date newPrevStart = new Date(prev.getStart().getTime() - timeDiff);
-					prev.setStart(newPrevStart);
-					prev.setEnd(new Date(newPrevStart.getTime() + prev.getLength()));
-					curr.setStart(newStart);
-					
-					// Update the blocks in the db
-					try {
-						StorageService.updateTimeBlock(prev);
-						StorageService.updateTimeBlock(curr);
-					} catch (final StorageServiceException sse) {
-						sse.printStackTrace();
-					}
-					return true;
-				}
-				// Not enough space between "now" and "prev" to be able to push "prev" back
-				return false;
-			}
-			// Otherwise, use the block in front of prev for comparison
-			final ITimeBlockable pp = allBlocks.get(ind - 2);
+			// No block in front of prev -- use the "now" block at the top of this function for comparison;
+			// otherwise, use the block in front of prev for comparison
+			final long earliest = (ind - 1 == 0) ? now.getTime() : plan.getEnd(allBlocks.get(ind - 2)).getTime();
 			
 			// TEMP: for now, I just check to see if there is space to push prev back.
-			if (prev.getStart().getTime() - pp.getEnd().getTime() >= timeDiff) {
-				// If there is space to push prev back, update its time ranges and reset curr's range
-				final Date newPrevStart = new Date(prev.getStart().getTime() - timeDiff);
-				prev.setStart(newPrevStart);
-				prev.setEnd(new Date(newPrevStart.getTime() + prev.getLength()));
-				curr.setStart(newStart);
-				
-				// Update the blocks in the db
-				try {
-					StorageService.updateTimeBlock(prev);
-					StorageService.updateTimeBlock(curr);
-				} catch (final StorageServiceException sse) {
-					sse.printStackTrace();
-				}
+			if (prevStart.getTime() - earliest >= timeDiff) {
+				// If there is space to push prev back, plan its new time range and reset curr's range
+				final Date newPrevStart = new Date(prevStart.getTime() - timeDiff);
+				plan.move(prev, newPrevStart, new Date(newPrevStart.getTime() + plan.getLength(prev)));
+				plan.move(curr, newStart, plan.getEnd(curr));
 				return true;
 			}
-			// Not enough space between "now" and "prev" to be able to push "prev" back
+			// Not enough space in front of "prev" to be able to push "prev" back
 			return false;
 		}
-		// No overlap occurs, so just update the block in the db
-		block.setStart(newStart);
-		
-		try {
-			StorageService.updateTimeBlock(block);
-			return true;
-		} catch (final StorageServiceException e) {
-			e.printStackTrace();
-		}
-		
-		return false;
+		// No overlap occurs, so just move the block
+		plan.move(block, newStart, plan.getEnd(block));
+		return true;
 	}
 	
 	/**
-	 * Given the parameter list of all blocks, attempts to compact blocks that are after the parameter "block" so that
-	 * it can fit at the time "newEnd"
+	 * Given the parameter list of all blocks, plans to compact blocks that are after the parameter "block" so that
+	 * it can fit at the time "newEnd". Only the plan is changed.
 	 * 
 	 * @param allBlocks a list of all blocks (unavailable and assignment) for access
 	 * @param block The block to start from
 	 * @param now The time that the function the called this function began
 	 * @param newStart The new start time for the parameter block
 	 * @param newEnd The new end time for the parameter block
-	 * @return a boolean indicating whether or not the operation was successful
+	 * @param plan The BlockMovePlan the moves are added to
+	 * @return a boolean indicating whether or not a fit could be planned
 	 */
-	private static boolean pushBlocksForward(final List<ITimeBlockable> allBlocks, final ITimeBlockable block,
-			final Date now, final Date newStart, final Date newEnd) {
+	private static boolean planPushForward(final List<ITimeBlockable> allBlocks, final ITimeBlockable block,
+			final Date now, final Date newStart, final Date newEnd, final BlockMovePlan plan) {
 		final int ind = TimeUtilities.indexOfFitLocn(allBlocks, newStart);
 		
 		final ITimeBlockable curr = (ind < allBlocks.size() ? allBlocks.get(ind) : null);
@@ -255,74 +243,42 @@ public class TimeModifier {
 		}
 		
 		// In this case, check to see if newEnd overlaps next's start
-		if (next != null && next.getStart().getTime() < newEnd.getTime()) {
-			final long timeDiff = newEnd.getTime() - next.getStart().getTime();
+		final Date nextStart = plan.getStart(next);
+		final Date nextEnd = plan.getEnd(next);
+		if (nextStart.getTime() < newEnd.getTime()) {
+			final long timeDiff = newEnd.getTime() - nextStart.getTime();
 			
-			// No block after "next" -- use the due date for comparison
-			if (ind + 1 == 0) {
-				final Date due = StorageService.getAssignment(curr.getTask().getAssignmentID()).getDueDate();
-				
-				if (due.getTime() - next.getEnd().getTime() >= timeDiff) {
-					// If there is space to push "next" forward, update its time ranges and reset curr's range
-					final Date newNextStart = new Date(next.getStart().getTime() + timeDiff);
-					next.setStart(newNextStart);
-					next.setEnd(new Date(newNextStart.getTime() + next.getLength()));
-					curr.setEnd(newEnd);
-					
-					// Update the blocks in the db
-					try {
-						StorageService.updateTimeBlock(curr);
-						StorageService.updateTimeBlock(next);
-					} catch (final StorageServiceException sse) {
-						sse.printStackTrace();
-					}
-					return true;
-				}
-				// Not enough space between "now" and "prev" to be able to push "prev" back
-				else {
-					return false;
-				}
+			// "next" can't be pushed past the block after it, nor past its own due date. An unavailable block has no
+			// due date, so without a block after it there is nothing to say how far it may go
+			long latest = Long.MAX_VALUE;
+			if (ind + 2 < allBlocks.size()) {
+				latest = plan.getStart(allBlocks.get(ind + 2)).getTime();
+			} else if (next.getTask() == null) {
+				return false;
 			}
-			// Otherwise, use the block after "next" for comparison
-			else {
-				final ITimeBlockable nn = allBlocks.get(ind + 2);
-				
-				// TEMP: for now, I just check to see if there is space to push next forward.
-				if (nn.getStart().getTime() - next.getEnd().getTime() >= timeDiff) {
-					// If there is space to push prev back, update its time ranges and reset curr's range
-					final Date newNextStart = new Date(next.getStart().getTime() + timeDiff);
-					next.setStart(newNextStart);
-					next.setEnd(new Date(newNextStart.getTime() + next.getLength()));
-					curr.setEnd(newEnd);
-					
-					// Update the blocks in the db
-					try {
-						StorageService.updateTimeBlock(curr);
-						StorageService.updateTimeBlock(next);
-					} catch (final StorageServiceException sse) {
-						sse.printStackTrace();
-					}
-					return true;
+			if (next.getTask() != null) {
+				final Assignment nextAsgn = StorageService.getAssignment(next.getTask().getAssignmentID());
+				if (nextAsgn == null) {
+					return false;
 				}
-				
-				// Not enough space between "now" and "next" to be able to push "next" forward
-				return false;
+				latest = Math.min(latest, nextAsgn.getDueDate().getTime());
 			}
 			
-		}
-		// No overlap occurs, so just update the block in the db
-		else {
-			block.setEnd(newEnd);
-			
-			try {
-				StorageService.updateTimeBlock(block);
+			// TEMP: for now, I just check to see if there is space to push next forward.
+			if (latest - nextEnd.getTime() >= timeDiff) {
+				// If there is space to push "next" forward, plan its new time range and reset curr's range
+				final Date newNextStart = new Date(nextStart.getTime() + timeDiff);
+				plan.move(next, newNextStart, new Date(newNextStart.getTime() + plan.getLength(next)));
+				plan.move(curr, plan.getStart(curr), newEnd);
 				return true;
-			} catch (final StorageServiceException e) {
-				e.printStackTrace();
 			}
+			
+			// Not enough space after "next" to be able to push "next" forward
+			return false;
 		}
-		
-		return false;
+		// No overlap occurs, so just move the block
+		plan.move(block, plan.getStart(block), newEnd);
+		return true;
 	}
 	
 	/**
@@ -330,22 +286,66 @@ public class TimeModifier {
 	 * progress they have made on completing a particular Task. This function will modify blocks in the same task as the
 	 * parameter "task" so that extra time is added or removed to reflect the user change in percent-complete.
 	 * 
+	 * Every change is recorded in a TimeBlockChangeSet and written in one go at the end, together with the task's new
+	 * percent-complete, so a pass that is cancelled part way through writes nothing. If a block or the task changed
+	 * since it was read, the task is read again and the changes are planned again, up to MAX_ATTEMPTS times.
+	 * 
 	 * @param task The task whose blocks will be updated.
 	 * @param newPct The new percent-complete to-be-set in the parameter task.
+	 * @throws CancellationException if the thread is interrupted before the changes are written
+	 * @throws StorageServiceException if the changes couldn't be written, or (as a StaleDataException) kept conflicting
+	 *             with other changes. Whatever is thrown, the task is unchanged
 	 */
-	public static void updateBlocksInTask(final ITask task, final double newPct) {
+	public static void updateBlocksInTask(final ITask task, final double newPct) throws StorageServiceException {
+		ITask current = task;
+		for (int attempt = 1;; ++attempt) {
+			final ITask planned = current;
+			final TimeBlockChangeSet changes = planBlocksInTask(planned, newPct);
+			final double oldPct = planned.getPercentComplete();
+			planned.setPercentComplete(newPct);
+			changes.markTaskUpdated(planned);
+			boolean written = false;
+			try {
+				StorageService.applyTimeBlockChanges(changes);
+				written = true;
+				break;
+			} catch (final StaleDataException e) {
+				current = (attempt < MAX_ATTEMPTS) ? reloadTask(planned) : null;
+				if (current == null) {
+					throw e;
+				}
+			} finally {
+				// Whatever stopped the write, the task keeps the percent-complete that is stored
+				if (!written) {
+					planned.setPercentComplete(oldPct);
+				}
+			}
+		}
 		
-		// Get all blocks from now until the end of the user's calendar
-		final Date tempStart = new Date();
-		final Date tempEnd = TimeUtilities.getLastDueDate();
-		final List<AssignmentBlock> asgnBlocks = StorageService.getAllAssignmentBlocksWithinRange(tempStart, tempEnd);
-		final List<UnavailableBlock> unavBlocks = StorageService.getAllUnavailableBlocksWithinRange(tempStart, tempEnd);
-		final List<ITimeBlockable> allBlocks = TimeUtilities.zipTimeBlockLists(unavBlocks, asgnBlocks);
+		// The caller's task is the one it shows, so it gets what was written even if a fresh copy was planned with
+		if (current != task) {
+			task.setPercentComplete(newPct);
+			task.setVersion(current.getVersion());
+		}
+	}
+	
+	/**
+	 * Plans the block changes for updateBlocksInTask without writing anything
+	 * 
+	 * @param task The task whose blocks will be updated, with its percent-complete as stored
+	 * @param newPct The new percent-complete to-be-set in the parameter task.
+	 * @return the changes to write
+	 */
+	private static TimeBlockChangeSet planBlocksInTask(final ITask task, final double newPct) {
 		
+		final TimeBlockChangeSet changes = new TimeBlockChangeSet();
 		final long minLengthInMillis = (long) (TimeAllocator.MIN_BLOCK_LENGTH_HRS * 60 * 60 * 1000);
 		
 		final Date now = new Date(); // this Date captures where the user is and how much work they've done
 		final Date due = StorageService.getAssignment(task.getAssignmentID()).getDueDate();
+		
+		// Get all blocks from now until the Assignment's due date, which is as far as any of its blocks can go
+		final List<ITimeBlockable> allBlocks = loadThrough(now, due);
 		final double currProgress = task.getPercentComplete();
 		double pctToAdjust = 0.0;
 		// This list contains all blocks that represent the current task, in order sorted by start date
@@ -396,6 +396,8 @@ public class TimeModifier {
 			
 			// Add as many full-size blocks as possible, then add on extra time to other blocks
 			while (currInd < allBlocks.size() && totalMillisToAdd > minLengthInMillis) {
+				TimeUtilities.checkCancelled();
+				
 				// Ignore this edge case
 				if (currInd == 0) {
 					++currInd;
@@ -435,12 +437,8 @@ public class TimeModifier {
 					TimeUtilities.insertIntoSortedList(allBlocks, x);
 					TimeUtilities.insertIntoSortedList(taskBlocks, x);
 					
-					// Insert the block into the database
-					try {
-						StorageService.addTimeBlock(x);
-					} catch (final StorageServiceException sse) {
-						sse.printStackTrace();
-					}
+					// Record the block to insert into the database
+					changes.markInserted(x);
 					
 					// Decrement the number of millis to add and restart the loop
 					totalMillisToAdd -= insLen;
@@ -452,6 +450,7 @@ public class TimeModifier {
 			
 			// Add whatever leftover time there is to-add to the currently existing blocks
 			for (int i = 1; i < allBlocks.size() - 1 && totalMillisToAdd > minLengthInMillis; ++i) {
+				TimeUtilities.checkCancelled();
 				
 				final ITimeBlockable b1 = allBlocks.get(i);
 				final ITimeBlockable b2 = allBlocks.get(i + 1);
@@ -462,30 +461,21 @@ public class TimeModifier {
 					// Add whatever time is possible
 					if (between > 0) {
 						final long amtToAdd = Math.min(between, totalMillisToAdd);
+						changes.markMoved(b1);
 						b1.setEnd(new Date(b1.getEnd().getTime() + amtToAdd));
 						totalMillisToAdd -= amtToAdd;
-						
-						try {
-							StorageService.updateTimeBlock(b1);
-						} catch (final StorageServiceException e) {
-							e.printStackTrace();
-						}
 					}
 				}
 			}
 			
-			// TODO: At this point, return to the user (regardless of how many millis
-			// were successfully added). This is a pretty extreme edge case that
-			// the schedule would be so tight that no blocks could be added anyway...
+			// Return to the user regardless of how many millis were successfully added. This is a pretty extreme
+			// edge case that the schedule would be so tight that no blocks could be added anyway...
 			if (totalMillisToAdd > minLengthInMillis) {
-				Utils.printError("Total Millis To Add > 0 - sleeping for 5 seconds as punishment :(");
-				try {
-					Thread.sleep(5000);
-				} catch (final InterruptedException ie) {}
+				Utils.printError("Could not place " + totalMillisToAdd + " ms of the task's remaining time");
 			}
 			
 			// Blocks were just inserted, so decompact them
-			TimeCompactor.decompact(allBlocks, now, tempEnd, task.getAssignmentID());
+			TimeCompactor.decompact(allBlocks, now, due, task.getAssignmentID(), changes);
 			
 		}
 		// 5b. The user is ahead, so remove a bit of time from each block
@@ -498,14 +488,15 @@ public class TimeModifier {
 			
 			// Remove as many blocks as possible, then remove a fixed amount from one block
 			while (currInd >= startInd && totalMillisToRemove > 0) {
+				TimeUtilities.checkCancelled();
 				
 				final ITimeBlockable itb = taskBlocks.get(currInd);
 				final long blockLen = itb.getLength();
 				if (blockLen <= totalMillisToRemove) {
-					// Remove the block from both the local list and the StorageService
+					// Remove the block from the local lists, and record it to remove from the StorageService
 					allBlocks.remove(itb);
 					taskBlocks.remove(itb);
-					StorageService.removeTimeBlock(itb);
+					changes.markDeleted(itb);
 					
 					// Subtract the number of millis removed and the number of future blocks
 					--numFutureBlocks;
@@ -518,15 +509,12 @@ public class TimeModifier {
 				}
 			}
 			
-			// Removed as much as possible, regardless of what the user has input
-			if (numFutureBlocks == 0) {
-				return;
-			}
-			long avgTimeToRemove = totalMillisToRemove / numFutureBlocks;
-			
-			// If there is still some time left to remove, remove a bit of time from each block
-			if (totalMillisToRemove > 0) {
+			// If there is still some time left to remove, remove a bit of time from each block. Otherwise, as much as
+			// possible was removed, regardless of what the user has input
+			if (numFutureBlocks > 0 && totalMillisToRemove > 0) {
+				long avgTimeToRemove = totalMillisToRemove / numFutureBlocks;
 				for (int i = taskBlocks.size() - 1; i >= taskBlocks.size() - numFutureBlocks; --i) {
+					TimeUtilities.checkCancelled();
 					final ITimeBlockable block = taskBlocks.get(i);
 					
 					// If removing time from a block makes it shorter than the minimum block length,
@@ -539,23 +527,39 @@ public class TimeModifier {
 							avgTimeToRemove = totalMillisToRemove / numFutureBlocks;
 						}
 					} else {
+						changes.markMoved(block);
 						block.setEnd(new Date(block.getEnd().getTime() - avgTimeToRemove));
-						
-						// Update any block that is changed
-						try {
-							StorageService.updateTimeBlock(block);
-						} catch (final StorageServiceException sse) {
-							sse.printStackTrace();
-						}
 					}
 				}
 			}
 		}
 		
-		// Save the new percent-complete of the Task that was just updated and
-		// push to the StorageService
-		task.setPercentComplete(newPct);
-		StorageService.updateTask(task);
+		return changes;
+	}
+	
+	/**
+	 * @return the block as it is now in the database, or null if it is gone
+	 */
+	private static ITimeBlockable reloadBlock(final ITimeBlockable block) {
+		if (block instanceof AssignmentBlock) {
+			return StorageService.getAssignmentBlock(block.getId());
+		}
+		return StorageService.getUnavailableBlock(block.getId());
+	}
+	
+	/**
+	 * @return the task as it is now in the database, or null if it or its Assignment is gone
+	 */
+	private static ITask reloadTask(final ITask task) {
+		final Assignment asgn = StorageService.getAssignment(task.getAssignmentID());
+		if (asgn != null) {
+			for (final ITask stored : asgn.getTasks()) {
+				if (stored.getTaskID().equals(task.getTaskID())) {
+					return stored;
+				}
+			}
+		}
+		return null;
 	}
 	
 	/**
@@ -569,4 +573,59 @@ public class TimeModifier {
 		return b2.getStart().getTime() - b1.getEnd().getTime();
 	}
 	
+
+	/**
+	 * Loads the blocks around [from, to], never before now nor after the last due date. The window starts a day either
+	 * side and doubles until it holds the neighbors the push logic looks at, or reaches those bounds, so that the cost
+	 * of an edit depends on how busy the calendar is around it rather than on how far the calendar extends.
+	 * 
+	 * @param now The earliest time to load from
+	 * @param from Start of the range being edited
+	 * @param to End of the range being edited
+	 * @return List of blocks sorted by start Date
+	 */
+	private static List<ITimeBlockable> loadNeighborhood(final Date now, final Date from, final Date to) {
+		final long lastDue = Math.max(TimeUtilities.getLastDueDate().getTime(), to.getTime());
+		long padding = INITIAL_PADDING;
+		while (true) {
+			final long windowStart = Math.max(now.getTime(), from.getTime() - padding);
+			final long windowEnd = Math.min(lastDue, to.getTime() + padding);
+			final List<ITimeBlockable> blocks = loadBlocks(new Date(windowStart), new Date(windowEnd));
+			
+			final int ind = TimeUtilities.indexOfFitLocn(blocks, from);
+			final boolean enoughBefore = ind >= NEIGHBORS_BEFORE || windowStart == now.getTime();
+			final boolean enoughAfter = blocks.size() - ind >= NEIGHBORS_AFTER || windowEnd == lastDue;
+			if (enoughBefore && enoughAfter) {
+				return blocks;
+			}
+			padding *= 2;
+		}
+	}
+	
+	/**
+	 * Loads the blocks from now until "end", and on until the first block starting at or after "end" (or the last due
+	 * date), so that the blocks up to "end" all have a following block to compare against
+	 * 
+	 * @param now The time to load from
+	 * @param end The time to load until
+	 * @return List of blocks sorted by start Date
+	 */
+	private static List<ITimeBlockable> loadThrough(final Date now, final Date end) {
+		final long lastDue = Math.max(TimeUtilities.getLastDueDate().getTime(), end.getTime());
+		long padding = INITIAL_PADDING;
+		while (true) {
+			final long windowEnd = Math.min(lastDue, end.getTime() + padding);
+			final List<ITimeBlockable> blocks = loadBlocks(now, new Date(windowEnd));
+			if (windowEnd == lastDue || TimeUtilities.indexOfFitLocn(blocks, end) < blocks.size()) {
+				return blocks;
+			}
+			padding *= 2;
+		}
+	}
+	
+	private static List<ITimeBlockable> loadBlocks(final Date start, final Date end) {
+		final List<AssignmentBlock> asgnBlocks = StorageService.getAllAssignmentBlocksWithinRange(start, end);
+		final List<UnavailableBlock> unavBlocks = StorageService.getAllUnavailableBlocksWithinRange(start, end);
+		return TimeUtilities.zipTimeBlockLists(unavBlocks, asgnBlocks);
+	}
 }
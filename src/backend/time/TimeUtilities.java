@@ -3,10 +3,12 @@ package backend.time;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.TimeUnit;
 
+import backend.database.StaleDataException;
 import backend.database.StorageService;
-import backend.database.StorageServiceException;
+import backend.database.TimeBlockChangeSet;
 import data.AssignmentBlock;
 import data.IAssignment;
 import data.ITask;
@@ -17,36 +19,41 @@ public class TimeUtilities {
 	
 	/**
 	 * Inserts the parameter ITimeBlockable into the parameter List.  This list is sorted in order
-	 * by the start Date in each ITimeBlockable.
+	 * by the start Date in each ITimeBlockable.  A block going in the middle of the list is placed
+	 * before the first block that starts at or after it, unless the block before that one is still
+	 * running when it starts; then the first later position where the previous block has ended is used.
 	 * @param allBlocks a List of ITimeBlockables
 	 * @param block a block that will be inserted into the parameter List upon exiting this function.
+	 * @return the index the block was inserted at, or -1 if no place was found for it
 	 */
-	public static void insertIntoSortedList(final List<ITimeBlockable> allBlocks, final ITimeBlockable block) {
+	public static int insertIntoSortedList(final List<ITimeBlockable> allBlocks, final ITimeBlockable block) {
 		int ind;
 		final int size = allBlocks.size();
 		
 		if (allBlocks.size() == 0) {
 			allBlocks.add(block);
-			return;
+			return 0;
 		}
 		
 		// Compare to the first element and last element in the list
 		if (block.getStart().compareTo(allBlocks.get(0).getStart()) <= 0) {
 			allBlocks.add(0, block);
-			return;
+			return 0;
 		} else if (block.getStart().compareTo(allBlocks.get(size - 1).getStart()) > 0) {
 			allBlocks.add(allBlocks.size(), block);
-			return;
+			return size;
 		}
 		
-		// Compare to all surrounding pairs in the middle
-		for (ind = 1; ind < size; ++ind) {
-			if (block.getStart().compareTo(allBlocks.get(ind - 1).getEnd()) >= 0
-				&& block.getStart().compareTo(allBlocks.get(ind).getStart()) <= 0) {
+		// No position before the first block starting at or after this one can hold it, so
+		// search from there for a position whose previous block has ended
+		final long start = block.getStart().getTime();
+		for (ind = Math.max(1, lowerBoundByStart(allBlocks, start)); ind < size; ++ind) {
+			if (start >= allBlocks.get(ind - 1).getEnd().getTime()) {
 				allBlocks.add(ind, block);
-				return;
+				return ind;
 			}
 		}
+		return -1;
 	}
 	
 	/**
@@ -58,76 +65,58 @@ public class TimeUtilities {
 	 *         into the list.
 	 */
 	public static int indexOfFitLocn(final List<ITimeBlockable> timeList, final Date curr) {
-		int ind = -1;
-		final int size = timeList.size();
-		
-		if (timeList.size() == 0) {
-			return 0;
-		}
-		
-		// Compare to the first element and last element in the list
-		if (curr.compareTo(timeList.get(0).getStart()) <= 0) {
-			return 0;
-		} else if (curr.compareTo(timeList.get(size - 1).getStart()) > 0) {
-			return size;
-		}
-		
-		// Compare to all surrounding pairs in the middle
-		for (ind = 1; ind < size; ++ind) {
-			if (curr.compareTo(timeList.get(ind - 1).getStart()) > 0
-				&& curr.compareTo(timeList.get(ind).getStart()) <= 0) {
-				return ind;
-			}
-		}
-		
-		return ind;
+		return indexOfFitLocn(timeList, curr.getTime());
 	}
 	
 	/**
-	 * Counts the number of free hours in between each pair of blocks in the parameter List
-	 * of ITimeBlockables, then determines if the parameter IAssignment may be able to fit in
-	 * the range [start, asgn.getDueDate()].  Note that this function may return true, yet a 
-	 * fit may still not exist based on the movability of blocks in the parameter List.
+	 * Same as indexOfFitLocn(List, Date), for a time given in milliseconds.
+	 * @param timeList a List of ITimeBlockable, sorted by start Date
+	 * @param curr the number of milliseconds since January 1, 1970
+	 * @return the index of the first block starting at or after "curr", or the size of the list
+	 * 			if there is none
+	 */
+	public static int indexOfFitLocn(final List<ITimeBlockable> timeList, final long curr) {
+		return lowerBoundByStart(timeList, curr);
+	}
+	
+	/**
+	 * Counts the free time in the range [start, asgn.getDueDate()] around the blocks in the parameter List of
+	 * ITimeBlockables, then determines if the parameter IAssignment may be able to fit in it.  Note that this
+	 * function may return true, yet a fit may still not exist based on the movability of blocks in the parameter List.
 	 * @param allBlocks A List of ITimeBlockables sorted by start Date
 	 * @param asgn An IAssignment with an expected number of hours
-	 * @param start The time to begin counting free hours in the parameter List
-	 * @return Returns true if the number of hours in between blocks in the parameter List is
-	 * 		   greater than or equal to the expected number of hours in "asgn"; false otherwise.
+	 * @param start The time to begin counting free time in the parameter List
+	 * @return Returns true if the free time in the range is at least the expected number of hours in "asgn";
+	 * 		   false otherwise.
 	 */
 	public static boolean existsPossibleFit(final List<ITimeBlockable> allBlocks, final IAssignment asgn,
 			final Date start) {
-		long amtFreeTime = 0;
-		
-		// If the list has no blocks in it, there is a fit as long as the range is big enough
-		if (allBlocks.size() == 0) {
-			final long hours = Math.round(asgn.getExpectedHours());
-			final long min = Math.round((asgn.getExpectedHours() - hours) * 60);
-			return TimeUnit.MILLISECONDS.convert(hours * 60 + min, TimeUnit.MINUTES) <= asgn.getDueDate().getTime()
-				- start.getTime();
-		}
-		
-		// Add time between start and first block
-		if (allBlocks.size() > 0) {
-			//Use the max function to avoid adding a negative amount of time
-			amtFreeTime += Math.max(allBlocks.get(0).getStart().getTime() - start.getTime(), 0);
-		}
-		
-		// Add time between blocks
-		for (int i = 0; i < allBlocks.size() - 1; ++i) {
-			final ITimeBlockable b1 = allBlocks.get(i);
-			final ITimeBlockable b2 = allBlocks.get(i + 1);
-			amtFreeTime += b2.getStart().getTime() - b1.getEnd().getTime();
-		}
-		
-		// Add time between last block and end
-		if (allBlocks.size() > 0) {
-			//Use the max function to avoid adding a negative amount of time
-			amtFreeTime += Math.max(0, asgn.getDueDate().getTime() - 
-					allBlocks.get(allBlocks.size() - 1).getEnd().getTime());
-		}
-		
-		final double numFreeHours = TimeUnit.HOURS.convert(amtFreeTime, TimeUnit.MILLISECONDS);
-		return (numFreeHours >= asgn.getExpectedHours());
+		return existsPossibleFit(new FreeTimeIndex(allBlocks), asgn, start);
+	}
+	
+	/**
+	 * Same as existsPossibleFit(List, IAssignment, Date), answered in O(log n) from a FreeTimeIndex, to the
+	 * millisecond.
+	 * @param freeTime A FreeTimeIndex over the blocks in range
+	 * @param asgn An IAssignment with an expected number of hours
+	 * @param start The time to begin counting free time from
+	 * @return Returns true if the free time in the range is at least the expected number of hours in "asgn";
+	 * 		   false otherwise.
+	 */
+	public static boolean existsPossibleFit(final FreeTimeIndex freeTime, final IAssignment asgn, final Date start) {
+		final long expectedMillis = Math.round(asgn.getExpectedHours() * TimeUnit.HOURS.toMillis(1));
+		return freeTime.freeTime(start, asgn.getDueDate()) >= expectedMillis;
+	}
+	
+	/**
+	 * Reads the blocks in range from the StorageService into a FreeTimeIndex
+	 * @param start Start of the range
+	 * @param end End of the range
+	 * @return A FreeTimeIndex over every block in [start, end]
+	 */
+	public static FreeTimeIndex getFreeTimeIndex(final Date start, final Date end) {
+		return new FreeTimeIndex(zipTimeBlockLists(StorageService.getAllUnavailableBlocksWithinRange(start, end),
+				StorageService.getAllAssignmentBlocksWithinRange(start, end)));
 	}
 	
 	/**
@@ -211,6 +200,49 @@ public class TimeUtilities {
 	 */
 	public static boolean switchTimeBlocks(final List<ITimeBlockable> allBlocks, final ITimeBlockable source,
 			final ITimeBlockable dest) {
+		return switchTimeBlocks(allBlocks, source, dest, null);
+	}
+	
+	/**
+	 * Attempts to switch the two parameter ITimeBlockables, as above.  If a TimeBlockChangeSet is given, a
+	 * successful switch is recorded in it instead of being written to the StorageService right away.
+	 * @param allBlocks A List of ITimeBlockables sorted by start Date
+	 * @param source an ITimeBlockable to-be-switched with dest
+	 * @param dest an ITimeBlockable to-be-switched with source
+	 * @param changes The TimeBlockChangeSet to record the switch in, or null to update the StorageService directly
+	 * @return Returns true if the operation was successful; false otherwise.
+	 */
+	public static boolean switchTimeBlocks(final List<ITimeBlockable> allBlocks, final ITimeBlockable source,
+			final ITimeBlockable dest, final TimeBlockChangeSet changes) {
+		final BlockMovePlan plan = planSwitch(allBlocks, source, dest);
+		if (plan == null) {
+			return false;
+		}
+		if (changes != null) {
+			plan.apply(changes);
+			return true;
+		}
+		
+		// ONLY return false here if the database update failed
+		try {
+			return plan.commit();
+		} catch (final StaleDataException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+	
+	/**
+	 * Plans a switch of the two parameter ITimeBlockables under the same conditions as switchTimeBlocks, without
+	 * changing either block or the StorageService.
+	 * @param allBlocks A List of ITimeBlockables sorted by start Date
+	 * @param source an ITimeBlockable to-be-switched with dest
+	 * @param dest an ITimeBlockable to-be-switched with source
+	 * @return The BlockMovePlan carrying out the switch, or null if no switch is possible
+	 */
+	public static BlockMovePlan planSwitch(final List<ITimeBlockable> allBlocks, final ITimeBlockable source,
+			final ITimeBlockable dest) {
+		final BlockMovePlan plan = new BlockMovePlan();
 		
 		ITimeBlockable beforeBlock, afterBlock;
 		// Determine which block is first, chronologically
@@ -232,26 +264,15 @@ public class TimeUtilities {
 			
 			// Ensure that neither block is switched past its Assignment's due date
 			if (afterBlock.getEnd().after(befAsgn.getDueDate())) {
-				return false;
+				return null;
 			}
 			
-			// Switch the blocks
+			// Switch the tasks of the blocks
 			final ITask t1 = beforeBlock.getTask();
 			final ITask t2 = afterBlock.getTask();
-			beforeBlock.setTask(t2);
-			afterBlock.setTask(t1);
-			
-			// Update the blocks in the database
-			try {
-				StorageService.updateTimeBlock(beforeBlock);
-				StorageService.updateTimeBlock(afterBlock);
-				return true;
-			} catch (final StorageServiceException sse) {
-				sse.printStackTrace();
-			}
-			
-			// ONLY return false here if the database updates/merges failed
-			return false;
+			plan.setTask(beforeBlock, t2);
+			plan.setTask(afterBlock, t1);
+			return plan;
 		} 
 		else if (beforeLen > afterLen) {
 			final int afterInd = allBlocks.indexOf(afterBlock);
@@ -261,7 +282,7 @@ public class TimeUtilities {
 				// with this, I would have to request more of the schedule from the database so
 				// that I can be sure I don't overlap something that I currently don't see in
 				// my local segment of the calendar
-				return false;
+				return null;
 			}
 			else {
 				final ITimeBlockable postAfter = allBlocks.get(afterInd + 1);
@@ -276,23 +297,14 @@ public class TimeUtilities {
 					final ITask t1 = beforeBlock.getTask();
 					final ITask t2 = afterBlock.getTask();
 					
-					// Update the timeblocks
-					beforeBlock.setEnd(new Date(beforeBlock.getStart().getTime() + afterLen));
-					beforeBlock.setTask(t2);
-					afterBlock.setEnd(new Date(afterBlock.getStart().getTime() + beforeLen));
-					afterBlock.setTask(t1);
-					
-					// Update the blocks in the database
-					try {
-						StorageService.updateTimeBlock(beforeBlock);
-						StorageService.updateTimeBlock(afterBlock);
-						return true;
-					} catch (final StorageServiceException sse) {
-						sse.printStackTrace();
-					}
-					
-					// Only return false if the update failed
-					return false;
+					// Plan the new bounds and tasks
+					plan.move(beforeBlock, beforeBlock.getStart(),
+							new Date(beforeBlock.getStart().getTime() + afterLen));
+					plan.setTask(beforeBlock, t2);
+					plan.move(afterBlock, afterBlock.getStart(),
+							new Date(afterBlock.getStart().getTime() + beforeLen));
+					plan.setTask(afterBlock, t1);
+					return plan;
 				}
 				// --Then try to place before's end at after's end
 				else if (!afterBlock.getEnd().after(befAsgn.getDueDate())
@@ -301,23 +313,14 @@ public class TimeUtilities {
 					final ITask t1 = beforeBlock.getTask();
 					final ITask t2 = afterBlock.getTask();
 					
-					// Update the time blocks
-					beforeBlock.setEnd(new Date(beforeBlock.getStart().getTime() + afterLen));
-					beforeBlock.setTask(t2);
-					afterBlock.setStart(new Date(afterBlock.getStart().getTime() - beforeLen));
-					afterBlock.setTask(t1);
-					
-					// Update the blocks in the database
-					try {
-						StorageService.updateTimeBlock(beforeBlock);
-						StorageService.updateTimeBlock(afterBlock);
-						return true;
-					} catch (final StorageServiceException sse) {
-						sse.printStackTrace();
-					}
-					
-					// Only return false if the update failed
-					return false;
+					// Plan the new bounds and tasks
+					plan.move(beforeBlock, beforeBlock.getStart(),
+							new Date(beforeBlock.getStart().getTime() + afterLen));
+					plan.setTask(beforeBlock, t2);
+					plan.move(afterBlock, new Date(afterBlock.getStart().getTime() - beforeLen),
+							afterBlock.getEnd());
+					plan.setTask(afterBlock, t1);
+					return plan;
 				}
 			}
 		} 
@@ -329,7 +332,7 @@ public class TimeUtilities {
 				// with this, I would have to request more of the schedule from the database so
 				// that I can be sure I don't overlap something that I currently don't see in
 				// my local segment of the calendar
-				return false;
+				return null;
 			} 
 			else {
 				final ITimeBlockable postBefore = allBlocks.get(beforeInd + 1);
@@ -344,24 +347,14 @@ public class TimeUtilities {
 					final ITask t1 = beforeBlock.getTask();
 					final ITask t2 = afterBlock.getTask();
 					
-					// Update the timeblocks
-					beforeBlock.setEnd(new Date(beforeBlock.getStart().getTime() + afterLen));
-					beforeBlock.setTask(t2);
-					afterBlock.setEnd(new Date(afterBlock.getStart().getTime() + beforeLen));
-					afterBlock.setTask(t1);
-					
-					// Update the blocks in the database
-					try {
-						StorageService.updateTimeBlock(beforeBlock);
-						StorageService.updateTimeBlock(afterBlock);
-						return true;
-					} 
-					catch (final StorageServiceException sse) {
-						sse.printStackTrace();
-					}
-					
-					// Only return false if the update failed
-					return false;
+					// Plan the new bounds and tasks
+					plan.move(beforeBlock, beforeBlock.getStart(),
+							new Date(beforeBlock.getStart().getTime() + afterLen));
+					plan.setTask(beforeBlock, t2);
+					plan.move(afterBlock, afterBlock.getStart(),
+							new Date(afterBlock.getStart().getTime() + beforeLen));
+					plan.setTask(afterBlock, t1);
+					return plan;
 				}
 				// --Then try to place before's end at after's end
 				else if (!afterBlock.getEnd().after(befAsgn.getDueDate())
@@ -370,45 +363,61 @@ public class TimeUtilities {
 					final ITask t1 = beforeBlock.getTask();
 					final ITask t2 = afterBlock.getTask();
 					
-					// Update the time blocks
-					beforeBlock.setEnd(new Date(beforeBlock.getStart().getTime() + afterLen));
-					beforeBlock.setTask(t2);
-					afterBlock.setStart(new Date(afterBlock.getStart().getTime() - beforeLen));
-					afterBlock.setTask(t1);
-					
-					// Update the blocks in the database
-					try {
-						StorageService.updateTimeBlock(beforeBlock);
-						StorageService.updateTimeBlock(afterBlock);
-						return true;
-					} catch (final StorageServiceException sse) {
-						sse.printStackTrace();
-					}
-					
-					// Only return false if the update failed
-					return false;
+					// Plan the new bounds and tasks
+					plan.move(beforeBlock, beforeBlock.getStart(),
+							new Date(beforeBlock.getStart().getTime() + afterLen));
+					plan.setTask(beforeBlock, t2);
+					plan.move(afterBlock, new Date(afterBlock.getStart().getTime() - beforeLen),
+							afterBlock.getEnd());
+					plan.setTask(afterBlock, t1);
+					return plan;
 				}
 			}	
 		}
 		
-		// If this line is reached, all types of switches failed, so return false
-		return false;
+		// If this line is reached, all types of switches failed
+		return null;
 	}
 	
-	
+	/**
+	 * @return The latest due date of any Assignment, or now if every Assignment is due already
+	 */
 	public static Date getLastDueDate() {
-		List<IAssignment> list = StorageService.getAllAssignments();
-		
-		Date lastDue = new Date();
-		
-		for(int i = 0; i < list.size(); ++i) {
-			IAssignment asgn = list.get(i);
-			
-			if(asgn.getDueDate().after(lastDue))
-				lastDue = new Date(asgn.getDueDate().getTime());
+		final Date now = new Date();
+		final Date lastDue = StorageService.getLastDueDate();
+		return (lastDue != null && lastDue.after(now)) ? lastDue : now;
+	}
+	
+	/**
+	 * Called from the loops of long scheduling passes, so that a pass whose thread has been interrupted (because its
+	 * job was cancelled or ran past its deadline) stops before it writes anything to the StorageService.
+	 * @throws CancellationException if the current thread has been interrupted; the interrupt is left set
+	 */
+	public static void checkCancelled() {
+		if (Thread.currentThread().isInterrupted()) {
+			throw new CancellationException("Oops! Carly ran out of time for that change, so nothing was changed.");
 		}
-		
-		return lastDue;
 	}
+
 	
+	/**
+	 * Binary search over a List sorted by start Date.  The list should support fast random access.
+	 * @param timeList a List of ITimeBlockables, sorted by start Date
+	 * @param time the number of milliseconds since January 1, 1970
+	 * @return the index of the first block whose start is at or after "time", or the size of the list
+	 * 			if there is none
+	 */
+	private static int lowerBoundByStart(final List<? extends ITimeBlockable> timeList, final long time) {
+		int lo = 0;
+		int hi = timeList.size();
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (timeList.get(mid).getStart().getTime() < time) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
 }
@@ -0,0 +1,241 @@
+package backend.time;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import backend.database.TimeBlockChangeSet;
+import data.AssignmentBlock;
+import data.ITask;
+import data.ITimeBlockable;
+
+/**
+ * A time stream sorted by start, held as primitive start/end arrays so that scheduling passes can move and insert
+ * blocks without allocating Dates.
+ *
+ * Position i of the timeline holds the bounds of one block and a handle to its metadata: either the ITimeBlockable the
+ * timeline was built from, or the Task of a block inserted into the timeline (inserted blocks are always movable).
+ * Handles stay with their blocks as positions shift. Blocks are only turned back into ITimeBlockables, and moved blocks
+ * only written back to their objects, by toBlocks, at the storage boundary.
+ *
+ * Not thread safe.
+ */
+public class Timeline {
+
+	private static final int			INITIAL_CAPACITY	= 16;
+
+	// By position
+	private long[]						m_starts;
+	private long[]						m_ends;
+	private int[]						m_handles;
+	private int							m_size;
+
+	// By handle
+	private final List<ITimeBlockable>	m_blocks;
+	private final List<ITask>			m_tasks;
+
+	/**
+	 * @param blocks List of ITimeBlockables sorted by start Date
+	 */
+	public Timeline(final List<? extends ITimeBlockable> blocks) {
+		final int capacity = Math.max(INITIAL_CAPACITY, blocks.size() + blocks.size() / 2);
+		m_starts = new long[capacity];
+		m_ends = new long[capacity];
+		m_handles = new int[capacity];
+		m_blocks = new ArrayList<ITimeBlockable>(blocks.size());
+		m_tasks = new ArrayList<ITask>(blocks.size());
+
+		for (final ITimeBlockable block : blocks) {
+			m_starts[m_size] = block.getStart().getTime();
+			m_ends[m_size] = block.getEnd().getTime();
+			m_handles[m_size] = m_blocks.size();
+			m_blocks.add(block);
+			m_tasks.add(null);
+			++m_size;
+		}
+	}
+
+	/**
+	 * Copies a timeline, so that blocks can be placed on the copy and thrown away if placement fails
+	 * @param other Timeline to copy
+	 */
+	public Timeline(final Timeline other) {
+		m_starts = Arrays.copyOf(other.m_starts, other.m_starts.length);
+		m_ends = Arrays.copyOf(other.m_ends, other.m_ends.length);
+		m_handles = Arrays.copyOf(other.m_handles, other.m_handles.length);
+		m_size = other.m_size;
+		m_blocks = new ArrayList<ITimeBlockable>(other.m_blocks);
+		m_tasks = new ArrayList<ITask>(other.m_tasks);
+	}
+
+	public int size() {
+		return m_size;
+	}
+
+	public long getStart(final int position) {
+		checkPosition(position);
+		return m_starts[position];
+	}
+
+	public long getEnd(final int position) {
+		checkPosition(position);
+		return m_ends[position];
+	}
+
+	public long getLength(final int position) {
+		return getEnd(position) - getStart(position);
+	}
+
+	public boolean isMovable(final int position) {
+		checkPosition(position);
+		final ITimeBlockable block = m_blocks.get(m_handles[position]);
+		return block == null || block.isMovable();
+	}
+
+	/**
+	 * @param position Position in the timeline
+	 * @return Task of the block at that position, or null if it has none
+	 */
+	public ITask getTask(final int position) {
+		checkPosition(position);
+		final int handle = m_handles[position];
+		final ITimeBlockable block = m_blocks.get(handle);
+		return (block == null) ? m_tasks.get(handle) : block.getTask();
+	}
+
+	/**
+	 * @param position Position in the timeline
+	 * @return Handle of the block at that position, which does not change as blocks are inserted
+	 */
+	public int getHandle(final int position) {
+		checkPosition(position);
+		return m_handles[position];
+	}
+
+	/**
+	 * Same as TimeUtilities.indexOfFitLocn
+	 * @param time The number of milliseconds since January 1, 1970
+	 * @return The position of the first block starting at or after "time", or the size of the timeline if there
+	 * 			is none
+	 */
+	public int indexOfFitLocn(final long time) {
+		int lo = 0;
+		int hi = m_size;
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (m_starts[mid] < time) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Inserts a new movable block for a Task, at the position TimeUtilities.insertIntoSortedList would choose
+	 * @param start Start of the block in milliseconds
+	 * @param end End of the block in milliseconds
+	 * @param task Task the block is for
+	 * @return The position the block was inserted at, or -1 if no place was found for it
+	 */
+	public int insert(final long start, final long end, final ITask task) {
+		final int position = findInsertPosition(start);
+		if (position < 0) {
+			return -1;
+		}
+
+		ensureCapacity(m_size + 1);
+		System.arraycopy(m_starts, position, m_starts, position + 1, m_size - position);
+		System.arraycopy(m_ends, position, m_ends, position + 1, m_size - position);
+		System.arraycopy(m_handles, position, m_handles, position + 1, m_size - position);
+		m_starts[position] = start;
+		m_ends[position] = end;
+		m_handles[position] = m_blocks.size();
+		m_blocks.add(null);
+		m_tasks.add(task);
+		++m_size;
+		return position;
+	}
+
+	/**
+	 * Changes the bounds of the block at a position. The caller keeps the timeline sorted.
+	 * @param position Position of the block
+	 * @param start New start in milliseconds
+	 * @param end New end in milliseconds
+	 */
+	public void move(final int position, final long start, final long end) {
+		checkPosition(position);
+		m_starts[position] = start;
+		m_ends[position] = end;
+	}
+
+	/**
+	 * The storage boundary: creates an AssignmentBlock for each block inserted into the timeline, writes the bounds of
+	 * moved blocks back to their objects, and returns every block in order. Calling it again only applies what changed
+	 * since.
+	 * @param changes The TimeBlockChangeSet that inserted and moved blocks are recorded in, or null
+	 * @return List of ITimeBlockables sorted by start Date
+	 */
+	public List<ITimeBlockable> toBlocks(final TimeBlockChangeSet changes) {
+		final List<ITimeBlockable> blocks = new ArrayList<ITimeBlockable>(m_size);
+		for (int i = 0; i < m_size; ++i) {
+			final int handle = m_handles[i];
+			ITimeBlockable block = m_blocks.get(handle);
+
+			if (block == null) {
+				block = new AssignmentBlock(new Date(m_starts[i]), new Date(m_ends[i]), m_tasks.get(handle));
+				m_blocks.set(handle, block);
+				if (changes != null) {
+					changes.markInserted(block);
+				}
+			} else if (block.getStart().getTime() != m_starts[i] || block.getEnd().getTime() != m_ends[i]) {
+				if (changes != null) {
+					changes.markMoved(block);
+				}
+				block.setStart(new Date(m_starts[i]));
+				block.setEnd(new Date(m_ends[i]));
+			}
+			blocks.add(block);
+		}
+		return blocks;
+	}
+
+	/*
+	 * Helper methods
+	 */
+
+	/**
+	 * Mirrors TimeUtilities.insertIntoSortedList
+	 */
+	private int findInsertPosition(final long start) {
+		if (m_size == 0 || start <= m_starts[0]) {
+			return 0;
+		}
+		if (start > m_starts[m_size - 1]) {
+			return m_size;
+		}
+		for (int i = Math.max(1, indexOfFitLocn(start)); i < m_size; ++i) {
+			if (start >= m_ends[i - 1]) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void ensureCapacity(final int capacity) {
+		if (capacity > m_starts.length) {
+			final int grown = Math.max(capacity, m_starts.length * 2);
+			m_starts = Arrays.copyOf(m_starts, grown);
+			m_ends = Arrays.copyOf(m_ends, grown);
+			m_handles = Arrays.copyOf(m_handles, grown);
+		}
+	}
+
+	private void checkPosition(final int position) {
+		if (position < 0 || position >= m_size) {
+			throw new IndexOutOfBoundsException("Timeline: position " + position + " out of [0, " + m_size + ")");
+		}
+	}
+}
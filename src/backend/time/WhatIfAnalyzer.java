@@ -0,0 +1,353 @@
+package backend.time;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import backend.database.StorageService;
+import data.AssignmentBlock;
+import data.IAssignment;
+import data.ITask;
+import data.ITemplate;
+import data.ITimeBlockable;
+import data.UnavailableBlock;
+
+/**
+ * Answers "what if" questions about placing an Assignment: evaluates many candidate ways of placing it in parallel on a
+ * ForkJoinPool, and ranks them by whether they fit and by how good the resulting schedule is.
+ *
+ * Candidates vary the length of the blocks, the date placement starts from, the PlacementPolicy and whether to compact
+ * when no fit is found. The calendar is read from the StorageService once, into a Timeline that is never changed; each
+ * candidate is placed on its own copy of it and scored with a ScheduleScorer, so nothing is written anywhere.
+ */
+public class WhatIfAnalyzer {
+
+	private static final double[]	BLOCK_LENGTH_FACTORS	= { 0.5, 0.75, 1.0, 1.5 };
+	private static final int		NUM_START_DAYS			= 3;
+	private static final long		DAY						= TimeUnit.DAYS.toMillis(1);
+
+	/**
+	 * One way of placing an Assignment
+	 */
+	public static class Candidate {
+		private final double			m_hoursPerBlock;
+		private final Date				m_start;
+		private final PlacementPolicy	m_policy;
+		private final boolean			m_compact;
+
+		/**
+		 * @param hoursPerBlock The length of the blocks to place
+		 * @param start The date to start placing blocks from
+		 * @param policy The PlacementPolicy to try first
+		 * @param compact Whether to compact the blocks in range once when no fit can be found
+		 */
+		public Candidate(final double hoursPerBlock, final Date start, final PlacementPolicy policy,
+				final boolean compact) {
+			if (hoursPerBlock <= 0 || policy == null) {
+				throw new IllegalArgumentException("WhatIfAnalyzer: a candidate needs a block length and a policy");
+			}
+			m_hoursPerBlock = hoursPerBlock;
+			m_start = new Date(start.getTime());
+			m_policy = policy;
+			m_compact = compact;
+		}
+
+		public double getHoursPerBlock() {
+			return m_hoursPerBlock;
+		}
+
+		public Date getStart() {
+			return new Date(m_start.getTime());
+		}
+
+		public PlacementPolicy getPolicy() {
+			return m_policy;
+		}
+
+		public boolean isCompact() {
+			return m_compact;
+		}
+
+		@Override
+		public String toString() {
+			return m_policy.getName() + ", " + m_hoursPerBlock + " hr blocks from " + m_start
+				+ (m_compact ? ", compacting" : "");
+		}
+	}
+
+	/**
+	 * The result of evaluating a Candidate
+	 */
+	public static class Outcome {
+		private final Candidate	m_candidate;
+		private final boolean	m_feasible;
+		private final double	m_score;
+
+		private Outcome(final Candidate candidate, final boolean feasible, final double score) {
+			m_candidate = candidate;
+			m_feasible = feasible;
+			m_score = score;
+		}
+
+		public Candidate getCandidate() {
+			return m_candidate;
+		}
+
+		/**
+		 * @return True if every block of the Assignment could be placed
+		 */
+		public boolean isFeasible() {
+			return m_feasible;
+		}
+
+		/**
+		 * @return The ScheduleScorer score of the schedule from the analysis start to the due date, higher being
+		 * 			better, or negative infinity if the candidate is not feasible
+		 */
+		public double getScore() {
+			return m_score;
+		}
+	}
+
+	private final ForkJoinPool		m_pool;
+	private final ScheduleScorer	m_scorer;
+
+	/**
+	 * Evaluates on the common ForkJoinPool, with the default ScheduleScorer
+	 */
+	public WhatIfAnalyzer() {
+		this(ForkJoinPool.commonPool(), new ScheduleScorer());
+	}
+
+	/**
+	 * @param pool The pool candidates are evaluated on
+	 * @param scorer The ScheduleScorer that ranks feasible candidates
+	 */
+	public WhatIfAnalyzer(final ForkJoinPool pool, final ScheduleScorer scorer) {
+		m_pool = pool;
+		m_scorer = scorer;
+	}
+
+	/**
+	 * The default candidates: block lengths around the Template's preferred length, starting on each of the next few
+	 * days before the due date, with every PlacementPolicy, with and without compaction
+	 * @param asgn The Assignment to place
+	 * @param start The earliest date to start placing blocks from
+	 * @return The candidates
+	 */
+	public List<Candidate> candidates(final IAssignment asgn, final Date start) {
+		final ITemplate template = asgn.getTemplate();
+		final double preferred = (template == null) ? TimeAllocator.DEFAULT_HRS_PER_BLOCK
+				: template.getPreferredConsecutiveHours();
+		final String[] policies = { PlacementPolicies.FIRST_FIT, PlacementPolicies.BEST_FIT,
+				PlacementPolicies.WORST_FIT, PlacementPolicies.PREFERRED_TIME };
+
+		final List<Candidate> candidates = new ArrayList<Candidate>();
+		for (final double factor : BLOCK_LENGTH_FACTORS) {
+			final double hours = Math.max(TimeAllocator.MIN_BLOCK_LENGTH_HRS, preferred * factor);
+			for (int day = 0; day < NUM_START_DAYS; ++day) {
+				final Date from = new Date(start.getTime() + day * DAY);
+				if (!from.before(asgn.getDueDate())) {
+					break;
+				}
+				for (final String policy : policies) {
+					candidates.add(new Candidate(hours, from, PlacementPolicies.forName(policy), true));
+					candidates.add(new Candidate(hours, from, PlacementPolicies.forName(policy), false));
+				}
+			}
+		}
+		return candidates;
+	}
+
+	/**
+	 * Evaluates the default candidates
+	 * @param asgn The Assignment to place, which need not be in the StorageService
+	 * @param start The earliest date to start placing blocks from
+	 * @return The outcomes, feasible ones first, best score first
+	 * @throws CancellationException if the calling thread is interrupted while waiting
+	 */
+	public List<Outcome> analyze(final IAssignment asgn, final Date start) {
+		return analyze(asgn, start, candidates(asgn, start));
+	}
+
+	/**
+	 * Evaluates the given candidates in parallel, blocking until all are done
+	 * @param asgn The Assignment to place, which need not be in the StorageService
+	 * @param start The date the calendar is read and scored from, no later than any candidate's start
+	 * @param candidates The candidates to evaluate
+	 * @return The outcomes, feasible ones first, best score first
+	 * @throws CancellationException if the calling thread is interrupted while waiting; candidates not yet evaluated
+	 *             are skipped, so the pool is soon free again, and the thread stays interrupted
+	 */
+	public List<Outcome> analyze(final IAssignment asgn, final Date start, final List<Candidate> candidates) {
+		if (candidates.isEmpty()) {
+			return new ArrayList<Outcome>();
+		}
+
+		// Read the calendar once; every candidate is placed on its own copy of this timeline
+		final Date end = asgn.getDueDate();
+		final List<ITimeBlockable> blocks = TimeUtilities.zipTimeBlockLists(
+				StorageService.getAllUnavailableBlocksWithinRange(start, end),
+				StorageService.getAllAssignmentBlocksWithinRange(start, end));
+		final Snapshot snapshot = new Snapshot(asgn, new Timeline(blocks), dueDatesOf(blocks, asgn), start, end);
+
+		final List<Outcome> outcomes = await(m_pool.submit(new Evaluation(snapshot, candidates, 0, candidates.size(),
+				new AtomicBoolean())));
+		Collections.sort(outcomes, new Comparator<Outcome>() {
+
+			@Override
+			public int compare(final Outcome o1, final Outcome o2) {
+				if (o1.isFeasible() != o2.isFeasible()) {
+					return o1.isFeasible() ? -1 : 1;
+				}
+				return Double.compare(o2.getScore(), o1.getScore());
+			}
+		});
+		return outcomes;
+	}
+
+	/*
+	 * Helper methods
+	 */
+
+	/**
+	 * Waits for an evaluation like ForkJoinPool.invoke, except that an interrupt stops it
+	 */
+	private static List<Outcome> await(final ForkJoinTask<List<Outcome>> evaluation) {
+		try {
+			return evaluation.get();
+		} catch (final InterruptedException e) {
+			evaluation.cancel(false);
+			Thread.currentThread().interrupt();
+			throw new CancellationException("WhatIfAnalyzer: analyze: interrupted");
+		} catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	private Outcome evaluate(final Snapshot snapshot, final Candidate candidate) {
+		final Timeline timeline = new Timeline(snapshot.m_timeline);
+		final TimeAllocator talloc = new TimeAllocator(snapshot.m_asgn, candidate.getPolicy(),
+				candidate.getHoursPerBlock(), candidate.isCompact());
+		try {
+			talloc.placeAsgn(timeline, new FreeGapIndex(timeline), candidate.getStart(), snapshot.m_end);
+		} catch (final NotEnoughTimeException e) {
+			return new Outcome(candidate, false, Double.NEGATIVE_INFINITY);
+		}
+		return new Outcome(candidate, true, m_scorer.score(toSchedule(timeline, snapshot)));
+	}
+
+	/**
+	 * @return A Schedule of copies of the timeline's blocks, so that the blocks in the snapshot are never touched
+	 */
+	private static Schedule toSchedule(final Timeline timeline, final Snapshot snapshot) {
+		final List<ITimeBlockable> copies = new ArrayList<ITimeBlockable>(timeline.size());
+		for (int i = 0; i < timeline.size(); ++i) {
+			final Date start = new Date(timeline.getStart(i));
+			final Date end = new Date(timeline.getEnd(i));
+			copies.add(timeline.isMovable(i) ? new AssignmentBlock(start, end, timeline.getTask(i))
+					: new UnavailableBlock(start, end));
+		}
+		return new Schedule(copies, snapshot.m_start, snapshot.m_end, snapshot.m_dueDates);
+	}
+
+	private static Map<String, Long> dueDatesOf(final List<ITimeBlockable> blocks, final IAssignment asgn) {
+		final Map<String, Long> dueDates = new HashMap<String, Long>();
+		dueDates.put(asgn.getID(), asgn.getDueDate().getTime());
+		for (final ITimeBlockable block : blocks) {
+			final ITask task = block.getTask();
+			if (task != null && task.getAssignmentID() != null && !dueDates.containsKey(task.getAssignmentID())) {
+				final IAssignment other = StorageService.getAssignment(task.getAssignmentID());
+				if (other != null) {
+					dueDates.put(task.getAssignmentID(), other.getDueDate().getTime());
+				}
+			}
+		}
+		return dueDates;
+	}
+
+	/**
+	 * What every evaluation reads and nothing changes
+	 */
+	private static class Snapshot {
+		private final IAssignment		m_asgn;
+		private final Timeline			m_timeline;
+		private final Map<String, Long>	m_dueDates;
+		private final Date				m_start;
+		private final Date				m_end;
+
+		private Snapshot(final IAssignment asgn, final Timeline timeline, final Map<String, Long> dueDates,
+				final Date start, final Date end) {
+			m_asgn = asgn;
+			m_timeline = timeline;
+			m_dueDates = Collections.unmodifiableMap(dueDates);
+			m_start = start;
+			m_end = end;
+		}
+	}
+
+	/**
+	 * Evaluates candidates [lo, hi) by splitting the range in halves down to single candidates. Cancelling the whole
+	 * evaluation only stops the task it is called on, so every part also checks the flag the root's cancel sets.
+	 */
+	private class Evaluation extends RecursiveTask<List<Outcome>> {
+		private static final long		serialVersionUID	= 1L;
+
+		private final Snapshot			m_snapshot;
+		private final List<Candidate>	m_candidates;
+		private final int				m_lo;
+		private final int				m_hi;
+		private final AtomicBoolean		m_cancelled;
+
+		private Evaluation(final Snapshot snapshot, final List<Candidate> candidates, final int lo, final int hi,
+				final AtomicBoolean cancelled) {
+			m_snapshot = snapshot;
+			m_candidates = candidates;
+			m_lo = lo;
+			m_hi = hi;
+			m_cancelled = cancelled;
+		}
+
+		@Override
+		public boolean cancel(final boolean mayInterruptIfRunning) {
+			m_cancelled.set(true);
+			return super.cancel(mayInterruptIfRunning);
+		}
+
+		@Override
+		protected List<Outcome> compute() {
+			if (m_cancelled.get()) {
+				throw new CancellationException("WhatIfAnalyzer: analyze: cancelled");
+			}
+			if (m_hi - m_lo == 1) {
+				final List<Outcome> outcome = new ArrayList<Outcome>(1);
+				outcome.add(evaluate(m_snapshot, m_candidates.get(m_lo)));
+				return outcome;
+			}
+
+			final int mid = (m_lo + m_hi) >>> 1;
+			final Evaluation left = new Evaluation(m_snapshot, m_candidates, m_lo, mid, m_cancelled);
+			left.fork();
+			final List<Outcome> outcomes = new Evaluation(m_snapshot, m_candidates, mid, m_hi, m_cancelled).compute();
+			outcomes.addAll(0, left.join());
+			return outcomes;
+		}
+	}
+}
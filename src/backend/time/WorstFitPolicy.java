@@ -0,0 +1,36 @@
+package backend.time;
+
+import data.ITask;
+
+/**
+ * Places a block in the longest gap, the earliest one if several are as long. What is left of the gap stays long
+ * enough to be useful, at the cost of breaking up the longest stretches of free time first.
+ */
+public class WorstFitPolicy implements PlacementPolicy {
+
+	@Override
+	public String getName() {
+		return PlacementPolicies.WORST_FIT;
+	}
+
+	@Override
+	public long findFit(final Timeline timeline, final FreeGapIndex gaps, final long blockLength, final long after,
+			final long end, final ITask task) {
+		if (PlacementPolicies.isEmptyBefore(timeline, end)) {
+			return after;
+		}
+
+		// Candidates in chronological order, so that ties go to the earliest
+		FreeGapIndex.Gap worst = PlacementPolicies.headGap(timeline, after, blockLength);
+		worst = longer(worst, gaps.worstFitGap(after, end, blockLength));
+		worst = longer(worst, PlacementPolicies.tailGap(timeline, end, blockLength));
+		return (worst == null) ? FreeGapIndex.NO_FIT : worst.getStart();
+	}
+
+	private static FreeGapIndex.Gap longer(final FreeGapIndex.Gap current, final FreeGapIndex.Gap candidate) {
+		if (current == null) {
+			return candidate;
+		}
+		return (candidate != null && candidate.getLength() > current.getLength()) ? candidate : current;
+	}
+}
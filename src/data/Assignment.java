@@ -13,6 +13,7 @@ public class Assignment implements IAssignment {
 	private ITemplate		_template;
 	private double			_expectedHours;
 	private List<ITask>		_tasks;
+	private long			_version;
 	
 	/**
 	 * An Assignment must at minimum have a name, due date and template Constructor without expectedHours, set to
@@ -168,6 +169,11 @@ public class Assignment implements IAssignment {
 		_template = template;
 	}
 	
+	@Override
+	public void setVersion(final long version) {
+		_version = version;
+	}
+	
 	/* IAssignment Accessors (Comments in interface IAssignment) */
 	
 	@Override
@@ -200,6 +206,11 @@ public class Assignment implements IAssignment {
 		return _template;
 	}
 	
+	@Override
+	public long getVersion() {
+		return _version;
+	}
+	
 	@Override
 	public double getPercentComplete() {
 		double complete = 0;
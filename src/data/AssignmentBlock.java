@@ -10,6 +10,7 @@ public class AssignmentBlock implements ITimeBlockable {
 	private Date			m_end;
 	private ITask			m_task;
 	private final boolean	m_isMovable;
+	private long			m_version;
 	
 	public AssignmentBlock(final Date start, final Date end, final ITask task) {
 		m_uniqueId = DataUtil.generateID() + start.getTime() / 100000;
@@ -126,4 +127,14 @@ public class AssignmentBlock implements ITimeBlockable {
 	public void renewID() {
 		m_uniqueId = DataUtil.generateID() + getStart().getTime() / 100000;
 	}
+	
+	@Override
+	public long getVersion() {
+		return m_version;
+	}
+	
+	@Override
+	public void setVersion(final long version) {
+		m_version = version;
+	}
 }
@@ -66,6 +66,21 @@ public interface IAssignment {
 	 */
 	public double getPercentComplete();
 	
+	/**
+	 * Gives the version of this assignment's stored row when the assignment was read. Updates only go through if the
+	 * row is still at that version. Updating one of the assignment's tasks moves it on too.
+	 * 
+	 * @return the stored version, 0 for an assignment that was never stored
+	 */
+	public long getVersion();
+	
+	/**
+	 * Sets the version of this assignment's stored row, once an update of it has been committed
+	 * 
+	 * @param version the stored version
+	 */
+	public void setVersion(long version);
+	
 	/**
 	 * Gives the full string
 	 * 
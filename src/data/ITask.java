@@ -103,6 +103,21 @@ public interface ITask {
 	public void setSuggestedBlockLength(double length);
 	
 	
+	/**
+	 * Gives the version of this task's stored row when the task was read. Updates only go through if the row is still
+	 * at that version.
+	 * 
+	 * @return the stored version, 0 for a task that was never stored
+	 */
+	public long getVersion();
+	
+	/**
+	 * Sets the version of this task's stored row, once an update of it has been committed
+	 * 
+	 * @param version the stored version
+	 */
+	public void setVersion(long version);
+	
 	/**
 	 * Returns a detailed string representation of 
 	 * the Task
@@ -84,4 +84,19 @@ public interface ITimeBlockable extends Comparable<ITimeBlockable> {
 	 */
 	public void renewID();
 	
+	/**
+	 * Gives the version of this block's stored row when the block was read. Updates only go through if the row is still
+	 * at that version.
+	 * 
+	 * @return the stored version, 0 for a block that was never stored
+	 */
+	public long getVersion();
+	
+	/**
+	 * Sets the version of this block's stored row, once an update of it has been committed
+	 * 
+	 * @param version the stored version
+	 */
+	public void setVersion(long version);
+	
 }
@@ -19,6 +19,7 @@ public class Task implements ITask {
 	private TimeOfDay		_timeOfDay;
 	private double			_suggestedBlockLength;
 	private final int		_taskNumber;
+	private long			_version;
 	
 	/**
 	 * Constructor without Assignment UID, gets set later
@@ -130,6 +131,11 @@ public class Task implements ITask {
 		_suggestedBlockLength = length;
 	}
 	
+	@Override
+	public void setVersion(final long version) {
+		_version = version;
+	}
+	
 	/* ITask Accessors (Comments in interface) */
 	
 	@Override
@@ -172,6 +178,11 @@ public class Task implements ITask {
 		return _taskNumber;
 	}
 	
+	@Override
+	public long getVersion() {
+		return _version;
+	}
+	
 	/* Holy trinity methods */
 	
 	@Override
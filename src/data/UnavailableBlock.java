@@ -10,6 +10,7 @@ public class UnavailableBlock implements ITimeBlockable {
 	private Date			m_end;
 	private ITask			m_task;
 	private final boolean	m_isMovable;
+	private long			m_version;
 	
 	public UnavailableBlock(final Date start, final Date end) {
 		m_uniqueId = DataUtil.generateID() + start.getTime() / 10000;
@@ -127,4 +128,13 @@ public class UnavailableBlock implements ITimeBlockable {
 		m_uniqueId = DataUtil.generateID() + getStart().getTime() / 100000;
 	}
 	
+	@Override
+	public long getVersion() {
+		return m_version;
+	}
+	
+	@Override
+	public void setVersion(final long version) {
+		m_version = version;
+	}
 }
@@ -88,7 +88,7 @@ public class ArgParser {
 		clear(); // Deletes all old information
 		
 		// Parse all args for flag or filename
-		for (Integer i = 0; i < args.length; i++) {
+		for (int i = 0; i < args.length; i++) {
 			final String s = args[i];
 			if (s.startsWith("--")) {
 				
@@ -100,7 +100,7 @@ public class ArgParser {
 				
 				// If the flag is expected, add the associated object
 				if (flagMap.containsKey(flagName)) {
-					addObjectForFlag(flagName, args, i);
+					i = addObjectForFlag(flagName, args, i);
 				} else {
 					cleanupAndThrow("Invalid flag - unexpected value");
 				}
@@ -121,9 +121,10 @@ public class ArgParser {
 	 * 
 	 * @param flagName the flag to look at
 	 * @param args the string args to parse
-	 * @param i the integer to increment for the loop above
+	 * @param i the index of the flag in args
+	 * @return the index of the last argument used, so the loop above can skip the flag's argument
 	 */
-	private void addObjectForFlag(final String flagName, final String[] args, Integer i) {
+	private int addObjectForFlag(final String flagName, final String[] args, int i) {
 		/*
 		 * Flag existed in mapping, so construct an object if necessary using the next string as an argument to the
 		 * constructor - on failure, throw a new exception
@@ -141,6 +142,7 @@ public class ArgParser {
 			}
 		}
 		objectsMap.put(flagName, obj);
+		return i;
 	}
 	
 	/**
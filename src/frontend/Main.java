@@ -5,6 +5,7 @@ import java.util.Map;
 
 import frontend.app.App;
 import frontend.app.GUIApp;
+import frontend.app.ServerApp;
 
 /**
  * Main class - runs the entire program
@@ -24,11 +25,13 @@ public class Main {
 	public static ArgParser createFlagParser() {
 		final Map<String, Class<?>> possibleFlags = new HashMap<>();
 		possibleFlags.put(Utils.DEBUG, null);
+		possibleFlags.put(Utils.SERVER, null);
+		possibleFlags.put(Utils.PORT, Integer.class);
 		return new ArgParser(possibleFlags, 0);
 	}
 	
 	/**
-	 * Main method - parses command line arguments and starts REPL or GUI
+	 * Main method - parses command line arguments and starts the GUI, or the headless server
 	 * 
 	 * @param args command line args for the CLP to use to generate tokens
 	 */
@@ -45,7 +48,13 @@ public class Main {
 		}
 		
 		// Create an App
-		a = new GUIApp(parser.existsFlag(Utils.DEBUG));
+		final boolean debug = parser.existsFlag(Utils.DEBUG);
+		if (parser.existsFlag(Utils.SERVER)) {
+			final Integer port = (Integer) parser.getObjectForFlag(Utils.PORT);
+			a = new ServerApp(debug, (port == null) ? ServerApp.DEFAULT_PORT : port);
+		} else {
+			a = new GUIApp(debug);
+		}
 		a.start();
 	}
 }
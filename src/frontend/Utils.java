@@ -28,7 +28,9 @@ public abstract class Utils {
 	
 	public static final String			APP_NAME			= "Carly";
 	public static final String			DEBUG				= "debug";
-	public static final String			USAGE				= "Usage: carly [--debug]";
+	public static final String			SERVER				= "server";
+	public static final String			PORT				= "port";
+	public static final String			USAGE				= "Usage: carly [--debug] [--server [--port <port>]]";
 	
 	// GUI Constants
 	public static final Color			COLOR_BACKGROUND	= Color.DARK_GRAY.darker();
@@ -0,0 +1,292 @@
+package frontend.app;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough JSON for the ServerApp's API: reads a document into Maps, Lists, Strings, Doubles, Booleans and nulls,
+ * and writes those (plus any other Number) back out.
+ */
+public class Json {
+	
+	private final String	_text;
+	private int				_pos;
+	
+	private Json(final String text) {
+		_text = text;
+		_pos = 0;
+	}
+	
+	/**
+	 * Reads a JSON object
+	 * 
+	 * @param text the JSON text
+	 * @return the object, with its members in the order they were written
+	 * @throws IllegalArgumentException if the text isn't a single JSON object
+	 */
+	public static Map<String, Object> parseObject(final String text) {
+		final Json json = new Json(text);
+		json.skipSpace();
+		final Map<String, Object> object = json.readObject();
+		json.skipSpace();
+		if (json._pos != text.length()) {
+			throw json.error("Unexpected text after the object");
+		}
+		return object;
+	}
+	
+	/**
+	 * Writes a value as JSON
+	 * 
+	 * @param value a Map with String keys, a List, a String, a Number, a Boolean or null
+	 * @return the JSON text
+	 * @throws IllegalArgumentException if the value or anything in it is of another type
+	 */
+	public static String write(final Object value) {
+		final StringBuilder out = new StringBuilder();
+		write(value, out);
+		return out.toString();
+	}
+	
+	/*
+	 * Writing
+	 */
+	
+	private static void write(final Object value, final StringBuilder out) {
+		if (value == null) {
+			out.append("null");
+		} else if (value instanceof String) {
+			writeString((String) value, out);
+		} else if (value instanceof Double || value instanceof Float) {
+			final double d = ((Number) value).doubleValue();
+			if (Double.isNaN(d) || Double.isInfinite(d)) {
+				out.append("null");
+			} else if (d == Math.rint(d) && Math.abs(d) < 1e15) {
+				out.append((long) d);
+			} else {
+				out.append(d);
+			}
+		} else if (value instanceof Number || value instanceof Boolean) {
+			out.append(value);
+		} else if (value instanceof Map) {
+			out.append('{');
+			boolean first = true;
+			for (final Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+				if (!first) {
+					out.append(',');
+				}
+				first = false;
+				writeString(String.valueOf(e.getKey()), out);
+				out.append(':');
+				write(e.getValue(), out);
+			}
+			out.append('}');
+		} else if (value instanceof List) {
+			out.append('[');
+			boolean first = true;
+			for (final Object o : (List<?>) value) {
+				if (!first) {
+					out.append(',');
+				}
+				first = false;
+				write(o, out);
+			}
+			out.append(']');
+		} else {
+			throw new IllegalArgumentException("Can't write a " + value.getClass().getSimpleName() + " as JSON");
+		}
+	}
+	
+	private static void writeString(final String s, final StringBuilder out) {
+		out.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			switch (c) {
+			case '"':
+				out.append("\\\"");
+				break;
+			case '\\':
+				out.append("\\\\");
+				break;
+			case '\n':
+				out.append("\\n");
+				break;
+			case '\r':
+				out.append("\\r");
+				break;
+			case '\t':
+				out.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					out.append(String.format("\\u%04x", (int) c));
+				} else {
+					out.append(c);
+				}
+			}
+		}
+		out.append('"');
+	}
+	
+	/*
+	 * Reading
+	 */
+	
+	private Object readValue() {
+		if (_pos >= _text.length()) {
+			throw error("Unexpected end of input");
+		}
+		final char c = _text.charAt(_pos);
+		if (c == '{') {
+			return readObject();
+		} else if (c == '[') {
+			return readArray();
+		} else if (c == '"') {
+			return readString();
+		} else if (_text.startsWith("true", _pos)) {
+			_pos += 4;
+			return Boolean.TRUE;
+		} else if (_text.startsWith("false", _pos)) {
+			_pos += 5;
+			return Boolean.FALSE;
+		} else if (_text.startsWith("null", _pos)) {
+			_pos += 4;
+			return null;
+		}
+		return readNumber();
+	}
+	
+	private Map<String, Object> readObject() {
+		expect('{');
+		final Map<String, Object> object = new LinkedHashMap<>();
+		skipSpace();
+		if (peek('}')) {
+			_pos++;
+			return object;
+		}
+		while (true) {
+			skipSpace();
+			if (!peek('"')) {
+				throw error("Expected a member name");
+			}
+			final String name = readString();
+			skipSpace();
+			expect(':');
+			skipSpace();
+			object.put(name, readValue());
+			skipSpace();
+			if (peek(',')) {
+				_pos++;
+			} else {
+				expect('}');
+				return object;
+			}
+		}
+	}
+	
+	private List<Object> readArray() {
+		expect('[');
+		final List<Object> array = new ArrayList<>();
+		skipSpace();
+		if (peek(']')) {
+			_pos++;
+			return array;
+		}
+		while (true) {
+			skipSpace();
+			array.add(readValue());
+			skipSpace();
+			if (peek(',')) {
+				_pos++;
+			} else {
+				expect(']');
+				return array;
+			}
+		}
+	}
+	
+	private String readString() {
+		expect('"');
+		final StringBuilder s = new StringBuilder();
+		while (_pos < _text.length()) {
+			final char c = _text.charAt(_pos++);
+			if (c == '"') {
+				return s.toString();
+			} else if (c != '\\') {
+				s.append(c);
+				continue;
+			}
+			if (_pos >= _text.length()) {
+				break;
+			}
+			final char escaped = _text.charAt(_pos++);
+			switch (escaped) {
+			case 'b':
+				s.append('\b');
+				break;
+			case 'f':
+				s.append('\f');
+				break;
+			case 'n':
+				s.append('\n');
+				break;
+			case 'r':
+				s.append('\r');
+				break;
+			case 't':
+				s.append('\t');
+				break;
+			case 'u':
+				if (_pos + 4 > _text.length()) {
+					throw error("Bad unicode escape");
+				}
+				try {
+					s.append((char) Integer.parseInt(_text.substring(_pos, _pos + 4), 16));
+				} catch (final NumberFormatException e) {
+					throw error("Bad unicode escape");
+				}
+				_pos += 4;
+				break;
+			default:
+				s.append(escaped);
+			}
+		}
+		throw error("Unterminated string");
+	}
+	
+	private Double readNumber() {
+		final int start = _pos;
+		while (_pos < _text.length() && "+-0123456789.eE".indexOf(_text.charAt(_pos)) >= 0) {
+			_pos++;
+		}
+		try {
+			return Double.valueOf(_text.substring(start, _pos));
+		} catch (final NumberFormatException e) {
+			_pos = start;
+			throw error("Expected a value");
+		}
+	}
+	
+	private void skipSpace() {
+		while (_pos < _text.length() && Character.isWhitespace(_text.charAt(_pos))) {
+			_pos++;
+		}
+	}
+	
+	private boolean peek(final char c) {
+		return _pos < _text.length() && _text.charAt(_pos) == c;
+	}
+	
+	private void expect(final char c) {
+		if (!peek(c)) {
+			throw error("Expected '" + c + "'");
+		}
+		_pos++;
+	}
+	
+	private IllegalArgumentException error(final String msg) {
+		return new IllegalArgumentException(String.format("Bad JSON at %d: %s", _pos, msg));
+	}
+}
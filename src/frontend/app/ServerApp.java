@@ -0,0 +1,434 @@
+package frontend.app;
+
+import hub.ScheduleService;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import backend.Learner;
+import backend.database.StaleDataException;
+import backend.database.StorageService;
+import backend.database.StorageServiceException;
+import backend.time.NotEnoughTimeException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import data.Assignment;
+import data.IAssignment;
+import data.ITask;
+import data.ITemplate;
+import data.ITimeBlockable;
+import data.Template;
+import data.TemplateStep;
+import frontend.Utils;
+import frontend.view.settings.SettingsConstants;
+
+/**
+ * Runs the scheduler without a display, behind a JSON-over-HTTP API on the loopback interface, so that it can be load
+ * tested and run side by side without a GUI. Requests are handled on a bounded pool of threads, and every one goes
+ * through ScheduleService, so requests against the calendar are serialized exactly as GUI edits are.
+ * 
+ * All times are in milliseconds since January 1, 1970. The API is:
+ * 
+ * <pre>
+ * GET    /assignments?start=&amp;end=     assignments due in the range (by default, the next week)
+ * POST   /assignments                    {name, due, hours[, template]}: add and schedule an assignment
+ * PUT    /assignments/{id}               {[name][, due][, hours]}: edit and reschedule an assignment
+ * DELETE /assignments/{id}               remove an assignment and its blocks
+ * POST   /assignments/{id}/progress      {task, percent}: set how much of a task is done, from 0 to 1
+ * GET    /blocks?start=&amp;end=          blocks in the range (by default, the next week)
+ * POST   /blocks/{id}/move               {start, end}: drag or resize a block
+ * </pre>
+ * 
+ * A request with a Carly-Tenant header works on that tenant's own calendar (see StorageService.enterTenant), so one
+ * server can serve many users; without one, it works on the default calendar the GUI uses.
+ * 
+ * Errors are answered with {error} and a 400 for a bad request, 404 for an unknown id, 409 if there isn't enough time
+ * for an assignment or the change kept conflicting with other changes, 503 if the scheduler is busy or a change ran
+ * past its deadline, and 500 otherwise.
+ */
+public class ServerApp extends App {
+	
+	public static final int			DEFAULT_PORT	= 8080;
+	private static final int		REQUEST_THREADS	= 16;
+	private static final String		TENANT_HEADER	= "Carly-Tenant";
+	private static final long		DEFAULT_RANGE	= TimeUnit.DAYS.toMillis(7);
+	
+	private final int				_port;
+	private HttpServer				_server;
+	private ExecutorService			_requests;
+	
+	/**
+	 * Uses the App constructor plus the port to listen on
+	 * 
+	 * @param debug if we should be in debug mode, which logs every request
+	 * @param port the port to listen on
+	 */
+	public ServerApp(final boolean debug, final int port) {
+		super(debug);
+		_port = port;
+	}
+	
+	/**
+	 * Opens the database and starts listening for requests
+	 */
+	@Override
+	public void start() {
+		try {
+			StorageService.initialize(false);
+		} catch (final StorageServiceException e) {
+			Utils.printError(e.getMessage());
+			return;
+		}
+		Learner.setEnabled(Boolean.parseBoolean(StorageService.getSetting(SettingsConstants.LEARNER_SETTING)));
+		try {
+			_server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), _port), 0);
+		} catch (final IOException e) {
+			Utils.printError("Couldn't listen on port " + _port + ": " + e.getMessage());
+			StorageService.cleanup();
+			return;
+		}
+		_server.createContext("/assignments", new AssignmentsEndpoint());
+		_server.createContext("/blocks", new BlocksEndpoint());
+		_requests = Executors.newFixedThreadPool(REQUEST_THREADS);
+		_server.setExecutor(_requests);
+		
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			
+			@Override
+			public void run() {
+				ServerApp.this.stop();
+			}
+		});
+		_server.start();
+		System.out.println(Utils.APP_NAME + " is listening on http://" + _server.getAddress().getHostString() + ":"
+			+ _server.getAddress().getPort());
+	}
+	
+	/**
+	 * Stops listening, letting requests being handled finish, and closes the database
+	 */
+	public void stop() {
+		if (_server != null) {
+			_server.stop(1);
+			_requests.shutdown();
+			StorageService.cleanup();
+			_server = null;
+		}
+	}
+	
+	/**
+	 * The handler for /assignments
+	 */
+	private class AssignmentsEndpoint extends Endpoint {
+		
+		@Override
+		protected Reply respond(final String tenant, final String method, final List<String> path,
+				final Map<String, String> query, final Map<String, Object> body) throws NotEnoughTimeException,
+				StorageServiceException {
+			if (path.isEmpty() && method.equals("GET")) {
+				final List<Object> assignments = new ArrayList<>();
+				for (final IAssignment a : ScheduleService.getAssignments(tenant, dateParam(query, "start", 0),
+						dateParam(query, "end", DEFAULT_RANGE))) {
+					assignments.add(toJson(a));
+				}
+				return new Reply(200, assignments);
+			} else if (path.isEmpty() && method.equals("POST")) {
+				return new Reply(201, toJson(ScheduleService.addAssignment(tenant, newAssignment(tenant, body))));
+			} else if (path.size() == 1 && method.equals("PUT")) {
+				final Date due = optionalDate(body, "due");
+				final Double hours = optionalNumber(body, "hours");
+				if (hours != null && hours <= 0) {
+					throw new IllegalArgumentException("hours must be positive");
+				}
+				final Assignment a = ScheduleService.editAssignment(tenant, path.get(0), optionalString(body, "name"), due,
+						(hours == null) ? 0 : hours);
+				return (a == null) ? null : new Reply(200, toJson(a));
+			} else if (path.size() == 1 && method.equals("DELETE")) {
+				final IAssignment a = ScheduleService.removeAssignment(tenant, path.get(0));
+				return (a == null) ? null : new Reply(200, toJson(a));
+			} else if (path.size() == 2 && path.get(1).equals("progress") && method.equals("POST")) {
+				final Assignment a = ScheduleService.updateProgress(tenant, path.get(0), requiredString(body, "task"),
+						requiredNumber(body, "percent"));
+				return (a == null) ? null : new Reply(200, toJson(a));
+			}
+			return null;
+		}
+		
+		/**
+		 * Makes an assignment from a request, with a one-step template unless one is named
+		 */
+		private Assignment newAssignment(final String tenant, final Map<String, Object> body) {
+			final String name = requiredString(body, "name");
+			final Date due = requiredDate(body, "due");
+			if (due.before(new Date())) {
+				throw new IllegalArgumentException("Due date is in the past!");
+			}
+			final double hours = requiredNumber(body, "hours");
+			if (hours <= 0) {
+				throw new IllegalArgumentException("hours must be positive");
+			}
+			
+			final String templateId = optionalString(body, "template");
+			ITemplate t;
+			if (templateId != null) {
+				t = ScheduleService.getTemplate(tenant, templateId);
+				if (t == null) {
+					throw new IllegalArgumentException("No template " + templateId);
+				}
+			} else {
+				t = new Template("Custom");
+				t.addStep(new TemplateStep("Work", 1.0, 0));
+			}
+			return new Assignment(name, due, t, hours);
+		}
+	}
+	
+	/**
+	 * The handler for /blocks
+	 */
+	private class BlocksEndpoint extends Endpoint {
+		
+		@Override
+		protected Reply respond(final String tenant, final String method, final List<String> path,
+				final Map<String, String> query, final Map<String, Object> body) {
+			if (path.isEmpty() && method.equals("GET")) {
+				final List<Object> blocks = new ArrayList<>();
+				for (final ITimeBlockable b : ScheduleService.getBlocks(tenant, dateParam(query, "start", 0),
+						dateParam(query, "end", DEFAULT_RANGE))) {
+					blocks.add(toJson(b));
+				}
+				return new Reply(200, blocks);
+			} else if (path.size() == 2 && path.get(1).equals("move") && method.equals("POST")) {
+				final Date start = requiredDate(body, "start");
+				final Date end = requiredDate(body, "end");
+				if (!end.after(start)) {
+					throw new IllegalArgumentException("end must be after start");
+				}
+				final ITimeBlockable b = ScheduleService.moveBlock(tenant, path.get(0), start, end);
+				if (b == null) {
+					return null;
+				}
+				// The block only moves if the move was allowed
+				final boolean moved = b.getStart().equals(start) && b.getEnd().equals(end);
+				return new Reply(moved ? 200 : 409, toJson(b));
+			}
+			return null;
+		}
+	}
+	
+	/**
+	 * A status and the JSON value to answer with
+	 */
+	private static class Reply {
+		private final int		_status;
+		private final Object	_body;
+		
+		private Reply(final int status, final Object body) {
+			_status = status;
+			_body = body;
+		}
+	}
+	
+	/**
+	 * Reads a request, hands it to respond, and writes the reply as JSON, turning exceptions into error replies
+	 */
+	private abstract class Endpoint implements HttpHandler {
+		
+		/**
+		 * @param tenant the tenant named by the request's Carly-Tenant header, or null for the default calendar
+		 * @param method the HTTP method
+		 * @param path the decoded segments of the path after the endpoint's own
+		 * @param query the decoded query parameters
+		 * @param body the JSON object sent, or an empty map
+		 * @return the reply, or null if there is nothing at that path
+		 */
+		protected abstract Reply respond(String tenant, String method, List<String> path, Map<String, String> query,
+				Map<String, Object> body) throws NotEnoughTimeException, StorageServiceException;
+		
+		@Override
+		public void handle(final HttpExchange exchange) throws IOException {
+			Reply reply;
+			try {
+				final String base = exchange.getHttpContext().getPath();
+				final String rest = exchange.getRequestURI().getRawPath().substring(base.length());
+				final Reply r = respond(exchange.getRequestHeaders().getFirst(TENANT_HEADER), exchange.getRequestMethod(),
+						segments(rest),
+						params(exchange.getRequestURI().getRawQuery()), readBody(exchange.getRequestBody()));
+				reply = (r == null) ? error(404, "Nothing at " + exchange.getRequestURI().getPath()) : r;
+			} catch (final IllegalArgumentException e) {
+				reply = error(400, e.getMessage());
+			} catch (final NotEnoughTimeException | StaleDataException e) {
+				reply = error(409, e.getMessage());
+			} catch (final RejectedExecutionException | CancellationException e) {
+				reply = error(503, e.getMessage());
+			} catch (final StorageServiceException | RuntimeException e) {
+				e.printStackTrace();
+				reply = error(500, e.getMessage());
+			}
+			
+			if (debug) {
+				System.out.println(exchange.getRequestMethod() + " " + exchange.getRequestURI() + " -> "
+					+ reply._status);
+			}
+			final byte[] bytes = Json.write(reply._body).getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+			exchange.sendResponseHeaders(reply._status, bytes.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(bytes);
+			}
+		}
+	}
+	
+	/*
+	 * Helper methods
+	 */
+	
+	private static Reply error(final int status, final String message) {
+		return new Reply(status, Collections.singletonMap("error",
+				(message == null) ? "Something went wrong" : message));
+	}
+	
+	private static Map<String, Object> readBody(final InputStream in) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[4096];
+		int read;
+		while ((read = in.read(buffer)) > 0) {
+			bytes.write(buffer, 0, read);
+		}
+		final String text = new String(bytes.toByteArray(), StandardCharsets.UTF_8).trim();
+		return text.isEmpty() ? new HashMap<String, Object>() : Json.parseObject(text);
+	}
+	
+	private static List<String> segments(final String path) throws UnsupportedEncodingException {
+		final List<String> segments = new ArrayList<>();
+		for (final String s : path.split("/")) {
+			if (!s.isEmpty()) {
+				segments.add(URLDecoder.decode(s, "UTF-8"));
+			}
+		}
+		return segments;
+	}
+	
+	private static Map<String, String> params(final String query) throws UnsupportedEncodingException {
+		final Map<String, String> params = new HashMap<>();
+		if (query != null) {
+			for (final String pair : query.split("&")) {
+				final int eq = pair.indexOf('=');
+				if (eq > 0) {
+					params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+							URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+				}
+			}
+		}
+		return params;
+	}
+	
+	/**
+	 * @return the query parameter as a Date, or now plus the default offset if it's missing
+	 */
+	private static Date dateParam(final Map<String, String> query, final String name, final long defaultOffset) {
+		final String value = query.get(name);
+		if (value == null) {
+			return new Date(System.currentTimeMillis() + defaultOffset);
+		}
+		try {
+			return new Date(Long.parseLong(value));
+		} catch (final NumberFormatException e) {
+			throw new IllegalArgumentException(name + " must be a time in milliseconds");
+		}
+	}
+	
+	private static String optionalString(final Map<String, Object> body, final String name) {
+		final Object value = body.get(name);
+		if (value != null && !(value instanceof String)) {
+			throw new IllegalArgumentException(name + " must be a string");
+		}
+		return (String) value;
+	}
+	
+	private static String requiredString(final Map<String, Object> body, final String name) {
+		final String value = optionalString(body, name);
+		if (value == null || value.isEmpty()) {
+			throw new IllegalArgumentException(name + " is missing");
+		}
+		return value;
+	}
+	
+	private static Double optionalNumber(final Map<String, Object> body, final String name) {
+		final Object value = body.get(name);
+		if (value != null && !(value instanceof Double)) {
+			throw new IllegalArgumentException(name + " must be a number");
+		}
+		return (Double) value;
+	}
+	
+	private static double requiredNumber(final Map<String, Object> body, final String name) {
+		final Double value = optionalNumber(body, name);
+		if (value == null) {
+			throw new IllegalArgumentException(name + " is missing");
+		}
+		return value;
+	}
+	
+	private static Date optionalDate(final Map<String, Object> body, final String name) {
+		final Double value = optionalNumber(body, name);
+		return (value == null) ? null : new Date(value.longValue());
+	}
+	
+	private static Date requiredDate(final Map<String, Object> body, final String name) {
+		return new Date((long) requiredNumber(body, name));
+	}
+	
+	private static Map<String, Object> toJson(final IAssignment a) {
+		final List<Object> tasks = new ArrayList<>();
+		for (final ITask t : a.getTasks()) {
+			final Map<String, Object> task = new LinkedHashMap<>();
+			task.put("id", t.getTaskID());
+			task.put("name", t.getName());
+			task.put("percentOfTotal", t.getPercentOfTotal());
+			task.put("percentComplete", t.getPercentComplete());
+			tasks.add(task);
+		}
+		final Map<String, Object> json = new LinkedHashMap<>();
+		json.put("id", a.getID());
+		json.put("name", a.getName());
+		json.put("due", a.getDueDate().getTime());
+		json.put("hours", a.getExpectedHours());
+		json.put("percentComplete", a.getPercentComplete());
+		json.put("template", (a.getTemplate() == null) ? null : a.getTemplate().getID());
+		json.put("tasks", tasks);
+		return json;
+	}
+	
+	private static Map<String, Object> toJson(final ITimeBlockable b) {
+		final Map<String, Object> json = new LinkedHashMap<>();
+		json.put("id", b.getId());
+		json.put("start", b.getStart().getTime());
+		json.put("end", b.getEnd().getTime());
+		json.put("movable", b.isMovable());
+		json.put("task", (b.getTask() == null) ? null : b.getTask().getTaskID());
+		json.put("assignment", (b.getTask() == null) ? null : b.getTask().getAssignmentID());
+		return json;
+	}
+}
@@ -21,6 +21,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import javax.swing.AbstractAction;
@@ -37,12 +38,19 @@ import javax.swing.JTextField;
 import javax.swing.KeyStroke;
 import javax.swing.SpinnerDateModel;
 import javax.swing.SwingConstants;
+import javax.swing.SwingWorker;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.event.TableModelEvent;
 import javax.swing.event.TableModelListener;
 import javax.swing.table.JTableHeader;
 
 import backend.database.StorageService;
 import backend.database.StorageServiceException;
+import backend.time.FreeTimeIndex;
+import backend.time.TimeUtilities;
 import data.Assignment;
 import data.ITemplate;
 import data.ITemplateStep;
@@ -77,6 +85,10 @@ public class AddAssignmentDialog extends JDialog implements TableModelListener {
 	protected JTextField			_numHours;
 	public JLabel					_dialogTitle;
 	private String					_lastTemplateAdded;
+	private JLabel					_freeTimeLabel;
+	private FreeTimeIndex			_freeTime;
+	private Date					_freeTimeUntil;
+	private FreeTimeLoader			_freeTimeLoader;
 	
 	/**
 	 * Constructor creates all relevant data
@@ -444,6 +456,38 @@ public class AddAssignmentDialog extends JDialog implements TableModelListener {
 		c.gridwidth = GridBagConstraints.REMAINDER;
 		pane.add(_numHours, c);
 		
+		// Free time before the due date, updated as the due date and expected hours change
+		_freeTimeLabel = new JLabel(DEFAULT_LABEL);
+		_freeTimeLabel.setFont(Utils.getFont(Font.PLAIN, 12));
+		Utils.themeComponent(_freeTimeLabel);
+		c.gridx = 1;
+		c.gridy = GridBagConstraints.RELATIVE;
+		pane.add(_freeTimeLabel, c);
+		_dateTimeField.addChangeListener(new ChangeListener() {
+			
+			@Override
+			public void stateChanged(final ChangeEvent e) {
+				updateFreeTime();
+			}
+		});
+		_numHours.getDocument().addDocumentListener(new DocumentListener() {
+			
+			@Override
+			public void insertUpdate(final DocumentEvent e) {
+				updateFreeTime();
+			}
+			
+			@Override
+			public void removeUpdate(final DocumentEvent e) {
+				updateFreeTime();
+			}
+			
+			@Override
+			public void changedUpdate(final DocumentEvent e) {
+				updateFreeTime();
+			}
+		});
+		
 		// Template label
 		final JLabel templateLabel = new JLabel("Template: ");
 		Utils.themeComponent(templateLabel);
@@ -519,6 +563,80 @@ public class AddAssignmentDialog extends JDialog implements TableModelListener {
 		return pane;
 	}
 	
+	/**
+	 * Shows how many hours are free between now and the due date, and whether the expected hours fit in them. The
+	 * calendar is read into a FreeTimeIndex once, and only read again once the due date moves past what was read, so
+	 * each change is answered in O(log n). Reading the calendar is left to a FreeTimeLoader, so the label is only
+	 * updated once it is done.
+	 */
+	private void updateFreeTime() {
+		final Date now = new Date();
+		final Date due = (Date) _dateTimeField.getValue();
+		if (!due.after(now)) {
+			_freeTimeLabel.setText(DEFAULT_LABEL);
+			return;
+		}
+		if (_freeTime == null || due.after(_freeTimeUntil)) {
+			// The loader already reading far enough calls back here when it is done
+			if (_freeTimeLoader == null || due.after(_freeTimeLoader._until)) {
+				if (_freeTimeLoader != null) {
+					_freeTimeLoader.cancel(false);
+				}
+				_freeTimeLoader = new FreeTimeLoader(now, new Date(now.getTime() + 2 * (due.getTime() - now.getTime())));
+				_freeTimeLoader.execute();
+			}
+			return;
+		}
+		
+		final double freeHours = (double) _freeTime.freeTime(now, due) / TimeUnit.HOURS.toMillis(1);
+		String text = String.format("%.1f hours free before the due date", freeHours);
+		try {
+			final double exHours = Double.parseDouble(_numHours.getText());
+			if (exHours > freeHours) {
+				text += String.format(" - not enough for %.1f", exHours);
+			}
+		} catch (final NumberFormatException e) {
+			// Nothing to compare against yet
+		}
+		_freeTimeLabel.setText(text);
+	}
+	
+	/**
+	 * Reads the calendar into a FreeTimeIndex off the event dispatch thread, then hands it to the dialog and updates
+	 * the label. A loader the dialog has since replaced or dropped leaves the dialog alone.
+	 */
+	private class FreeTimeLoader extends SwingWorker<FreeTimeIndex, Void> {
+		
+		private final Date	_from;
+		private final Date	_until;
+		
+		private FreeTimeLoader(final Date from, final Date until) {
+			_from = from;
+			_until = until;
+		}
+		
+		@Override
+		protected FreeTimeIndex doInBackground() {
+			return TimeUtilities.getFreeTimeIndex(_from, _until);
+		}
+		
+		@Override
+		protected void done() {
+			if (_freeTimeLoader != this || isCancelled()) {
+				return;
+			}
+			_freeTimeLoader = null;
+			try {
+				_freeTime = get();
+				_freeTimeUntil = _until;
+			} catch (final InterruptedException | ExecutionException e) {
+				e.printStackTrace();
+				return;
+			}
+			updateFreeTime();
+		}
+	}
+	
 	/**
 	 * For use when the steps list changes
 	 */
@@ -569,6 +687,8 @@ public class AddAssignmentDialog extends JDialog implements TableModelListener {
 		_cancelButton.reset();
 		_addButton.reset();
 		_templateButton.reset();
+		_freeTime = null;
+		_freeTimeLoader = null;
 	}
 	
 	@Override
@@ -583,6 +703,13 @@ public class AddAssignmentDialog extends JDialog implements TableModelListener {
 				}
 			}
 		}
+		
+		// The calendar may have changed since the dialog was last shown
+		_freeTime = null;
+		_freeTimeLoader = null;
+		if (b) {
+			updateFreeTime();
+		}
 		super.setVisible(b);
 	}
 	
@@ -20,4 +20,9 @@ public class SettingsConstants {
 	 */
 	public static final String LEARNER_SETTING = "learner";
 
+	/**
+	 * String key storing the name of the PlacementPolicy TimeAllocator uses
+	 */
+	public static final String PLACEMENT_SETTING = "placement";
+
 }
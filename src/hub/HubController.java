@@ -1,17 +1,34 @@
 package hub;
 
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.SwingUtilities;
 
 import backend.Learner;
+import backend.database.StaleDataException;
 import backend.database.StorageService;
 import backend.database.StorageServiceException;
+import backend.database.TimeBlockChangeSet;
+import backend.time.BatchTimeAllocator;
 import backend.time.NotEnoughTimeException;
+import backend.time.Schedule;
+import backend.time.ScheduleOptimizer;
+import backend.time.ScheduleScorer;
 import backend.time.TimeAllocator;
 import backend.time.TimeModifier;
+import backend.time.TimeUtilities;
+import backend.time.WhatIfAnalyzer;
 import data.Assignment;
+import data.IAssignment;
 import data.ITask;
 import data.ITimeBlockable;
 import frontend.app.GUIApp;
@@ -23,7 +40,28 @@ import frontend.app.GUIApp;
  */
 public class HubController {
 	
-	private static GUIApp	_app;
+	private static final long			OPTIMIZER_BUDGET_MS	= 2000;
+	
+	// The GUI has one calendar, so every change from it goes through its lane; tenants' calendars have their own
+	static final String					CALENDAR			= "calendar";
+	// The optimizer searches on its own lane, so that the calendar's changes don't wait for it
+	private static final String			OPTIMIZER			= "optimizer";
+	// Suggestions for assignments that didn't fit only read the calendar, so they get a lane and deadline of their own
+	private static final String			WHAT_IF				= "what-if";
+	private static final long			WHAT_IF_DEADLINE_MS	= 2000;
+	private static final int			SCHEDULER_CAPACITY	= 64;
+	private static final long			SCHEDULER_OFFER_MS	= 250;
+	// How long each kind of job may run before it is interrupted; one that stops there leaves the calendar as it was.
+	// A batch gets BATCH_DEADLINE_MS more for each of its assignments.
+	static final long					INSERT_DEADLINE_MS	= 1000;
+	private static final long			BATCH_DEADLINE_MS	= 500;
+	static final long					CHANGE_DEADLINE_MS	= 1000;
+	private static final long			REPLACE_DEADLINE_MS	= 2000;
+	static final long					READ_DEADLINE_MS	= 1000;
+	
+	private static GUIApp				_app;
+	private static ScheduleOptimizer	_optimizer;
+	private static SchedulingExecutor	_scheduler;
 	
 	/**
 	 * Constructor for the controller
@@ -40,37 +78,282 @@ public class HubController {
 	 * @param a the assignment to add
 	 */
 	public static void addAssignmentToCalendar(final Assignment a) {
-		new Thread() {
+		schedule(new Runnable() {
 			
 			@Override
 			public void run() {
-				final String tempId = a.getTemplate().getID();
+				try {
+					insertAssignment(a);
+				} catch (final NotEnoughTimeException err) {
+					
+					// Not enough time to add, so present the error dialog once another way to place the assignment
+					// has been looked for
+					reloadApp();
+					suggestAlternative(err, a);
+					return;
+				} catch (final StorageServiceException | CancellationException err) {
+					
+					// Storage error, or ran past the deadline, so present the error dialog
+					showError(err, "Close");
+					reloadApp();
+					return;
+				}
 				
+				// Everything went well, so reload the app data, then look for a better schedule after any changes
+				// queued in the meantime
+				reloadApp();
+				scheduleQuietly(CALENDAR, new Runnable() {
+					
+					@Override
+					public void run() {
+						optimizeCalendar(new Date(), a.getDueDate());
+					}
+				});
+			}
+		}, INSERT_DEADLINE_MS);
+	}
+	
+	/**
+	 * Adds the assignment and its template to database and allocates time for it, on the calling thread. If that
+	 * fails, the assignment is removed from database again before the error is thrown.
+	 * 
+	 * @param a the assignment to add
+	 * @throws NotEnoughTimeException if there isn't enough free time before the due date
+	 * @throws StorageServiceException if the assignment couldn't be stored
+	 * @throws CancellationException if the thread was interrupted before any block was written
+	 */
+	static void insertAssignment(final Assignment a) throws NotEnoughTimeException, StorageServiceException {
+		try {
+			// Make sure the template and assignment are in the DB
+			if (StorageService.getTemplate(a.getTemplate().getID()) == null) {
+				StorageService.addTemplate(a.getTemplate());
+			}
+			// Learner requires that the template be in the db
+			Learner.optimizeTasks(a);
+			StorageService.addAssignment(a);
+			
+			// Allocate time and then write the blocks that changed to the DB
+			final Date start = new Date();
+			final TimeAllocator talloc = new TimeAllocator(a);
+			talloc.insertAsgn(start, a.getDueDate());
+			StorageService.applyTimeBlockChanges(talloc.getChangeSet());
+		} catch (final NotEnoughTimeException | StorageServiceException err) {
+			StorageService.removeAssignment(a);
+			throw err;
+		} catch (final CancellationException err) {
+			// Nothing was allocated, so the interrupt has done its job; clear it to remove from DB
+			Thread.interrupted();
+			StorageService.removeAssignment(a);
+			throw err;
+		}
+	}
+	
+	/**
+	 * Improves the schedule between two dates with the ScheduleOptimizer. The snapshot is taken here, on the
+	 * calendar's lane, and the search runs on the optimizer's lane for its time budget. A better schedule is then
+	 * saved by a short job back on the calendar's lane.
+	 * 
+	 * @param start the start of the window to rearrange
+	 * @param end the end of the window to rearrange
+	 */
+	private static void optimizeCalendar(final Date start, final Date end) {
+		final List<ITimeBlockable> blocks = getWindow(start, end);
+		final Map<String, Long> versions = getVersions(blocks);
+		final Schedule initial = new Schedule(blocks, start, end);
+		scheduleQuietly(OPTIMIZER, new Runnable() {
+			
+			@Override
+			public void run() {
+				searchSchedule(initial, versions);
+			}
+		});
+	}
+	
+	/**
+	 * Searches for a better schedule than a snapshot of the calendar, blocking for the optimizer's time budget, and
+	 * queues saving it on the calendar's lane if there is one
+	 * 
+	 * @param initial the snapshot to improve on
+	 * @param versions the version of every block in the snapshot; see getVersions
+	 */
+	private static void searchSchedule(final Schedule initial, final Map<String, Long> versions) {
+		final Schedule best;
+		try {
+			best = getOptimizer().optimize(initial, OPTIMIZER_BUDGET_MS, TimeUnit.MILLISECONDS, null);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		if (best != initial) {
+			scheduleQuietly(CALENDAR, new Runnable() {
+				
+				@Override
+				public void run() {
+					saveSchedule(best, versions);
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Saves and shows a schedule found by the optimizer, unless the window changed since the snapshot was taken. The
+	 * version checks on the write only cover the blocks the schedule moves, so the window is read again first and any
+	 * block added, removed or changed in it since the snapshot drops the schedule.
+	 * 
+	 * @param best the schedule to save
+	 * @param versions the version of every block in the snapshot; see getVersions
+	 */
+	private static void saveSchedule(final Schedule best, final Map<String, Long> versions) {
+		final List<ITimeBlockable> current = getWindow(new Date(best.getWindowStart()), new Date(best.getWindowEnd()));
+		if (!getVersions(current).equals(versions)) {
+			// The calendar changed while the optimizer worked on it, so its schedule is out of date; keep the calendar
+			return;
+		}
+		try {
+			final TimeBlockChangeSet changes = new TimeBlockChangeSet();
+			best.applyTo(changes);
+			StorageService.applyTimeBlockChanges(changes);
+			reloadApp();
+		} catch (final StaleDataException e) {
+			// The calendar changed while the optimizer worked on it, so its schedule is out of date; keep the calendar
+		} catch (final StorageServiceException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * @param start the start of the window
+	 * @param end the end of the window
+	 * @return every unavailable and assignment block in the window, sorted by start
+	 */
+	private static List<ITimeBlockable> getWindow(final Date start, final Date end) {
+		return TimeUtilities.zipTimeBlockLists(StorageService.getAllUnavailableBlocksWithinRange(start, end),
+				StorageService.getAllAssignmentBlocksWithinRange(start, end));
+	}
+	
+	/**
+	 * Blocks of the default week share their ids across weeks, so blocks are told apart by id and start
+	 * 
+	 * @param blocks the blocks to look at
+	 * @return the version of each block by id and start
+	 */
+	private static Map<String, Long> getVersions(final List<ITimeBlockable> blocks) {
+		final Map<String, Long> versions = new HashMap<>(blocks.size() * 2);
+		for (final ITimeBlockable block : blocks) {
+			versions.put(block.getId() + "@" + block.getStart().getTime(), block.getVersion());
+		}
+		return versions;
+	}
+	
+	/**
+	 * Queues looking for another way to place an assignment that didn't fit, then presenting the error with it. The
+	 * search runs after the failed change, so it isn't held to that change's deadline, and is cut short at its own.
+	 * 
+	 * @param err the error placing the assignment
+	 * @param a the assignment that didn't fit
+	 */
+	private static void suggestAlternative(final NotEnoughTimeException err, final Assignment a) {
+		try {
+			getScheduler().submit(WHAT_IF, new Runnable() {
+				
+				@Override
+				public void run() {
+					showError(withAlternative(err, a), "Close");
+				}
+			}, WHAT_IF_DEADLINE_MS, TimeUnit.MILLISECONDS);
+		} catch (final RejectedExecutionException e) {
+			// Too busy to look for one
+			showError(err, "Close");
+		}
+	}
+	
+	/**
+	 * Evaluates other ways of placing an assignment that didn't fit, in parallel
+	 * 
+	 * @param err the error placing the assignment
+	 * @param a the assignment that didn't fit
+	 * @return the error, with the best way of placing the assignment that does fit added to its message, if any
+	 */
+	private static NotEnoughTimeException withAlternative(final NotEnoughTimeException err, final Assignment a) {
+		List<WhatIfAnalyzer.Outcome> outcomes;
+		try {
+			outcomes = new WhatIfAnalyzer().analyze(a, new Date());
+		} catch (final CancellationException e) {
+			// Out of time to look for one
+			return err;
+		}
+		if (outcomes.isEmpty() || !outcomes.get(0).isFeasible()) {
+			return err;
+		}
+		final WhatIfAnalyzer.Candidate best = outcomes.get(0).getCandidate();
+		return new NotEnoughTimeException(String.format("%s It would fit in %.2f hour blocks starting %tc.",
+				err.getMessage(), best.getHoursPerBlock(), best.getStart()));
+	}
+	
+	private static synchronized ScheduleOptimizer getOptimizer() {
+		if (_optimizer == null) {
+			_optimizer = new ScheduleOptimizer(new ScheduleScorer());
+		}
+		return _optimizer;
+	}
+	
+	/**
+	 * Adds many assignments to database at once, placing them all in one scheduling pass so that the calendar is only
+	 * read and written once. Any that don't fit are removed again and reported in one error.
+	 * 
+	 * @param assignments the assignments to add
+	 */
+	public static void addAssignmentsToCalendar(final List<Assignment> assignments) {
+		schedule(new Runnable() {
+			
+			@Override
+			public void run() {
 				try {
-					// Make sure the template and assignment are in the DB
-					if (StorageService.getTemplate(tempId) == null) {
-						StorageService.addTemplate(a.getTemplate());
+					// Make sure the templates and assignments are in the DB
+					for (final Assignment a : assignments) {
+						if (StorageService.getTemplate(a.getTemplate().getID()) == null) {
+							StorageService.addTemplate(a.getTemplate());
+						}
+						// Learner requires that the template be in the db
+						Learner.optimizeTasks(a);
+						StorageService.addAssignment(a);
 					}
-					// Learner requires that the template be in the db
-					Learner.optimizeTasks(a);
-					StorageService.addAssignment(a);
 					
-					// Allocate time and then merge time blocks in DB
-					final Date start = new Date();
-					final TimeAllocator talloc = new TimeAllocator(a);
-					talloc.insertAsgn(start, a.getDueDate());
-					StorageService.mergeAllTimeBlocks(talloc.getEntireBlockSet());
-				} catch (final NotEnoughTimeException | StorageServiceException err) {
+					// Allocate time for all of them and then write the blocks that changed to the DB
+					final BatchTimeAllocator talloc = new BatchTimeAllocator(assignments);
+					talloc.insertAsgns(new Date());
+					StorageService.applyTimeBlockChanges(talloc.getChangeSet());
 					
-					// Not enough time to add or storage error, so present the error dialog after removing from DB
-					StorageService.removeAssignment(a);
+					final List<IAssignment> failed = talloc.getFailedAssignments();
+					if (!failed.isEmpty()) {
+						final StringBuilder names = new StringBuilder();
+						for (final IAssignment a : failed) {
+							StorageService.removeAssignment(a);
+							names.append(names.length() == 0 ? "" : ", ").append(a.getName());
+						}
+						showError(new NotEnoughTimeException("Oops! Carly was unable to insert " + names + "."), "Close");
+					}
+				} catch (final StorageServiceException err) {
+					
+					// Storage error, so present the error dialog after removing from DB
+					for (final Assignment a : assignments) {
+						StorageService.removeAssignment(a);
+					}
+					showError(err, "Close");
+				} catch (final CancellationException err) {
+					
+					// Ran past the deadline before any block was written, so just remove from DB
+					Thread.interrupted();
+					for (final Assignment a : assignments) {
+						StorageService.removeAssignment(a);
+					}
 					showError(err, "Close");
 				}
 				
-				// Everything went well, so reload the app data
+				// Reload the app data with whatever was added
 				reloadApp();
 			}
-		}.start();
+		}, batchDeadline(assignments.size()));
 	}
 	
 	/**
@@ -81,15 +364,34 @@ public class HubController {
 	 * @param newEnd the new end time
 	 */
 	public static void changeTimeBlock(final ITimeBlockable oldBlock, final Date newStart, final Date newEnd) {
-		
+		schedule(new Runnable() {
+			
+			@Override
+			public void run() {
+				moveTimeBlock(oldBlock, newStart, newEnd);
+				reloadApp();
+			}
+		}, CHANGE_DEADLINE_MS);
+	}
+	
+	/**
+	 * Updates a block in the database and tells the learner about it, on the calling thread
+	 * 
+	 * @param oldBlock the old block, with old data as start/end
+	 * @param newStart the new start time
+	 * @param newEnd the new end time
+	 * @return whether the block could be moved
+	 */
+	static boolean moveTimeBlock(final ITimeBlockable oldBlock, final Date newStart, final Date newEnd) {
 		final Date oldStart = new Date(oldBlock.getStart().getTime());
 		final Date oldEnd = new Date(oldBlock.getEnd().getTime());
 		
 		// Time modifier updates old block with newStart and newEnd so by the time the learner acts on it, it's "new"
 		if (TimeModifier.updateBlock(oldBlock, newStart, newEnd)) {
 			Learner.considerBlockUpdate(oldBlock, oldStart, oldEnd);
+			return true;
 		}
-		reloadApp();
+		return false;
 	}
 	
 	/**
@@ -99,13 +401,37 @@ public class HubController {
 	 * @param newCompletion a double between 0 and 1 inclusive to represent percent complete
 	 */
 	public static void changeTask(final ITask oldTask, final double newCompletion) {
+		schedule(new Runnable() {
+			
+			@Override
+			public void run() {
+				try {
+					updateTaskProgress(oldTask, newCompletion);
+				} catch (final StorageServiceException | CancellationException err) {
+					
+					// Storage error or conflicting change, or ran past the deadline, so the task is unchanged
+					showError(err, "Close");
+				}
+				reloadApp();
+			}
+		}, CHANGE_DEADLINE_MS);
+	}
+	
+	/**
+	 * Updates a task and its blocks in the database with a new completion amount and tells the learner about it, on
+	 * the calling thread
+	 * 
+	 * @param oldTask the actual task to update
+	 * @param newCompletion a double between 0 and 1 inclusive to represent percent complete
+	 * @throws StorageServiceException if the task and its blocks couldn't be written; the task is unchanged
+	 * @throws CancellationException if the thread was interrupted before any block was written; the task is unchanged
+	 */
+	static void updateTaskProgress(final ITask oldTask, final double newCompletion) throws StorageServiceException {
 		final double magnitudeChange = newCompletion - oldTask.getPercentComplete();
+		
+		// Writes the new completion along with the blocks
 		TimeModifier.updateBlocksInTask(oldTask, newCompletion);
 		Learner.considerTaskUpdate(oldTask, new Date(System.currentTimeMillis()), magnitudeChange);
-		
-		oldTask.setPercentComplete(newCompletion);
-		StorageService.updateTask(oldTask);
-		reloadApp();
 	}
 	
 	/**
@@ -117,11 +443,84 @@ public class HubController {
 	 */
 	public static void replaceUnavailableBlocks(final Date startDate, final Date endDate,
 			final List<ITimeBlockable> blockList) {
-		for (final ITimeBlockable t : blockList) {
-			t.renewID();
+		schedule(new Runnable() {
+			
+			@Override
+			public void run() {
+				for (final ITimeBlockable t : blockList) {
+					t.renewID();
+				}
+				StorageService.replaceUnavailableBlocks(startDate, endDate, blockList);
+				reloadApp();
+			}
+		}, REPLACE_DEADLINE_MS);
+	}
+	
+	/**
+	 * @return the queue depth and latency of the changes made to the calendar so far
+	 */
+	public static SchedulingExecutor.Metrics getSchedulingMetrics() {
+		return getScheduler().getMetrics();
+	}
+	
+	/**
+	 * Queues a change to the calendar behind the ones already queued, telling the user if too many are waiting. The
+	 * change is interrupted if it runs past its deadline.
+	 * 
+	 * @param job the change to make
+	 * @param deadline how long the change may run, in milliseconds
+	 */
+	private static void schedule(final Runnable job, final long deadline) {
+		try {
+			submit(CALENDAR, Executors.callable(job), deadline);
+		} catch (final RejectedExecutionException err) {
+			showError(err, "Close");
+		}
+	}
+	
+	/**
+	 * Queues optional work on a lane, skipping it if too many changes are waiting. The work keeps to its own time
+	 * budget, so it has no deadline.
+	 * 
+	 * @param lane the lane to queue the work on, like CALENDAR
+	 * @param job the work to do
+	 */
+	private static void scheduleQuietly(final String lane, final Runnable job) {
+		try {
+			getScheduler().submit(lane, job);
+		} catch (final RejectedExecutionException err) {
+			// The calendar is already correct without it, so there is nothing to report
+		}
+	}
+	
+	/**
+	 * Queues a job on a calendar behind the ones already queued; it is interrupted if it runs past its deadline
+	 * 
+	 * @param calendar the calendar the job changes, like CALENDAR
+	 * @param job the job
+	 * @param deadline how long the job may run, in milliseconds, like INSERT_DEADLINE_MS
+	 * @return a Future for the result of the job
+	 * @throws RejectedExecutionException if too many jobs are waiting
+	 */
+	static <T> Future<T> submit(final String calendar, final Callable<T> job, final long deadline) {
+		return getScheduler().submit(calendar, job, deadline, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * @param size the number of assignments in a batch
+	 * @return how long placing the batch may run, in milliseconds; it is placed in one pass, so each assignment adds
+	 *         to the time an insert is given
+	 */
+	private static long batchDeadline(final int size) {
+		return INSERT_DEADLINE_MS + size * BATCH_DEADLINE_MS;
+	}
+	
+	private static synchronized SchedulingExecutor getScheduler() {
+		if (_scheduler == null) {
+			_scheduler = new SchedulingExecutor(Math.max(2, Runtime.getRuntime().availableProcessors()),
+					SCHEDULER_CAPACITY, SCHEDULER_OFFER_MS, TimeUnit.MILLISECONDS);
 		}
-		StorageService.replaceUnavailableBlocks(startDate, endDate, blockList);
-		reloadApp();
+		return _scheduler;
 	}
 	
 	/**
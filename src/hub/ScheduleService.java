@@ -0,0 +1,321 @@
+package hub;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import backend.database.StorageService;
+import backend.database.StorageServiceException;
+import backend.time.NotEnoughTimeException;
+import backend.time.TimeUtilities;
+import data.Assignment;
+import data.AssignmentBlock;
+import data.IAssignment;
+import data.ITask;
+import data.ITemplate;
+import data.ITimeBlockable;
+
+/**
+ * Blocking access to the scheduler for callers without a GUI, like the ServerApp. Each call runs as a job on the
+ * calendar's lane of the executor HubController uses, so it never interleaves with a change made from the GUI or from
+ * another request, and waits for that job to finish. Reads go through the lane too, so they never see a change half
+ * made.
+ * 
+ * Every call takes the tenant whose calendar it is for, or null for the default calendar the GUI uses. Each tenant's
+ * calendar has its own lane, and its job runs inside the tenant (see StorageService.enterTenant), so calls for
+ * different tenants run in parallel and never see each other's data.
+ * 
+ * Every call throws RejectedExecutionException if too many changes are waiting, and CancellationException if the job
+ * ran past its deadline, in which case nothing was changed.
+ */
+public class ScheduleService {
+	
+	/**
+	 * Prefix of the name of a tenant's lane, so no tenant shares the default calendar's lane
+	 */
+	private static final String	TENANT_LANE	= "tenant:";
+	
+	/**
+	 * Adds the assignment and its template to database and allocates time for it
+	 * 
+	 * @param tenant the tenant, or null for the default calendar
+	 * @param a the assignment to add
+	 * @return the assignment
+	 * @throws NotEnoughTimeException if there isn't enough free time before the due date; nothing was added
+	 * @throws StorageServiceException if the assignment couldn't be stored; nothing was added
+	 */
+	public static Assignment addAssignment(final String tenant, final Assignment a) throws NotEnoughTimeException,
+			StorageServiceException {
+		return call(tenant, HubController.INSERT_DEADLINE_MS, new Callable<Assignment>() {
+			
+			@Override
+			public Assignment call() throws NotEnoughTimeException, StorageServiceException {
+				HubController.insertAssignment(a);
+				return a;
+			}
+		});
+	}
+	
+	/**
+	 * Replaces an assignment with an edited copy, keeping its id and template, and allocates time for the copy from
+	 * scratch. If the copy doesn't fit, the original is put back with its blocks.
+	 * 
+	 * @param tenant the tenant, or null for the default calendar
+	 * @param id the id of the assignment to edit
+	 * @param name the new name, or null to keep it
+	 * @param due the new due date, or null to keep it
+	 * @param hours the new expected hours, or 0 to keep them
+	 * @return the edited assignment, or null if there is no assignment with that id
+	 * @throws NotEnoughTimeException if there isn't enough free time for the copy; the original is unchanged
+	 * @throws StorageServiceException if the copy couldn't be stored; the original is unchanged
+	 */
+	public static Assignment editAssignment(final String tenant, final String id, final String name, final Date due,
+			final double hours) throws NotEnoughTimeException, StorageServiceException {
+		return call(tenant, HubController.INSERT_DEADLINE_MS, new Callable<Assignment>() {
+			
+			@Override
+			public Assignment call() throws NotEnoughTimeException, StorageServiceException {
+				final Assignment old = StorageService.getAssignment(id);
+				if (old == null) {
+					return null;
+				}
+				final Assignment edited = new Assignment(id, (name == null) ? old.getName() : name,
+						(due == null) ? old.getDueDate() : due, old.getTemplate(),
+						(hours > 0) ? hours : old.getExpectedHours());
+				
+				final List<ITimeBlockable> oldBlocks = blocksOf(old);
+				StorageService.removeAssignment(old);
+				try {
+					HubController.insertAssignment(edited);
+				} catch (final NotEnoughTimeException | StorageServiceException | CancellationException err) {
+					restore(old, oldBlocks);
+					throw err;
+				}
+				return edited;
+			}
+		});
+	}
+	
+	/**
+	 * Removes an assignment and its blocks from database
+	 * 
+	 * @param tenant the tenant, or null for the default calendar
+	 * @param id the id of the assignment to remove
+	 * @return the removed assignment, or null if there is no assignment with that id
+	 */
+	public static IAssignment removeAssignment(final String tenant, final String id) {
+		return callUnchecked(tenant, HubController.CHANGE_DEADLINE_MS, new Callable<IAssignment>() {
+			
+			@Override
+			public IAssignment call() {
+				final Assignment a = StorageService.getAssignment(id);
+				return (a == null) ? null : StorageService.removeAssignment(a);
+			}
+		});
+	}
+	
+	/**
+	 * Moves or resizes a block, as dragging it in the GUI does
+	 * 
+	 * @param tenant the tenant, or null for the default calendar
+	 * @param blockId the id of the block
+	 * @param start the new start time
+	 * @param end the new end time
+	 * @return the block, which has only moved if the move was allowed, or null if there is no block with that id
+	 */
+	public static ITimeBlockable moveBlock(final String tenant, final String blockId, final Date start, final Date end) {
+		return callUnchecked(tenant, HubController.CHANGE_DEADLINE_MS, new Callable<ITimeBlockable>() {
+			
+			@Override
+			public ITimeBlockable call() {
+				ITimeBlockable block = StorageService.getAssignmentBlock(blockId);
+				if (block == null) {
+					block = StorageService.getUnavailableBlock(blockId);
+				}
+				if (block != null) {
+					HubController.moveTimeBlock(block, start, end);
+				}
+				return block;
+			}
+		});
+	}
+	
+	/**
+	 * Updates how much of a task is done, as the GUI's progress slider does
+	 * 
+	 * @param tenant the tenant, or null for the default calendar
+	 * @param assignmentId the id of the task's assignment
+	 * @param taskId the id of the task
+	 * @param percent a double between 0 and 1 inclusive to represent percent complete
+	 * @return the assignment, or null if there is no such assignment or task
+	 * @throws StorageServiceException if the progress couldn't be stored, or (as a StaleDataException) kept
+	 *             conflicting with other changes; the task is unchanged
+	 */
+	public static Assignment updateProgress(final String tenant, final String assignmentId, final String taskId,
+			final double percent) throws StorageServiceException {
+		if (percent < 0 || percent > 1) {
+			throw new IllegalArgumentException("percent must be between 0 and 1");
+		}
+		try {
+			return call(tenant, HubController.CHANGE_DEADLINE_MS, new Callable<Assignment>() {
+				
+				@Override
+				public Assignment call() throws StorageServiceException {
+					final Assignment a = StorageService.getAssignment(assignmentId);
+					if (a == null) {
+						return null;
+					}
+					for (final ITask task : a.getTasks()) {
+						if (task.getTaskID().equals(taskId)) {
+							HubController.updateTaskProgress(task, percent);
+							return a;
+						}
+					}
+					return null;
+				}
+			});
+		} catch (final NotEnoughTimeException e) {
+			// Updating progress never allocates new time
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * @param tenant the tenant, or null for the default calendar
+	 * @param start the start of the range
+	 * @param end the end of the range
+	 * @return all blocks, assignment and unavailable, completely within the range, sorted by start date
+	 */
+	public static List<ITimeBlockable> getBlocks(final String tenant, final Date start, final Date end) {
+		return callUnchecked(tenant, HubController.READ_DEADLINE_MS, new Callable<List<ITimeBlockable>>() {
+			
+			@Override
+			public List<ITimeBlockable> call() {
+				return TimeUtilities.zipTimeBlockLists(StorageService.getAllUnavailableBlocksWithinRange(start, end),
+						StorageService.getAllAssignmentBlocksWithinRange(start, end));
+			}
+		});
+	}
+	
+	/**
+	 * @param tenant the tenant, or null for the default calendar
+	 * @param start the start of the range
+	 * @param end the end of the range
+	 * @return all assignments due within the range
+	 */
+	public static List<IAssignment> getAssignments(final String tenant, final Date start, final Date end) {
+		return callUnchecked(tenant, HubController.READ_DEADLINE_MS, new Callable<List<IAssignment>>() {
+			
+			@Override
+			public List<IAssignment> call() {
+				return StorageService.getAllAssignmentsWithinRange(start, end);
+			}
+		});
+	}
+	
+	/**
+	 * @param tenant the tenant, or null for the default calendar
+	 * @param id the id of the template
+	 * @return the template, or null if there is no template with that id
+	 */
+	public static ITemplate getTemplate(final String tenant, final String id) {
+		return callUnchecked(tenant, HubController.READ_DEADLINE_MS, new Callable<ITemplate>() {
+			
+			@Override
+			public ITemplate call() {
+				return StorageService.getTemplate(id);
+			}
+		});
+	}
+	
+	/*
+	 * Helper methods
+	 */
+	
+	/**
+	 * Runs a job on the lane of the tenant's calendar, inside the tenant, with the given deadline in milliseconds, and
+	 * waits for it, rethrowing whatever it threw
+	 */
+	private static <T> T call(final String tenant, final long deadline, final Callable<T> job)
+			throws NotEnoughTimeException, StorageServiceException {
+		final Future<T> future;
+		if (tenant == null) {
+			future = HubController.submit(HubController.CALENDAR, job, deadline);
+		} else {
+			future = HubController.submit(TENANT_LANE + tenant, new Callable<T>() {
+				
+				@Override
+				public T call() throws Exception {
+					StorageService.enterTenant(tenant);
+					try {
+						return job.call();
+					} finally {
+						StorageService.leaveTenant();
+					}
+				}
+			}, deadline);
+		}
+		try {
+			return future.get();
+		} catch (final InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new CancellationException("Interrupted while waiting for the calendar");
+		} catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof NotEnoughTimeException) {
+				throw (NotEnoughTimeException) cause;
+			} else if (cause instanceof StorageServiceException) {
+				throw (StorageServiceException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+	
+	/**
+	 * Same as call, for jobs that throw no checked exception
+	 */
+	private static <T> T callUnchecked(final String tenant, final long deadline, final Callable<T> job) {
+		try {
+			return call(tenant, deadline, job);
+		} catch (final NotEnoughTimeException | StorageServiceException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * @return the blocks of an assignment in database
+	 */
+	private static List<ITimeBlockable> blocksOf(final IAssignment a) {
+		final List<ITimeBlockable> blocks = new ArrayList<>();
+		final List<AssignmentBlock> stored = StorageService.getAllAssignmentBlocksWithinRange(new Date(0), a.getDueDate());
+		for (final AssignmentBlock block : stored) {
+			if (block.getTask().getAssignmentID().equals(a.getID())) {
+				blocks.add(block);
+			}
+		}
+		return blocks;
+	}
+	
+	/**
+	 * Puts a removed assignment back with its blocks, after an edit of it failed
+	 */
+	private static void restore(final Assignment a, final List<ITimeBlockable> blocks) {
+		try {
+			StorageService.addAssignment(a);
+			for (final ITimeBlockable block : blocks) {
+				StorageService.addTimeBlock(block);
+			}
+		} catch (final StorageServiceException e) {
+			e.printStackTrace();
+		}
+	}
+}
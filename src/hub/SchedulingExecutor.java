@@ -0,0 +1,472 @@
+package hub;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs scheduling jobs on a bounded pool of worker threads, one job at a time per calendar.
+ * 
+ * Each calendar has a lane, a mailbox of jobs run in the order they were submitted, so the read-modify-write cycles of
+ * jobs on one calendar never interleave. Lanes take turns on the workers one job at a time, so different calendars run
+ * in parallel and a busy calendar cannot starve the others. At most "capacity" jobs may be waiting or running at once;
+ * beyond that, submitting waits a little for room and is then rejected, so callers feel backpressure instead of
+ * queueing without bound.
+ * 
+ * A job may be given a deadline, counted from when it starts running. A job still running at its deadline has its
+ * worker interrupted; scheduling code checks for the interrupt (see TimeUtilities.checkCancelled) and stops before
+ * writing anything, so one slow job cannot hold a worker and its calendar for long. The job still completes its own
+ * Future: with the CancellationException it stopped with, or with its result if it was already past its last check,
+ * so a Future never reports a change as abandoned when it was in fact written.
+ * 
+ * Thread safe.
+ */
+public class SchedulingExecutor {
+	
+	/**
+	 * A snapshot of the executor's counters
+	 */
+	public static class Metrics {
+		private final long	_submitted;
+		private final long	_completed;
+		private final long	_rejected;
+		private final long	_timedOut;
+		private final int	_queueDepth;
+		private final int	_maxQueueDepth;
+		private final long	_totalWaitNanos;
+		private final long	_maxWaitNanos;
+		private final long	_totalRunNanos;
+		private final long	_maxRunNanos;
+		
+		private Metrics(final SchedulingExecutor executor) {
+			_submitted = executor._submitted.get();
+			_completed = executor._completed.get();
+			_rejected = executor._rejected.get();
+			_timedOut = executor._timedOut.get();
+			_queueDepth = executor._queueDepth.get();
+			_maxQueueDepth = executor._maxQueueDepth.get();
+			_totalWaitNanos = executor._totalWaitNanos.get();
+			_maxWaitNanos = executor._maxWaitNanos.get();
+			_totalRunNanos = executor._totalRunNanos.get();
+			_maxRunNanos = executor._maxRunNanos.get();
+		}
+		
+		public long getSubmitted() {
+			return _submitted;
+		}
+		
+		public long getCompleted() {
+			return _completed;
+		}
+		
+		/**
+		 * @return The number of jobs turned away because the executor was full
+		 */
+		public long getRejected() {
+			return _rejected;
+		}
+		
+		/**
+		 * @return The number of jobs interrupted because they ran past their deadline
+		 */
+		public long getTimedOut() {
+			return _timedOut;
+		}
+		
+		/**
+		 * @return The number of jobs waiting or running
+		 */
+		public int getQueueDepth() {
+			return _queueDepth;
+		}
+		
+		public int getMaxQueueDepth() {
+			return _maxQueueDepth;
+		}
+		
+		/**
+		 * @param unit Unit of the result
+		 * @return The mean time completed jobs waited in their lane before running
+		 */
+		public double getMeanWait(final TimeUnit unit) {
+			return mean(_totalWaitNanos, unit);
+		}
+		
+		public long getMaxWait(final TimeUnit unit) {
+			return unit.convert(_maxWaitNanos, TimeUnit.NANOSECONDS);
+		}
+		
+		/**
+		 * @param unit Unit of the result
+		 * @return The mean time completed jobs took to run
+		 */
+		public double getMeanRun(final TimeUnit unit) {
+			return mean(_totalRunNanos, unit);
+		}
+		
+		public long getMaxRun(final TimeUnit unit) {
+			return unit.convert(_maxRunNanos, TimeUnit.NANOSECONDS);
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("SchedulingExecutor: [submitted: %d; completed: %d; rejected: %d; timed out: %d; "
+				+ "depth: %d (max %d); wait: %.1f ms (max %d); run: %.1f ms (max %d)]", _submitted, _completed,
+					_rejected, _timedOut, _queueDepth, _maxQueueDepth, getMeanWait(TimeUnit.MILLISECONDS),
+					getMaxWait(TimeUnit.MILLISECONDS), getMeanRun(TimeUnit.MILLISECONDS),
+					getMaxRun(TimeUnit.MILLISECONDS));
+		}
+		
+		private double mean(final long totalNanos, final TimeUnit unit) {
+			return (_completed == 0) ? 0 : (double) totalNanos / _completed / unit.toNanos(1);
+		}
+	}
+	
+	private final ExecutorService		_workers;
+	private final ScheduledExecutorService	_deadlines;
+	private final Semaphore				_capacity;
+	private final long					_offerTimeoutNanos;
+	
+	// Guarded by itself
+	private final Map<String, Lane>		_lanes;
+	
+	private final AtomicLong			_submitted;
+	private final AtomicLong			_completed;
+	private final AtomicLong			_rejected;
+	private final AtomicLong			_timedOut;
+	private final AtomicInteger			_queueDepth;
+	private final AtomicInteger			_maxQueueDepth;
+	private final AtomicLong			_totalWaitNanos;
+	private final AtomicLong			_maxWaitNanos;
+	private final AtomicLong			_totalRunNanos;
+	private final AtomicLong			_maxRunNanos;
+	
+	/**
+	 * @param workers The number of worker threads, which are daemons
+	 * @param capacity The number of jobs that may be waiting or running at once
+	 * @param offerTimeout How long submitting waits for room before the job is rejected
+	 * @param unit Unit of offerTimeout
+	 */
+	public SchedulingExecutor(final int workers, final int capacity, final long offerTimeout, final TimeUnit unit) {
+		if (workers <= 0 || capacity <= 0) {
+			throw new IllegalArgumentException("SchedulingExecutor: workers and capacity must be positive");
+		}
+		_workers = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+			
+			private final AtomicInteger	_count	= new AtomicInteger();
+			
+			@Override
+			public Thread newThread(final Runnable r) {
+				final Thread thread = new Thread(r, "SchedulingExecutor-" + _count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		final ScheduledThreadPoolExecutor deadlines = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			
+			@Override
+			public Thread newThread(final Runnable r) {
+				final Thread thread = new Thread(r, "SchedulingExecutor-deadlines");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		// Most jobs finish long before their deadline, so don't let the cancelled timeouts pile up
+		deadlines.setRemoveOnCancelPolicy(true);
+		_deadlines = deadlines;
+		_capacity = new Semaphore(capacity);
+		_offerTimeoutNanos = unit.toNanos(offerTimeout);
+		_lanes = new HashMap<>();
+		_submitted = new AtomicLong();
+		_completed = new AtomicLong();
+		_rejected = new AtomicLong();
+		_timedOut = new AtomicLong();
+		_queueDepth = new AtomicInteger();
+		_maxQueueDepth = new AtomicInteger();
+		_totalWaitNanos = new AtomicLong();
+		_maxWaitNanos = new AtomicLong();
+		_totalRunNanos = new AtomicLong();
+		_maxRunNanos = new AtomicLong();
+	}
+	
+	/**
+	 * Queues a job with no deadline on a calendar's lane, after every job already queued on it
+	 * 
+	 * @param calendar The calendar the job reads and changes
+	 * @param job The job
+	 * @return A Future for the result of the job
+	 * @throws RejectedExecutionException if the executor stayed full for the offer timeout, or was shut down
+	 */
+	public <T> Future<T> submit(final String calendar, final Callable<T> job) {
+		return submit(calendar, job, 0, TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * Queues a job on a calendar's lane, after every job already queued on it. Cancelling the returned Future
+	 * interrupts the job if it is running.
+	 * 
+	 * @param calendar The calendar the job reads and changes
+	 * @param job The job
+	 * @param deadline How long the job may run before its worker is interrupted, or 0 for no deadline
+	 * @param unit Unit of deadline
+	 * @return A Future for the result of the job
+	 * @throws RejectedExecutionException if the executor stayed full for the offer timeout, or was shut down
+	 */
+	public <T> Future<T> submit(final String calendar, final Callable<T> job, final long deadline,
+			final TimeUnit unit) {
+		if (_workers.isShutdown()) {
+			throw new RejectedExecutionException("SchedulingExecutor: shut down");
+		}
+		try {
+			if (!_capacity.tryAcquire(_offerTimeoutNanos, TimeUnit.NANOSECONDS)) {
+				_rejected.incrementAndGet();
+				throw new RejectedExecutionException("Carly is busy with earlier changes; please try again.");
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			_rejected.incrementAndGet();
+			throw new RejectedExecutionException("SchedulingExecutor: interrupted while waiting for room");
+		}
+		
+		_submitted.incrementAndGet();
+		raise(_maxQueueDepth, _queueDepth.incrementAndGet());
+		
+		final Job<T> queued = new Job<>(job, unit.toNanos(deadline));
+		Lane lane;
+		boolean schedule;
+		synchronized (_lanes) {
+			lane = _lanes.get(calendar);
+			if (lane == null) {
+				lane = new Lane(calendar);
+				_lanes.put(calendar, lane);
+			}
+			lane._jobs.add(queued);
+			schedule = !lane._scheduled;
+			lane._scheduled = true;
+		}
+		if (schedule) {
+			_workers.execute(lane);
+		}
+		return queued;
+	}
+	
+	/**
+	 * Same as submit(String, Callable), for a job with no result
+	 * 
+	 * @param calendar The calendar the job reads and changes
+	 * @param job The job
+	 * @return A Future that completes when the job has run
+	 * @throws RejectedExecutionException if the executor stayed full for the offer timeout, or was shut down
+	 */
+	public Future<?> submit(final String calendar, final Runnable job) {
+		return submit(calendar, Executors.callable(job));
+	}
+	
+	/**
+	 * Same as submit(String, Callable, long, TimeUnit), for a job with no result
+	 * 
+	 * @param calendar The calendar the job reads and changes
+	 * @param job The job
+	 * @param deadline How long the job may run before its worker is interrupted, or 0 for no deadline
+	 * @param unit Unit of deadline
+	 * @return A Future that completes when the job has run or is cancelled
+	 * @throws RejectedExecutionException if the executor stayed full for the offer timeout, or was shut down
+	 */
+	public Future<?> submit(final String calendar, final Runnable job, final long deadline, final TimeUnit unit) {
+		return submit(calendar, Executors.callable(job), deadline, unit);
+	}
+	
+	/**
+	 * @return A snapshot of the executor's counters
+	 */
+	public Metrics getMetrics() {
+		return new Metrics(this);
+	}
+	
+	/**
+	 * Stops the workers; jobs that have not started are dropped
+	 */
+	public void shutdown() {
+		_workers.shutdownNow();
+		_deadlines.shutdownNow();
+	}
+	
+	/*
+	 * Helper methods
+	 */
+	
+	private static void raise(final AtomicInteger max, final int value) {
+		int current = max.get();
+		while (value > current && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+	
+	private static void raise(final AtomicLong max, final long value) {
+		long current = max.get();
+		while (value > current && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+	
+	/**
+	 * A queued job, which does the executor's accounting for itself before publishing its result, so that the metrics
+	 * and capacity are up to date by the time anyone waiting on it wakes up
+	 */
+	private class Job<T> extends FutureTask<T> {
+		private final long	_queuedAt;
+		private final long	_deadlineNanos;
+		
+		// Only touched by the worker running the job
+		private long		_startedAt;
+		private boolean		_finished;
+		
+		// Guarded by this; the worker running the job, while it runs
+		private Thread				_runner;
+		
+		// Set by the deadline timer
+		private volatile boolean	_expired;
+		
+		private Job(final Callable<T> job, final long deadlineNanos) {
+			super(job);
+			_queuedAt = System.nanoTime();
+			_deadlineNanos = deadlineNanos;
+		}
+		
+		@Override
+		public void run() {
+			_startedAt = System.nanoTime();
+			ScheduledFuture<?> timeout = null;
+			if (_deadlineNanos > 0 && !isDone()) {
+				synchronized (this) {
+					_runner = Thread.currentThread();
+				}
+				timeout = _deadlines.schedule(new Runnable() {
+					
+					@Override
+					public void run() {
+						expire();
+					}
+				}, _deadlineNanos, TimeUnit.NANOSECONDS);
+			}
+			try {
+				super.run();
+			} finally {
+				if (timeout != null) {
+					timeout.cancel(false);
+					synchronized (this) {
+						_runner = null;
+					}
+				}
+				
+				// A job cancelled before or while it ran never publishes a result
+				finish();
+			}
+		}
+		
+		@Override
+		protected void set(final T result) {
+			finish();
+			super.set(result);
+		}
+		
+		@Override
+		protected void setException(final Throwable t) {
+			finish();
+			
+			// Most jobs are never waited on, so report failures as an uncaught exception would be. A cancelled job,
+			// or one that stopped at its deadline, is expected to fail.
+			if (!isCancelled() && !(t instanceof CancellationException)) {
+				t.printStackTrace();
+			}
+			super.setException(t);
+		}
+		
+		/**
+		 * Interrupts the job at its deadline, leaving it to finish its Future. The lane clears the interrupt once the
+		 * job returns, so it never reaches the worker's next job.
+		 */
+		private synchronized void expire() {
+			if (_runner != null) {
+				_expired = true;
+				_runner.interrupt();
+			}
+		}
+		
+		private void finish() {
+			if (_finished) {
+				return;
+			}
+			_finished = true;
+			if (_expired) {
+				_timedOut.incrementAndGet();
+			}
+			final long waited = _startedAt - _queuedAt;
+			final long ran = System.nanoTime() - _startedAt;
+			_totalWaitNanos.addAndGet(waited);
+			raise(_maxWaitNanos, waited);
+			_totalRunNanos.addAndGet(ran);
+			raise(_maxRunNanos, ran);
+			_completed.incrementAndGet();
+			_queueDepth.decrementAndGet();
+			_capacity.release();
+		}
+	}
+	
+	/**
+	 * The mailbox of one calendar. While it has jobs, it is scheduled on the workers, and runs one job per turn.
+	 */
+	private class Lane implements Runnable {
+		private final String		_calendar;
+		
+		// Guarded by _lanes
+		private final Queue<Job<?>>	_jobs;
+		private boolean				_scheduled;
+		
+		private Lane(final String calendar) {
+			_calendar = calendar;
+			_jobs = new ArrayDeque<>();
+		}
+		
+		@Override
+		public void run() {
+			final Job<?> job;
+			synchronized (_lanes) {
+				job = _jobs.poll();
+			}
+			job.run();
+			
+			// A job interrupted at its deadline, or cancelled, leaves its worker interrupted
+			Thread.interrupted();
+			
+			// Go to the back of the line, so that other calendars get a turn
+			boolean more;
+			synchronized (_lanes) {
+				more = !_jobs.isEmpty();
+				if (!more) {
+					_scheduled = false;
+					_lanes.remove(_calendar);
+				}
+			}
+			if (more) {
+				_workers.execute(this);
+			}
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package unit_tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import backend.database.MemoryStorageBackend;
+import backend.database.StorageService;
+import backend.database.StorageServiceException;
+import backend.time.BatchTimeAllocator;
+import backend.time.FirstFitPolicy;
+import data.Assignment;
+import data.IAssignment;
+import data.ITimeBlockable;
+import data.Template;
+import data.TemplateStep;
+import data.UnavailableBlock;
+
+public class BatchTimeAllocatorTest {
+
+	private static final long	HOUR	= 3600000;
+	private static final long	DAY		= 24 * HOUR;
+
+	private long				_base;
+	private List<Assignment>	_asgns;
+
+	@Before
+	public void setUp() {
+		_base = 1400000000000L - 1400000000000L % DAY;
+		_asgns = new ArrayList<>();
+		try {
+			StorageService.initialize(new MemoryStorageBackend(), true);
+
+			// Nights are unavailable
+			final List<ITimeBlockable> unavailable = new ArrayList<>();
+			for (int d = 0; d < 10; ++d) {
+				unavailable.add(new UnavailableBlock(new Date(_base + d * DAY), new Date(_base + d * DAY + 8 * HOUR)));
+			}
+			StorageService.replaceUnavailableBlocks(new Date(_base), new Date(_base + 10 * DAY), unavailable);
+
+			final int[] days = { 6, 3, 9 };
+			final int[] hours = { 20, 10, 30 };
+			for (int i = 0; i < days.length; ++i) {
+				final Template template = new Template("Template " + i, 2.0);
+				template.addStep(new TemplateStep("Step 1", .5, 0));
+				template.addStep(new TemplateStep("Step 2", .5, 1));
+				StorageService.addTemplate(template);
+				final Assignment asgn = new Assignment("Assignment " + i, new Date(_base + days[i] * DAY), template,
+						hours[i]);
+				StorageService.addAssignment(asgn);
+				_asgns.add(asgn);
+			}
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	@After
+	public void cleanUp() {
+		StorageService.cleanup();
+	}
+
+	@Test
+	public void testOrderIndependent() {
+		final BatchTimeAllocator batch = new BatchTimeAllocator(_asgns, new FirstFitPolicy());
+		final List<IAssignment> placed = batch.insertAsgns(new Date(_base));
+
+		// Earliest deadline first
+		assertEquals(3, placed.size());
+		assertTrue(placed.get(0) == _asgns.get(1));
+		assertTrue(placed.get(1) == _asgns.get(0));
+		assertTrue(placed.get(2) == _asgns.get(2));
+		assertTrue(batch.getFailedAssignments().isEmpty());
+
+		// Nothing is written until the change set is applied, so the same calendar can be scheduled again
+		final List<Assignment> reversed = new ArrayList<>(_asgns);
+		Collections.reverse(reversed);
+		final BatchTimeAllocator again = new BatchTimeAllocator(reversed, new FirstFitPolicy());
+		again.insertAsgns(new Date(_base));
+		assertEquals(describe(batch.getEntireBlockSet()), describe(again.getEntireBlockSet()));
+
+		for (final ITimeBlockable block : batch.getEntireBlockSet()) {
+			if (block.isMovable()) {
+				final IAssignment asgn = StorageService.getAssignment(block.getTask().getAssignmentID());
+				assertTrue(block.getEnd().getTime() <= asgn.getDueDate().getTime());
+			}
+		}
+
+		try {
+			StorageService.applyTimeBlockChanges(batch.getChangeSet());
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+		assertEquals(batch.getChangeSet().getInserted().size(),
+				StorageService.getAllAssignmentBlocksWithinRange(new Date(_base), new Date(_base + 10 * DAY)).size());
+	}
+
+	@Test
+	public void testFailedAssignmentLeavesNothing() {
+		final Template template = new Template("Too long", 2.0);
+		template.addStep(new TemplateStep("Step 1", 1.0, 0));
+		final Assignment tooLong = new Assignment("Too long", new Date(_base + 2 * DAY), template, 100);
+		try {
+			StorageService.addTemplate(template);
+			StorageService.addAssignment(tooLong);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+		_asgns.add(tooLong);
+
+		final BatchTimeAllocator batch = new BatchTimeAllocator(_asgns, new FirstFitPolicy());
+		assertEquals(3, batch.insertAsgns(new Date(_base)).size());
+		assertEquals(1, batch.getFailedAssignments().size());
+		assertTrue(batch.getFailedAssignments().get(0) == tooLong);
+		for (final ITimeBlockable block : batch.getEntireBlockSet()) {
+			assertTrue(!block.isMovable() || !block.getTask().getAssignmentID().equals(tooLong.getID()));
+		}
+	}
+
+	private static String describe(final List<ITimeBlockable> blocks) {
+		final StringBuilder sb = new StringBuilder();
+		for (final ITimeBlockable block : blocks) {
+			sb.append(block.getStart().getTime()).append('-').append(block.getEnd().getTime());
+			if (block.isMovable()) {
+				sb.append(' ').append(StorageService.getAssignment(block.getTask().getAssignmentID()).getName());
+			}
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,140 @@
+package unit_tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import backend.database.MemoryStorageBackend;
+import backend.database.StorageService;
+import backend.database.StorageServiceException;
+import backend.time.BlockMovePlan;
+import backend.time.TimeModifier;
+import backend.time.TimeUtilities;
+import data.Assignment;
+import data.AssignmentBlock;
+import data.ITask;
+import data.ITimeBlockable;
+import data.Task;
+import data.Template;
+import data.TemplateStep;
+
+public class BlockMovePlanTest {
+
+	private static final long	HOUR	= 3600000;
+	private static final long	DAY		= 24 * HOUR;
+
+	private long				_base;
+	private ITask				_t1;
+	private ITask				_t2;
+	private AssignmentBlock		_b1;
+	private AssignmentBlock		_b2;
+	private List<ITimeBlockable>	_blocks;
+
+	@Before
+	public void setUp() {
+		_base = System.currentTimeMillis() + DAY;
+		try {
+			StorageService.initialize(new MemoryStorageBackend(), true);
+
+			final Template template = new Template("Template", 1.0);
+			template.addStep(new TemplateStep("Step 1", .5, 0));
+			template.addStep(new TemplateStep("Step 2", .5, 1));
+			StorageService.addTemplate(template);
+			final Assignment asgn = new Assignment("Assignment", new Date(_base + 5 * DAY), template, 4);
+			StorageService.addAssignment(asgn);
+			_t1 = asgn.getTasks().get(0);
+			_t2 = asgn.getTasks().get(1);
+
+			_b1 = new AssignmentBlock(new Date(_base), new Date(_base + HOUR), _t1);
+			_b2 = new AssignmentBlock(new Date(_base + 2 * HOUR), new Date(_base + 3 * HOUR), _t2);
+			StorageService.addTimeBlock(_b1);
+			StorageService.addTimeBlock(_b2);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+		_blocks = new ArrayList<>();
+		_blocks.add(_b1);
+		_blocks.add(_b2);
+	}
+
+	@After
+	public void cleanUp() {
+		StorageService.cleanup();
+	}
+
+	@Test
+	public void testSwitchIsPlannedBeforeCommitted() {
+		final BlockMovePlan plan = TimeUtilities.planSwitch(_blocks, _b1, _b2);
+		assertNotNull(plan);
+
+		// Planning touches neither the blocks nor the StorageService
+		assertTrue(plan.getTask(_b1) == _t2);
+		assertTrue(_b1.getTask() == _t1);
+		assertEquals(_t1.getTaskID(), StorageService.getAssignmentBlock(_b1.getId()).getTaskId());
+
+		try {
+			assertTrue(plan.commit());
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+		assertTrue(_b1.getTask() == _t2);
+		assertEquals(_t2.getTaskID(), StorageService.getAssignmentBlock(_b1.getId()).getTaskId());
+		assertEquals(_t1.getTaskID(), StorageService.getAssignmentBlock(_b2.getId()).getTaskId());
+	}
+
+	@Test
+	public void testPushForwardPastLastBlock() {
+		// Lengthening the first block into the last one pushes the last one forward, up to its due date
+		assertTrue(TimeModifier.updateBlock(_b1, new Date(_base), new Date(_base + 2 * HOUR + HOUR / 2)));
+		assertEquals(_base + 2 * HOUR + HOUR / 2, StorageService.getAssignmentBlock(_b1.getId()).getEnd().getTime());
+		assertEquals(_base + 2 * HOUR + HOUR / 2, StorageService.getAssignmentBlock(_b2.getId()).getStart().getTime());
+		assertEquals(_base + 3 * HOUR + HOUR / 2, StorageService.getAssignmentBlock(_b2.getId()).getEnd().getTime());
+	}
+
+	@Test
+	public void testDragIsPlannedAgainAfterConflict() {
+		// A copy read before the block was changed elsewhere
+		final AssignmentBlock stale = StorageService.getAssignmentBlock(_b1.getId());
+		_b1.setEnd(new Date(_base + HOUR / 2));
+		try {
+			StorageService.updateTimeBlock(_b1);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+
+		// Its write is refused, so the block is read again and the drag goes through on the second attempt
+		assertTrue(TimeModifier.updateBlock(stale, new Date(_base + 4 * HOUR), new Date(_base + 5 * HOUR)));
+		final AssignmentBlock stored = StorageService.getAssignmentBlock(_b1.getId());
+		assertEquals(_base + 4 * HOUR, stored.getStart().getTime());
+		assertEquals(stored.fullString(), stale.fullString());
+		assertEquals(stored.getVersion(), stale.getVersion());
+	}
+
+	@Test
+	public void testFailedCommitWritesNothing() {
+		final BlockMovePlan plan = new BlockMovePlan();
+		plan.move(_b1, new Date(_base + HOUR), new Date(_base + 2 * HOUR));
+		plan.setTask(_b2, new Task("Not stored", 1.0, 0));
+		try {
+			assertFalse(plan.commit());
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+
+		// Neither block was written, and both were put back
+		assertEquals(_base, _b1.getStart().getTime());
+		assertTrue(_b2.getTask() == _t2);
+		assertEquals(_base, StorageService.getAssignmentBlock(_b1.getId()).getStart().getTime());
+		assertEquals(_t2.getTaskID(), StorageService.getAssignmentBlock(_b2.getId()).getTaskId());
+	}
+}
@@ -0,0 +1,85 @@
+package unit_tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import backend.time.FreeGapIndex;
+import backend.time.TimeUtilities;
+import data.AssignmentBlock;
+import data.ITimeBlockable;
+import data.UnavailableBlock;
+
+public class FreeGapIndexTest {
+
+	private static final long	HOUR	= 3600000;
+
+	@Test
+	public void testFits() {
+		final List<ITimeBlockable> blocks = new ArrayList<>();
+		blocks.add(new UnavailableBlock(new Date(0), new Date(HOUR)));
+		blocks.add(new UnavailableBlock(new Date(3 * HOUR), new Date(4 * HOUR))); // 2 hr gap before
+		blocks.add(new UnavailableBlock(new Date(5 * HOUR), new Date(6 * HOUR))); // 1 hr gap before
+		blocks.add(new UnavailableBlock(new Date(9 * HOUR), new Date(10 * HOUR))); // 3 hr gap before
+		final FreeGapIndex gaps = new FreeGapIndex(blocks);
+
+		assertEquals(new Date(HOUR), gaps.firstFit(new Date(0), HOUR));
+		assertEquals(new Date(4 * HOUR), gaps.firstFit(new Date(4 * HOUR), HOUR));
+		assertEquals(new Date(6 * HOUR), gaps.firstFit(new Date(0), 3 * HOUR));
+		assertNull(gaps.firstFit(new Date(0), 4 * HOUR));
+
+		assertEquals(new Date(4 * HOUR), gaps.bestFit(HOUR));
+		assertEquals(new Date(HOUR), gaps.bestFit(2 * HOUR));
+		assertNull(gaps.bestFit(4 * HOUR));
+
+		// Filling the 2 hr gap with a 1 hr block leaves a 1 hr gap on either side of it
+		final AssignmentBlock block = new AssignmentBlock(new Date(2 * HOUR), new Date(3 * HOUR), null);
+		gaps.insert(TimeUtilities.insertIntoSortedList(blocks, block), block);
+		assertEquals(5, gaps.size());
+		assertEquals(new Date(HOUR), gaps.firstFit(new Date(0), HOUR));
+		assertEquals(new Date(6 * HOUR), gaps.bestFit(2 * HOUR));
+	}
+
+	@Test
+	public void testMatchesLinearScan() {
+		final Random random = new Random(42);
+		final List<ITimeBlockable> blocks = new ArrayList<>();
+		long time = 0;
+		for (int i = 0; i < 200; ++i) {
+			time += random.nextInt(4) * HOUR;
+			blocks.add(new UnavailableBlock(new Date(time), new Date(time + HOUR)));
+			time += HOUR;
+		}
+		final FreeGapIndex gaps = new FreeGapIndex(blocks);
+
+		for (int i = 0; i < 200; ++i) {
+			final Date after = new Date(random.nextInt((int) (time / HOUR)) * HOUR);
+			final long length = (1 + random.nextInt(3)) * HOUR / 2;
+			final Date expected = linearFirstFit(blocks, after, length);
+			assertEquals(expected, gaps.firstFit(after, length));
+
+			// Place a block in the gap found, keeping the list and the index in step
+			if (expected != null) {
+				final AssignmentBlock block = new AssignmentBlock(expected, new Date(expected.getTime() + length),
+						null);
+				gaps.insert(TimeUtilities.insertIntoSortedList(blocks, block), block);
+			}
+			assertEquals(blocks.size(), gaps.size());
+		}
+	}
+
+	private static Date linearFirstFit(final List<ITimeBlockable> blocks, final Date after, final long length) {
+		for (int i = Math.max(1, TimeUtilities.indexOfFitLocn(blocks, after)); i < blocks.size(); ++i) {
+			if (length <= blocks.get(i).getStart().getTime() - blocks.get(i - 1).getEnd().getTime()) {
+				return blocks.get(i - 1).getEnd();
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,91 @@
+package unit_tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import backend.time.FreeTimeIndex;
+import backend.time.TimeUtilities;
+import data.Assignment;
+import data.ITimeBlockable;
+import data.UnavailableBlock;
+
+public class FreeTimeIndexTest {
+
+	private static final long	HOUR	= 3600000;
+	private static final long	MINUTE	= 60000;
+	private static final long	QUARTER	= 15 * MINUTE;
+
+	@Test
+	public void testFreeTime() {
+		final List<ITimeBlockable> blocks = new ArrayList<>();
+		blocks.add(new UnavailableBlock(new Date(HOUR), new Date(3 * HOUR)));
+		blocks.add(new UnavailableBlock(new Date(2 * HOUR), new Date(4 * HOUR))); // overlaps the one before
+		blocks.add(new UnavailableBlock(new Date(6 * HOUR), new Date(7 * HOUR)));
+		final FreeTimeIndex freeTime = new FreeTimeIndex(blocks);
+
+		assertEquals(6 * HOUR, freeTime.freeTime(0, 10 * HOUR));
+		assertEquals(2 * HOUR, freeTime.freeTime(30 * MINUTE, 5 * HOUR + 30 * MINUTE));
+		assertEquals(0, freeTime.freeTime(2 * HOUR, 4 * HOUR));
+		assertEquals(0, freeTime.freeTime(5 * HOUR, 5 * HOUR));
+
+		// A check to the millisecond, which truncating to whole hours would have failed
+		final Assignment asgn = new Assignment("Assignment", new Date(7 * HOUR), null, 2.5);
+		assertTrue(TimeUtilities.existsPossibleFit(blocks, asgn, new Date(30 * MINUTE)));
+		assertFalse(TimeUtilities.existsPossibleFit(blocks, asgn, new Date(30 * MINUTE + 1)));
+	}
+
+	@Test
+	public void testMatchesLinearCount() {
+		final Random random = new Random(11);
+		final List<ITimeBlockable> blocks = new ArrayList<>();
+		for (int i = 0; i < 200; ++i) {
+			final long start = random.nextInt(800) * QUARTER;
+			final long end = start + (1 + random.nextInt(12)) * QUARTER;
+			TimeUtilities.insertIntoSortedList(blocks, new UnavailableBlock(new Date(start), new Date(end)));
+		}
+		final FreeTimeIndex freeTime = new FreeTimeIndex(blocks);
+
+		for (int round = 0; round < 300; ++round) {
+			if (round % 3 == 0) {
+				// Move a block, keeping its position
+				final int i = random.nextInt(blocks.size());
+				final ITimeBlockable block = blocks.get(i);
+				final long start = block.getStart().getTime();
+				final long end = start + (1 + random.nextInt(12)) * QUARTER;
+				block.setEnd(new Date(end));
+				freeTime.move(i, start, end);
+			}
+			final long from = random.nextInt(900) * QUARTER - HOUR;
+			final long to = from + random.nextInt(400) * QUARTER;
+			assertEquals(linearFreeTime(blocks, from, to), freeTime.freeTime(from, to));
+		}
+	}
+
+	/**
+	 * Counts the free time in [from, to] a quarter hour at a time, which is exact as every bound is on a quarter hour
+	 */
+	private static long linearFreeTime(final List<ITimeBlockable> blocks, final long from, final long to) {
+		long free = 0;
+		for (long t = from; t < to; t += QUARTER) {
+			boolean busy = false;
+			for (final ITimeBlockable block : blocks) {
+				if (block.getStart().getTime() <= t && t < block.getEnd().getTime()) {
+					busy = true;
+					break;
+				}
+			}
+			if (!busy) {
+				free += QUARTER;
+			}
+		}
+		return free;
+	}
+}
@@ -0,0 +1,64 @@
+package unit_tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import frontend.app.Json;
+
+public class JsonTest {
+
+	@Test
+	public void testParseObject() {
+		final Map<String, Object> o = Json.parseObject(" {\"name\": \"Essay \\\"one\\\"\\n\", \"due\": 1414800000000,"
+			+ " \"hours\": 2.5, \"done\": false, \"template\": null, \"steps\": [1, {\"a\": true}], \"u\": \"\\u00e9\"} ");
+		assertEquals("Essay \"one\"\n", o.get("name"));
+		assertEquals(1414800000000.0, (Double) o.get("due"), 0);
+		assertEquals(2.5, (Double) o.get("hours"), 0);
+		assertEquals(Boolean.FALSE, o.get("done"));
+		assertNull(o.get("template"));
+		assertEquals(2, ((List<?>) o.get("steps")).size());
+		assertEquals("\u00e9", o.get("u"));
+		assertEquals(0, Json.parseObject("{}").size());
+	}
+
+	@Test
+	public void testParseRejectsBadJson() {
+		for (final String bad : Arrays.asList("", "[1]", "{\"a\":}", "{\"a\":1", "{a:1}", "{\"a\":1} x", "{\"a\":\"b")) {
+			try {
+				Json.parseObject(bad);
+				fail("Should not parse " + bad);
+			} catch (final IllegalArgumentException e) {
+				// Expected
+			}
+		}
+	}
+
+	@Test
+	public void testWriteRoundTrips() {
+		final Map<String, Object> o = new LinkedHashMap<>();
+		o.put("id", "a\tb\"c");
+		o.put("due", 1414800000000L);
+		o.put("hours", 3.0);
+		o.put("pct", 0.25);
+		o.put("movable", true);
+		o.put("task", null);
+		final List<Object> list = new ArrayList<>();
+		list.add(1);
+		list.add("x");
+		o.put("list", list);
+
+		final String text = Json.write(o);
+		assertEquals("{\"id\":\"a\\tb\\\"c\",\"due\":1414800000000,\"hours\":3,\"pct\":0.25,\"movable\":true,"
+			+ "\"task\":null,\"list\":[1,\"x\"]}", text);
+		assertEquals(text, Json.write(Json.parseObject(text)));
+	}
+}
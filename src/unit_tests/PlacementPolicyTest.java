@@ -0,0 +1,131 @@
+package unit_tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import backend.time.BestFitPolicy;
+import backend.time.FirstFitPolicy;
+import backend.time.FreeGapIndex;
+import backend.time.PlacementPolicies;
+import backend.time.PlacementPolicy;
+import backend.time.PreferredTimePolicy;
+import backend.time.Timeline;
+import backend.time.WorstFitPolicy;
+import data.ITimeBlockable;
+import data.Task;
+import data.TimeOfDay;
+import data.UnavailableBlock;
+
+public class PlacementPolicyTest {
+
+	private static final long	HOUR	= 3600000;
+
+	@Test
+	public void testPolicies() {
+		final List<ITimeBlockable> blocks = new ArrayList<>();
+		blocks.add(new UnavailableBlock(new Date(0), new Date(HOUR)));
+		blocks.add(new UnavailableBlock(new Date(4 * HOUR), new Date(5 * HOUR))); // 3 hr gap before
+		blocks.add(new UnavailableBlock(new Date(7 * HOUR), new Date(8 * HOUR))); // 2 hr gap before
+		blocks.add(new UnavailableBlock(new Date(9 * HOUR), new Date(10 * HOUR))); // 1 hr gap before
+		final Timeline timeline = new Timeline(blocks);
+		final FreeGapIndex gaps = new FreeGapIndex(timeline);
+
+		assertEquals(HOUR, new FirstFitPolicy().findFit(timeline, gaps, HOUR, 0, 12 * HOUR, null));
+		assertEquals(8 * HOUR, new BestFitPolicy().findFit(timeline, gaps, HOUR, 0, 12 * HOUR, null));
+		assertEquals(5 * HOUR, new BestFitPolicy().findFit(timeline, gaps, 2 * HOUR, 0, 12 * HOUR, null));
+		assertEquals(HOUR, new WorstFitPolicy().findFit(timeline, gaps, HOUR, 0, 12 * HOUR, null));
+
+		// The free time after the last block counts as a gap too
+		assertEquals(10 * HOUR, new WorstFitPolicy().findFit(timeline, gaps, HOUR, 0, 20 * HOUR, null));
+		assertEquals(FreeGapIndex.NO_FIT, new BestFitPolicy().findFit(timeline, gaps, 4 * HOUR, 0, 12 * HOUR, null));
+
+		// Only gaps closed by blocks starting at or after the search start are used
+		assertEquals(8 * HOUR, new BestFitPolicy().findFit(timeline, gaps, HOUR, 5 * HOUR, 10 * HOUR, null));
+		assertEquals(5 * HOUR, new WorstFitPolicy().findFit(timeline, gaps, HOUR, 5 * HOUR, 10 * HOUR, null));
+	}
+
+	@Test
+	public void testPreferredTime() {
+		final Calendar cal = Calendar.getInstance();
+		cal.clear();
+		cal.set(2014, Calendar.MAY, 5, 8, 0);
+		final long eight = cal.getTimeInMillis();
+
+		// Free from 8am until 8pm
+		final List<ITimeBlockable> blocks = new ArrayList<>();
+		blocks.add(new UnavailableBlock(new Date(eight - HOUR), new Date(eight)));
+		blocks.add(new UnavailableBlock(new Date(eight + 12 * HOUR), new Date(eight + 13 * HOUR)));
+		final Timeline timeline = new Timeline(blocks);
+		final FreeGapIndex gaps = new FreeGapIndex(timeline);
+		final PlacementPolicy policy = new PreferredTimePolicy();
+
+		final Task task = new Task("Task", 1.0, 0);
+		task.setPreferredTimeOfDay(TimeOfDay.MORNING);
+		assertEquals(eight, policy.findFit(timeline, gaps, HOUR, eight, eight + 14 * HOUR, task));
+		task.setPreferredTimeOfDay(TimeOfDay.AFTERNOON);
+		assertEquals(eight + 4 * HOUR, policy.findFit(timeline, gaps, HOUR, eight, eight + 14 * HOUR, task));
+		task.setPreferredTimeOfDay(TimeOfDay.EVENING);
+		assertEquals(eight + 9 * HOUR, policy.findFit(timeline, gaps, 2 * HOUR, eight, eight + 14 * HOUR, task));
+
+		// The evening is too short for the block, so the chain falls through to first-fit
+		assertEquals(FreeGapIndex.NO_FIT, policy.findFit(timeline, gaps, 4 * HOUR, eight, eight + 14 * HOUR, task));
+		final List<PlacementPolicy> chain = PlacementPolicies.chain(policy);
+		assertEquals(2, chain.size());
+		assertEquals(PlacementPolicies.FIRST_FIT, chain.get(1).getName());
+		assertEquals(PlacementPolicies.FIRST_FIT, PlacementPolicies.forName("").getName());
+	}
+
+	@Test
+	public void testGapSearchesMatchLinearScan() {
+		final Random random = new Random(11);
+		final List<ITimeBlockable> blocks = new ArrayList<>();
+		long time = 0;
+		for (int i = 0; i < 200; ++i) {
+			time += random.nextInt(6) * HOUR;
+			blocks.add(new UnavailableBlock(new Date(time), new Date(time + HOUR)));
+			time += HOUR;
+		}
+		final FreeGapIndex gaps = new FreeGapIndex(blocks);
+
+		for (int i = 0; i < 200; ++i) {
+			final long after = random.nextInt((int) (time / HOUR)) * HOUR;
+			final long before = after + random.nextInt((int) (time / HOUR)) * HOUR;
+			final long length = (1 + random.nextInt(4)) * HOUR;
+			assertGap(linearFit(blocks, after, before, length, true), gaps.bestFitGap(after, before, length));
+			assertGap(linearFit(blocks, after, before, length, false), gaps.worstFitGap(after, before, length));
+		}
+	}
+
+	private static void assertGap(final FreeGapIndex.Gap expected, final FreeGapIndex.Gap actual) {
+		if (expected == null) {
+			assertNull(actual);
+		} else {
+			assertEquals(expected.getStart(), actual.getStart());
+			assertEquals(expected.getEnd(), actual.getEnd());
+		}
+	}
+
+	private static FreeGapIndex.Gap linearFit(final List<ITimeBlockable> blocks, final long after, final long before,
+			final long length, final boolean shortest) {
+		FreeGapIndex.Gap found = null;
+		for (int i = 1; i < blocks.size(); ++i) {
+			final long start = blocks.get(i).getStart().getTime();
+			final long gap = start - blocks.get(i - 1).getEnd().getTime();
+			if (start < after || start >= before || gap < length) {
+				continue;
+			}
+			if (found == null || (shortest ? gap < found.getLength() : gap > found.getLength())) {
+				found = new FreeGapIndex.Gap(blocks.get(i - 1).getEnd().getTime(), start);
+			}
+		}
+		return found;
+	}
+}
@@ -0,0 +1,121 @@
+package unit_tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import backend.database.MemoryStorageBackend;
+import backend.database.StorageService;
+import backend.database.StorageServiceException;
+import backend.database.TimeBlockChangeSet;
+import backend.time.Schedule;
+import backend.time.ScheduleOptimizer;
+import backend.time.ScheduleScorer;
+import data.AssignmentBlock;
+import data.ITimeBlockable;
+import data.Task;
+import data.TimeOfDay;
+import data.UnavailableBlock;
+
+public class ScheduleOptimizerTest {
+
+	private static final long	HOUR	= 3600000;
+
+	private long				_midnight;
+
+	@Before
+	public void setUp() {
+		try {
+			StorageService.initialize(new MemoryStorageBackend(), true);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+		final Calendar cal = Calendar.getInstance();
+		cal.clear();
+		cal.set(2014, Calendar.MAY, 5);
+		_midnight = cal.getTimeInMillis();
+	}
+
+	@After
+	public void cleanUp() {
+		StorageService.cleanup();
+	}
+
+	@Test
+	public void testScorePrefersTimeOfDay() {
+		final Task task = new Task("Task", 1.0, 0, "asgn");
+		task.setPreferredTimeOfDay(TimeOfDay.MORNING);
+		final ScheduleScorer scorer = new ScheduleScorer(1.0, 0, 0, 0);
+
+		// 9am to 11am is all morning, 11am to 1pm half of it
+		assertEquals(2.0, scorer.score(schedule(block(9, 11, task))), 1e-9);
+		assertEquals(1.0, scorer.score(schedule(block(11, 13, task))), 1e-9);
+
+		// The night window wraps past midnight
+		task.setPreferredTimeOfDay(TimeOfDay.NIGHT);
+		assertEquals(3.0, scorer.score(schedule(block(20, 24, task))), 1e-9);
+		assertEquals(1.0, scorer.score(schedule(block(24 + 5, 24 + 7, task))), 1e-9);
+	}
+
+	@Test
+	public void testOptimizeImproves() throws InterruptedException {
+		final Task task = new Task("Task", 1.0, 0, "asgn");
+		task.setPreferredTimeOfDay(TimeOfDay.MORNING);
+		final List<ITimeBlockable> blocks = new ArrayList<>();
+		blocks.add(new UnavailableBlock(new Date(_midnight), new Date(_midnight + 7 * HOUR)));
+		blocks.add(block(18, 20, task));
+		blocks.add(block(20, 21, task));
+		final Schedule initial = new Schedule(blocks, new Date(_midnight), new Date(_midnight + 24 * HOUR));
+
+		final ExecutorService pool = Executors.newFixedThreadPool(2);
+		final ScheduleOptimizer optimizer = new ScheduleOptimizer(new ScheduleScorer(), pool, 2);
+		final AtomicInteger improvements = new AtomicInteger();
+		final Schedule best = optimizer.optimize(initial, 300, TimeUnit.MILLISECONDS,
+				new ScheduleOptimizer.ImprovementListener() {
+
+					@Override
+					public void improved(final Schedule schedule, final double score) {
+						improvements.incrementAndGet();
+					}
+				});
+		pool.shutdown();
+
+		assertTrue(improvements.get() > 0);
+		assertTrue(optimizer.score(best) > optimizer.score(initial));
+		for (int i = 0; i < best.size(); ++i) {
+			assertTrue(best.isFeasible(i));
+		}
+
+		// The starting schedule is left alone, and only the result is written back to the blocks
+		assertEquals(_midnight + 18 * HOUR, initial.getStart(0));
+		final TimeBlockChangeSet changes = new TimeBlockChangeSet();
+		final List<ITimeBlockable> result = best.applyTo(changes);
+		assertTrue(!changes.isEmpty());
+		for (int i = 1; i < result.size(); ++i) {
+			assertTrue(result.get(i - 1).getEnd().getTime() <= result.get(i).getStart().getTime());
+		}
+	}
+
+	private Schedule schedule(final ITimeBlockable block) {
+		final List<ITimeBlockable> blocks = new ArrayList<>();
+		blocks.add(block);
+		return new Schedule(blocks, new Date(_midnight), new Date(_midnight + 48 * HOUR));
+	}
+
+	private AssignmentBlock block(final int startHour, final int endHour, final Task task) {
+		return new AssignmentBlock(new Date(_midnight + startHour * HOUR), new Date(_midnight + endHour * HOUR), task);
+	}
+}
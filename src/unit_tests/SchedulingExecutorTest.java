@@ -0,0 +1,194 @@
+package unit_tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import backend.time.TimeUtilities;
+import hub.SchedulingExecutor;
+
+public class SchedulingExecutorTest {
+
+	private SchedulingExecutor	_executor;
+
+	@Before
+	public void setUp() {
+		_executor = new SchedulingExecutor(4, 8, 50, TimeUnit.MILLISECONDS);
+	}
+
+	@After
+	public void cleanUp() {
+		_executor.shutdown();
+	}
+
+	@Test
+	public void testLanesSerializeButRunInParallel() throws InterruptedException, ExecutionException {
+		final List<Integer> order = new ArrayList<>();
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicBoolean overlapped = new AtomicBoolean();
+		final CountDownLatch otherLane = new CountDownLatch(1);
+		final List<Future<?>> futures = new ArrayList<>();
+
+		for (int i = 0; i < 5; ++i) {
+			final int n = i;
+			futures.add(_executor.submit("a", new Runnable() {
+
+				@Override
+				public void run() {
+					if (running.incrementAndGet() > 1) {
+						overlapped.set(true);
+					}
+					try {
+						// The first job only finishes once a job on another calendar has run alongside it
+						if (n == 0 && !otherLane.await(5, TimeUnit.SECONDS)) {
+							overlapped.set(true);
+						}
+						Thread.sleep(5);
+					} catch (final InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					order.add(n);
+					running.decrementAndGet();
+				}
+			}));
+		}
+		futures.add(_executor.submit("b", new Runnable() {
+
+			@Override
+			public void run() {
+				otherLane.countDown();
+			}
+		}));
+
+		for (final Future<?> future : futures) {
+			future.get();
+		}
+		assertFalse(overlapped.get());
+		assertEquals(5, order.size());
+		for (int i = 0; i < order.size(); ++i) {
+			assertEquals(i, order.get(i).intValue());
+		}
+
+		final SchedulingExecutor.Metrics metrics = _executor.getMetrics();
+		assertEquals(6, metrics.getSubmitted());
+		assertEquals(6, metrics.getCompleted());
+		assertEquals(0, metrics.getQueueDepth());
+		assertTrue(metrics.getMaxQueueDepth() >= 2);
+	}
+
+	@Test
+	public void testFullExecutorRejects() throws InterruptedException {
+		final CountDownLatch release = new CountDownLatch(1);
+		final Runnable blocked = new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					release.await();
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		for (int i = 0; i < 8; ++i) {
+			_executor.submit("calendar " + (i % 3), blocked);
+		}
+		try {
+			_executor.submit("calendar 0", blocked);
+			fail("A full executor should reject jobs");
+		} catch (final RejectedExecutionException e) {
+			assertEquals(1, _executor.getMetrics().getRejected());
+		}
+		assertEquals(8, _executor.getMetrics().getQueueDepth());
+
+		// Once jobs finish there is room again
+		release.countDown();
+		try {
+			_executor.submit("calendar 0", blocked).get(5, TimeUnit.SECONDS);
+		} catch (final Exception e) {
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testDeadlineStopsJob() throws InterruptedException, ExecutionException {
+		final AtomicBoolean stopped = new AtomicBoolean();
+		final Future<?> slow = _executor.submit("calendar", new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						TimeUtilities.checkCancelled();
+					}
+				} catch (final CancellationException e) {
+					stopped.set(true);
+				}
+			}
+		}, 100, TimeUnit.MILLISECONDS);
+		final Future<Boolean> next = _executor.submit("calendar", new Callable<Boolean>() {
+
+			@Override
+			public Boolean call() {
+				return Thread.currentThread().isInterrupted();
+			}
+		}, 100, TimeUnit.MILLISECONDS);
+
+		// The lane moves on to the next job, on a worker that is no longer interrupted
+		assertFalse(next.get());
+		assertTrue(stopped.get());
+		assertEquals(1, _executor.getMetrics().getTimedOut());
+	}
+
+	@Test
+	public void testDeadlineLeavesResultToJob() throws InterruptedException, ExecutionException {
+		final Future<?> stopping = _executor.submit("calendar", new Runnable() {
+
+			@Override
+			public void run() {
+				while (true) {
+					TimeUtilities.checkCancelled();
+				}
+			}
+		}, 100, TimeUnit.MILLISECONDS);
+		try {
+			stopping.get();
+			fail("A job that stopped at its deadline reported a result");
+		} catch (final ExecutionException e) {
+			assertTrue(e.getCause() instanceof CancellationException);
+		}
+
+		// A job past its last check when the deadline comes still reports what it did, as it may have written it
+		final Future<Boolean> finishing = _executor.submit("calendar", new Callable<Boolean>() {
+
+			@Override
+			public Boolean call() {
+				final long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(300);
+				while (System.nanoTime() < end) {
+					// Busy, without checking for the interrupt
+				}
+				return Thread.currentThread().isInterrupted();
+			}
+		}, 100, TimeUnit.MILLISECONDS);
+		assertTrue(finishing.get());
+		assertFalse(finishing.isCancelled());
+		assertEquals(2, _executor.getMetrics().getTimedOut());
+	}
+}
@@ -73,4 +73,36 @@ public class TimeUtilitiesTest {
 		blocks = new ArrayList<>();
 		assertTrue(TimeUtilities.indexOfFitLocn(blocks, new Date()) == 0);
 	}
+	
+	@Test
+	public void testEqualStartsAndOverlaps() {
+		final List<ITimeBlockable> blocks = new ArrayList<>();
+		final long h = 3600000;
+		
+		blocks.add(new UnavailableBlock(new Date(0), new Date(h)));
+		blocks.add(new UnavailableBlock(new Date(2 * h), new Date(5 * h)));
+		blocks.add(new UnavailableBlock(new Date(2 * h), new Date(3 * h)));
+		blocks.add(new UnavailableBlock(new Date(4 * h), new Date(6 * h)));
+		blocks.add(new UnavailableBlock(new Date(8 * h), new Date(9 * h)));
+		
+		// Ties resolve to the first block with an equal start
+		assertTrue(TimeUtilities.indexOfFitLocn(blocks, new Date(2 * h)) == 1);
+		assertTrue(TimeUtilities.indexOfFitLocn(blocks, 2 * h + 1) == 3);
+		assertTrue(TimeUtilities.indexOfFitLocn(blocks, 9 * h) == 5);
+		
+		// A block fitting in a gap goes before the first block starting at or after it
+		final AssignmentBlock gap = new AssignmentBlock(new Date(h), new Date(2 * h), null);
+		assertTrue(TimeUtilities.insertIntoSortedList(blocks, gap) == 1);
+		assertTrue(blocks.get(1) == gap);
+		
+		// A block starting while the one before is still running goes after the first block that has ended
+		final AssignmentBlock overlap = new AssignmentBlock(new Date(3 * h), new Date(4 * h), null);
+		assertTrue(TimeUtilities.insertIntoSortedList(blocks, overlap) == 4);
+		assertTrue(blocks.get(4) == overlap);
+		
+		// No position is found if every earlier block is still running
+		final AssignmentBlock inside = new AssignmentBlock(new Date(5 * h), new Date(6 * h), null);
+		assertTrue(TimeUtilities.insertIntoSortedList(blocks, inside) == -1);
+		assertTrue(blocks.size() == 7);
+	}
 }
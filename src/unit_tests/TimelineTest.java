@@ -0,0 +1,86 @@
+package unit_tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import backend.database.TimeBlockChangeSet;
+import backend.time.TimeCompactor;
+import backend.time.TimeUtilities;
+import backend.time.Timeline;
+import data.AssignmentBlock;
+import data.ITimeBlockable;
+import data.Task;
+import data.UnavailableBlock;
+
+public class TimelineTest {
+
+	private static final long	HOUR	= 3600000;
+
+	@Test
+	public void testInsertMatchesSortedList() {
+		final Random random = new Random(7);
+		final List<ITimeBlockable> blocks = new ArrayList<>();
+		final Timeline timeline = new Timeline(blocks);
+		final Task task = new Task("Task", 1.0, 0);
+
+		for (int i = 0; i < 300; ++i) {
+			final long start = random.nextInt(500) * HOUR / 4;
+			final long end = start + (1 + random.nextInt(8)) * HOUR / 4;
+			final int expected = TimeUtilities.insertIntoSortedList(blocks, new AssignmentBlock(new Date(start),
+					new Date(end), task));
+			assertEquals(expected, timeline.insert(start, end, task));
+			assertEquals(TimeUtilities.indexOfFitLocn(blocks, start), timeline.indexOfFitLocn(start));
+		}
+
+		assertEquals(blocks.size(), timeline.size());
+		for (int i = 0; i < blocks.size(); ++i) {
+			assertEquals(blocks.get(i).getStart().getTime(), timeline.getStart(i));
+			assertEquals(blocks.get(i).getEnd().getTime(), timeline.getEnd(i));
+		}
+	}
+
+	@Test
+	public void testCompactAndWriteBack() {
+		final AssignmentBlock b1 = new AssignmentBlock(new Date(0), new Date(HOUR), null);
+		final UnavailableBlock b2 = new UnavailableBlock(new Date(2 * HOUR), new Date(3 * HOUR));
+		final AssignmentBlock b3 = new AssignmentBlock(new Date(5 * HOUR), new Date(6 * HOUR), null);
+		final List<ITimeBlockable> blocks = new ArrayList<>();
+		blocks.add(b1);
+		blocks.add(b2);
+		blocks.add(b3);
+		final Timeline timeline = new Timeline(blocks);
+
+		// A block inserted into the gap is only created at the storage boundary
+		final Task task = new Task("Task", 1.0, 0);
+		assertEquals(1, timeline.insert(HOUR, 2 * HOUR, task));
+
+		// The unavailable block stays put, the block after it is pulled back against it
+		assertEquals(3 * HOUR, TimeCompactor.compact(timeline, 0, 10 * HOUR, 5 * HOUR));
+		assertEquals(5 * HOUR, b3.getStart().getTime());
+
+		final TimeBlockChangeSet changes = new TimeBlockChangeSet();
+		final List<ITimeBlockable> result = timeline.toBlocks(changes);
+		assertEquals(4, result.size());
+		assertTrue(result.get(0) == b1);
+		assertEquals(task.getTaskID(), result.get(1).getTaskId());
+		assertTrue(result.get(3) == b3);
+		assertEquals(3 * HOUR, b3.getStart().getTime());
+		assertEquals(4 * HOUR, b3.getEnd().getTime());
+
+		assertEquals(1, changes.getInserted().size());
+		assertEquals(1, changes.getMoved().size());
+		assertTrue(changes.getMoved().get(0) == b3);
+
+		// Nothing changed since, so nothing more is recorded
+		final TimeBlockChangeSet again = new TimeBlockChangeSet();
+		timeline.toBlocks(again);
+		assertTrue(again.isEmpty());
+	}
+}
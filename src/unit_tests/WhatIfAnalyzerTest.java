@@ -0,0 +1,123 @@
+package unit_tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import backend.database.MemoryStorageBackend;
+import backend.database.StorageService;
+import backend.database.StorageServiceException;
+import backend.time.ScheduleScorer;
+import backend.time.WhatIfAnalyzer;
+import data.Assignment;
+import data.ITimeBlockable;
+import data.Template;
+import data.TemplateStep;
+import data.UnavailableBlock;
+
+public class WhatIfAnalyzerTest {
+
+	private static final long	HOUR	= 3600000;
+	private static final long	DAY		= 24 * HOUR;
+
+	private long				_base;
+	private ForkJoinPool		_pool;
+
+	@Before
+	public void setUp() {
+		_base = 1400000000000L - 1400000000000L % DAY;
+		_pool = new ForkJoinPool(4);
+		try {
+			StorageService.initialize(new MemoryStorageBackend(), true);
+
+			// Only 8am to 11am is free each day
+			final List<ITimeBlockable> unavailable = new ArrayList<>();
+			for (int d = 0; d < 5; ++d) {
+				unavailable.add(new UnavailableBlock(new Date(_base + d * DAY), new Date(_base + d * DAY + 8 * HOUR)));
+				unavailable.add(new UnavailableBlock(new Date(_base + d * DAY + 11 * HOUR), new Date(_base + (d + 1)
+					* DAY)));
+			}
+			StorageService.replaceUnavailableBlocks(new Date(_base), new Date(_base + 5 * DAY), unavailable);
+		} catch (final StorageServiceException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	@After
+	public void cleanUp() {
+		_pool.shutdown();
+		StorageService.cleanup();
+	}
+
+	@Test
+	public void testRanksShorterBlocksAsFeasible() {
+		// Four hour blocks never fit in three hour gaps, but shorter ones do
+		final Template template = new Template("Template", 4.0);
+		template.addStep(new TemplateStep("Step 1", 1.0, 0));
+		final Assignment asgn = new Assignment("Assignment", new Date(_base + 4 * DAY), template, 6);
+
+		final WhatIfAnalyzer analyzer = new WhatIfAnalyzer(_pool, new ScheduleScorer());
+		final List<WhatIfAnalyzer.Outcome> outcomes = analyzer.analyze(asgn, new Date(_base));
+		assertEquals(analyzer.candidates(asgn, new Date(_base)).size(), outcomes.size());
+
+		assertTrue(outcomes.get(0).isFeasible());
+		assertTrue(outcomes.get(0).getCandidate().getHoursPerBlock() <= 3.0);
+		boolean seenInfeasible = false;
+		for (int i = 0; i < outcomes.size(); ++i) {
+			final WhatIfAnalyzer.Outcome outcome = outcomes.get(i);
+			if (outcome.getCandidate().getHoursPerBlock() > 3.0) {
+				assertFalse(outcome.isFeasible());
+			}
+			if (!outcome.isFeasible()) {
+				seenInfeasible = true;
+			} else {
+				assertFalse(seenInfeasible);
+				assertTrue(i == 0 || outcome.getScore() <= outcomes.get(i - 1).getScore());
+			}
+		}
+		assertTrue(seenInfeasible);
+
+		// Nothing was written
+		assertTrue(StorageService.getAllAssignmentBlocksWithinRange(new Date(_base), new Date(_base + 5 * DAY))
+				.isEmpty());
+	}
+
+	@Test
+	public void testNothingFits() {
+		final Template template = new Template("Template", 2.0);
+		template.addStep(new TemplateStep("Step 1", 1.0, 0));
+		final Assignment asgn = new Assignment("Assignment", new Date(_base + 2 * DAY), template, 40);
+
+		for (final WhatIfAnalyzer.Outcome outcome : new WhatIfAnalyzer(_pool, new ScheduleScorer()).analyze(asgn,
+				new Date(_base))) {
+			assertFalse(outcome.isFeasible());
+		}
+	}
+
+	@Test
+	public void testInterruptStopsAnalysis() {
+		final Template template = new Template("Template", 2.0);
+		template.addStep(new TemplateStep("Step 1", 1.0, 0));
+		final Assignment asgn = new Assignment("Assignment", new Date(_base + 4 * DAY), template, 6);
+
+		// A deadline interrupts the thread waiting on the analysis, which must give up rather than wait it out
+		Thread.currentThread().interrupt();
+		try {
+			new WhatIfAnalyzer(_pool, new ScheduleScorer()).analyze(asgn, new Date(_base));
+			fail("An interrupted analysis kept waiting");
+		} catch (final CancellationException e) {
+			assertTrue(Thread.interrupted());
+		}
+	}
+}